@@ -0,0 +1,103 @@
+package com.parcial.central.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prueba de carga en lazo cerrado contra un endpoint GET (por defecto el saldo del Servidor Central).
+ * Sube la concurrencia por escalones y, para cada uno, mide throughput, p50 y p99. La concurrencia
+ * máxima sostenible es el último escalón sin errores con p99 por debajo del umbral.
+ *
+ * Para comparar modos, ejecutarla contra el servidor arrancado con HTTP_EXECUTION_MODE=platform
+ * y luego con HTTP_EXECUTION_MODE=virtual (mismo worker y misma BD).
+ *
+ * Uso: java -cp benchmark/target/benchmark-1.0-SNAPSHOT.jar com.parcial.central.benchmark.LoadTest
+ *          [url] [segundosPorEscalon] [umbralP99Ms] [escalones separados por coma]
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String url = args.length > 0 ? args[0] : "http://localhost:8000/api/saldo?cuentaId=CU001";
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double umbralP99Ms = args.length > 2 ? Double.parseDouble(args[2]) : 500.0;
+        int[] escalones = args.length > 3
+                ? Arrays.stream(args[3].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{8, 16, 32, 64, 128, 256, 512};
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).GET().build();
+
+        int maxSostenible = 0;
+        System.out.println("concurrencia,solicitudes,errores,throughput/s,p50ms,p99ms");
+        for (int concurrencia : escalones) {
+            Resultado r = runStep(client, request, concurrencia, segundos);
+            System.out.printf("%d,%d,%d,%.1f,%.2f,%.2f%n", concurrencia, r.solicitudes, r.errores,
+                    r.solicitudes / (double) segundos, r.p50Ms, r.p99Ms);
+            if (r.errores == 0 && r.p99Ms <= umbralP99Ms) {
+                maxSostenible = concurrencia;
+            }
+        }
+        System.out.println("Concurrencia máxima sostenible (p99 <= " + umbralP99Ms + " ms, sin errores): " + maxSostenible);
+    }
+
+    private static final class Resultado {
+        int solicitudes;
+        int errores;
+        double p50Ms;
+        double p99Ms;
+    }
+
+    private static Resultado runStep(HttpClient client, HttpRequest request, int concurrencia, int segundos) throws Exception {
+        long fin = System.nanoTime() + TimeUnit.SECONDS.toNanos(segundos);
+        AtomicInteger errores = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrencia);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrencia; i++) {
+            futures.add(executor.submit(() -> {
+                List<Long> latencias = new ArrayList<>();
+                while (System.nanoTime() < fin) {
+                    long t0 = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() >= 500) {
+                            errores.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errores.incrementAndGet();
+                    }
+                    latencias.add(System.nanoTime() - t0);
+                }
+                return latencias;
+            }));
+        }
+        List<Long> todas = new ArrayList<>();
+        for (Future<List<Long>> future : futures) {
+            todas.addAll(future.get());
+        }
+        executor.shutdown();
+
+        long[] ordenadas = todas.stream().mapToLong(Long::longValue).sorted().toArray();
+        Resultado resultado = new Resultado();
+        resultado.solicitudes = ordenadas.length;
+        resultado.errores = errores.get();
+        if (ordenadas.length > 0) {
+            resultado.p50Ms = ordenadas[(int) (ordenadas.length * 0.50)] / 1_000_000.0;
+            resultado.p99Ms = ordenadas[Math.min(ordenadas.length - 1, (int) (ordenadas.length * 0.99))] / 1_000_000.0;
+        }
+        return resultado;
+    }
+}
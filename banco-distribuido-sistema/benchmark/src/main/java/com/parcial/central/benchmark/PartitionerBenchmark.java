@@ -0,0 +1,86 @@
+package com.parcial.central.benchmark;
+
+import com.parcial.central.services.ConsistentHashPartitioner;
+import com.parcial.central.services.ParityPartitioner;
+import com.parcial.central.services.Partitioner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mide el coste de enrutar una cuenta a su partición (ns por llamada) con el código anterior
+ * (regex + parseLong), el particionador por paridad y el de hashing consistente, y qué fracción
+ * de cuentas cambia de partición al pasar de N a N+1 particiones.
+ *
+ * Uso: java -cp benchmark/target/benchmark-1.0-SNAPSHOT.jar com.parcial.central.benchmark.PartitionerBenchmark [cuentas] [nodosVirtuales]
+ */
+public class PartitionerBenchmark {
+    private static volatile Object sink; // Evita que el JIT elimine el trabajo medido
+
+    public static void main(String[] args) {
+        int cuentas = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int virtualNodes = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        String[] ids = new String[cuentas];
+        for (int i = 0; i < cuentas; i++) {
+            ids[i] = String.format("CU%03d", i + 1);
+        }
+
+        System.out.println("Coste de enrutamiento por solicitud:");
+        measure("regex (anterior)", ids, PartitionerBenchmark::legacyPartitionKey);
+        Partitioner parity = new ParityPartitioner();
+        measure("paridad", ids, parity::getPartitionKeyForAccount);
+        for (int n : new int[]{2, 8, 64}) {
+            Partitioner ch = new ConsistentHashPartitioner(n, virtualNodes);
+            measure("hash consistente N=" + n, ids, ch::getPartitionKeyForAccount);
+        }
+
+        System.out.println("Cuentas reubicadas al añadir una partición (ideal ~1/(N+1)):");
+        for (int n = 2; n <= 8; n++) {
+            Partitioner before = new ConsistentHashPartitioner(n, virtualNodes);
+            Partitioner after = new ConsistentHashPartitioner(n + 1, virtualNodes);
+            int moved = 0;
+            Map<String, Integer> balance = new HashMap<>();
+            for (String id : ids) {
+                String nueva = after.getPartitionKeyForAccount(id);
+                if (!before.getPartitionKeyForAccount(id).equals(nueva)) {
+                    moved++;
+                }
+                balance.merge(nueva, 1, Integer::sum);
+            }
+            int max = balance.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+            System.out.printf("  %d -> %d: %.2f%% movidas (ideal %.2f%%), partición mayor %.2fx la media%n",
+                    n, n + 1, 100.0 * moved / cuentas, 100.0 / (n + 1), max / (cuentas / (double) (n + 1)));
+        }
+    }
+
+    private interface Router {
+        String route(String accountId);
+    }
+
+    private static void measure(String nombre, String[] ids, Router router) {
+        for (int warm = 0; warm < 20; warm++) { // Calentamiento del JIT
+            for (String id : ids) {
+                sink = router.route(id);
+            }
+        }
+        int rondas = 20;
+        long start = System.nanoTime();
+        for (int r = 0; r < rondas; r++) {
+            for (String id : ids) {
+                sink = router.route(id);
+            }
+        }
+        double nsPorLlamada = (System.nanoTime() - start) / (double) (rondas * ids.length);
+        System.out.printf("  %-24s %8.1f ns/llamada%n", nombre, nsPorLlamada);
+    }
+
+    // Implementación original de WorkerNodeRegistry.getPartitionKeyForAccount, como referencia
+    private static String legacyPartitionKey(String accountId) {
+        try {
+            long numericId = Long.parseLong(accountId.replaceAll("[^0-9]", ""));
+            return numericId % 2 == 0 ? "Cuenta-P2" : "Cuenta-P1";
+        } catch (NumberFormatException e) {
+            return "Cuenta-P" + (Math.abs(accountId.hashCode() % 2) + 1);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.parcial.central.benchmark;
+
+import com.parcial.central.services.WorkerNodeClient;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compara el transporte HTTP/1.1 con el protocolo binario contra un Nodo Trabajador en ejecución,
+ * usando consultas de saldo (la operación más frecuente y la que menos tiempo pasa en la BD).
+ *
+ * Uso: java -cp benchmark/target/benchmark-1.0-SNAPSHOT.jar com.parcial.central.benchmark.TransportBenchmark
+ *          [urlWorker] [cuentaId] [solicitudes] [concurrencia]
+ * El worker debe tener abiertos tanto su puerto HTTP como BINARY_PORT (WORKER_BINARY_PORT aquí).
+ */
+public class TransportBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String workerAddress = args.length > 0 ? args[0] : "http://localhost:8081";
+        String cuentaId = args.length > 1 ? args[1] : "CU001";
+        int solicitudes = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        int concurrencia = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        for (WorkerNodeClient.Transport transport : WorkerNodeClient.Transport.values()) {
+            ExecutorService executor = Executors.newFixedThreadPool(10);
+            WorkerNodeClient client = new WorkerNodeClient(executor, transport);
+            try {
+                run(client, workerAddress, cuentaId, solicitudes / 10, concurrencia); // Calentamiento (JIT, conexiones)
+                long[] latencias = run(client, workerAddress, cuentaId, solicitudes, concurrencia);
+                print(transport, latencias);
+            } finally {
+                client.shutdown();
+            }
+        }
+    }
+
+    private static long[] run(WorkerNodeClient client, String workerAddress, String cuentaId,
+                              int solicitudes, int concurrencia) throws InterruptedException {
+        long[] latencias = new long[solicitudes];
+        Semaphore enVuelo = new Semaphore(concurrencia);
+        AtomicInteger errores = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[solicitudes];
+        long inicio = System.nanoTime();
+        for (int i = 0; i < solicitudes; i++) {
+            enVuelo.acquire();
+            final int indice = i;
+            long t0 = System.nanoTime();
+            futures[i] = client.sendGetRequestAsync(workerAddress, "/api/worker/saldo", Map.of("cuentaId", cuentaId))
+                    .whenComplete((respuesta, ex) -> {
+                        latencias[indice] = System.nanoTime() - t0;
+                        if (ex != null) {
+                            errores.incrementAndGet();
+                        }
+                        enVuelo.release();
+                    });
+        }
+        CompletableFuture.allOf(futures).exceptionally(ex -> null).join();
+        long totalNanos = System.nanoTime() - inicio;
+        if (errores.get() > 0) {
+            System.out.println("  (" + errores.get() + " solicitudes fallidas)");
+        }
+        System.out.printf("  %d solicitudes en %.1f ms%n", solicitudes, totalNanos / 1_000_000.0);
+        return latencias;
+    }
+
+    private static void print(WorkerNodeClient.Transport transport, long[] latencias) {
+        long[] ordenadas = latencias.clone();
+        Arrays.sort(ordenadas);
+        double totalMs = Arrays.stream(latencias).sum() / 1_000_000.0;
+        System.out.printf("%s: media=%.3f ms p50=%.3f ms p99=%.3f ms max=%.3f ms%n",
+                transport,
+                totalMs / latencias.length,
+                ordenadas[(int) (ordenadas.length * 0.50)] / 1_000_000.0,
+                ordenadas[Math.min(ordenadas.length - 1, (int) (ordenadas.length * 0.99))] / 1_000_000.0,
+                ordenadas[ordenadas.length - 1] / 1_000_000.0);
+    }
+}
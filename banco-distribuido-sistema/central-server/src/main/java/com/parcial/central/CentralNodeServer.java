@@ -2,15 +2,31 @@ package com.parcial.central;
 
 import com.sun.net.httpserver.HttpServer;
 
+import com.parcial.central.handlers.AdmissionFilter;
 import com.parcial.central.handlers.ArqueoHandler; 
 import com.parcial.central.handlers.ConsultarSaldoHandler;
+import com.parcial.central.handlers.DecisionHandler;
+import com.parcial.central.handlers.MetricsHandler;
+import com.parcial.central.handlers.RebalanceoHandler;
+import com.parcial.central.handlers.RegistrarWorkerHandler;
 import com.parcial.central.handlers.TransferirFondosHandler;
 
+import com.parcial.central.services.AdmissionControl;
+import com.parcial.central.services.AntiEntropyReconciler;
+import com.parcial.central.services.DecisionLog;
+import com.parcial.central.services.HealthProber;
+import com.parcial.central.services.PartitionRebalancer;
+import com.parcial.central.services.TransferBatcher;
+import com.parcial.central.services.TwoPhaseCommitCoordinator;
 import com.parcial.central.services.WorkerNodeClient;
+import com.parcial.central.services.WorkerMembership;
 import com.parcial.central.services.WorkerNodeRegistry;
+import com.parcial.common.RequestExecutors;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -20,7 +36,8 @@ import java.util.logging.Logger;
 /**
  * Servidor Central del sistema bancario distribuido.
  * Recibe solicitudes de clientes, las coordina con Nodos Trabajadores
- * y gestiona la concurrencia mediante un ThreadPoolExecutor.
+ * y gestiona la concurrencia mediante un ThreadPoolExecutor, o con un hilo virtual por
+ * solicitud si HTTP_EXECUTION_MODE=virtual (ver {@link RequestExecutors}).
  */
 public class CentralNodeServer {
 
@@ -30,40 +47,72 @@ public class CentralNodeServer {
     private static final int CORE_POOL_SIZE = 10; // Hilos base
     private static final int MAX_POOL_SIZE = 20;  // Hilos máximos
     private static final long KEEP_ALIVE_TIME = 60L; // Tiempo que un hilo extra puede estar inactivo
+    // Membresía por defecto (sin WORKERS_ARCHIVO ni WORKERS): "id direccion particiones" por línea.
+    // Los puertos 8081 son para las APIs de los workers, no para sus BDs.
+    private static final String DEFAULT_WORKERS = String.join("\n",
+            "worker-db-0 http://worker-db-0.worker-db-svc.banco.svc.cluster.local:8081 Cliente-P1,Cuenta-P1,Transacciones-P1",
+            "worker-db-1 http://worker-db-1.worker-db-svc.banco.svc.cluster.local:8081 Cliente-P1,Cuenta-P2,Transacciones-P2",
+            "worker-db-2 http://worker-db-2.worker-db-svc.banco.svc.cluster.local:8081 Cliente-P1,Cuenta-P1,Transacciones-P1",
+            "worker-db-3 http://worker-db-3.worker-db-svc.banco.svc.cluster.local:8081 Cliente-P2,Cuenta-P2,Transacciones-P2",
+            "worker-db-4 http://worker-db-4.worker-db-svc.banco.svc.cluster.local:8081 Cliente-P2,Cuenta-P1,Transacciones-P1",
+            "worker-db-5 http://worker-db-5.worker-db-svc.banco.svc.cluster.local:8081 Cliente-P2,Cuenta-P2,Transacciones-P2");
     private final int port;
     private HttpServer server;
     private final WorkerNodeRegistry workerNodeRegistry;
     private final WorkerNodeClient workerNodeClient;
-    private final ThreadPoolExecutor requestHandlerThreadPool; // Pool para los handlers HTTP
+    private final PartitionRebalancer partitionRebalancer;
+    private final AntiEntropyReconciler antiEntropyReconciler;
+    private final TwoPhaseCommitCoordinator twoPhaseCommitCoordinator;
+    private final TransferBatcher transferBatcher;
+    private final WorkerMembership workerMembership;
+    private final HealthProber healthProber;
+    private final AdmissionControl admissionControl = new AdmissionControl();
+    private final ExecutorService requestHandlerThreadPool; // Pool para los handlers HTTP
 
     public CentralNodeServer(int port) {
         this.port = port;
         this.workerNodeRegistry = new WorkerNodeRegistry(); // Cargar configuración de workers
         // Pool de hilos dedicado para las llamadas salientes a los workers
+        // Cola acotada: con la cola llena WorkerNodeClient rechaza las solicitudes nuevas y el handler
+        // responde 503, en vez de ejecutarlas en el hilo del handler (que bloquearía la admisión HTTP).
+        // Si aun así se rechaza una tarea interna, el HttpClient la pasa a su pool por defecto.
+        int outgoingQueueCapacity = Integer.parseInt(System.getenv().getOrDefault("OUTGOING_QUEUE_CAPACITY", "1000"));
         ThreadPoolExecutor outgoingRequestsExecutor = new ThreadPoolExecutor(
-            5, 10, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>()
+            5, 10, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(outgoingQueueCapacity),
+            new ThreadPoolExecutor.AbortPolicy()
         );
-        this.workerNodeClient = new WorkerNodeClient(outgoingRequestsExecutor);
+        this.workerNodeClient = new WorkerNodeClient(outgoingRequestsExecutor, workerNodeRegistry);
+        this.transferBatcher = new TransferBatcher(workerNodeClient);
+        this.partitionRebalancer = new PartitionRebalancer(workerNodeRegistry);
+        this.antiEntropyReconciler = new AntiEntropyReconciler(workerNodeRegistry, partitionRebalancer);
+        // Log de decisiones del 2PC: debe estar en un volumen persistente para sobrevivir a reinicios del Pod
+        Path decisionLogPath = Path.of(System.getenv().getOrDefault("DOS_FASES_LOG", "data/decisiones-2pc.log"));
+        try {
+            this.twoPhaseCommitCoordinator = new TwoPhaseCommitCoordinator(workerNodeClient, new DecisionLog(decisionLogPath),
+                    workerNodeRegistry.getWriteFence());
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo abrir el log de decisiones 2PC en " + decisionLogPath, e);
+        }
 
 
-        // Simulación de registro de Nodos Trabajadores (esto vendría de una config o descubrimiento)
-        // Los puertos 8081 son para las APIs de los workers, no para sus BDs.
-        workerNodeRegistry.addWorkerNode("worker-db-0", "http://worker-db-0.worker-db-svc.banco.svc.cluster.local:8081", "Cliente-P1,Cuenta-P1,Transacciones-P1");
-        workerNodeRegistry.addWorkerNode("worker-db-1", "http://worker-db-1.worker-db-svc.banco.svc.cluster.local:8081", "Cliente-P1,Cuenta-P2,Transacciones-P2");
-        workerNodeRegistry.addWorkerNode("worker-db-2", "http://worker-db-1.worker-db-svc.banco.svc.cluster.local:8081", "Cliente-P1,Cuenta-P1,Transacciones-P1");
-        workerNodeRegistry.addWorkerNode("worker-db-3", "http://worker-db-1.worker-db-svc.banco.svc.cluster.local:8081", "Cliente-P2,Cuenta-P2,Transacciones-P2");
-        workerNodeRegistry.addWorkerNode("worker-db-4", "http://worker-db-1.worker-db-svc.banco.svc.cluster.local:8081", "Cliente-P2,Cuenta-P1,Transacciones-P1");
-        workerNodeRegistry.addWorkerNode("worker-db-5", "http://worker-db-5.worker-db-svc.banco.svc.cluster.local:8081", "Cliente-P2,Cuenta-P2,Transacciones-P2");
+        // Registro de Nodos Trabajadores: archivo (recargable en caliente), WORKERS o la lista por defecto
+        this.workerMembership = new WorkerMembership(workerNodeRegistry, DEFAULT_WORKERS);
+        workerMembership.load();
+        // Sondeo de salud y carga de los workers; también relee la membresía cuando cambia el archivo
+        this.healthProber = new HealthProber(workerNodeRegistry, workerMembership);
 
         // ThreadPool para manejar las solicitudes HTTP entrantes
-        this.requestHandlerThreadPool = new ThreadPoolExecutor(
+        this.requestHandlerThreadPool = RequestExecutors.create(
+                RequestExecutors.modeFromEnvironment(),
                 CORE_POOL_SIZE,
                 MAX_POOL_SIZE,
-                KEEP_ALIVE_TIME,
-                TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>() 
+                KEEP_ALIVE_TIME
         );
-        LOGGER.info("ThreadPool para Handlers HTTP inicializado con " + CORE_POOL_SIZE + " hilos base y " + MAX_POOL_SIZE + " máximos.");
+        if (RequestExecutors.isVirtual(requestHandlerThreadPool)) {
+            LOGGER.info("Handlers HTTP ejecutándose en hilos virtuales (uno por solicitud).");
+        } else {
+            LOGGER.info("ThreadPool para Handlers HTTP inicializado con " + CORE_POOL_SIZE + " hilos base y " + MAX_POOL_SIZE + " máximos.");
+        }
     }
     
     public void start() throws IOException {
@@ -75,13 +124,27 @@ public class CentralNodeServer {
 
         // Configurar contextos (rutas de la API)
         // Cada handler usará el WorkerNodeClient (que tiene su propio pool para llamadas salientes)
-        server.createContext("/api/saldo", new ConsultarSaldoHandler(workerNodeRegistry, workerNodeClient));
-        server.createContext("/api/transferencia", new TransferirFondosHandler(workerNodeRegistry, workerNodeClient));
-        server.createContext("/api/arqueo", new ArqueoHandler(workerNodeRegistry, workerNodeClient));
+        // Presupuestos de admisión separados por endpoint: un arqueo caro no deja sin hueco a las transferencias
+        long retryAfter = admissionControl.getRetryAfterSeconds();
+        server.createContext("/api/saldo", new ConsultarSaldoHandler(workerNodeRegistry, workerNodeClient, admissionControl))
+                .getFilters().add(new AdmissionFilter(admissionControl.endpoint("saldo", 1000), retryAfter));
+        server.createContext("/api/transferencia", new TransferirFondosHandler(workerNodeRegistry, workerNodeClient,
+                        twoPhaseCommitCoordinator, transferBatcher, admissionControl))
+                .getFilters().add(new AdmissionFilter(admissionControl.endpoint("transferencia", 500), retryAfter));
+        server.createContext("/api/arqueo", new ArqueoHandler(workerNodeRegistry, workerNodeClient))
+                .getFilters().add(new AdmissionFilter(admissionControl.endpoint("arqueo", 4), retryAfter));
+        server.createContext("/api/metrics", new MetricsHandler(workerNodeRegistry, workerNodeClient, antiEntropyReconciler,
+                transferBatcher, admissionControl));
+        server.createContext("/api/2pc/decision", new DecisionHandler(twoPhaseCommitCoordinator));
+        // Administración: alta de workers en caliente y migración de rangos de cuentas entre particiones
+        server.createContext("/api/admin/workers", new RegistrarWorkerHandler(workerNodeRegistry, workerMembership));
+        server.createContext("/api/admin/rebalanceo", new RebalanceoHandler(workerNodeRegistry, partitionRebalancer));
 
         server.start();
         LOGGER.log(Level.INFO, "Servidor Central iniciado en el puerto: {0}", port);
-        LOGGER.log(Level.INFO, "Usando ThreadPool para manejar hasta {0} solicitudes concurrentes.", MAX_POOL_SIZE);
+        if (!RequestExecutors.isVirtual(requestHandlerThreadPool)) {
+            LOGGER.log(Level.INFO, "Usando ThreadPool para manejar hasta {0} solicitudes concurrentes.", MAX_POOL_SIZE);
+        }
     }
 
     public void stop(int delay) {
@@ -100,6 +163,21 @@ public class CentralNodeServer {
                 Thread.currentThread().interrupt();
             }
         }
+        if (healthProber != null) {
+            healthProber.shutdown();
+        }
+        if (transferBatcher != null) {
+            transferBatcher.shutdown(); // Enviar los lotes abiertos antes de cerrar el cliente
+        }
+        if (twoPhaseCommitCoordinator != null) {
+            twoPhaseCommitCoordinator.shutdown();
+        }
+        if (antiEntropyReconciler != null) {
+            antiEntropyReconciler.shutdown();
+        }
+        if (partitionRebalancer != null) {
+            partitionRebalancer.shutdown();
+        }
         if (workerNodeClient != null) {
             workerNodeClient.shutdown(); // Asegurar que el pool del cliente también se cierre
         }
@@ -0,0 +1,180 @@
+package com.parcial.central.handlers;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.central.services.AdaptiveLimiter;
+import com.parcial.central.services.WorkerResponseException;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Filtro de admisión de un contexto HTTP: si el endpoint ya tiene "limit" solicitudes en curso
+ * ({@link AdaptiveLimiter}), responde 503 con Retry-After sin llegar al handler.
+ * Los handlers responden de forma asíncrona, así que la solicitud termina cuando se cierra el
+ * cuerpo de la respuesta, no al volver del handler: el permiso se libera ahí. Un handler que
+ * responde sin llegar a los workers lo indica con {@link #sinMuestra} (ver AdaptiveLimiter).
+ * Si la respuesta nunca se cierra (un handler que no responde, o un sendResponseHeaders que falla en
+ * un callback), un vigilante libera el permiso como fallo a los ADMISION_PLAZO_MAX_MS; el permiso se
+ * libera una sola vez, lo haga quien lo haga primero.
+ *
+ * Solo cuentan como sobrecarga un 503 y los fallos que el handler anota con {@link #anotarFallo}
+ * (plazo vencido, 503 de un worker, pool de llamadas salientes lleno). Un 500 por un error interno
+ * o un rechazo de negocio no dice nada de la capacidad y no debe reducir el límite.
+ */
+public class AdmissionFilter extends Filter {
+    private static final Logger LOGGER = Logger.getLogger(AdmissionFilter.class.getName());
+    private static final String ATRIBUTO_SIN_MUESTRA = "admision.sinMuestra";
+    private static final String ATRIBUTO_SOBRECARGA = "admision.sobrecarga";
+    private static final long PLAZO_MAX_MS = Long.parseLong(System.getenv().getOrDefault("ADMISION_PLAZO_MAX_MS", "30000"));
+    private static final ScheduledThreadPoolExecutor VIGILANTE = crearVigilante();
+    private final AdaptiveLimiter limiter;
+    private final long retryAfterSeconds;
+
+    public AdmissionFilter(AdaptiveLimiter limiter, long retryAfterSeconds) {
+        this.limiter = limiter;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            LOGGER.log(Level.FINE, "Admisión: solicitud rechazada en {0} (límite {1})",
+                    new Object[]{limiter.getName(), limiter.getLimit()});
+            rejectOverloaded(exchange, retryAfterSeconds, "Servidor sobrecargado (" + limiter.getName() + "), reintente más tarde.");
+            return;
+        }
+        ScheduledFuture<?> vigilancia = VIGILANTE.schedule(() -> {
+            if (permit.release(false)) {
+                LOGGER.log(Level.WARNING, "Admisión: solicitud {0} {1} sin respuesta cerrada tras {2} ms; se libera su permiso",
+                        new Object[]{exchange.getRequestMethod(), exchange.getRequestURI(), PLAZO_MAX_MS});
+            }
+        }, PLAZO_MAX_MS, TimeUnit.MILLISECONDS);
+        exchange.setStreams(null, new FilterOutputStream(exchange.getResponseBody()) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    vigilancia.cancel(false);
+                    if (exchange.getAttribute(ATRIBUTO_SIN_MUESTRA) != null) {
+                        permit.discard();
+                    } else {
+                        permit.release(!huboSobrecarga(exchange));
+                    }
+                }
+            }
+        });
+        try {
+            chain.doFilter(exchange);
+        } catch (IOException | RuntimeException e) {
+            vigilancia.cancel(false);
+            permit.release(false);
+            throw e;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor crearVigilante() {
+        ScheduledThreadPoolExecutor vigilante = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "admision-vigilante");
+            t.setDaemon(true);
+            return t;
+        });
+        // Casi todas las vigilancias se cancelan al responder: que no se acumulen en la cola
+        vigilante.setRemoveOnCancelPolicy(true);
+        return vigilante;
+    }
+
+    @Override
+    public String description() {
+        return "Control de admisión de " + limiter.getName();
+    }
+
+    /**
+     * Marca que la respuesta no pasó por los workers (acierto de caché, rechazo): su latencia no es una muestra.
+     */
+    static void sinMuestra(HttpExchange exchange) {
+        exchange.setAttribute(ATRIBUTO_SIN_MUESTRA, Boolean.TRUE);
+    }
+
+    /**
+     * Anota en la solicitud si el fallo de una llamada a los workers es de sobrecarga (ver {@link #esSobrecarga}).
+     */
+    static void anotarFallo(HttpExchange exchange, Throwable ex) {
+        if (esSobrecarga(ex)) {
+            exchange.setAttribute(ATRIBUTO_SOBRECARGA, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return true si la solicitud respondió 503 o se le anotó un fallo de sobrecarga.
+     */
+    static boolean huboSobrecarga(HttpExchange exchange) {
+        return exchange.getResponseCode() == 503 || exchange.getAttribute(ATRIBUTO_SOBRECARGA) != null;
+    }
+
+    /**
+     * @return true si el fallo indica falta de capacidad: plazo vencido, 503 de un worker o una cola
+     *         de llamadas salientes llena. Un circuito abierto o un error del worker no lo son.
+     */
+    static boolean esSobrecarga(Throwable ex) {
+        Throwable causa = causa(ex);
+        return causa instanceof TimeoutException || causa instanceof HttpTimeoutException || saturado(causa)
+                || (causa instanceof WorkerResponseException && ((WorkerResponseException) causa).getStatusCode() == 503);
+    }
+
+    /**
+     * @return true si la llamada no llegó a salir porque el pool de llamadas salientes o la cola del nodo están llenos.
+     */
+    static boolean saturado(Throwable ex) {
+        return causa(ex) instanceof RejectedExecutionException;
+    }
+
+    private static Throwable causa(Throwable ex) {
+        Throwable causa = ex;
+        while ((causa instanceof CompletionException || causa instanceof ExecutionException) && causa.getCause() != null) {
+            causa = causa.getCause();
+        }
+        return causa;
+    }
+
+    /**
+     * Responde 503 con Retry-After. También la usan los handlers cuando se agota el límite de una partición.
+     */
+    static void rejectOverloaded(HttpExchange exchange, long retryAfterSeconds, String message) throws IOException {
+        sinMuestra(exchange);
+        respondOverloaded(exchange, retryAfterSeconds, message);
+    }
+
+    /**
+     * Responde 503 con Retry-After cuando los workers no pudieron atender la solicitud por saturación.
+     * A diferencia de {@link #rejectOverloaded}, la solicitud cuenta como muestra de sobrecarga.
+     */
+    static void respondOverloaded(HttpExchange exchange, long retryAfterSeconds, String message) throws IOException {
+        byte[] body = ("Error: " + message).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        exchange.sendResponseHeaders(503, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.parcial.central.handlers;
 
+import com.parcial.central.services.FutureCancellation;
+import com.parcial.central.services.HedgedRequest;
+import com.parcial.central.services.ScatterGather;
 import com.parcial.central.services.WorkerNodeRegistry;
 import com.parcial.central.services.WorkerNodeClient;
 import com.parcial.central.services.WorkerNodeInfo;
@@ -9,24 +12,30 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  * Manejador HTTP para la operación de "Arqueo Total".
  * Espera una solicitud GET a /api/arqueo.
- * Contacta a todos los Nodos Trabajadores (o a los que tienen particiones de cuentas)
- * para sumar los saldos de todas las cuentas.
- * Esto puede ser una operación costosa y requiere una estrategia de agregación.
+ * Consulta UNA réplica por partición de cuentas (Cuenta-P*) y suma sus subtotales: consultar
+ * todas las réplicas multiplicaría la carga en las BDs y contaría cada partición varias veces.
+ * Para cada partición se elige la réplica de menor coste observado (ver WorkerNodeRegistry) y,
+ * si no responde en ARQUEO_HEDGE_DELAY_MS, se cubre con una segunda réplica ({@link HedgedRequest}).
+ * Las consultas se componen con {@link ScatterGather}: ningún hilo espera a los workers, cada partición
+ * tiene su plazo (ARQUEO_PARTITION_TIMEOUT_MS) y el arqueo entero otro (ARQUEO_GLOBAL_TIMEOUT_MS).
+ * Si alguna partición no responde, el arqueo se reporta como PARCIAL indicando cuáles faltan.
  */
 public class ArqueoHandler extends BaseHttpHandler {
     private static final Logger LOGGER = Logger.getLogger(ArqueoHandler.class.getName());
-    private final ExecutorService arqueoExecutor = Executors.newCachedThreadPool(); // Para consultas paralelas a workers
+    private static final String WORKER_PATH = "/api/worker/arqueoParcial";
     private final WorkerNodeRegistry workerNodeRegistry;
     private final WorkerNodeClient workerNodeClient;
+    private final long partitionTimeoutMs = Long.parseLong(System.getenv().getOrDefault("ARQUEO_PARTITION_TIMEOUT_MS", "2000"));
+    private final long globalTimeoutMs = Long.parseLong(System.getenv().getOrDefault("ARQUEO_GLOBAL_TIMEOUT_MS", "5000"));
+    private final long hedgeDelayMs = Long.parseLong(System.getenv().getOrDefault("ARQUEO_HEDGE_DELAY_MS", "300"));
+    private static final int MAX_REPLICAS_POR_PARTICION = 2; // Réplica elegida + una de cobertura
 
     public ArqueoHandler(WorkerNodeRegistry workerNodeRegistry, WorkerNodeClient workerNodeClient) {
         this.workerNodeRegistry = workerNodeRegistry;
@@ -42,54 +51,62 @@ public class ArqueoHandler extends BaseHttpHandler {
 
         LOGGER.info("Solicitud de arqueo total recibida.");
 
-        List<WorkerNodeInfo> allWorkers = workerNodeRegistry.getAllWorkerNodes();
-        if (allWorkers.isEmpty()) {
+        List<String> partitions = workerNodeRegistry.getAccountPartitionKeys();
+        if (partitions.isEmpty()) {
             sendErrorResponse(exchange, 503, "No hay nodos trabajadores registrados para realizar el arqueo.");
             return;
         }
 
-        // Realizar el arqueo consultando a cada nodo trabajador por su subtotal
-        // o por las particiones que maneja. Aquí, por simplicidad, cada worker
-        // podría tener un endpoint /api/worker/arqueoParcial.
-        
-        List<CompletableFuture<Double>> futures = allWorkers.stream()
-            .map(worker -> CompletableFuture.supplyAsync(() -> {
+        ScatterGather.gather(partitions, this::queryPartition, partitionTimeoutMs, globalTimeoutMs)
+            .whenComplete((result, ex) -> { // Se ejecuta en el hilo que complete la última respuesta (o el plazo)
                 try {
-                    // El path y los parámetros exactos dependerán de la API del Nodo Trabajador
-                    String workerPath = "/api/worker/arqueoParcial"; // Ejemplo
-                    CompletableFuture<String> responseFuture = workerNodeClient.sendGetRequestAsync(worker.getAddress(), workerPath, Map.of());
-                    String responseStr = responseFuture.join();
-                    return Double.parseDouble(responseStr);
-                } catch (Exception e) {
-                    LOGGER.log(Level.WARNING, "Fallo al obtener arqueo parcial del nodo " + worker.getId(), e);
-                    return 0.0; // Considerar 0 si un nodo falla, o manejar el error de forma más estricta
+                    if (ex != null) {
+                        LOGGER.log(Level.SEVERE, "Error durante la ejecución del arqueo total.", ex);
+                        sendErrorResponse(exchange, 500, "Error interno del servidor durante el arqueo.");
+                        return;
+                    }
+                    respond(exchange, result);
+                } catch (IOException ioe) {
+                    LOGGER.log(Level.SEVERE, "Error al enviar respuesta de arqueo", ioe);
                 }
-            }, arqueoExecutor))
-            .collect(Collectors.toList());
+            });
+    }
 
-        // Esperar a que todas las consultas a los workers terminen
-        CompletableFuture<Void> allDoneFuture = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    private CompletableFuture<Double> queryPartition(String partitionKey) {
+        List<WorkerNodeInfo> replicas = workerNodeRegistry.rankReplicasForRead(partitionKey);
+        return HedgedRequest.execute(replicas,
+                worker -> {
+                    LOGGER.log(Level.FINE, "Arqueo: partición {0} consultada en {1}", new Object[]{partitionKey, worker.getId()});
+                    CompletableFuture<String> request = workerNodeClient.sendGetRequestAsync(worker.getAddress(), WORKER_PATH, Map.of());
+                    return FutureCancellation.propagate(request.thenApply(Double::parseDouble), request);
+                },
+                hedgeDelayMs, MAX_REPLICAS_POR_PARTICION);
+    }
 
-        try {
-            allDoneFuture.get(); // Esperar a que todas las tareas se completen (o fallen)
+    private void respond(HttpExchange exchange, ScatterGather.Result<String, Double> result) throws IOException {
+        result.getFailures().forEach((partition, failure) -> {
+            LOGGER.log(Level.WARNING, "Fallo al obtener arqueo parcial de la partición " + partition
+                    + (failure instanceof TimeoutException ? " (plazo vencido)" : ""), failure);
+            AdmissionFilter.anotarFallo(exchange, failure);
+        });
 
-            double totalGeneral = futures.stream()
-                .mapToDouble(future -> {
-                    try {
-                        return future.getNow(0.0); // Obtener el resultado, 0.0 si no está completo (ya debería estarlo)
-                    } catch (Exception e) {
-                        LOGGER.log(Level.WARNING, "Error al obtener resultado de futuro de arqueo", e);
-                        return 0.0;
-                    }
-                })
-                .sum();
-            
-            LOGGER.log(Level.INFO, "Arqueo total calculado: {0}", totalGeneral);
-            sendResponse(exchange, 200, "Arqueo Total del Sistema: " + String.format("%.2f", totalGeneral));
+        if (result.getSuccesses().isEmpty()) {
+            sendErrorResponse(exchange, 503, "Ninguna partición respondió al arqueo. Particiones sin respuesta: "
+                    + String.join(", ", result.getFailures().keySet()));
+            return;
+        }
 
-        } catch (Exception e) { // InterruptedException or ExecutionException
-            LOGGER.log(Level.SEVERE, "Error durante la ejecución del arqueo total.", e);
-            sendErrorResponse(exchange, 500, "Error interno del servidor durante el arqueo.");
+        double totalGeneral = result.getSuccesses().values().stream().mapToDouble(Double::doubleValue).sum();
+        if (result.isComplete()) {
+            LOGGER.log(Level.INFO, "Arqueo total calculado: {0} en {1} ms", new Object[]{totalGeneral, result.getElapsedMillis()});
+            sendResponse(exchange, 200, "Arqueo Total del Sistema: " + String.format("%.2f", totalGeneral));
+            return;
         }
+
+        String faltantes = String.join(", ", result.getFailures().keySet());
+        LOGGER.log(Level.WARNING, "Arqueo PARCIAL calculado: {0}. Particiones sin respuesta: {1}", new Object[]{totalGeneral, faltantes});
+        exchange.getResponseHeaders().set("X-Arqueo-Parcial", "true");
+        sendResponse(exchange, 200, "Arqueo PARCIAL del Sistema: " + String.format("%.2f", totalGeneral)
+                + " (particiones sin respuesta: " + faltantes + ")");
     }
-}
\ No newline at end of file
+}
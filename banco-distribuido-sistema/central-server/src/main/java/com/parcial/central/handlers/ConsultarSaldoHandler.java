@@ -1,6 +1,12 @@
 package com.parcial.central.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
+import com.parcial.central.services.AdaptiveLimiter;
+import com.parcial.central.services.AdmissionControl;
+import com.parcial.central.services.BalanceCache;
+import com.parcial.central.services.HedgedRequest;
+import com.parcial.central.services.LatencyTracker;
+import com.parcial.central.services.ReplicationMode;
 import com.parcial.central.services.WorkerNodeClient;
 import com.parcial.central.services.WorkerNodeInfo;
 import com.parcial.central.services.WorkerNodeRegistry;
@@ -8,18 +14,39 @@ import com.parcial.central.services.WorkerNodeRegistry;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Consulta de saldo con lecturas cubiertas ("hedged reads"): se pregunta a la réplica preferida y,
+ * si no respondió tras el retardo de cobertura, también a la siguiente; gana la primera respuesta
+ * y el resto se cancela. Si una réplica falla se pasa a la siguiente sin esperar.
+ * SALDO_HEDGE_DELAY_MS fija el retardo en ms; por defecto ("p95") se usa el p95 observado de las
+ * respuestas de los workers, así solo ~5% de las lecturas llega a una segunda réplica.
+ * Antes de ir a los workers se consulta la caché de saldos del Central ({@link BalanceCache}); la
+ * respuesta de un worker solo la rellena si esa réplica no está rezagada en la cuenta (y, en modo
+ * primary-backup, si es el primario), para no fijar en caché un saldo atrasado.
+ * Las que sí van a los workers pasan por el límite de su partición ({@link AdmissionControl}).
+ */
 public class ConsultarSaldoHandler extends BaseHttpHandler {
     private static final Logger LOGGER = Logger.getLogger(ConsultarSaldoHandler.class.getName());
+    private static final int MIN_SAMPLES_FOR_P95 = 20;
+    private static final long INITIAL_HEDGE_DELAY_MS = 50L; // Hasta tener muestras suficientes
+    private static final long MIN_HEDGE_DELAY_MS = 5L;
     private final WorkerNodeRegistry workerNodeRegistry;
     private final WorkerNodeClient workerNodeClient;
+    private final AdmissionControl admissionControl;
+    private final LatencyTracker workerLatency = new LatencyTracker(1024);
+    private final String hedgeDelayConfig = System.getenv().getOrDefault("SALDO_HEDGE_DELAY_MS", "p95");
 
-    public ConsultarSaldoHandler(WorkerNodeRegistry workerNodeRegistry, WorkerNodeClient workerNodeClient) {
+    public ConsultarSaldoHandler(WorkerNodeRegistry workerNodeRegistry, WorkerNodeClient workerNodeClient,
+                                 AdmissionControl admissionControl) {
         this.workerNodeRegistry = workerNodeRegistry;
         this.workerNodeClient = workerNodeClient;
+        this.admissionControl = admissionControl;
     }
 
     @Override
@@ -40,8 +67,20 @@ public class ConsultarSaldoHandler extends BaseHttpHandler {
         LOGGER.log(Level.INFO, "Central Handler: Solicitud SALDO para cuenta: {0} (hilo: {1})", 
             new Object[]{cuentaId, Thread.currentThread().getName()});
 
+        BalanceCache balanceCache = workerNodeRegistry.getBalanceCache();
+        String saldoCacheado = balanceCache.get(cuentaId);
+        if (saldoCacheado != null) {
+            AdmissionFilter.sinMuestra(exchange);
+            sendResponse(exchange, 200, "Saldo para cuenta " + cuentaId + ": " + saldoCacheado);
+            return;
+        }
+        // La versión se toma antes de preguntar: si la cuenta se escribe mientras tanto, no se rellena
+        long version = balanceCache.version(cuentaId);
+
         String partitionKey = workerNodeRegistry.getPartitionKeyForAccount(cuentaId); // Lógica para determinar la partición
-        List<WorkerNodeInfo> candidateNodes = workerNodeRegistry.getNodesForPartition(partitionKey);
+        // Réplicas ordenadas por coste observado (latencia, en vuelo, errores), las rezagadas en la
+        // cuenta al final; ver WorkerNodeRegistry
+        List<WorkerNodeInfo> candidateNodes = workerNodeRegistry.rankReplicasForRead(partitionKey, cuentaId);
 
         if (candidateNodes == null || candidateNodes.isEmpty()) {
             LOGGER.log(Level.WARNING, "No se encontraron nodos trabajadores para la partición de la cuenta: {0}", cuentaId);
@@ -49,48 +88,55 @@ public class ConsultarSaldoHandler extends BaseHttpHandler {
             return;
         }
 
-        CompletableFuture<String> resultFuture = null;
-        // Intentar con la primera réplica, luego las otras en caso de fallo (failover simple)
-        // Una estrategia más avanzada usaría CompletableFuture.anyOf o un loop con reintentos
-        for (WorkerNodeInfo node : candidateNodes) {
-            CompletableFuture<String> future = workerNodeClient.sendGetRequestAsync(
+        AdaptiveLimiter.Permit permit = admissionControl.partition(partitionKey).tryAcquire();
+        if (permit == null) {
+            AdmissionFilter.rejectOverloaded(exchange, admissionControl.getRetryAfterSeconds(),
+                    "Partición " + partitionKey + " sobrecargada, reintente más tarde.");
+            return;
+        }
+
+        // Réplica preferida primero; las demás solo como cobertura o failover
+        AtomicReference<WorkerNodeInfo> respondio = new AtomicReference<>(); // La primera que respondió (la que gana)
+        CompletableFuture<String> resultFuture = HedgedRequest.execute(candidateNodes, node -> {
+            long startNanos = System.nanoTime();
+            CompletableFuture<String> request = workerNodeClient.sendGetRequestAsync(
                 node.getAddress(), // ej. http://worker-db-0.worker-db-svc:8081
                 "/api/worker/saldo",
                 Map.of("cuentaId", cuentaId)
-            ).handle((response, ex) -> { // El .handle se ejecuta en el pool del WorkerNodeClient o ForkJoinPool
-                if (ex != null) {
+            );
+            request.whenComplete((response, ex) -> { // Se ejecuta en el pool del WorkerNodeClient o ForkJoinPool
+                if (ex == null) {
+                    respondio.compareAndSet(null, node);
+                    workerLatency.record(System.nanoTime() - startNanos);
+                } else if (!(ex instanceof CancellationException)) {
                     LOGGER.log(Level.WARNING, "Fallo al contactar nodo " + node.getId() + " para saldo de cuenta " + cuentaId + " (hilo handle: " + Thread.currentThread().getName() + ")", ex);
-                    return null; // Indica fallo para este nodo
                 }
-                return response;
             });
-            if (resultFuture == null) {
-                resultFuture = future;
-            } else {
-                // Si el intento anterior falló (resultFuture completó con null o excepción), intentar con el siguiente
-                resultFuture = resultFuture.thenCompose(res -> {
-                    if (res != null) return CompletableFuture.completedFuture(res); // Ya tenemos respuesta
-                    return future; // Intentar con el siguiente futuro
-                });
-            }
-        }
-        
-        if (resultFuture == null) { // No debería pasar si candidateNodes no está vacío
-             sendErrorResponse(exchange, 500, "Error interno: no se pudo iniciar la consulta de saldo.");
-             return;
-        }
+            return request; // El futuro de la solicitud, no el derivado: al cancelarlo se cancela la llamada
+        }, currentHedgeDelayMs(), candidateNodes.size());
 
         resultFuture.whenComplete((saldoResponse, ex) -> { // Se ejecuta en el pool del WorkerNodeClient o FJP
+            if (ex != null) {
+                AdmissionFilter.anotarFallo(exchange, ex);
+            }
+            permit.release(!AdmissionFilter.esSobrecarga(ex));
             // ESTE BLOQUE SE EJECUTA EN UN HILO DEL COMPLETABLEFUTURE, NO EN EL HILO ORIGINAL DEL HANDLER HTTP.
             // La escritura de la respuesta HTTP DEBE volver al hilo del Exchange o ser manejada cuidadosamente.
             // Por simplicidad aquí, y dado que sendResponse es síncrono, esto podría funcionar,
             // pero en sistemas de alta carga, se debe tener cuidado con el contexto del hilo.
             try {
-                if (ex != null || saldoResponse == null) {
+                if (ex != null && AdmissionFilter.saturado(ex)) {
+                    LOGGER.log(Level.WARNING, "Central Handler: Llamadas salientes saturadas; saldo de cuenta {0} rechazado", cuentaId);
+                    AdmissionFilter.respondOverloaded(exchange, admissionControl.getRetryAfterSeconds(),
+                            "Servidor sobrecargado al consultar la cuenta " + cuentaId + ", reintente más tarde.");
+                } else if (ex != null || saldoResponse == null) {
                     LOGGER.log(Level.SEVERE, "Central Handler: Error final al obtener saldo para cuenta " + cuentaId + " (hilo: " + Thread.currentThread().getName() + ")", ex);
                     sendErrorResponse(exchange, 500, "Error al procesar consulta de saldo para cuenta " + cuentaId + ".");
                 } else {
                     LOGGER.log(Level.INFO, "Central Handler: Saldo para cuenta {0}: {1} (hilo: {2})", new Object[]{cuentaId, saldoResponse, Thread.currentThread().getName()});
+                    if (puedeRellenar(respondio.get(), partitionKey, cuentaId)) {
+                        balanceCache.putIfVersion(cuentaId, saldoResponse, version);
+                    }
                     sendResponse(exchange, 200, "Saldo para cuenta " + cuentaId + ": " + saldoResponse);
                 }
             } catch (IOException ioe) {
@@ -98,4 +144,26 @@ public class ConsultarSaldoHandler extends BaseHttpHandler {
             }
         });
     }
+
+    private boolean puedeRellenar(WorkerNodeInfo node, String partitionKey, String cuentaId) {
+        if (node == null || workerNodeRegistry.getRepairTracker().isBehind(node.getAddress(), cuentaId)) {
+            return false;
+        }
+        // Los backups aplican el log del primario con retraso y el Central no sabe cuánto
+        if (workerNodeRegistry.getReplicationMode() != ReplicationMode.PRIMARY_BACKUP) {
+            return true;
+        }
+        WorkerNodeInfo primario = workerNodeRegistry.getPrimaryForPartition(partitionKey);
+        return primario != null && primario.getAddress().equals(node.getAddress());
+    }
+
+    private long currentHedgeDelayMs() {
+        if (!"p95".equalsIgnoreCase(hedgeDelayConfig)) {
+            return Long.parseLong(hedgeDelayConfig);
+        }
+        if (workerLatency.getSampleCount() < MIN_SAMPLES_FOR_P95) {
+            return INITIAL_HEDGE_DELAY_MS;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MS, (long) Math.ceil(workerLatency.getPercentileMillis(95)));
+    }
 }
\ No newline at end of file
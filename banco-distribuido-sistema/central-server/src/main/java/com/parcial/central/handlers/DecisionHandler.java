@@ -0,0 +1,40 @@
+package com.parcial.central.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.central.services.TwoPhaseCommitCoordinator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * GET /api/2pc/decision?idTransaccion=...: decisión del coordinador de commit en dos fases
+ * (COMMIT, ABORT, PENDIENTE o DESCONOCIDA). La consultan los workers con participaciones preparadas
+ * que no recibieron la decisión.
+ */
+public class DecisionHandler extends BaseHttpHandler {
+    private static final Logger LOGGER = Logger.getLogger(DecisionHandler.class.getName());
+    private final TwoPhaseCommitCoordinator coordinator;
+
+    public DecisionHandler(TwoPhaseCommitCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendErrorResponse(exchange, 405, "Método no permitido. Usar GET.");
+            return;
+        }
+        Map<String, String> params = parseQueryParams(exchange.getRequestURI().getQuery());
+        String transaccionId = params.get("idTransaccion");
+        if (transaccionId == null) {
+            sendErrorResponse(exchange, 400, "Parámetro 'idTransaccion' es requerido.");
+            return;
+        }
+        String decision = coordinator.decisionFor(transaccionId);
+        LOGGER.log(Level.INFO, "Central Handler: Consulta de decisión 2PC {0}: {1}", new Object[]{transaccionId, decision});
+        sendResponse(exchange, 200, decision);
+    }
+}
@@ -0,0 +1,142 @@
+package com.parcial.central.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.central.services.AdaptiveLimiter;
+import com.parcial.central.services.AdmissionControl;
+import com.parcial.central.services.AntiEntropyReconciler;
+import com.parcial.central.services.BalanceCache;
+import com.parcial.central.services.CircuitBreaker;
+import com.parcial.central.services.NodeHealth;
+import com.parcial.central.services.NodeRequestLimiter;
+import com.parcial.central.services.NodeStats;
+import com.parcial.central.services.ReplicaRepairTracker;
+import com.parcial.central.services.TransferBatcher;
+import com.parcial.central.services.WorkerNodeClient;
+import com.parcial.central.services.WorkerNodeRegistry;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Expone métricas internas del Servidor Central en texto plano (una métrica "clave=valor" por línea).
+ */
+public class MetricsHandler extends BaseHttpHandler {
+    private static final Logger LOGGER = Logger.getLogger(MetricsHandler.class.getName());
+    private final WorkerNodeRegistry workerNodeRegistry;
+    private final WorkerNodeClient workerNodeClient;
+    private final AntiEntropyReconciler antiEntropyReconciler;
+    private final TransferBatcher transferBatcher;
+    private final AdmissionControl admissionControl;
+
+    public MetricsHandler(WorkerNodeRegistry workerNodeRegistry, WorkerNodeClient workerNodeClient,
+                          AntiEntropyReconciler antiEntropyReconciler, TransferBatcher transferBatcher,
+                          AdmissionControl admissionControl) {
+        this.workerNodeRegistry = workerNodeRegistry;
+        this.workerNodeClient = workerNodeClient;
+        this.antiEntropyReconciler = antiEntropyReconciler;
+        this.transferBatcher = transferBatcher;
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendErrorResponse(exchange, 405, "Método no permitido. Usar GET.");
+            return;
+        }
+        LOGGER.log(Level.FINE, "Central Handler: Solicitud METRICS (hilo: {0})", Thread.currentThread().getName());
+
+        StringBuilder sb = new StringBuilder();
+        workerNodeClient.getNodeLimiters().stream()
+                .sorted(Comparator.comparing(NodeRequestLimiter::getNodeAddress))
+                .forEach(limiter -> {
+                    String prefix = "node." + limiter.getNodeAddress() + ".";
+                    sb.append(prefix).append("maxInFlight=").append(limiter.getMaxInFlight()).append('\n');
+                    sb.append(prefix).append("inFlight=").append(limiter.getInFlight()).append('\n');
+                    sb.append(prefix).append("peakInFlight=").append(limiter.getPeakInFlight()).append('\n');
+                    sb.append(prefix).append("queueDepth=").append(limiter.getQueueDepth()).append('\n');
+                    sb.append(prefix).append("completed=").append(limiter.getCompleted()).append('\n');
+                    sb.append(prefix).append("rejected=").append(limiter.getRejected()).append('\n');
+                    sb.append(prefix).append("connectionsOpened=").append(limiter.getConnectionsOpened()).append('\n');
+                    sb.append(prefix).append("connectionsReused=").append(limiter.getConnectionsReused()).append('\n');
+                });
+        workerNodeRegistry.getAllNodeStats().stream()
+                .sorted(Comparator.comparing(NodeStats::getAddress))
+                .forEach(stats -> {
+                    String prefix = "node." + stats.getAddress() + ".";
+                    sb.append(prefix).append("ewmaLatencyMs=").append(String.format("%.2f", stats.getEwmaLatencyMillis())).append('\n');
+                    sb.append(prefix).append("errorRate=").append(String.format("%.4f", stats.getErrorRate())).append('\n');
+                    sb.append(prefix).append("successes=").append(stats.getSuccesses()).append('\n');
+                    sb.append(prefix).append("failures=").append(stats.getFailures()).append('\n');
+                    sb.append(prefix).append("cost=").append(String.format("%.0f", stats.cost())).append('\n');
+                });
+        workerNodeRegistry.getAllBreakers().stream()
+                .sorted(Comparator.comparing(CircuitBreaker::getAddress))
+                .forEach(breaker -> {
+                    String prefix = "node." + breaker.getAddress() + ".circuit.";
+                    sb.append(prefix).append("state=").append(breaker.getState()).append('\n');
+                    sb.append(prefix).append("failureRate=").append(String.format("%.4f", breaker.getFailureRate())).append('\n');
+                    sb.append(prefix).append("slowCallRate=").append(String.format("%.4f", breaker.getSlowCallRate())).append('\n');
+                    sb.append(prefix).append("rejected=").append(breaker.getRejected()).append('\n');
+                    sb.append(prefix).append("timesOpened=").append(breaker.getTimesOpened()).append('\n');
+                });
+        workerNodeRegistry.getAllNodeHealth().stream()
+                .sorted(Comparator.comparing(NodeHealth::getAddress))
+                .forEach(health -> {
+                    String prefix = "node." + health.getAddress() + ".health.";
+                    sb.append(prefix).append("alive=").append(health.isAlive()).append('\n');
+                    sb.append(prefix).append("status=").append(health.getStatus()).append('\n');
+                    sb.append(prefix).append("load=").append(String.format("%.4f", health.getLoad())).append('\n');
+                    sb.append(prefix).append("probes=").append(health.getProbes()).append('\n');
+                    sb.append(prefix).append("failedProbes=").append(health.getFailedProbes()).append('\n');
+                });
+        ReplicaRepairTracker repairTracker = workerNodeRegistry.getRepairTracker();
+        repairTracker.getTrackedAddresses().stream().sorted().forEach(address -> {
+            String prefix = "node." + address + ".";
+            sb.append(prefix).append("laggingWrites=").append(repairTracker.getLaggingCount(address)).append('\n');
+            sb.append(prefix).append("divergentAccounts=").append(repairTracker.getDivergentAccounts(address).size()).append('\n');
+        });
+        sb.append("quorum.lateConfirmations=").append(repairTracker.getLateConfirmations()).append('\n');
+        sb.append("quorum.divergences=").append(repairTracker.getDivergences()).append('\n');
+        sb.append("antiEntropy.rounds=").append(antiEntropyReconciler.getRondas()).append('\n');
+        sb.append("antiEntropy.lastRoundMs=").append(antiEntropyReconciler.getUltimaRondaMs()).append('\n');
+        sb.append("antiEntropy.divergentPartitions=").append(antiEntropyReconciler.getParticionesDivergentes()).append('\n');
+        sb.append("antiEntropy.nodesCompared=").append(antiEntropyReconciler.getNodosComparados()).append('\n');
+        sb.append("antiEntropy.rowsCompared=").append(antiEntropyReconciler.getFilasComparadas()).append('\n');
+        sb.append("antiEntropy.accountsRepaired=").append(antiEntropyReconciler.getCuentasReparadas()).append('\n');
+        sb.append("antiEntropy.accountsSkipped=").append(antiEntropyReconciler.getCuentasOmitidas()).append('\n');
+        BalanceCache balanceCache = workerNodeRegistry.getBalanceCache();
+        sb.append("balanceCache.size=").append(balanceCache.size()).append('\n');
+        sb.append("balanceCache.hits=").append(balanceCache.getHits()).append('\n');
+        sb.append("balanceCache.misses=").append(balanceCache.getMisses()).append('\n');
+        sb.append("balanceCache.hitRatio=").append(String.format("%.4f", balanceCache.getHitRatio())).append('\n');
+        sb.append("balanceCache.rejectedFills=").append(balanceCache.getRejectedFills()).append('\n');
+        sb.append("balanceCache.evictions=").append(balanceCache.getEvictions()).append('\n');
+        long lotes = transferBatcher.getLotesEnviados();
+        sb.append("transferBatch.batches=").append(lotes).append('\n');
+        sb.append("transferBatch.batchedTransfers=").append(transferBatcher.getTransferenciasEnLotes()).append('\n');
+        sb.append("transferBatch.singleTransfers=").append(transferBatcher.getIndividuales()).append('\n');
+        sb.append("transferBatch.avgSize=").append(String.format("%.2f",
+                lotes == 0 ? 0.0 : (double) transferBatcher.getTransferenciasEnLotes() / lotes)).append('\n');
+        admissionControl.getEndpointLimiters().stream()
+                .sorted(Comparator.comparing(AdaptiveLimiter::getName))
+                .forEach(limiter -> appendLimiter(sb, "admission.endpoint.", limiter));
+        admissionControl.getPartitionLimiters().stream()
+                .sorted(Comparator.comparing(AdaptiveLimiter::getName))
+                .forEach(limiter -> appendLimiter(sb, "admission.", limiter));
+        sendResponse(exchange, 200, sb.toString());
+    }
+
+    private static void appendLimiter(StringBuilder sb, String prefix, AdaptiveLimiter limiter) {
+        String p = prefix + limiter.getName() + ".";
+        sb.append(p).append("limit=").append(limiter.getLimit()).append('\n');
+        sb.append(p).append("inFlight=").append(limiter.getInFlight()).append('\n');
+        sb.append(p).append("accepted=").append(limiter.getAccepted()).append('\n');
+        sb.append(p).append("rejected=").append(limiter.getRejected()).append('\n');
+        sb.append(p).append("decreases=").append(limiter.getDecreases()).append('\n');
+        sb.append(p).append("shortRttMs=").append(String.format("%.2f", limiter.getShortRttMillis())).append('\n');
+        sb.append(p).append("longRttMs=").append(String.format("%.2f", limiter.getLongRttMillis())).append('\n');
+    }
+}
@@ -0,0 +1,74 @@
+package com.parcial.central.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.central.services.AccountRange;
+import com.parcial.central.services.PartitionRebalancer;
+import com.parcial.central.services.WorkerNodeRegistry;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Administración del rebalanceo en línea de particiones (ver {@link PartitionRebalancer}).
+ * - POST /api/admin/rebalanceo (desde, hasta, particionDestino): inicia la migración del rango de
+ *   cuentas [desde, hasta] a la partición destino, que ya debe tener nodos registrados
+ *   (ver {@link RegistrarWorkerHandler}). Responde 202 sin esperar a que termine.
+ * - GET /api/admin/rebalanceo: estado de la migración en curso o de la última, y rangos reasignados.
+ */
+public class RebalanceoHandler extends BaseHttpHandler {
+    private static final Logger LOGGER = Logger.getLogger(RebalanceoHandler.class.getName());
+    private final WorkerNodeRegistry workerNodeRegistry;
+    private final PartitionRebalancer rebalancer;
+
+    public RebalanceoHandler(WorkerNodeRegistry workerNodeRegistry, PartitionRebalancer rebalancer) {
+        this.workerNodeRegistry = workerNodeRegistry;
+        this.rebalancer = rebalancer;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if ("GET".equalsIgnoreCase(method)) {
+            sendResponse(exchange, 200, describe());
+            return;
+        }
+        if (!"POST".equalsIgnoreCase(method)) {
+            sendErrorResponse(exchange, 405, "Método no permitido. Usar GET o POST.");
+            return;
+        }
+
+        Map<String, String> formData = parseFormData(exchange);
+        String desde = formData.get("desde");
+        String hasta = formData.get("hasta");
+        String particionDestino = formData.get("particionDestino");
+        if (desde == null || hasta == null || particionDestino == null) {
+            sendErrorResponse(exchange, 400, "Parámetros 'desde', 'hasta', 'particionDestino' son requeridos.");
+            return;
+        }
+        LOGGER.log(Level.INFO, "Central Handler: Solicitud REBALANCEO [{0}, {1}] -> {2} (hilo: {3})",
+                new Object[]{desde, hasta, particionDestino, Thread.currentThread().getName()});
+
+        try {
+            PartitionRebalancer.Migration migration = rebalancer.start(new AccountRange(desde, hasta), particionDestino);
+            sendResponse(exchange, 202, "Migración " + migration.getId() + " iniciada. Consultar GET /api/admin/rebalanceo.");
+        } catch (IllegalArgumentException e) {
+            sendErrorResponse(exchange, 400, e.getMessage());
+        } catch (IllegalStateException e) {
+            sendErrorResponse(exchange, 409, e.getMessage());
+        }
+    }
+
+    private String describe() {
+        StringBuilder sb = new StringBuilder();
+        PartitionRebalancer.Migration migration = rebalancer.getCurrent();
+        if (migration != null) {
+            sb.append(migration.describe());
+        }
+        workerNodeRegistry.getRangeAssignments().forEach(assignment -> sb.append("rango.")
+                .append(assignment.getRange()).append('=').append(assignment.getPartitionKey()).append('\n'));
+        sb.append("barrera.retenidas=").append(workerNodeRegistry.getWriteFence().getHeldCount()).append('\n');
+        return sb.toString();
+    }
+}
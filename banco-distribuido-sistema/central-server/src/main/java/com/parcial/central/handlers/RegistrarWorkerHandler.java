@@ -0,0 +1,86 @@
+package com.parcial.central.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.central.services.NodeHealth;
+import com.parcial.central.services.WorkerMembership;
+import com.parcial.central.services.WorkerNodeInfo;
+import com.parcial.central.services.WorkerNodeRegistry;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Membresía de Nodos Trabajadores en caliente.
+ * - POST /api/admin/workers (id, direccion, particiones): registra un nodo, o lo actualiza si el id
+ *   ya existe. Permite agregar las réplicas de una partición nueva antes de migrarle cuentas con
+ *   {@link RebalanceoHandler}. Mientras la partición no sea dueña de ningún rango no recibe tráfico.
+ * - POST /api/admin/workers/recargar: relee el archivo de membresía ({@link WorkerMembership})
+ *   sin esperar a la siguiente ronda del sondeo de salud.
+ * - GET /api/admin/workers: nodos registrados con sus particiones, salud, carga y circuito.
+ */
+public class RegistrarWorkerHandler extends BaseHttpHandler {
+    private static final Logger LOGGER = Logger.getLogger(RegistrarWorkerHandler.class.getName());
+    private final WorkerNodeRegistry workerNodeRegistry;
+    private final WorkerMembership workerMembership;
+
+    public RegistrarWorkerHandler(WorkerNodeRegistry workerNodeRegistry, WorkerMembership workerMembership) {
+        this.workerNodeRegistry = workerNodeRegistry;
+        this.workerMembership = workerMembership;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if ("GET".equalsIgnoreCase(method)) {
+            sendResponse(exchange, 200, describe());
+            return;
+        }
+        if (!"POST".equalsIgnoreCase(method)) {
+            sendErrorResponse(exchange, 405, "Método no permitido. Usar GET o POST.");
+            return;
+        }
+        if (exchange.getRequestURI().getPath().endsWith("/recargar")) {
+            LOGGER.info("Central Handler: Recarga de la membresía de workers solicitada");
+            if (workerMembership.reload()) {
+                sendResponse(exchange, 200, "Membresía recargada de " + workerMembership.getFile() + ".");
+            } else {
+                sendErrorResponse(exchange, 409, "No se pudo recargar la membresía (sin WORKERS_ARCHIVO, archivo ilegible o sin nodos válidos).");
+            }
+            return;
+        }
+        Map<String, String> formData = parseFormData(exchange);
+        String id = formData.get("id");
+        String direccion = formData.get("direccion");
+        String particiones = formData.get("particiones");
+        if (id == null || direccion == null || particiones == null) {
+            sendErrorResponse(exchange, 400, "Parámetros 'id', 'direccion', 'particiones' son requeridos.");
+            return;
+        }
+        LOGGER.log(Level.INFO, "Central Handler: Registro de worker {0} en {1} con particiones {2}",
+                new Object[]{id, direccion, particiones});
+        workerNodeRegistry.addWorkerNode(id, direccion, particiones);
+        sendResponse(exchange, 200, "Nodo trabajador " + id + " registrado.");
+    }
+
+    private String describe() {
+        StringBuilder sb = new StringBuilder();
+        workerNodeRegistry.getAllWorkerNodes().stream()
+                .sorted(Comparator.comparing(WorkerNodeInfo::getId))
+                .forEach(node -> {
+                    NodeHealth health = workerNodeRegistry.healthFor(node.getAddress());
+                    String prefix = "worker." + node.getId() + ".";
+                    sb.append(prefix).append("address=").append(node.getAddress()).append('\n');
+                    sb.append(prefix).append("partitions=").append(String.join(",", node.getManagedPartitions())).append('\n');
+                    sb.append(prefix).append("available=").append(workerNodeRegistry.isAvailable(node.getAddress())).append('\n');
+                    sb.append(prefix).append("health=").append(health.getStatus()).append('\n');
+                    sb.append(prefix).append("load=").append(String.format("%.4f", health.getLoad())).append('\n');
+                    sb.append(prefix).append("circuit=").append(workerNodeRegistry.breakerFor(node.getAddress()).getState()).append('\n');
+                });
+        sb.append("membership.configured=").append(workerMembership.getConfiguredCount()).append('\n');
+        sb.append("membership.reloads=").append(workerMembership.getReloads()).append('\n');
+        return sb.toString();
+    }
+}
@@ -1,27 +1,56 @@
 package com.parcial.central.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
+import com.parcial.central.services.AdaptiveLimiter;
+import com.parcial.central.services.AdmissionControl;
+import com.parcial.central.services.BalanceCache;
+import com.parcial.central.services.ReplicaRepairTracker;
+import com.parcial.central.services.ReplicationMode;
+import com.parcial.central.services.TransferBatcher;
+import com.parcial.central.services.TwoPhaseCommitCoordinator;
 import com.parcial.central.services.WorkerNodeClient;
 import com.parcial.central.services.WorkerNodeInfo;
 import com.parcial.central.services.WorkerNodeRegistry;
+import com.parcial.central.services.WriteFence;
+import com.parcial.central.services.WriteQuorum;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+/**
+ * Manejador HTTP para transferencias (POST /api/transferencia).
+ * Si ambas cuentas están en la misma partición, la orden va a las réplicas de esa partición y se
+ * responde con quórum W de N ({@link WriteQuorum}), o, con REPLICATION_MODE=primary-backup, va solo
+ * al primario de la partición, que replica el cambio a los backups.
+ * Si están en particiones distintas, la coordina {@link TwoPhaseCommitCoordinator} (commit en dos fases).
+ * Las órdenes a una misma partición se agrupan en lotes ({@link TransferBatcher}); cada transferencia
+ * ocupa un hueco del límite de la partición de la cuenta origen ({@link AdmissionControl}) hasta
+ * que responden todas las réplicas.
+ */
 public class TransferirFondosHandler extends BaseHttpHandler {
     private static final Logger LOGGER = Logger.getLogger(TransferirFondosHandler.class.getName());
+    private static final int MIN_REPLICAS = 3;
     private final WorkerNodeRegistry workerNodeRegistry;
     private final WorkerNodeClient workerNodeClient;
+    private final TwoPhaseCommitCoordinator coordinator;
+    private final TransferBatcher transferBatcher;
+    private final AdmissionControl admissionControl;
 
-    public TransferirFondosHandler(WorkerNodeRegistry workerNodeRegistry, WorkerNodeClient workerNodeClient) {
+    public TransferirFondosHandler(WorkerNodeRegistry workerNodeRegistry, WorkerNodeClient workerNodeClient,
+                                   TwoPhaseCommitCoordinator coordinator, TransferBatcher transferBatcher,
+                                   AdmissionControl admissionControl) {
         this.workerNodeRegistry = workerNodeRegistry;
         this.workerNodeClient = workerNodeClient;
+        this.coordinator = coordinator;
+        this.transferBatcher = transferBatcher;
+        this.admissionControl = admissionControl;
     }
     
     @Override
@@ -44,84 +73,282 @@ public class TransferirFondosHandler extends BaseHttpHandler {
         LOGGER.log(Level.INFO, "Central Handler: Solicitud TRANSFERENCIA: {0} -> {1}, Monto: {2} (hilo: {3})",
                 new Object[]{cuentaOrigen, cuentaDestino, montoStr, Thread.currentThread().getName()});
 
+        String partitionKey = workerNodeRegistry.getPartitionKeyForAccount(cuentaOrigen);
+        AdaptiveLimiter.Permit permit = admissionControl.partition(partitionKey).tryAcquire();
+        if (permit == null) {
+            AdmissionFilter.rejectOverloaded(exchange, admissionControl.getRetryAfterSeconds(),
+                    "Partición " + partitionKey + " sobrecargada, reintente más tarde.");
+            return;
+        }
+
+        // Durante el cambio de dueño de una migración las transferencias del rango quedan retenidas
+        // aquí y se enrutan al liberarse, ya con el nuevo dueño (ver WriteFence).
+        WriteFence writeFence = workerNodeRegistry.getWriteFence();
+        BalanceCache balanceCache = workerNodeRegistry.getBalanceCache();
+        // El ticket, la ventana de escritura de la caché y el permiso se liberan siempre, pase lo que pase
+        writeFence.admit(cuentaOrigen, cuentaDestino).whenComplete((ticket, exAdmision) -> {
+            if (exAdmision != null) {
+                LOGGER.log(Level.SEVERE, "Central Handler: Error al admitir la transferencia en la barrera de escritura", exAdmision);
+                permit.release(false);
+                responderError(exchange, "Error interno al procesar la transferencia.");
+                return;
+            }
+            // Sin rellenos de la caché de saldos de estas cuentas hasta que respondan todas las réplicas
+            balanceCache.beginWrite(cuentaOrigen, cuentaDestino);
+            CompletableFuture<Void> escritura;
+            try {
+                escritura = enviarAReplicas(exchange, cuentaOrigen, cuentaDestino, montoStr);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.SEVERE, "Central Handler: Error al enviar respuesta de transferencia", ioe);
+                escritura = CompletableFuture.completedFuture(null);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Central Handler: Error inesperado al enviar la transferencia", e);
+                responderError(exchange, "Error interno al procesar la transferencia.");
+                escritura = CompletableFuture.failedFuture(e);
+            }
+            escritura.whenComplete((ignored, ex) -> {
+                balanceCache.endWrite(cuentaOrigen, cuentaDestino);
+                writeFence.release(ticket);
+                // Solo un 503 o un plazo vencido hacia las réplicas reduce el límite de la partición
+                permit.release(!AdmissionFilter.huboSobrecarga(exchange));
+            });
+        });
+    }
+
+    // Mejor esfuerzo: si ya se había respondido, el segundo intento falla y solo se registra
+    private void responderError(HttpExchange exchange, String mensaje) {
+        try {
+            sendErrorResponse(exchange, 500, mensaje);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Central Handler: No se pudo enviar la respuesta de error de transferencia", e);
+        }
+    }
+
+    /**
+     * @return Futuro que completa cuando todas las réplicas respondieron (la respuesta al cliente puede salir antes).
+     */
+    private CompletableFuture<Void> enviarAReplicas(HttpExchange exchange, String cuentaOrigen, String cuentaDestino,
+                                                    String montoStr) throws IOException {
         // Lógica de enviar a las 3 réplicas de la partición de la cuenta origen.
-        // Una transacción distribuida real es más compleja (2PC).
-        // Aquí, asumimos que el worker puede manejar la transferencia si ambas cuentas están en su partición,
-        // o al menos su parte. El Central asegura que la orden llegue a las réplicas.
+        // Si la cuenta destino está en otra partición, la transferencia es distribuida (2PC).
 
         String partitionKeyOrigen = workerNodeRegistry.getPartitionKeyForAccount(cuentaOrigen);
         List<WorkerNodeInfo> replicasOrigen = workerNodeRegistry.getNodesForPartition(partitionKeyOrigen);
 
-        if (replicasOrigen == null || replicasOrigen.size() < 3) { // Idealmente, verificar el factor de replicación
+        if (replicasOrigen == null || replicasOrigen.size() < MIN_REPLICAS) { // Idealmente, verificar el factor de replicación
             LOGGER.warning("Central Handler: No hay suficientes réplicas para la partición de la cuenta origen: " + cuentaOrigen);
             sendErrorResponse(exchange, 503, "Servicio no disponible para procesar la transferencia (replicación insuficiente).");
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        Map<String, String> workerParams = Map.of(
-                "cuentaOrigen", cuentaOrigen,
-                "cuentaDestino", cuentaDestino,
-                "monto", montoStr
-        );
+        String partitionKeyDestino = workerNodeRegistry.getPartitionKeyForAccount(cuentaDestino);
+        if (!partitionKeyDestino.equals(partitionKeyOrigen)) {
+            return enviarDosFases(exchange, cuentaOrigen, cuentaDestino, montoStr, replicasOrigen, partitionKeyDestino);
+        }
 
-        List<CompletableFuture<String>> futures = new ArrayList<>();
-        for (WorkerNodeInfo node : replicasOrigen) {
-            futures.add(
-                workerNodeClient.sendPostRequestAsync(
-                    node.getAddress(),
-                    "/api/worker/transferir",
-                    workerParams
-                ).exceptionally(ex -> {
-                     LOGGER.log(Level.WARNING, "Central Handler: Fallo al enviar transferencia a nodo " + node.getId(), ex);
-                     return "ERROR_NODO:" + node.getId() + ":" + ex.getMessage(); // Retornar un error identificable
-                })
-            );
+        if (workerNodeRegistry.getReplicationMode() == ReplicationMode.PRIMARY_BACKUP) {
+            return enviarAPrimario(exchange, cuentaOrigen, cuentaDestino, montoStr, partitionKeyOrigen);
         }
 
-        // Esperar a que todas las réplicas respondan (o fallen)
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((voidResult, exAll) -> {
+        // Quórum W de N (WRITE_QUORUM): se responde al cliente en cuanto W réplicas confirman.
+        // Las que siguen en curso se dejan al ReplicaRepairTracker en vez de esperarlas.
+        int required = WriteQuorum.requiredFor(replicasOrigen.size());
+        // Con menos réplicas disponibles que W el quórum no puede alcanzarse: se responde sin esperar
+        // los timeouts de las caídas (según el sondeo de salud o su circuito)
+        long disponibles = replicasOrigen.stream().map(WorkerNodeInfo::getAddress).filter(workerNodeRegistry::isAvailable).count();
+        if (disponibles < required) {
+            LOGGER.warning("Central Handler: Solo " + disponibles + " réplicas disponibles de " + replicasOrigen.size()
+                    + " para la partición " + partitionKeyOrigen + " (W=" + required + ")");
+            sendErrorResponse(exchange, 503, "Servicio no disponible para procesar la transferencia (réplicas disponibles insuficientes).");
+            return CompletableFuture.completedFuture(null);
+        }
+        // Un solo lote por partición: todas las réplicas reciben las mismas transferencias en el mismo orden
+        List<CompletableFuture<String>> porReplica = transferBatcher.submit(
+            partitionKeyOrigen,
+            replicasOrigen.stream().map(WorkerNodeInfo::getAddress).collect(Collectors.toList()),
+            null,
+            cuentaOrigen,
+            cuentaDestino,
+            montoStr
+        );
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        AtomicInteger saturadas = new AtomicInteger(); // Réplicas a las que la orden no llegó a salir
+        CompletableFuture<WriteQuorum.Outcome<WorkerNodeInfo>> quorum = WriteQuorum.execute(replicasOrigen, node -> {
+            CompletableFuture<String> future = porReplica.get(indiceDe(replicasOrigen, node)).exceptionally(ex -> {
+                 LOGGER.log(Level.WARNING, "Central Handler: Fallo al enviar transferencia a nodo " + node.getId(), ex);
+                 AdmissionFilter.anotarFallo(exchange, ex);
+                 if (AdmissionFilter.saturado(ex)) {
+                     saturadas.incrementAndGet();
+                 }
+                 return "ERROR_NODO:" + node.getId() + ":" + ex.getMessage(); // Retornar un error identificable
+            });
+            futures.add(future);
+            return future;
+        }, TransferirFondosHandler::esConfirmacion, required);
+
+        quorum.whenComplete((outcome, exQuorum) -> {
             try {
-                if (exAll != null) {
-                    LOGGER.log(Level.SEVERE, "Central Handler: Error en la ejecución de futuros de transferencia", exAll);
+                if (exQuorum != null) {
+                    LOGGER.log(Level.SEVERE, "Central Handler: Error en la ejecución de futuros de transferencia", exQuorum);
                     sendErrorResponse(exchange, 500, "Error interno masivo al procesar la transferencia.");
                     return;
                 }
+                seguirRezagadas(outcome, cuentaOrigen, cuentaDestino);
 
-                long successCount = futures.stream()
-                                           .map(CompletableFuture::join) // join es seguro aquí porque allOf ya completó
-                                           .filter(response -> response != null && response.startsWith("CONFIRMACIÓN"))
-                                           .count();
-
-                // Lógica de quórum: ej. al menos 2 de 3 deben confirmar.
-                // El PDF dice "el servidor central recepciona la respuesta del nodo trabajador y a su vez se envía el resultado al cliente"
-                // Para simplicidad, si al menos uno confirma, lo tomamos (esto no es robusto para consistencia real).
-                // En un sistema real, se requeriría una mayoría o todas las confirmaciones para la consistencia fuerte.
-                
-                String finalResponseToClient;
-                int statusCodeToClient;
-
-                if (successCount > 0) { // Simplificado: al menos una confirmación
-                    finalResponseToClient = futures.stream()
-                                                .map(CompletableFuture::join)
-                                                .filter(r -> r != null && r.startsWith("CONFIRMACIÓN"))
+                if (outcome.isReached()) {
+                    String finalResponseToClient = outcome.getResponses().stream()
+                                                .filter(TransferirFondosHandler::esConfirmacion)
                                                 .findFirst()
                                                 .orElse("CONFIRMACIÓN_PARCIAL: Verifique estado.");
-                    statusCodeToClient = 200;
-                    LOGGER.info("Central Handler: Transferencia procesada con " + successCount + " confirmaciones de workers.");
-
+                    LOGGER.info("Central Handler: Transferencia confirmada por quórum (" + outcome.getConfirmed().size()
+                            + " de " + replicasOrigen.size() + ", W=" + required + "); " + outcome.getPending().size()
+                            + " réplicas siguen en curso.");
+                    sendResponse(exchange, 200, finalResponseToClient);
+                } else if (outcome.getResponses().stream().anyMatch(TransferirFondosHandler::esRechazo)) {
+                    // Rechazo de negocio (saldo, cuenta inexistente): reintentar no cambiaría el resultado
+                    String rechazo = outcome.getResponses().stream()
+                            .filter(TransferirFondosHandler::esRechazo)
+                            .findFirst()
+                            .get();
+                    LOGGER.info("Central Handler: Transferencia rechazada por las réplicas: " + rechazo);
+                    sendResponse(exchange, 409, rechazo);
+                } else if (saturadas.get() > 0) {
+                    LOGGER.warning("Central Handler: Transferencia sin quórum por llamadas salientes saturadas ("
+                            + saturadas.get() + " réplicas sin enviar).");
+                    AdmissionFilter.respondOverloaded(exchange, admissionControl.getRetryAfterSeconds(),
+                            "Servidor sobrecargado al enviar la transferencia a las réplicas, reintente más tarde.");
                 } else {
-                    String errorDetails = futures.stream()
-                                                .map(CompletableFuture::join)
-                                                .collect(Collectors.joining("; "));
-                    finalResponseToClient = "ERROR: No se pudo confirmar la transferencia con los nodos. Detalles: " + errorDetails;
-                    statusCodeToClient = 500; // Error del servidor o del worker
-                    LOGGER.severe("Central Handler: Transferencia falló. Respuestas: " + errorDetails);
+                    String errorDetails = String.join("; ", outcome.getResponses());
+                    LOGGER.severe("Central Handler: Transferencia sin quórum (" + outcome.getConfirmed().size()
+                            + " confirmaciones, W=" + required + "). Respuestas: " + errorDetails);
+                    sendResponse(exchange, 500, "ERROR: No se pudo confirmar la transferencia con los nodos. Detalles: " + errorDetails);
                 }
-                sendResponse(exchange, statusCodeToClient, finalResponseToClient);
-
             } catch (IOException ioe) {
                 LOGGER.log(Level.SEVERE, "Central Handler: Error al enviar respuesta final de transferencia", ioe);
             }
         });
+
+        // La barrera de escritura (WriteFence) se libera cuando responden todas las réplicas, no solo el
+        // quórum: una migración no debe copiar el rango con escrituras todavía en curso.
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenCombine(quorum.handle((outcome, ex) -> null), (a, b) -> null);
+    }
+
+    /**
+     * Replicación primario-backup: una sola llamada, al primario de la partición, con la lista de
+     * backups. El primario responde cuando la transferencia está confirmada localmente y replicada
+     * según REPLICACION_ACKS; los backups aplican el log sin re-ejecutar la transferencia.
+     *
+     * El primario es fijo (la primera réplica registrada). La conmutación automática a un backup queda
+     * fuera de alcance: promoverlo sin saber qué cambios del log ya aplicó podría perder o duplicar
+     * transferencias. Si el primario no está disponible (sondeo de salud o circuito abierto) se responde
+     * 503 de inmediato; para cambiarlo se retira el nodo de la membresía (WORKERS_ARCHIVO) y asume la
+     * siguiente réplica.
+     */
+    private CompletableFuture<Void> enviarAPrimario(HttpExchange exchange, String cuentaOrigen, String cuentaDestino,
+                                                    String montoStr, String partitionKey) throws IOException {
+        WorkerNodeInfo primario = workerNodeRegistry.getPrimaryForPartition(partitionKey);
+        if (primario == null || !workerNodeRegistry.isAvailable(primario.getAddress())) {
+            LOGGER.warning("Central Handler: Primario de la partición " + partitionKey + " no disponible"
+                    + (primario != null ? " (" + primario.getId() + ")" : ""));
+            sendErrorResponse(exchange, 503, "Servicio no disponible para procesar la transferencia (primario de la partición no disponible).");
+            return CompletableFuture.completedFuture(null);
+        }
+        // Réplicas que comparten dirección con el primario son el mismo proceso: no se replica a sí mismo
+        String backups = workerNodeRegistry.getNodesForPartition(partitionKey).stream()
+                .map(WorkerNodeInfo::getAddress)
+                .filter(address -> !address.equals(primario.getAddress()))
+                .distinct()
+                .collect(Collectors.joining(","));
+        return transferBatcher.submit(partitionKey, List.of(primario.getAddress()), backups.isEmpty() ? null : backups,
+                    cuentaOrigen, cuentaDestino, montoStr).get(0)
+            .handle((response, ex) -> {
+                try {
+                    if (ex != null) {
+                        AdmissionFilter.anotarFallo(exchange, ex);
+                    }
+                    if (ex == null && esConfirmacion(response)) {
+                        LOGGER.info("Central Handler: Transferencia confirmada por el primario " + primario.getId() + ".");
+                        sendResponse(exchange, 200, response);
+                    } else if (ex == null && esRechazo(response)) {
+                        LOGGER.info("Central Handler: El primario " + primario.getId() + " rechazó la transferencia: " + response);
+                        sendResponse(exchange, 409, response);
+                    } else if (AdmissionFilter.saturado(ex)) {
+                        LOGGER.warning("Central Handler: Llamadas salientes saturadas; transferencia al primario " + primario.getId() + " rechazada.");
+                        AdmissionFilter.respondOverloaded(exchange, admissionControl.getRetryAfterSeconds(),
+                                "Servidor sobrecargado al enviar la transferencia al primario, reintente más tarde.");
+                    } else {
+                        String detalle = ex != null ? ex.getMessage() : response;
+                        LOGGER.warning("Central Handler: El primario " + primario.getId() + " no confirmó la transferencia: " + detalle);
+                        sendResponse(exchange, 500, "ERROR: No se pudo confirmar la transferencia con el nodo primario. Detalles: " + detalle);
+                    }
+                } catch (IOException ioe) {
+                    LOGGER.log(Level.SEVERE, "Central Handler: Error al enviar respuesta final de transferencia", ioe);
+                }
+                return null;
+            });
+    }
+
+    /**
+     * Deja al ReplicaRepairTracker las réplicas que no terminaron como el quórum: las que siguen en curso
+     * (rezagadas) y las que ya respondieron distinto (divergentes).
+     */
+    private void seguirRezagadas(WriteQuorum.Outcome<WorkerNodeInfo> outcome, String cuentaOrigen, String cuentaDestino) {
+        ReplicaRepairTracker repairTracker = workerNodeRegistry.getRepairTracker();
+        List<WorkerNodeInfo> divergentes = outcome.isReached() ? outcome.getFailed() : outcome.getConfirmed();
+        divergentes.forEach(node -> repairTracker.markDivergent(node.getAddress(), cuentaOrigen, cuentaDestino));
+        outcome.getPending().forEach((node, pending) -> repairTracker.trackPending(node.getAddress(), pending,
+                TransferirFondosHandler::esConfirmacion, outcome.isReached(), cuentaOrigen, cuentaDestino));
+    }
+
+    // Por identidad: dos réplicas pueden compartir dirección y cada una tiene su propio futuro
+    private static int indiceDe(List<WorkerNodeInfo> replicas, WorkerNodeInfo node) {
+        for (int i = 0; i < replicas.size(); i++) {
+            if (replicas.get(i) == node) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Réplica desconocida: " + node.getId());
+    }
+
+    private static boolean esConfirmacion(String response) {
+        return response != null && response.startsWith("CONFIRMACIÓN");
+    }
+
+    // Respuesta de negocio del worker ("ERROR: RECHAZADA_..."), no un fallo del nodo
+    private static boolean esRechazo(String response) {
+        return response != null && response.startsWith("ERROR: RECHAZADA");
+    }
+
+    private CompletableFuture<Void> enviarDosFases(HttpExchange exchange, String cuentaOrigen, String cuentaDestino, String montoStr,
+                                                   List<WorkerNodeInfo> replicasOrigen, String partitionKeyDestino) throws IOException {
+        List<WorkerNodeInfo> replicasDestino = workerNodeRegistry.getNodesForPartition(partitionKeyDestino);
+        if (replicasDestino.size() < MIN_REPLICAS) {
+            LOGGER.warning("Central Handler: No hay suficientes réplicas para la partición de la cuenta destino: " + cuentaDestino);
+            sendErrorResponse(exchange, 503, "Servicio no disponible para procesar la transferencia (replicación insuficiente).");
+            return CompletableFuture.completedFuture(null);
+        }
+        // La respuesta sale con la decisión; la barrera y la caché esperan a que todos los participantes la apliquen
+        return coordinator.transfer(cuentaOrigen, cuentaDestino, montoStr, replicasOrigen, replicasDestino)
+            .thenCompose(outcome -> {
+                try {
+                    if (outcome.isCommitted()) {
+                        LOGGER.info("Central Handler: Transferencia distribuida " + outcome.getTransactionId() + " confirmada.");
+                        sendResponse(exchange, 200, "CONFIRMACIÓN: " + outcome.getMessage());
+                    } else if (outcome.isRejected()) {
+                        // Rechazo de negocio: mismo 409 y texto que en una sola partición
+                        LOGGER.info("Central Handler: Transferencia distribuida " + outcome.getTransactionId() + " rechazada: "
+                                + outcome.getRejection());
+                        sendResponse(exchange, 409, outcome.getRejection());
+                    } else {
+                        LOGGER.warning("Central Handler: Transferencia distribuida " + outcome.getTransactionId() + " abortada: " + outcome.getMessage());
+                        sendResponse(exchange, 500, "ERROR: No se pudo confirmar la transferencia " + outcome.getTransactionId()
+                                + ". Detalles: " + outcome.getMessage());
+                    }
+                } catch (IOException ioe) {
+                    LOGGER.log(Level.SEVERE, "Central Handler: Error al enviar respuesta de transferencia distribuida", ioe);
+                }
+                return outcome.getApplied();
+            });
     }
-}
\ No newline at end of file
+}
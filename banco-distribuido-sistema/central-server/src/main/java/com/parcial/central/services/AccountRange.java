@@ -0,0 +1,34 @@
+package com.parcial.central.services;
+
+/**
+ * Rango cerrado [desde, hasta] de IDs de cuenta, con el orden de String.compareTo
+ * (en las BDs de los workers equivale a ID_CUENTA COLLATE "C").
+ */
+public final class AccountRange {
+    private final String desde;
+    private final String hasta;
+
+    public AccountRange(String desde, String hasta) {
+        if (desde.compareTo(hasta) > 0) {
+            throw new IllegalArgumentException("Rango de cuentas inválido: " + desde + " > " + hasta);
+        }
+        this.desde = desde;
+        this.hasta = hasta;
+    }
+
+    public boolean contains(String accountId) {
+        return accountId.compareTo(desde) >= 0 && accountId.compareTo(hasta) <= 0;
+    }
+
+    public boolean overlaps(AccountRange other) {
+        return desde.compareTo(other.hasta) <= 0 && other.desde.compareTo(hasta) <= 0;
+    }
+
+    public String getDesde() { return desde; }
+    public String getHasta() { return hasta; }
+
+    @Override
+    public String toString() {
+        return "[" + desde + ", " + hasta + "]";
+    }
+}
@@ -0,0 +1,142 @@
+package com.parcial.central.services;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Límite de concurrencia adaptativo (AIMD guiado por latencia). Una solicitud entra solo si hay
+ * menos de "limit" en curso; si no, se rechaza al instante en lugar de encolarse.
+ *
+ * Cada solicitud terminada es una muestra de latencia. Se comparan dos medias móviles: una corta
+ * (lo que pasa ahora) y una larga (lo normal para la mezcla de solicitudes del endpoint). Si la
+ * corta supera a la larga por más de ADMISION_TOLERANCIA, o la solicitud falló, se está formando
+ * cola detrás y el límite baja multiplicativamente (como mucho una vez por latencia); si no, y el
+ * límite se está usando, sube de a 1/limit por muestra (~1 por ventana completa). Las solicitudes
+ * que no llegan a los workers (aciertos de caché, rechazos) se liberan con {@link Permit#discard()}
+ * para no falsear las medias.
+ */
+public class AdaptiveLimiter {
+    private static final double BACKOFF = 0.9;
+    private static final double ALFA_CORTA = 0.1;
+    private static final double ALFA_LARGA = 0.005;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    // Todo el estado se protege con el monitor de this; las secciones críticas son muy cortas
+    private double limit;
+    private int inFlight = 0;
+    private double shortRttNanos = 0;
+    private double longRttNanos = 0;
+    private long lastDecreaseNanos = 0;
+    private long accepted = 0;
+    private long rejected = 0;
+    private long decreases = 0;
+
+    /**
+     * Permiso de una solicitud admitida. Se libera una sola vez, al terminar la solicitud.
+     */
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * @param success false si la solicitud falló por sobrecarga o error del servidor (no por el cliente).
+         * @return true si esta llamada liberó el permiso; false si ya estaba liberado.
+         */
+        public boolean release(boolean success) {
+            if (released.compareAndSet(false, true)) {
+                onComplete(System.nanoTime() - startNanos, inFlightAtStart, success);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Libera el permiso sin tomar la solicitud como muestra.
+         * @return true si esta llamada liberó el permiso; false si ya estaba liberado.
+         */
+        public boolean discard() {
+            if (released.compareAndSet(false, true)) {
+                onDiscard();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Límites desde el entorno: ADMISION_INICIAL, ADMISION_MIN y ADMISION_TOLERANCIA comunes a todos,
+     * y el máximo ADMISION_MAX_&lt;NOMBRE&gt; (p. ej. ADMISION_MAX_SALDO) o el indicado.
+     */
+    public static AdaptiveLimiter fromEnvironment(String name, int defaultMax) {
+        String maxVar = "ADMISION_MAX_" + name.toUpperCase().replaceAll("[^A-Z0-9]", "_");
+        return new AdaptiveLimiter(name,
+                Integer.parseInt(System.getenv().getOrDefault("ADMISION_INICIAL", "20")),
+                Integer.parseInt(System.getenv().getOrDefault("ADMISION_MIN", "2")),
+                Integer.parseInt(System.getenv().getOrDefault(maxVar, String.valueOf(defaultMax))),
+                Double.parseDouble(System.getenv().getOrDefault("ADMISION_TOLERANCIA", "1.5")));
+    }
+
+    /**
+     * @return El permiso, o null si el límite está alcanzado (la solicitud debe rechazarse).
+     */
+    public synchronized Permit tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejected++;
+            return null;
+        }
+        inFlight++;
+        accepted++;
+        return new Permit(inFlight);
+    }
+
+    private synchronized void onComplete(long rttNanos, int inFlightAtStart, boolean success) {
+        inFlight--;
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+        } else {
+            shortRttNanos += (rttNanos - shortRttNanos) * ALFA_CORTA;
+            longRttNanos += (rttNanos - longRttNanos) * ALFA_LARGA;
+        }
+        long now = System.nanoTime();
+        if (!success || shortRttNanos > longRttNanos * tolerance) {
+            // Una sola reducción por latencia: las muestras de la misma ráfaga no la repiten
+            if (now - lastDecreaseNanos > shortRttNanos) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+                lastDecreaseNanos = now;
+                decreases++;
+            }
+        } else if (inFlightAtStart * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    private synchronized void onDiscard() {
+        inFlight--;
+    }
+
+    public String getName() { return name; }
+    public synchronized int getLimit() { return (int) limit; }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized long getAccepted() { return accepted; }
+    public synchronized long getRejected() { return rejected; }
+    public synchronized long getDecreases() { return decreases; }
+    public synchronized double getShortRttMillis() { return shortRttNanos / 1_000_000.0; }
+    public synchronized double getLongRttMillis() { return longRttNanos / 1_000_000.0; }
+}
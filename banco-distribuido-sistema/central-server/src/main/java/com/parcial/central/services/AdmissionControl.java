@@ -0,0 +1,42 @@
+package com.parcial.central.services;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Control de admisión del Servidor Central: un {@link AdaptiveLimiter} por endpoint (presupuestos
+ * separados, para que un /api/arqueo caro no deje sin hueco a las transferencias) y otro por
+ * partición de cuentas (una partición lenta no acapara a las demás). Lo que no se admite se
+ * responde con 503 y Retry-After: ADMISION_RETRY_AFTER_S.
+ */
+public class AdmissionControl {
+    private final Map<String, AdaptiveLimiter> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, AdaptiveLimiter> partitions = new ConcurrentHashMap<>();
+    private final int partitionMax = Integer.parseInt(System.getenv().getOrDefault("ADMISION_MAX_PARTICION", "200"));
+    private final long retryAfterSeconds = Long.parseLong(System.getenv().getOrDefault("ADMISION_RETRY_AFTER_S", "1"));
+
+    /**
+     * Crea el límite de un endpoint (se llama al registrar el contexto HTTP).
+     */
+    public AdaptiveLimiter endpoint(String name, int defaultMax) {
+        return endpoints.computeIfAbsent(name, n -> AdaptiveLimiter.fromEnvironment(n, defaultMax));
+    }
+
+    public AdaptiveLimiter partition(String partitionKey) {
+        return partitions.computeIfAbsent(partitionKey,
+                key -> AdaptiveLimiter.fromEnvironment("particion-" + key, partitionMax));
+    }
+
+    public Collection<AdaptiveLimiter> getEndpointLimiters() {
+        return endpoints.values();
+    }
+
+    public Collection<AdaptiveLimiter> getPartitionLimiters() {
+        return partitions.values();
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
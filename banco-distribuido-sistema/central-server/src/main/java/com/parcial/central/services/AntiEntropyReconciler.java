@@ -0,0 +1,372 @@
+package com.parcial.central.services;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Reconciliador anti-entropía de las réplicas de Cuenta. Cada ANTIENTROPIA_INTERVALO_S segundos,
+ * por cada partición de cuentas, compara el árbol de Merkle de sus réplicas (endpoint
+ * /api/worker/digest): si las raíces coinciden no hay nada más que hacer; si no, baja
+ * ANTIENTROPIA_SALTO niveles por vez solo por los nodos que difieren, hasta los buckets, y compara
+ * las filas de esos buckets. El coste crece con la divergencia, no con el tamaño de la tabla.
+ *
+ * Cada cuenta distinta se repara con la {@link WriteFence} levantada sobre ella: se esperan las
+ * escrituras en curso, se vuelven a leer las filas y solo se repara si la réplica no cambió desde
+ * la comparación (no era una escritura todavía en camino). El valor correcto es el de la mayoría de
+ * las réplicas; sin mayoría, en modo primary-backup manda el primario y si no la cuenta se omite.
+ * Una cuenta que falta en la mayoría no se borra de las demás: solo se informa. En primary-backup
+ * tampoco se repara una cuenta con cambios encolados en el log de replicación del primario: el
+ * backup los aplicaría como deltas encima del saldo ya reparado.
+ */
+public class AntiEntropyReconciler {
+    private static final Logger LOGGER = Logger.getLogger(AntiEntropyReconciler.class.getName());
+    private static final String WORKER_PATH = "/api/worker/digest/";
+    private static final int MAX_BUCKETS_POR_SOLICITUD = 256;
+
+    private final WorkerNodeRegistry registry;
+    private final PartitionRebalancer rebalancer;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final int niveles = Integer.parseInt(System.getenv().getOrDefault("DIGEST_NIVELES", "10"));
+    private final int salto = Math.max(1, Integer.parseInt(System.getenv().getOrDefault("ANTIENTROPIA_SALTO", "4")));
+    private final long maxEsperaBarreraMs = Long.parseLong(System.getenv().getOrDefault("ANTIENTROPIA_MAX_ESPERA_BARRERA_MS", "2000"));
+    private final Duration timeout = Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("ANTIENTROPIA_TIMEOUT_S", "10")));
+
+    private final AtomicLong rondas = new AtomicLong();
+    private final AtomicLong particionesDivergentes = new AtomicLong();
+    private final AtomicLong nodosComparados = new AtomicLong();
+    private final AtomicLong filasComparadas = new AtomicLong();
+    private final AtomicLong cuentasReparadas = new AtomicLong();
+    private final AtomicLong cuentasOmitidas = new AtomicLong();
+    private volatile long ultimaRondaMs = 0;
+
+    public AntiEntropyReconciler(WorkerNodeRegistry registry, PartitionRebalancer rebalancer) {
+        this.registry = registry;
+        this.rebalancer = rebalancer;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "anti-entropia");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Long.parseLong(System.getenv().getOrDefault("ANTIENTROPIA_INTERVALO_S", "60"));
+        if (intervalo > 0) {
+            scheduler.scheduleWithFixedDelay(this::runOnce, intervalo, intervalo, TimeUnit.SECONDS);
+            LOGGER.info("Anti-entropía de Cuenta cada " + intervalo + " s (árbol de " + niveles + " niveles)");
+        } else {
+            LOGGER.info("Anti-entropía de Cuenta desactivada (ANTIENTROPIA_INTERVALO_S=0)");
+        }
+    }
+
+    /**
+     * Una ronda sobre todas las particiones de cuentas. No corre durante una migración: las réplicas
+     * destino se están llenando y la barrera de escritura es de la migración.
+     */
+    public void runOnce() {
+        PartitionRebalancer.Migration migracion = rebalancer.getCurrent();
+        if (migracion != null && !migracion.isFinished()) {
+            LOGGER.fine("Anti-entropía: ronda omitida, hay una migración en curso");
+            return;
+        }
+        long inicio = System.currentTimeMillis();
+        for (String partitionKey : registry.getAccountPartitionKeys()) {
+            try {
+                reconcilePartition(partitionKey);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Anti-entropía: no se pudo comparar la partición " + partitionKey, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        rondas.incrementAndGet();
+        ultimaRondaMs = System.currentTimeMillis() - inicio;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public long getRondas() { return rondas.get(); }
+    public long getParticionesDivergentes() { return particionesDivergentes.get(); }
+    public long getNodosComparados() { return nodosComparados.get(); }
+    public long getFilasComparadas() { return filasComparadas.get(); }
+    public long getCuentasReparadas() { return cuentasReparadas.get(); }
+    public long getCuentasOmitidas() { return cuentasOmitidas.get(); }
+    public long getUltimaRondaMs() { return ultimaRondaMs; }
+
+    private void reconcilePartition(String partitionKey) throws IOException, InterruptedException {
+        // Réplicas que comparten dirección son la misma base de datos
+        List<WorkerNodeInfo> replicas = new ArrayList<>(registry.getNodesForPartition(partitionKey).stream()
+                .collect(Collectors.toMap(WorkerNodeInfo::getAddress, node -> node, (a, b) -> a, LinkedHashMap::new))
+                .values());
+        if (replicas.size() < 2) {
+            return;
+        }
+
+        List<Integer> diferentes = compareNodes(replicas, 0, List.of(0), 1);
+        if (diferentes.isEmpty()) {
+            clearRepaired(partitionKey, replicas);
+            return;
+        }
+        particionesDivergentes.incrementAndGet();
+        int nivel = 0;
+        while (nivel < niveles && !diferentes.isEmpty()) {
+            int siguiente = Math.min(nivel + salto, niveles);
+            diferentes = compareNodes(replicas, siguiente, diferentes, 1 << (siguiente - nivel));
+            nivel = siguiente;
+        }
+        if (diferentes.isEmpty()) {
+            return; // Las réplicas convergieron mientras se bajaba por el árbol
+        }
+        LOGGER.info("Anti-entropía: partición " + partitionKey + " difiere en " + diferentes.size() + " buckets");
+
+        Map<String, Map<String, String>> filas = fetchRows(replicas, diferentes);
+        for (Map.Entry<String, Map<String, String>> cuenta : filas.entrySet()) {
+            if (!allEqual(replicas, cuenta.getValue())) {
+                repairAccount(partitionKey, replicas, cuenta.getKey(), cuenta.getValue());
+            }
+        }
+    }
+
+    /**
+     * Compara los hijos (en el nivel indicado) de cada nodo padre.
+     * @return Índices del nivel en los que alguna réplica difiere.
+     */
+    private List<Integer> compareNodes(List<WorkerNodeInfo> replicas, int nivel, List<Integer> padres, int hijosPorPadre)
+            throws IOException, InterruptedException {
+        List<Integer> diferentes = new ArrayList<>();
+        for (int padre : padres) {
+            int desde = padre * hijosPorPadre;
+            int hasta = desde + hijosPorPadre;
+            List<long[]> digests = new ArrayList<>();
+            for (WorkerNodeInfo replica : replicas) {
+                String body = get(replica, "nodos", Map.of("niveles", String.valueOf(niveles), "nivel", String.valueOf(nivel),
+                        "desde", String.valueOf(desde), "hasta", String.valueOf(hasta)));
+                digests.add(parseDigests(body, desde, hasta));
+            }
+            nodosComparados.addAndGet((long) hijosPorPadre * replicas.size());
+            for (int i = 0; i < hijosPorPadre; i++) {
+                long referencia = digests.get(0)[i];
+                for (long[] d : digests) {
+                    if (d[i] != referencia) {
+                        diferentes.add(desde + i);
+                        break;
+                    }
+                }
+            }
+        }
+        return diferentes;
+    }
+
+    /**
+     * @return ID_CUENTA -> (dirección de réplica -> línea de la fila). Una réplica sin la fila no aparece.
+     */
+    private Map<String, Map<String, String>> fetchRows(List<WorkerNodeInfo> replicas, List<Integer> buckets)
+            throws IOException, InterruptedException {
+        Map<String, Map<String, String>> filas = new LinkedHashMap<>();
+        for (int i = 0; i < buckets.size(); i += MAX_BUCKETS_POR_SOLICITUD) {
+            String lista = buckets.subList(i, Math.min(buckets.size(), i + MAX_BUCKETS_POR_SOLICITUD)).stream()
+                    .map(String::valueOf).collect(Collectors.joining(","));
+            for (WorkerNodeInfo replica : replicas) {
+                String body = get(replica, "filas", Map.of("niveles", String.valueOf(niveles), "buckets", lista));
+                for (String linea : body.split("\n")) {
+                    if (!linea.isEmpty()) {
+                        filas.computeIfAbsent(idCuenta(linea), k -> new HashMap<>()).put(replica.getAddress(), linea);
+                        filasComparadas.incrementAndGet();
+                    }
+                }
+            }
+        }
+        return filas;
+    }
+
+    private void repairAccount(String partitionKey, List<WorkerNodeInfo> replicas, String cuentaId,
+                               Map<String, String> observadas) throws IOException, InterruptedException {
+        AccountRange range = new AccountRange(cuentaId, cuentaId);
+        WriteFence fence = registry.getWriteFence();
+        try {
+            fence.close(range);
+        } catch (IllegalStateException e) {
+            cuentasOmitidas.incrementAndGet(); // Otra barrera la cubre; se verá en la próxima ronda
+            return;
+        }
+        try {
+            if (!fence.awaitDrained(range, maxEsperaBarreraMs)) {
+                cuentasOmitidas.incrementAndGet();
+                return;
+            }
+            Map<String, String> actuales = fetchRows(replicas, List.of(bucketOf(cuentaId))).getOrDefault(cuentaId, Map.of());
+            if (!actuales.equals(observadas)) {
+                // Algo cambió desde la comparación: era una escritura en camino, no una divergencia estable
+                cuentasOmitidas.incrementAndGet();
+                return;
+            }
+            if (registry.getReplicationMode() == ReplicationMode.PRIMARY_BACKUP && replicationPending(partitionKey, cuentaId)) {
+                LOGGER.fine("Anti-entropía: cuenta " + cuentaId + " con cambios sin replicar; se reparará cuando se confirmen");
+                cuentasOmitidas.incrementAndGet();
+                return;
+            }
+            String referencia = pickReference(partitionKey, replicas, actuales);
+            if (referencia == null) {
+                LOGGER.warning("Anti-entropía: cuenta " + cuentaId + " sin valor de referencia (sin mayoría o ausente en la mayoría): "
+                        + actuales.keySet());
+                cuentasOmitidas.incrementAndGet();
+                return;
+            }
+            for (WorkerNodeInfo replica : replicas) {
+                if (!referencia.equals(actuales.get(replica.getAddress()))) {
+                    post(replica, "reparar", referencia + "\n");
+                    registry.getRepairTracker().markRepaired(replica.getAddress(), cuentaId);
+                    LOGGER.info("Anti-entropía: cuenta " + cuentaId + " reparada en " + replica.getId());
+                }
+            }
+            registry.getBalanceCache().invalidate(cuentaId);
+            cuentasReparadas.incrementAndGet();
+        } finally {
+            fence.open(range);
+        }
+    }
+
+    /**
+     * @return La fila de la mayoría de las réplicas, o la del primario en modo primary-backup;
+     *         null si no hay ninguna o la mayoría no tiene la cuenta.
+     */
+    private String pickReference(String partitionKey, List<WorkerNodeInfo> replicas, Map<String, String> filas) {
+        Map<String, Integer> votos = new HashMap<>();
+        for (WorkerNodeInfo replica : replicas) {
+            votos.merge(Objects.toString(filas.get(replica.getAddress()), ""), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> voto : votos.entrySet()) {
+            if (voto.getValue() > replicas.size() / 2) {
+                return voto.getKey().isEmpty() ? null : voto.getKey();
+            }
+        }
+        if (registry.getReplicationMode() == ReplicationMode.PRIMARY_BACKUP) {
+            WorkerNodeInfo primario = registry.getPrimaryForPartition(partitionKey);
+            return primario != null ? filas.get(primario.getAddress()) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Con la barrera cerrada no se encolan cambios nuevos de la cuenta: solo se espera a los que ya estaban.
+     */
+    private boolean replicationPending(String partitionKey, String cuentaId) throws IOException, InterruptedException {
+        WorkerNodeInfo primario = registry.getPrimaryForPartition(partitionKey);
+        if (primario == null) {
+            return true; // Sin primario no se sabe qué le falta a cada backup
+        }
+        String body = get(primario, "pendientes", Map.of("cuenta", cuentaId));
+        return !body.trim().equals("pendientes=false");
+    }
+
+    private void clearRepaired(String partitionKey, List<WorkerNodeInfo> replicas) {
+        ReplicaRepairTracker tracker = registry.getRepairTracker();
+        for (WorkerNodeInfo replica : replicas) {
+            for (String cuentaId : List.copyOf(tracker.getDivergentAccounts(replica.getAddress()))) {
+                if (partitionKey.equals(registry.getPartitionKeyForAccount(cuentaId))) {
+                    tracker.markRepaired(replica.getAddress(), cuentaId);
+                }
+            }
+        }
+    }
+
+    private static boolean allEqual(List<WorkerNodeInfo> replicas, Map<String, String> filas) {
+        if (filas.size() != replicas.size()) {
+            return false;
+        }
+        return filas.values().stream().distinct().count() == 1;
+    }
+
+    // Igual que el bucket que calcula el worker en SQL: primeros 32 bits del md5 del ID, enmascarados
+    private int bucketOf(String cuentaId) {
+        try {
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(cuentaId.getBytes(StandardCharsets.UTF_8));
+            int prefijo = ((md5[0] & 0xff) << 24) | ((md5[1] & 0xff) << 16) | ((md5[2] & 0xff) << 8) | (md5[3] & 0xff);
+            return prefijo & ((1 << niveles) - 1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 no disponible", e);
+        }
+    }
+
+    private static String idCuenta(String linea) {
+        int tab = linea.indexOf('\t');
+        return URLDecoder.decode(tab < 0 ? linea : linea.substring(0, tab), StandardCharsets.UTF_8);
+    }
+
+    private static long[] parseDigests(String body, int desde, int hasta) throws IOException {
+        long[] digests = new long[hasta - desde];
+        int leidos = 0;
+        for (String linea : body.split("\n")) {
+            int igual = linea.indexOf('=');
+            if (igual < 0) {
+                continue;
+            }
+            int indice = Integer.parseInt(linea.substring(0, igual));
+            if (indice >= desde && indice < hasta) {
+                digests[indice - desde] = Long.parseUnsignedLong(linea.substring(igual + 1).trim(), 16);
+                leidos++;
+            }
+        }
+        if (leidos != digests.length) {
+            throw new IOException("Respuesta de digest incompleta: " + leidos + " de " + digests.length + " nodos");
+        }
+        return digests;
+    }
+
+    private String get(WorkerNodeInfo node, String operacion, Map<String, String> params) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri(node, operacion, params)).timeout(timeout).GET().build();
+        return send(node, operacion, request);
+    }
+
+    private String post(WorkerNodeInfo node, String operacion, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri(node, operacion, Map.of()))
+                .timeout(timeout)
+                .header("Content-Type", "text/plain; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                .build();
+        return send(node, operacion, request);
+    }
+
+    private String send(WorkerNodeInfo node, String operacion, HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new WorkerResponseException("Digest " + operacion + " fallido en " + node.getId() + ": " + response.body(),
+                    response.statusCode());
+        }
+        return response.body();
+    }
+
+    private static URI uri(WorkerNodeInfo node, String operacion, Map<String, String> params) {
+        String query = params.entrySet().stream()
+                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+        return URI.create(node.getAddress() + WORKER_PATH + operacion + (query.isEmpty() ? "" : "?" + query));
+    }
+}
@@ -0,0 +1,85 @@
+package com.parcial.central.services;
+
+import com.parcial.common.VersionedLruCache;
+
+/**
+ * Caché de saldos del Servidor Central por ID de cuenta, sobre la misma {@link VersionedLruCache}
+ * (segmentos LRU y versiones por franja) que usa la caché de los workers.
+ *
+ * Cada transferencia que pasa por el Central abre la escritura de sus cuentas al empezar
+ * ({@link #beginWrite}) y la cierra al terminar en todas las réplicas ({@link #endWrite}); al cerrar
+ * solo invalida, porque el Central no conoce el saldo resultante. Una lectura toma la versión antes
+ * de ir al worker ({@link #version}) y solo rellena si sigue igual ({@link #putIfVersion}). Así una
+ * entrada siempre se leyó después de la última escritura terminada de la cuenta: un cliente no ve un
+ * saldo anterior a su propia transferencia. SALDO_CACHE_TTL_MS acota lo que puede durar un saldo
+ * cambiado por fuera del Central.
+ */
+public class BalanceCache {
+    private final VersionedLruCache<String> cache;
+
+    public BalanceCache(int maxEntries, long ttlMillis) {
+        this.cache = new VersionedLruCache<>(maxEntries, ttlMillis);
+    }
+
+    public static BalanceCache fromEnvironment() {
+        return new BalanceCache(
+                Integer.parseInt(System.getenv().getOrDefault("SALDO_CACHE_MAX_ENTRIES", "100000")),
+                Long.parseLong(System.getenv().getOrDefault("SALDO_CACHE_TTL_MS", "30000")));
+    }
+
+    /**
+     * @return El saldo cacheado (tal como lo respondió el worker), o null si no está, venció o la
+     *         cuenta tiene una escritura en curso.
+     */
+    public String get(String cuentaId) {
+        return cache.get(cuentaId);
+    }
+
+    /**
+     * @return Versión actual de la cuenta, a tomar antes de leer el saldo del worker.
+     */
+    public long version(String cuentaId) {
+        return cache.version(cuentaId);
+    }
+
+    /**
+     * Relleno desde una lectura. Se descarta si la cuenta se escribió (o se está escribiendo)
+     * desde que se tomó la versión.
+     * @return true si el saldo quedó en caché.
+     */
+    public boolean putIfVersion(String cuentaId, String saldo, long version) {
+        return cache.putIfVersion(cuentaId, saldo, version);
+    }
+
+    /**
+     * Antes de enviar una escritura de las cuentas a los workers.
+     */
+    public void beginWrite(String... cuentaIds) {
+        for (String cuentaId : cuentaIds) {
+            cache.beginWrite(cuentaId);
+        }
+    }
+
+    /**
+     * Cuando todas las réplicas respondieron (o se dieron por rezagadas) a la escritura.
+     */
+    public void endWrite(String... cuentaIds) {
+        for (String cuentaId : cuentaIds) {
+            cache.endWrite(cuentaId, null, 0L);
+        }
+    }
+
+    /**
+     * Descarta las cuentas cuyo saldo cambió por otra vía (p. ej. una reparación anti-entropía).
+     */
+    public void invalidate(String... cuentaIds) {
+        cache.invalidate(cuentaIds);
+    }
+
+    public int size() { return cache.size(); }
+    public long getHits() { return cache.getHits(); }
+    public long getMisses() { return cache.getMisses(); }
+    public long getRejectedFills() { return cache.getRejectedFills(); }
+    public long getEvictions() { return cache.getEvictions(); }
+    public double getHitRatio() { return cache.getHitRatio(); }
+}
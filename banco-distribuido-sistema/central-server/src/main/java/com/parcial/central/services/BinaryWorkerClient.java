@@ -0,0 +1,267 @@
+package com.parcial.central.services;
+
+import com.parcial.common.BinaryProtocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cliente del protocolo binario ({@link BinaryProtocol}) hacia los Nodos Trabajadores.
+ * Mantiene una conexión TCP persistente por worker y multiplexa sobre ella todas las
+ * solicitudes en vuelo usando el requestId. Un único hilo selector hace el I/O; los
+ * futuros se completan en el ExecutorService del cliente para no bloquear el selector.
+ */
+public class BinaryWorkerClient {
+    private static final Logger LOGGER = Logger.getLogger(BinaryWorkerClient.class.getName());
+    private static final int CONNECT_TIMEOUT_MS = 5_000;
+    private static final long REQUEST_TIMEOUT_MS = 10_000L; // Igual que el timeout de las solicitudes HTTP
+
+    private final int binaryPort;
+    private final ExecutorService executorService;
+    private final Selector selector;
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+    private final AtomicLong requestIdSequence = new AtomicLong();
+    // Una conexión por "host:puerto" del worker
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    private final Queue<Connection> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    private final class Connection {
+        final String key;
+        final SocketChannel channel;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(4 + BinaryProtocol.MAX_FRAME_BYTES);
+        final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        final Map<Long, CompletableFuture<ByteBuffer>> inFlight = new ConcurrentHashMap<>();
+        volatile SelectionKey selectionKey;
+        volatile boolean closed = false;
+
+        Connection(String key, SocketChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+    }
+
+    public BinaryWorkerClient(int binaryPort, ExecutorService executorService) throws IOException {
+        this.binaryPort = binaryPort;
+        this.executorService = executorService;
+        this.selector = Selector.open();
+        this.selectorThread = new Thread(this::runLoop, "binary-worker-client-selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+        LOGGER.info("BinaryWorkerClient inicializado (puerto binario de los workers: " + binaryPort + ").");
+    }
+
+    /**
+     * Envía una solicitud binaria a un worker. Todos los payloads de solicitud son longs.
+     * @param workerNodeAddress URL base del worker (se usa su host con el puerto binario).
+     * @return CompletableFuture con la respuesta, posicionada después de la cabecera (en el byte de status).
+     */
+    public CompletableFuture<ByteBuffer> request(String workerNodeAddress, byte opcode, long... payload) {
+        CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        Connection connection;
+        try {
+            connection = connectionFor(workerNodeAddress);
+        } catch (IOException e) {
+            future.completeExceptionally(new RuntimeException("No se pudo conectar por protocolo binario a " + workerNodeAddress, e));
+            return future;
+        }
+
+        long requestId = requestIdSequence.incrementAndGet();
+        ByteBuffer frame = BinaryProtocol.startFrame(opcode, requestId, 8 * payload.length);
+        for (long value : payload) {
+            frame.putLong(value);
+        }
+        BinaryProtocol.finishFrame(frame);
+
+        connection.inFlight.put(requestId, future);
+        future.orTimeout(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+              .whenComplete((response, ex) -> connection.inFlight.remove(requestId));
+        connection.writeQueue.add(frame);
+        if (connection.closed) {
+            // La conexión se cerró mientras se encolaba; el selector ya no la atenderá
+            fail(connection, new IOException("Conexión binaria cerrada con " + connection.key));
+            return future;
+        }
+        pendingRegistrations.add(connection);
+        selector.wakeup();
+        return future;
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        connections.values().forEach(c -> close(c, new IOException("Cliente binario cerrado")));
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error al cerrar el selector del cliente binario", e);
+        }
+        LOGGER.info("BinaryWorkerClient cerrado.");
+    }
+
+    private Connection connectionFor(String workerNodeAddress) throws IOException {
+        URI uri = URI.create(workerNodeAddress);
+        String key = uri.getHost() + ":" + binaryPort;
+        Connection existing = connections.get(key);
+        if (existing != null && !existing.closed) {
+            return existing;
+        }
+        synchronized (connections) {
+            existing = connections.get(key);
+            if (existing != null && !existing.closed) {
+                return existing;
+            }
+            SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().connect(new InetSocketAddress(uri.getHost(), binaryPort), CONNECT_TIMEOUT_MS);
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            Connection connection = new Connection(key, channel);
+            connections.put(key, connection);
+            LOGGER.log(Level.INFO, "Conexión binaria persistente abierta con {0}", key);
+            return connection;
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                selector.select();
+                Connection pending;
+                while ((pending = pendingRegistrations.poll()) != null) {
+                    registerForWrite(pending);
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Conexión binaria con " + connection.key + " perdida: " + e.getMessage());
+                        close(connection, e);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error en el selector del cliente binario", e);
+            }
+        }
+    }
+
+    private void registerForWrite(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        try {
+            if (connection.selectionKey == null) {
+                connection.selectionKey = connection.channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, connection);
+            } else if (connection.selectionKey.isValid()) {
+                connection.selectionKey.interestOps(connection.selectionKey.interestOps() | SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            close(connection, e);
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer next;
+        while ((next = connection.writeQueue.peek()) != null) {
+            connection.channel.write(next);
+            if (next.hasRemaining()) {
+                return;
+            }
+            connection.writeQueue.poll();
+        }
+        connection.selectionKey.interestOps(SelectionKey.OP_READ);
+        if (!connection.writeQueue.isEmpty()) {
+            connection.selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.readBuffer) < 0) {
+            throw new IOException("El worker cerró la conexión");
+        }
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < BinaryProtocol.HEADER_BYTES || length > BinaryProtocol.MAX_FRAME_BYTES) {
+                throw new IOException("Trama binaria con longitud inválida: " + length);
+            }
+            if (buffer.remaining() < 4 + length) {
+                break;
+            }
+            buffer.getInt();
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            ByteBuffer response = ByteBuffer.wrap(bytes);
+            response.get(); // opcode | RESPONSE_FLAG
+            long requestId = response.getLong();
+            CompletableFuture<ByteBuffer> future = connection.inFlight.remove(requestId);
+            if (future != null) {
+                try {
+                    executorService.execute(() -> future.complete(response));
+                } catch (RejectedExecutionException e) {
+                    future.complete(response); // El executor se está cerrando
+                }
+            }
+        }
+        buffer.compact();
+    }
+
+    private void close(Connection connection, IOException cause) {
+        connection.closed = true;
+        connections.remove(connection.key, connection);
+        if (connection.selectionKey != null) {
+            connection.selectionKey.cancel();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error al cerrar conexión binaria", e);
+        }
+        fail(connection, cause);
+    }
+
+    private void fail(Connection connection, IOException cause) {
+        for (Long requestId : connection.inFlight.keySet()) {
+            CompletableFuture<ByteBuffer> future = connection.inFlight.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.parcial.central.services;
+
+import java.util.logging.Logger;
+
+/**
+ * Interruptor de circuito de un Nodo Trabajador (por dirección: las réplicas que comparten
+ * dirección son el mismo proceso).
+ * - CLOSED: las llamadas pasan. Sobre las últimas CB_VENTANA llamadas (con al menos CB_MIN_LLAMADAS)
+ *   se mide la tasa de errores y la de llamadas lentas (más de CB_LLAMADA_LENTA_MS); si alguna supera
+ *   su umbral (CB_UMBRAL_ERRORES, CB_UMBRAL_LENTAS) el circuito se abre.
+ * - OPEN: las llamadas fallan al instante con {@link CircuitOpenException}, sin esperar los timeouts
+ *   de conexión o de solicitud, durante CB_ESPERA_ABIERTO_MS.
+ * - HALF_OPEN: pasan como mucho CB_PRUEBAS llamadas de prueba a la vez; si CB_PRUEBAS seguidas van
+ *   bien se cierra, y con un fallo (o una lenta) vuelve a abrirse.
+ * Un 4xx es una respuesta válida del nodo y cuenta como éxito.
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int VENTANA = Integer.parseInt(System.getenv().getOrDefault("CB_VENTANA", "20"));
+    private static final int MIN_LLAMADAS = Integer.parseInt(System.getenv().getOrDefault("CB_MIN_LLAMADAS", "10"));
+    private static final double UMBRAL_ERRORES = Double.parseDouble(System.getenv().getOrDefault("CB_UMBRAL_ERRORES", "0.5"));
+    private static final double UMBRAL_LENTAS = Double.parseDouble(System.getenv().getOrDefault("CB_UMBRAL_LENTAS", "0.8"));
+    private static final long LLAMADA_LENTA_NANOS = Long.parseLong(System.getenv().getOrDefault("CB_LLAMADA_LENTA_MS", "2000")) * 1_000_000L;
+    private static final long ESPERA_ABIERTO_NANOS = Long.parseLong(System.getenv().getOrDefault("CB_ESPERA_ABIERTO_MS", "5000")) * 1_000_000L;
+    private static final int PRUEBAS = Integer.parseInt(System.getenv().getOrDefault("CB_PRUEBAS", "3"));
+
+    private final String address;
+
+    // Todo el estado se protege con el monitor de this; las secciones críticas son muy cortas
+    private State state = State.CLOSED;
+    private final boolean[] failed = new boolean[VENTANA];
+    private final boolean[] slow = new boolean[VENTANA];
+    private int next = 0;
+    private int recorded = 0;
+    private int failures = 0;
+    private int slowCalls = 0;
+    private long openedAtNanos = 0;
+    private int trialsInFlight = 0;
+    private int trialSuccesses = 0;
+    private long rejected = 0;
+    private long timesOpened = 0;
+
+    public CircuitBreaker(String address) {
+        this.address = address;
+    }
+
+    /**
+     * @return true si la llamada puede salir (en HALF_OPEN, si ocupa uno de los huecos de prueba).
+     *         Quien obtiene true debe informar el resultado con {@link #onSuccess}, {@link #onFailure}
+     *         o {@link #onIgnored}.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= ESPERA_ABIERTO_NANOS) {
+            transition(State.HALF_OPEN);
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialsInFlight < PRUEBAS) {
+                    trialsInFlight++;
+                    return true;
+                }
+                rejected++;
+                return false;
+            default:
+                rejected++;
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess(long latencyNanos) {
+        record(false, latencyNanos >= LLAMADA_LENTA_NANOS);
+    }
+
+    public synchronized void onFailure(long latencyNanos) {
+        record(true, latencyNanos >= LLAMADA_LENTA_NANOS);
+    }
+
+    /**
+     * La llamada se canceló (p. ej. perdió una lectura cubierta): no dice nada del nodo.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && trialsInFlight > 0) {
+            trialsInFlight--;
+        }
+    }
+
+    // Debe llamarse con el monitor tomado
+    private void record(boolean isFailure, boolean isSlow) {
+        if (state == State.HALF_OPEN) {
+            trialsInFlight = Math.max(0, trialsInFlight - 1);
+            if (isFailure || isSlow) {
+                transition(State.OPEN);
+            } else if (++trialSuccesses >= PRUEBAS) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return; // Respuesta tardía de una llamada que salió antes de abrir
+        }
+        if (recorded == VENTANA) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = isFailure;
+        slow[next] = isSlow;
+        failures += isFailure ? 1 : 0;
+        slowCalls += isSlow ? 1 : 0;
+        next = (next + 1) % VENTANA;
+        if (recorded >= MIN_LLAMADAS
+                && (failures >= UMBRAL_ERRORES * recorded || slowCalls >= UMBRAL_LENTAS * recorded)) {
+            transition(State.OPEN);
+        }
+    }
+
+    // Debe llamarse con el monitor tomado
+    private void transition(State to) {
+        LOGGER.warning("Circuito del nodo " + address + ": " + state + " -> " + to
+                + (to == State.OPEN && state == State.CLOSED ? " (errores " + failures + ", lentas " + slowCalls + " de " + recorded + ")" : ""));
+        state = to;
+        trialsInFlight = 0;
+        trialSuccesses = 0;
+        if (to == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+            timesOpened++;
+        }
+        if (to == State.CLOSED) {
+            recorded = 0;
+            failures = 0;
+            slowCalls = 0;
+            next = 0;
+        }
+    }
+
+    public String getAddress() { return address; }
+
+    /**
+     * @return El estado; un OPEN cuya espera ya venció se informa como HALF_OPEN.
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= ESPERA_ABIERTO_NANOS) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized double getFailureRate() { return recorded == 0 ? 0.0 : (double) failures / recorded; }
+    public synchronized double getSlowCallRate() { return recorded == 0 ? 0.0 : (double) slowCalls / recorded; }
+    public synchronized long getRejected() { return rejected; }
+    public synchronized long getTimesOpened() { return timesOpened; }
+}
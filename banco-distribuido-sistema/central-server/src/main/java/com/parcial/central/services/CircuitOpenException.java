@@ -0,0 +1,10 @@
+package com.parcial.central.services;
+
+/**
+ * La llamada a un Nodo Trabajador no salió porque su {@link CircuitBreaker} está abierto.
+ */
+public class CircuitOpenException extends RuntimeException {
+    public CircuitOpenException(String nodeAddress) {
+        super("Circuito abierto para el nodo " + nodeAddress);
+    }
+}
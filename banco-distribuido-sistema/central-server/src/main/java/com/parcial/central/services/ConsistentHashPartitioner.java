@@ -0,0 +1,79 @@
+package com.parcial.central.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hashing consistente con nodos virtuales. Cada partición ocupa virtualNodes puntos de un anillo
+ * de 64 bits y una cuenta pertenece a la partición del primer punto igual o mayor que su hash.
+ * Al pasar de N a N+1 particiones solo se mueven ~1/(N+1) de las cuentas (las que caen en los
+ * puntos nuevos), en lugar de casi todas como con un módulo.
+ *
+ * El anillo son dos arrays paralelos ordenados y el hash de la cuenta (FNV-1a + mezcla final de
+ * MurmurHash3) se calcula sobre los caracteres, así enrutar no reserva memoria.
+ */
+public class ConsistentHashPartitioner implements Partitioner {
+    private final List<String> partitionKeys;
+    private final long[] ringHashes;
+    private final String[] ringOwners;
+
+    public ConsistentHashPartitioner(int partitionCount, int virtualNodes) {
+        if (partitionCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Particiones y nodos virtuales deben ser >= 1");
+        }
+        List<String> keys = new ArrayList<>(partitionCount);
+        for (int p = 0; p < partitionCount; p++) {
+            keys.add(Partitioner.partitionKey(p));
+        }
+        this.partitionKeys = Collections.unmodifiableList(keys);
+
+        int size = partitionCount * virtualNodes;
+        long[][] points = new long[size][2]; // {hash, índice de partición}
+        int i = 0;
+        for (int p = 0; p < partitionCount; p++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                points[i][0] = hash(keys.get(p) + "#" + v);
+                points[i][1] = p;
+                i++;
+            }
+        }
+        Arrays.sort(points, (a, b) -> Long.compare(a[0], b[0]));
+        this.ringHashes = new long[size];
+        this.ringOwners = new String[size];
+        for (i = 0; i < size; i++) {
+            ringHashes[i] = points[i][0];
+            ringOwners[i] = keys.get((int) points[i][1]);
+        }
+    }
+
+    @Override
+    public String getPartitionKeyForAccount(String accountId) {
+        int index = Arrays.binarySearch(ringHashes, hash(accountId));
+        if (index < 0) {
+            index = -index - 1; // Punto de inserción: primer punto mayor
+        }
+        return ringOwners[index == ringHashes.length ? 0 : index];
+    }
+
+    @Override
+    public List<String> getPartitionKeys() {
+        return partitionKeys;
+    }
+
+    static long hash(CharSequence key) {
+        long h = 0xcbf29ce484222325L; // FNV-1a 64
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // fmix64 de MurmurHash3: FNV solo reparte mal claves cortas y parecidas ("CU001", "CU002")
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,242 @@
+package com.parcial.central.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Log durable de decisiones del coordinador de commit en dos fases: un archivo de texto de solo
+ * anexado, con un registro por línea ("C\t<id>\t..." para COMMIT, "E\t<id>\t<ms>" cuando todos los
+ * participantes confirmaron). Solo se registran los COMMIT: lo que no está en el log se considera
+ * abortado (aborto presunto), así que abortar no cuesta ninguna escritura. Por eso los COMMIT
+ * terminados se conservan DOS_FASES_RETENCION_S segundos: un participante que pregunte tarde por uno
+ * de ellos no debe recibir ABORT.
+ *
+ * Las escrituras las hace un único hilo que agrupa lo encolado: un solo write y un solo fsync
+ * (FileChannel.force) por lote, como el group commit de los workers. Los registros de fin no se
+ * fuerzan: si se pierden, al reiniciar solo se reenvía un commit ya aplicado (idempotente).
+ * Al abrir se leen los COMMIT sin fin y los terminados dentro de la retención, y el archivo se
+ * compacta dejando solo esos. Si el directorio o el
+ * archivo no admiten escritura el constructor falla: el coordinador no debe arrancar sin log durable.
+ * Al cerrar, el hilo escritor vacía la cola y termina al encontrar una marca de cierre (no se le
+ * interrumpe: interrumpir un hilo en medio de una operación de FileChannel cierra el canal).
+ */
+public class DecisionLog {
+    private static final Logger LOGGER = Logger.getLogger(DecisionLog.class.getName());
+    private static final String COMMIT = "C";
+    private static final String END = "E";
+
+    private static final class Pending {
+        final String line;
+        final boolean force;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(String line, boolean force) {
+            this.line = line;
+            this.force = force;
+        }
+    }
+
+    // Marca de cierre: el escritor termina al sacarla de la cola, después de escribir lo anterior
+    private static final Pending CIERRE = new Pending("", false);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Map<String, String[]> recovered;
+    private final Map<String, Long> recoveredEnds = new LinkedHashMap<>();
+    private final long retencionMs = Long.parseLong(System.getenv().getOrDefault("DOS_FASES_RETENCION_S", "3600")) * 1000;
+    private final Thread writer;
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private volatile boolean running = true;
+
+    public DecisionLog(Path path) throws IOException {
+        this.path = path;
+        Path dir = path.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        if (!Files.isWritable(dir) || (Files.exists(path) && !Files.isWritable(path))) {
+            throw new IOException("El log de decisiones " + path.toAbsolutePath() + " no admite escritura"
+                    + " (DOS_FASES_LOG debe apuntar a un volumen persistente con permiso de escritura)");
+        }
+        this.recovered = readUnfinished();
+        compact();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new Thread(this::writeLoop, "decision-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        LOGGER.info("Log de decisiones 2PC en " + path.toAbsolutePath() + " (" + recovered.size() + " commits sin terminar, "
+                + recoveredEnds.size() + " terminados recientes)");
+    }
+
+    /**
+     * Registra la decisión COMMIT; el futuro completa cuando está en disco (fsync).
+     * @param fields Datos para reenviar el commit tras un reinicio (sin tabuladores ni saltos de línea).
+     */
+    public CompletableFuture<Void> logCommit(String transactionId, String... fields) {
+        return append(COMMIT + "\t" + transactionId + (fields.length > 0 ? "\t" + String.join("\t", fields) : ""), true);
+    }
+
+    /**
+     * Registra que todos los participantes aplicaron el commit (sin fsync).
+     * @param endMillis Momento del fin: el registro se conserva hasta que vence la retención.
+     */
+    public CompletableFuture<Void> logEnd(String transactionId, long endMillis) {
+        return append(END + "\t" + transactionId + "\t" + endMillis, false);
+    }
+
+    /**
+     * @return Los COMMIT sin fin encontrados al abrir el log: id -> campos pasados a {@link #logCommit}.
+     */
+    public Map<String, String[]> getRecoveredCommits() {
+        return recovered;
+    }
+
+    /**
+     * @return Los COMMIT terminados dentro de la retención al abrir el log: id -> momento del fin.
+     */
+    public Map<String, Long> getRecoveredEnds() {
+        return recoveredEnds;
+    }
+
+    public long getRetencionMs() { return retencionMs; }
+
+    public long getSyncs() { return syncs.get(); }
+    public long getRecords() { return records.get(); }
+
+    public void close() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            queue.add(CIERRE);
+        }
+        try {
+            writer.join(5000);
+            if (writer.isAlive()) {
+                LOGGER.warning("El escritor del log de decisiones no terminó a tiempo; se cierra el archivo igualmente.");
+            }
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error al cerrar el log de decisiones", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Void> append(String line, boolean force) {
+        Pending pending = new Pending(line, force);
+        synchronized (this) { // Nada se encola detrás de la marca de cierre
+            if (!running) {
+                return CompletableFuture.failedFuture(new IOException("El log de decisiones está cerrado."));
+            }
+            queue.add(pending);
+        }
+        return pending.done;
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        boolean cerrar = false;
+        while (!cerrar) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue; // Solo se termina con la marca de cierre
+            }
+            queue.drainTo(batch);
+            cerrar = batch.remove(CIERRE);
+            if (batch.isEmpty()) {
+                continue;
+            }
+            StringBuilder sb = new StringBuilder();
+            boolean force = false;
+            for (Pending pending : batch) {
+                sb.append(pending.line).append('\n');
+                force |= pending.force;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (force) {
+                    channel.force(false);
+                    syncs.incrementAndGet();
+                }
+                records.addAndGet(batch.size());
+                batch.forEach(pending -> pending.done.complete(null));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Error al escribir el log de decisiones", e);
+                batch.forEach(pending -> pending.done.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+    private Map<String, String[]> readUnfinished() throws IOException {
+        Map<String, String[]> unfinished = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return unfinished;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\t");
+            if (parts.length < 2) {
+                continue; // Línea incompleta de una escritura interrumpida
+            }
+            if (COMMIT.equals(parts[0])) {
+                String[] fields = new String[parts.length - 2];
+                System.arraycopy(parts, 2, fields, 0, fields.length);
+                unfinished.put(parts[1], fields);
+            } else if (END.equals(parts[0])) {
+                unfinished.remove(parts[1]);
+                long endMillis = parts.length >= 3 ? parseMillis(parts[2]) : 0;
+                if (endMillis > System.currentTimeMillis() - retencionMs) {
+                    recoveredEnds.put(parts[1], endMillis);
+                }
+            }
+        }
+        return unfinished;
+    }
+
+    private static long parseMillis(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0; // Registro de fin de una versión anterior o truncado: fuera de la retención
+        }
+    }
+
+    private void compact() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        recovered.forEach((id, fields) -> sb.append(COMMIT).append('\t').append(id)
+                .append(fields.length > 0 ? "\t" + String.join("\t", fields) : "").append('\n'));
+        recoveredEnds.forEach((id, endMillis) -> sb.append(END).append('\t').append(id).append('\t').append(endMillis).append('\n'));
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
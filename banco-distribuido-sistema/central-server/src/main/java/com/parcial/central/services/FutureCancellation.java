@@ -0,0 +1,30 @@
+package com.parcial.central.services;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Cancelar un futuro derivado (thenApply, whenComplete...) no cancela el futuro del que deriva:
+ * la solicitud HTTP y el slot del {@link NodeRequestLimiter} seguirían ocupados. Este enlace lleva
+ * la cancelación (o un orTimeout) del derivado hasta la raíz.
+ */
+public final class FutureCancellation {
+
+    private FutureCancellation() {
+    }
+
+    /**
+     * Si el derivado termina con error mientras la raíz sigue pendiente, el error vino de fuera
+     * (cancel, orTimeout, completeExceptionally) y se cancela la raíz.
+     * @return El mismo derivado, para encadenar.
+     */
+    public static <T> CompletableFuture<T> propagate(CompletableFuture<T> dependent, CompletableFuture<?> root) {
+        if (dependent != root) {
+            dependent.whenComplete((value, ex) -> {
+                if (ex != null && !root.isDone()) {
+                    root.cancel(true);
+                }
+            });
+        }
+        return dependent;
+    }
+}
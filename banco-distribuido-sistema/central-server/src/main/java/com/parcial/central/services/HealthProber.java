@@ -0,0 +1,135 @@
+package com.parcial.central.services;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Sondeo periódico de GET /api/worker/health en cada Nodo Trabajador (una vez por dirección) que
+ * actualiza la {@link NodeHealth} del registro: vivo o caído, y la carga que informa el nodo.
+ * Usa su propio HttpClient y no pasa por {@link WorkerNodeClient}: ni el limitador por nodo ni el
+ * circuito abierto deben impedir ver que un nodo volvió.
+ * - Respuesta 2xx: vivo; lee "status" y "load" si la respuesta trae líneas "clave=valor".
+ * - Otra respuesta que no sea 5xx (p. ej. un 404 de un worker sin el endpoint): vivo, carga 0.
+ * - 5xx, status=DOWN, timeout (SALUD_TIMEOUT_MS) o error de conexión: sondeo fallido.
+ * El sondeo va al puerto de salud del worker (WORKER_HEALTH_PORT, su HEALTH_PORT), que tiene su propio
+ * hilo: un nodo ocupado con transferencias sigue respondiendo a tiempo. WORKER_HEALTH_PORT=0 usa el
+ * puerto de la dirección registrada (workers que sirven /health en su puerto principal).
+ * Antes de cada ronda se relee la membresía si cambió ({@link WorkerMembership#reloadIfChanged()}).
+ * SALUD_INTERVALO_MS=0 desactiva el sondeo y la recarga.
+ */
+public class HealthProber {
+    private static final Logger LOGGER = Logger.getLogger(HealthProber.class.getName());
+    private static final String HEALTH_PATH = "/api/worker/health";
+
+    private final WorkerNodeRegistry registry;
+    private final WorkerMembership membership;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final Duration timeout = Duration.ofMillis(Long.parseLong(System.getenv().getOrDefault("SALUD_TIMEOUT_MS", "1000")));
+    private final int healthPort = Integer.parseInt(System.getenv().getOrDefault("WORKER_HEALTH_PORT", "8082"));
+    private volatile long rondas = 0;
+
+    public HealthProber(WorkerNodeRegistry registry, WorkerMembership membership) {
+        this.registry = registry;
+        this.membership = membership;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sondeo-salud");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Long.parseLong(System.getenv().getOrDefault("SALUD_INTERVALO_MS", "2000"));
+        if (intervalo > 0) {
+            scheduler.scheduleWithFixedDelay(this::runOnce, 0, intervalo, TimeUnit.MILLISECONDS);
+            LOGGER.info("Sondeo de salud de los workers cada " + intervalo + " ms (timeout " + timeout.toMillis() + " ms)");
+        } else {
+            LOGGER.info("Sondeo de salud desactivado (SALUD_INTERVALO_MS=0)");
+        }
+    }
+
+    /**
+     * Una ronda: recarga la membresía si cambió y sondea todas las direcciones en paralelo.
+     * Termina cuando respondieron todas o venció su timeout, así las rondas no se solapan.
+     */
+    public void runOnce() {
+        try {
+            membership.reloadIfChanged();
+            List<String> addresses = registry.getAllWorkerNodes().stream()
+                    .map(WorkerNodeInfo::getAddress)
+                    .distinct()
+                    .collect(Collectors.toList());
+            CompletableFuture.allOf(addresses.stream().map(this::probe).toArray(CompletableFuture[]::new)).join();
+            rondas++;
+        } catch (RuntimeException e) {
+            // Una excepción no capturada cancelaría las rondas siguientes
+            LOGGER.log(Level.WARNING, "Error en la ronda de sondeo de salud", e);
+        }
+    }
+
+    private CompletableFuture<Void> probe(String address) {
+        NodeHealth health = registry.healthFor(address);
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(healthUri(address))
+                .timeout(timeout)
+                .GET()
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, ex) -> {
+                    if (ex != null) {
+                        health.onProbeFailure(ex.getCause() != null ? ex.getCause().toString() : ex.toString());
+                    } else if (response.statusCode() >= 500) {
+                        health.onProbeFailure("HTTP " + response.statusCode());
+                    } else if (response.statusCode() >= 300) {
+                        health.onProbe("SIN_SONDEO", 0.0);
+                    } else {
+                        String status = "UP";
+                        double load = 0.0;
+                        for (String line : response.body().split("\n")) {
+                            if (line.startsWith("status=")) {
+                                status = line.substring("status=".length()).trim();
+                            } else if (line.startsWith("load=")) {
+                                try {
+                                    load = Double.parseDouble(line.substring("load=".length()).trim());
+                                } catch (NumberFormatException ignored) {
+                                    // Se queda en 0: un valor ilegible no debe marcar el nodo como caído
+                                }
+                            }
+                        }
+                        if ("DOWN".equals(status)) {
+                            health.onProbeFailure("status=DOWN");
+                        } else {
+                            health.onProbe(status, load);
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private URI healthUri(String address) {
+        if (healthPort <= 0) {
+            return URI.create(address + HEALTH_PATH);
+        }
+        URI base = URI.create(address);
+        return URI.create(base.getScheme() + "://" + base.getHost() + ":" + healthPort + HEALTH_PATH);
+    }
+
+    public long getRondas() { return rondas; }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,106 @@
+package com.parcial.central.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Solicitud con cobertura ("hedging") sobre réplicas: se envía a la primera réplica y, si no
+ * respondió tras el retardo de cobertura, también a la siguiente. Gana la primera respuesta
+ * exitosa y las demás se cancelan. Si una réplica falla antes del retardo se pasa a la siguiente
+ * de inmediato. Solo falla si fallan todas las réplicas intentadas.
+ */
+public final class HedgedRequest<N, T> {
+    private final List<N> candidates;
+    private final Function<N, CompletableFuture<T>> call;
+    private final int maxAttempts;
+    private final Executor hedgeTimer;
+
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    private final List<CompletableFuture<T>> started = new ArrayList<>();
+    private int nextCandidate = 0;
+    private int outstanding = 0;
+    private Throwable lastFailure;
+
+    private HedgedRequest(List<N> candidates, Function<N, CompletableFuture<T>> call, long hedgeDelayMs, int maxAttempts) {
+        this.candidates = candidates;
+        this.call = call;
+        this.maxAttempts = Math.min(maxAttempts, candidates.size());
+        this.hedgeTimer = CompletableFuture.delayedExecutor(hedgeDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param candidates   Réplicas en orden de preferencia.
+     * @param call         Inicia la solicitud a una réplica; no debe bloquear. Cancelar el futuro que
+     *                     devuelve debe cancelar la solicitud (ver {@link FutureCancellation}).
+     * @param hedgeDelayMs Tiempo de espera antes de lanzar la siguiente réplica.
+     * @param maxAttempts  Máximo de réplicas a las que se envía la solicitud.
+     */
+    public static <N, T> CompletableFuture<T> execute(List<N> candidates, Function<N, CompletableFuture<T>> call,
+                                                      long hedgeDelayMs, int maxAttempts) {
+        if (candidates.isEmpty() || maxAttempts < 1) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No hay réplicas para la solicitud."));
+        }
+        HedgedRequest<N, T> request = new HedgedRequest<>(candidates, call, hedgeDelayMs, maxAttempts);
+        request.launchNext();
+        request.result.whenComplete((value, ex) -> request.cancelOutstanding());
+        return request.result;
+    }
+
+    private void launchNext() {
+        N candidate;
+        synchronized (this) {
+            if (result.isDone() || nextCandidate >= maxAttempts) {
+                return;
+            }
+            candidate = candidates.get(nextCandidate++);
+            outstanding++;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.apply(candidate);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        synchronized (this) {
+            started.add(future);
+        }
+        future.whenComplete(this::onAttemptComplete);
+        if (nextCandidateAvailable()) {
+            hedgeTimer.execute(this::launchNext);
+        }
+    }
+
+    private void onAttemptComplete(T value, Throwable ex) {
+        if (ex == null && value != null) {
+            result.complete(value);
+            return;
+        }
+        boolean failAll;
+        synchronized (this) {
+            outstanding--;
+            lastFailure = ex != null ? ex : new IllegalStateException("Respuesta vacía");
+            failAll = outstanding == 0 && nextCandidate >= maxAttempts;
+        }
+        if (failAll) {
+            result.completeExceptionally(lastFailure);
+        } else {
+            launchNext(); // Falló antes del retardo: no esperar para probar la siguiente réplica
+        }
+    }
+
+    private synchronized boolean nextCandidateAvailable() {
+        return nextCandidate < maxAttempts;
+    }
+
+    private void cancelOutstanding() {
+        List<CompletableFuture<T>> toCancel;
+        synchronized (this) {
+            toCancel = new ArrayList<>(started);
+        }
+        toCancel.forEach(f -> f.cancel(true));
+    }
+}
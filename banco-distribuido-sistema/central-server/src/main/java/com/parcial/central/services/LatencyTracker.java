@@ -0,0 +1,50 @@
+package com.parcial.central.services;
+
+import java.util.Arrays;
+
+/**
+ * Percentiles de latencia sobre una ventana deslizante de las últimas muestras.
+ * Los percentiles se recalculan como mucho una vez por intervalo para que consultarlos
+ * en cada solicitud no cueste ordenar la ventana cada vez.
+ */
+public class LatencyTracker {
+    private static final long RECOMPUTE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final long[] samples;
+    private int next = 0;
+    private int count = 0;
+    private long lastComputedAtNanos = 0;
+    private long[] sortedSnapshot = new long[0];
+
+    public LatencyTracker(int windowSize) {
+        this.samples = new long[windowSize];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * @param percentile Entre 0 y 100.
+     * @return El percentil en milisegundos, o -1 si aún no hay muestras.
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        long now = System.nanoTime();
+        if (now - lastComputedAtNanos >= RECOMPUTE_INTERVAL_NANOS || sortedSnapshot.length == 0) {
+            sortedSnapshot = Arrays.copyOf(samples, count);
+            Arrays.sort(sortedSnapshot);
+            lastComputedAtNanos = now;
+        }
+        if (sortedSnapshot.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.min(sortedSnapshot.length - 1, Math.floor(sortedSnapshot.length * percentile / 100.0));
+        return sortedSnapshot[index] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.parcial.central.services;
+
+import java.util.logging.Logger;
+
+/**
+ * Salud de un Nodo Trabajador según el sondeo periódico de {@link HealthProber} a
+ * /api/worker/health (por dirección, como {@link NodeStats}).
+ * Un nodo nunca sondeado se considera vivo, para no bloquear el tráfico al arrancar. Pasa a caído
+ * tras SALUD_FALLOS_CAIDO sondeos fallidos seguidos (sin respuesta, timeout o status=DOWN) y vuelve
+ * con el primer sondeo correcto. "load" (0 a 1) es la carga que informa el propio nodo.
+ */
+public class NodeHealth {
+    private static final Logger LOGGER = Logger.getLogger(NodeHealth.class.getName());
+    private static final int FALLOS_CAIDO = Integer.parseInt(System.getenv().getOrDefault("SALUD_FALLOS_CAIDO", "2"));
+
+    private final String address;
+    private volatile boolean alive = true;
+    private volatile double load = 0.0;
+    private volatile String status = "DESCONOCIDO";
+    private volatile long lastProbeMillis = 0;
+    // Solo lo escribe el hilo del sondeo
+    private int consecutiveFailures = 0;
+    private long probes = 0;
+    private long failedProbes = 0;
+
+    public NodeHealth(String address) {
+        this.address = address;
+    }
+
+    synchronized void onProbe(String reportedStatus, double reportedLoad) {
+        probes++;
+        consecutiveFailures = 0;
+        status = reportedStatus;
+        load = Math.max(0.0, Math.min(1.0, reportedLoad));
+        lastProbeMillis = System.currentTimeMillis();
+        if (!alive) {
+            LOGGER.info("Nodo " + address + " vuelve a responder (status " + reportedStatus + ")");
+            alive = true;
+        }
+    }
+
+    synchronized void onProbeFailure(String reason) {
+        probes++;
+        failedProbes++;
+        status = "DOWN";
+        lastProbeMillis = System.currentTimeMillis();
+        if (++consecutiveFailures >= FALLOS_CAIDO && alive) {
+            LOGGER.warning("Nodo " + address + " marcado como caído tras " + consecutiveFailures + " sondeos fallidos: " + reason);
+            alive = false;
+        }
+    }
+
+    public String getAddress() { return address; }
+    public boolean isAlive() { return alive; }
+    public double getLoad() { return load; }
+    public String getStatus() { return status; }
+    public long getLastProbeMillis() { return lastProbeMillis; }
+    public synchronized long getProbes() { return probes; }
+    public synchronized long getFailedProbes() { return failedProbes; }
+}
@@ -0,0 +1,148 @@
+package com.parcial.central.services;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Limita las solicitudes en vuelo hacia un Nodo Trabajador. Las que superan el límite
+ * esperan en una cola acotada; si la cola está llena se falla rápido en lugar de encolar sin fin.
+ *
+ * Con HTTP/1.1 cada conexión lleva una solicitud a la vez, así que limitar las solicitudes en vuelo
+ * acota también las conexiones que el HttpClient abre contra el nodo. El HttpClient no expone su pool,
+ * por eso la reutilización de conexiones se estima: una solicitud reutiliza conexión si al empezar
+ * hay menos solicitudes en vuelo que conexiones usadas dentro del keep-alive.
+ */
+public class NodeRequestLimiter {
+    private final String nodeAddress;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final long keepAliveNanos;
+
+    // Todo el estado se protege con el monitor de this; las secciones críticas son muy cortas
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    // Momento en que se liberó cada "conexión" (slot de concurrencia), el más reciente al principio
+    private final ArrayDeque<Long> releasedAtNanos = new ArrayDeque<>();
+    private int inFlight = 0;
+    private int peakInFlight = 0;
+    private long completed = 0;
+    private long rejected = 0;
+    private long connectionsOpened = 0;
+    private long connectionsReused = 0;
+
+    public NodeRequestLimiter(String nodeAddress, int maxInFlight, int maxQueued, long keepAliveMillis) {
+        this.nodeAddress = nodeAddress;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.keepAliveNanos = keepAliveMillis * 1_000_000L;
+    }
+
+    /**
+     * Ejecuta la llamada cuando haya un hueco para este nodo.
+     * Cancelar el futuro devuelto saca la solicitud de la cola o, si ya empezó, cancela la llamada
+     * (y así libera su slot).
+     * @param call Inicia la solicitud; solo se invoca cuando la solicitud obtiene un slot.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<T>> running = new AtomicReference<>();
+        Runnable start = () -> {
+            if (result.isDone()) {
+                onComplete(); // Cancelada mientras esperaba su turno: devolver el slot
+                return;
+            }
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            running.set(future);
+            if (result.isDone()) {
+                future.cancel(true); // Cancelada mientras se iniciaba la llamada
+            }
+            future.whenComplete((value, ex) -> {
+                onComplete();
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+        result.whenComplete((value, ex) -> {
+            if (ex == null) {
+                return;
+            }
+            synchronized (this) {
+                if (queue.remove(start)) {
+                    return; // Nunca tomó un slot
+                }
+            }
+            CompletableFuture<T> future = running.get();
+            if (future != null) {
+                future.cancel(true);
+            }
+        });
+        synchronized (this) {
+            if (inFlight < maxInFlight) {
+                acquireSlot();
+            } else if (queue.size() < maxQueued) {
+                queue.addLast(start);
+                return result;
+            } else {
+                rejected++;
+                result.completeExceptionally(new RejectedExecutionException("Cola de solicitudes llena para el nodo " + nodeAddress
+                        + " (en vuelo: " + inFlight + ", en cola: " + queue.size() + ")"));
+                return result;
+            }
+        }
+        start.run();
+        return result;
+    }
+
+    private void onComplete() {
+        Runnable next;
+        synchronized (this) {
+            completed++;
+            next = queue.pollFirst();
+            if (next == null) {
+                inFlight--;
+                releasedAtNanos.addFirst(System.nanoTime());
+            } else {
+                connectionsReused++; // La siguiente solicitud toma la conexión recién liberada
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    // Debe llamarse con el monitor tomado
+    private void acquireSlot() {
+        long now = System.nanoTime();
+        // Las conexiones inactivas más allá del keep-alive ya las cerró el HttpClient
+        while (!releasedAtNanos.isEmpty() && now - releasedAtNanos.peekLast() > keepAliveNanos) {
+            releasedAtNanos.pollLast();
+        }
+        if (releasedAtNanos.pollFirst() != null) {
+            connectionsReused++;
+        } else {
+            connectionsOpened++;
+        }
+        inFlight++;
+        peakInFlight = Math.max(peakInFlight, inFlight);
+    }
+
+    public String getNodeAddress() { return nodeAddress; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized int getQueueDepth() { return queue.size(); }
+    public synchronized int getPeakInFlight() { return peakInFlight; }
+    public synchronized long getCompleted() { return completed; }
+    public synchronized long getRejected() { return rejected; }
+    public synchronized long getConnectionsOpened() { return connectionsOpened; }
+    public synchronized long getConnectionsReused() { return connectionsReused; }
+}
@@ -0,0 +1,82 @@
+package com.parcial.central.services;
+
+/**
+ * Estadísticas de un Nodo Trabajador que alimenta {@link WorkerNodeClient} y usa
+ * {@link WorkerNodeRegistry} para elegir réplica: latencia y tasa de error como EWMA
+ * y solicitudes en vuelo.
+ *
+ * Al calcular el coste, las medias decaen con el tiempo sin muestras (constante IDLE_DECAY_NANOS):
+ * un nodo que dejó de recibir tráfico por lento o por errores vuelve a parecer barato poco a
+ * poco y se le prueba de nuevo, en vez de quedar descartado para siempre.
+ */
+public class NodeStats {
+    private static final double LATENCY_ALPHA = 0.2;
+    private static final double ERROR_ALPHA = 0.1;
+    private static final double IDLE_DECAY_NANOS = 10_000_000_000.0; // 10 s
+    // Acota la penalización por errores (coste x20 como máximo)
+    private static final double MAX_ERROR_RATE = 0.95;
+
+    private final String address;
+    private double ewmaLatencyNanos = 0;
+    private double ewmaErrorRate = 0;
+    private long lastUpdateNanos = System.nanoTime();
+    private int inFlight = 0;
+    private long successes = 0;
+    private long failures = 0;
+
+    public NodeStats(String address) {
+        this.address = address;
+    }
+
+    public synchronized void onStart() {
+        inFlight++;
+    }
+
+    public synchronized void onSuccess(long latencyNanos) {
+        inFlight--;
+        successes++;
+        update(latencyNanos, 0.0);
+    }
+
+    public synchronized void onFailure(long latencyNanos) {
+        inFlight--;
+        failures++;
+        update(latencyNanos, 1.0);
+    }
+
+    /**
+     * Solicitud abandonada (p. ej. la cancela una lectura cubierta): no es ni éxito ni error.
+     */
+    public synchronized void onCancel() {
+        inFlight--;
+    }
+
+    private void update(long latencyNanos, double error) {
+        if (successes + failures == 1) {
+            ewmaLatencyNanos = latencyNanos;
+            ewmaErrorRate = error;
+        } else {
+            ewmaLatencyNanos += LATENCY_ALPHA * (latencyNanos - ewmaLatencyNanos);
+            ewmaErrorRate += ERROR_ALPHA * (error - ewmaErrorRate);
+        }
+        lastUpdateNanos = System.nanoTime();
+    }
+
+    /**
+     * Coste esperado de enviar una solicitud más a este nodo: latencia media por las solicitudes
+     * que tendrá por delante, penalizada por la tasa de error. Menor es mejor.
+     */
+    public synchronized double cost() {
+        double decay = Math.exp(-(System.nanoTime() - lastUpdateNanos) / IDLE_DECAY_NANOS);
+        double latency = ewmaLatencyNanos * decay;
+        double errorRate = Math.min(MAX_ERROR_RATE, ewmaErrorRate * decay);
+        return latency * (inFlight + 1) / (1.0 - errorRate);
+    }
+
+    public String getAddress() { return address; }
+    public synchronized int getInFlight() { return inFlight; }
+    public synchronized double getEwmaLatencyMillis() { return ewmaLatencyNanos / 1_000_000.0; }
+    public synchronized double getErrorRate() { return ewmaErrorRate; }
+    public synchronized long getSuccesses() { return successes; }
+    public synchronized long getFailures() { return failures; }
+}
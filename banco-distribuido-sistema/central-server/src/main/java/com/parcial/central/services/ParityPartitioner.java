@@ -0,0 +1,45 @@
+package com.parcial.central.services;
+
+import java.util.List;
+
+/**
+ * Reparto original en 2 particiones: cuentas con número par a Cuenta-P2 e impar a Cuenta-P1.
+ * Los dígitos se leen carácter a carácter en lugar de con replaceAll, que compilaba una regex y
+ * creaba strings en cada solicitud.
+ *
+ * Los datos de ejemplo de los workers (manifests/cm-worker-db-*-init.yaml) NO están cargados por
+ * paridad sino por rango: CU001-CU010 en las réplicas de Cuenta-P1 y CU011-CU020 en las de
+ * Cuenta-P2. Con ese juego de datos, las cuentas pares de P1 y las impares de P2 se buscan en el
+ * nodo equivocado (cuenta no encontrada). Antes de usar este particionador hay que volver a cargar
+ * los datos por paridad, o migrar las cuentas a su partición (POST /api/admin/rebalanceo).
+ */
+public class ParityPartitioner implements Partitioner {
+    private static final List<String> KEYS = List.of(Partitioner.partitionKey(0), Partitioner.partitionKey(1));
+
+    @Override
+    public String getPartitionKeyForAccount(String accountId) {
+        long numericId = 0;
+        boolean hasDigits = false;
+        for (int i = 0; i < accountId.length(); i++) {
+            char c = accountId.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (numericId > (Long.MAX_VALUE - digit) / 10) {
+                    hasDigits = false; // Desborda un long: mismo fallback que Long.parseLong
+                    break;
+                }
+                numericId = numericId * 10 + digit;
+                hasDigits = true;
+            }
+        }
+        if (!hasDigits) {
+            return KEYS.get(Math.abs(accountId.hashCode() % 2));
+        }
+        return numericId % 2 == 0 ? KEYS.get(1) : KEYS.get(0);
+    }
+
+    @Override
+    public List<String> getPartitionKeys() {
+        return KEYS;
+    }
+}
@@ -0,0 +1,363 @@
+package com.parcial.central.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Migra en línea un rango de cuentas a otra partición (por ejemplo a workers recién agregados
+ * para descargar una partición caliente), sin detener el servicio:
+ *
+ * 1. COPIA: de una réplica al día de cada partición origen (ver {@link #pickSources}) se exportan
+ *    Cliente, Cuenta y Transacciones del rango (COPY ... TO STDOUT en el worker) y se importan en
+ *    cada réplica destino (COPY FROM STDIN). El Central solo encadena los streams, no carga las filas en memoria.
+ * 2. PUESTA AL DÍA: rondas que vuelven a copiar los saldos del rango y las transacciones desde la
+ *    marca de la ronda anterior (menos un margen), hasta que una ronda aplica pocas filas.
+ * 3. CAMBIO DE DUEÑO: se levanta la {@link WriteFence} sobre el rango (las transferencias quedan
+ *    retenidas, no rechazadas), se espera a que terminen las ya enviadas, se hace una última ronda y
+ *    se reasigna el rango en {@link WorkerNodeRegistry}. Al bajar la barrera las retenidas se
+ *    enrutan al nuevo dueño. Las lecturas siguen sirviéndose del origen hasta el cambio.
+ * 4. PURGA: tras una breve gracia (lecturas ya enrutadas al origen) se borra el rango de todas las
+ *    réplicas origen, que así dejan de contarlo en su arqueo parcial.
+ *
+ * Las importaciones son idempotentes, así que una migración fallida antes del cambio de dueño no
+ * deja efectos visibles (el destino no es dueño de nada) y puede repetirse.
+ * Usa su propio HttpClient: la copia masiva no debe ocupar los cupos de {@link NodeRequestLimiter}.
+ */
+public class PartitionRebalancer {
+    private static final Logger LOGGER = Logger.getLogger(PartitionRebalancer.class.getName());
+    private static final String WORKER_PATH = "/api/worker/migracion/";
+    private static final String[] TABLAS = {"cliente", "cuenta", "transacciones"};
+
+    private final WorkerNodeRegistry registry;
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final int maxRondas = Integer.parseInt(System.getenv().getOrDefault("MIGRACION_MAX_RONDAS", "5"));
+    private final long umbralFilas = Long.parseLong(System.getenv().getOrDefault("MIGRACION_UMBRAL_FILAS", "20"));
+    private final long margenMillis = Long.parseLong(System.getenv().getOrDefault("MIGRACION_MARGEN_S", "30")) * 1000;
+    private final long maxEsperaBarreraMs = Long.parseLong(System.getenv().getOrDefault("MIGRACION_MAX_ESPERA_BARRERA_MS", "5000"));
+    private final long graciaPurgaMs = Long.parseLong(System.getenv().getOrDefault("MIGRACION_GRACIA_PURGA_MS", "1000"));
+    private final Duration timeout = Duration.ofSeconds(Long.parseLong(System.getenv().getOrDefault("MIGRACION_TIMEOUT_S", "300")));
+    private final AtomicLong migrationSequence = new AtomicLong();
+    private volatile Migration current;
+
+    /**
+     * Estado de una migración; se consulta mientras corre.
+     */
+    public static final class Migration {
+        private final long id;
+        private final AccountRange range;
+        private final String targetPartition;
+        private final long startMillis = System.currentTimeMillis();
+        private final AtomicLong filasAplicadas = new AtomicLong();
+        private volatile String estado = "PENDIENTE";
+        private volatile int rondas = 0;
+        private volatile long barreraMillis = 0;
+        private volatile long endMillis = 0;
+        private volatile String error;
+
+        Migration(long id, AccountRange range, String targetPartition) {
+            this.id = id;
+            this.range = range;
+            this.targetPartition = targetPartition;
+        }
+
+        public long getId() { return id; }
+        public String getEstado() { return estado; }
+
+        public boolean isFinished() {
+            return endMillis != 0;
+        }
+
+        /**
+         * @return Estado en texto plano, una línea "clave=valor" por dato.
+         */
+        public String describe() {
+            long fin = endMillis != 0 ? endMillis : System.currentTimeMillis();
+            return "migracion.id=" + id + "\n"
+                    + "migracion.rango=" + range + "\n"
+                    + "migracion.destino=" + targetPartition + "\n"
+                    + "migracion.estado=" + estado + "\n"
+                    + "migracion.rondasPuestaAlDia=" + rondas + "\n"
+                    + "migracion.filasAplicadas=" + filasAplicadas.get() + "\n"
+                    + "migracion.barreraMs=" + barreraMillis + "\n"
+                    + "migracion.duracionMs=" + (fin - startMillis) + "\n"
+                    + (error != null ? "migracion.error=" + error + "\n" : "");
+        }
+    }
+
+    public PartitionRebalancer(WorkerNodeRegistry registry) {
+        this.registry = registry;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "rebalanceo-particiones");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Inicia en segundo plano la migración del rango a la partición destino. Una a la vez.
+     * @throws IllegalStateException Si ya hay una migración en curso.
+     * @throws IllegalArgumentException Si la partición destino no tiene nodos registrados.
+     */
+    public synchronized Migration start(AccountRange range, String targetPartition) {
+        if (current != null && !current.isFinished()) {
+            throw new IllegalStateException("Ya hay una migración en curso: " + current.range + " -> " + current.targetPartition);
+        }
+        if (registry.getNodesForPartition(targetPartition).isEmpty()) {
+            throw new IllegalArgumentException("La partición destino " + targetPartition + " no tiene nodos registrados.");
+        }
+        Migration migration = new Migration(migrationSequence.incrementAndGet(), range, targetPartition);
+        current = migration;
+        executor.execute(() -> run(migration));
+        return migration;
+    }
+
+    /**
+     * @return La migración en curso o la última terminada (null si nunca hubo una).
+     */
+    public Migration getCurrent() {
+        return current;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(Migration m) {
+        LOGGER.info("Migración " + m.id + ": rango " + m.range + " hacia " + m.targetPartition);
+        try {
+            if (registry.getAccountPartitionKeys().contains(m.targetPartition)) {
+                LOGGER.warning("Migración " + m.id + ": el destino " + m.targetPartition
+                        + " ya es dueño de cuentas; el arqueo contará dos veces las filas copiadas hasta la purga.");
+            }
+            Map<String, WorkerNodeInfo> origenes = pickSources(m.range, m.targetPartition);
+            List<WorkerNodeInfo> destinos = new ArrayList<>(registry.getNodesForPartition(m.targetPartition));
+
+            m.estado = "COPIA";
+            Map<String, Timestamp> marcas = copyRound(m, origenes, destinos, null);
+
+            m.estado = "PUESTA_AL_DIA";
+            for (int ronda = 1; ronda <= maxRondas; ronda++) {
+                long antes = m.filasAplicadas.get();
+                marcas = copyRound(m, origenes, destinos, marcas);
+                m.rondas = ronda;
+                long aplicadas = m.filasAplicadas.get() - antes;
+                LOGGER.info("Migración " + m.id + ": ronda " + ronda + " aplicó " + aplicadas + " filas");
+                if (aplicadas <= umbralFilas) {
+                    break;
+                }
+            }
+
+            m.estado = "CAMBIO_DE_DUENO";
+            switchOwnership(m, origenes, destinos, marcas);
+
+            m.estado = "PURGA";
+            Thread.sleep(graciaPurgaMs);
+            purgeSources(m, origenes.keySet());
+
+            m.estado = "COMPLETADA";
+            LOGGER.info("Migración " + m.id + " completada:\n" + m.describe());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(m, e);
+        } catch (Exception e) {
+            fail(m, e);
+        } finally {
+            m.endMillis = System.currentTimeMillis();
+        }
+    }
+
+    private void fail(Migration m, Exception e) {
+        LOGGER.log(Level.SEVERE, "Migración " + m.id + " falló en estado " + m.estado, e);
+        m.error = e.getMessage();
+        m.estado = "FALLIDA_EN_" + m.estado;
+    }
+
+    /**
+     * Una réplica por partición origen (todas las dueñas de cuentas salvo el destino): el rango puede
+     * estar repartido entre varias, por ejemplo con el particionador por paridad.
+     * Lo que se copia queda como única versión en el destino (todas sus réplicas coinciden y la
+     * anti-entropía no tiene nada que reparar), así que el origen debe estar al día: con primario-backup
+     * es el primario (los backups pueden ir atrás del log); con quórum, una réplica sin escrituras en
+     * curso ni divergencias en el rango (ver {@link ReplicaRepairTracker}).
+     * @throws IllegalStateException Si alguna partición no tiene una réplica así.
+     */
+    private Map<String, WorkerNodeInfo> pickSources(AccountRange range, String targetPartition) {
+        ReplicaRepairTracker repairTracker = registry.getRepairTracker();
+        Map<String, WorkerNodeInfo> origenes = new LinkedHashMap<>();
+        for (String partitionKey : registry.getAccountPartitionKeys()) {
+            if (partitionKey.equals(targetPartition)) {
+                continue;
+            }
+            WorkerNodeInfo origen;
+            if (registry.getReplicationMode() == ReplicationMode.PRIMARY_BACKUP) {
+                origen = registry.getPrimaryForPartition(partitionKey);
+            } else {
+                origen = registry.rankReplicasForRead(partitionKey).stream()
+                        .filter(node -> !repairTracker.isBehindInRange(node.getAddress(), range))
+                        .findFirst()
+                        .orElse(null);
+            }
+            if (origen == null) {
+                throw new IllegalStateException("La partición origen " + partitionKey
+                        + " no tiene una réplica al día para " + range + " (sin nodos, o todas rezagadas o divergentes).");
+            }
+            origenes.put(partitionKey, origen);
+        }
+        return origenes;
+    }
+
+    /**
+     * Copia el rango de cada origen a cada destino. Sin marca para un origen (marcas == null, o el origen
+     * cambió) copia todas sus transacciones; si no, desde su marca menos el margen (las marcas son del
+     * reloj de cada origen).
+     * @return Las marcas de esta ronda por partición origen.
+     */
+    private Map<String, Timestamp> copyRound(Migration m, Map<String, WorkerNodeInfo> origenes, List<WorkerNodeInfo> destinos,
+                                             Map<String, Timestamp> marcas) throws IOException, InterruptedException {
+        Map<String, Timestamp> nuevasMarcas = new HashMap<>();
+        for (Map.Entry<String, WorkerNodeInfo> origen : origenes.entrySet()) {
+            Timestamp marcaAnterior = marcas != null ? marcas.get(origen.getKey()) : null;
+            Timestamp desdeFecha = marcaAnterior != null ? new Timestamp(marcaAnterior.getTime() - margenMillis) : null;
+            for (WorkerNodeInfo destino : destinos) {
+                for (String tabla : TABLAS) {
+                    Timestamp marca = copyTable(m, origen.getValue(), destino, tabla, "transacciones".equals(tabla) ? desdeFecha : null);
+                    // La marca más temprana de la ronda (la de la primera exportación) cubre todo lo demás
+                    nuevasMarcas.putIfAbsent(origen.getKey(), marca);
+                }
+            }
+        }
+        return nuevasMarcas;
+    }
+
+    private Timestamp copyTable(Migration m, WorkerNodeInfo origen, WorkerNodeInfo destino, String tabla, Timestamp desdeFecha)
+            throws IOException, InterruptedException {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("tabla", tabla);
+        params.put("desde", m.range.getDesde());
+        params.put("hasta", m.range.getHasta());
+        if (desdeFecha != null) {
+            params.put("desdeFecha", desdeFecha.toString());
+        }
+        HttpRequest exportRequest = HttpRequest.newBuilder(uri(origen, "exportar", params)).timeout(timeout).GET().build();
+        HttpResponse<InputStream> exportResponse = httpClient.send(exportRequest, HttpResponse.BodyHandlers.ofInputStream());
+        if (exportResponse.statusCode() != 200) {
+            String detalle;
+            try (InputStream body = exportResponse.body()) {
+                detalle = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            throw new WorkerResponseException("Exportación de " + tabla + " en " + origen.getId() + " falló: " + detalle,
+                    exportResponse.statusCode());
+        }
+        Timestamp marca = Timestamp.valueOf(exportResponse.headers().firstValue("X-Migracion-Marca")
+                .orElseThrow(() -> new IOException("El worker " + origen.getId() + " no envió X-Migracion-Marca")));
+
+        // El CSV del origen se reenvía tal cual al destino mientras llega
+        Map<String, String> importParams = new LinkedHashMap<>(params);
+        importParams.remove("desdeFecha");
+        HttpRequest importRequest = HttpRequest.newBuilder(uri(destino, "importar", importParams))
+                .timeout(timeout)
+                .header("Content-Type", "text/csv; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofInputStream(exportResponse::body))
+                .build();
+        HttpResponse<String> importResponse = httpClient.send(importRequest, HttpResponse.BodyHandlers.ofString());
+        if (importResponse.statusCode() != 200) {
+            throw new WorkerResponseException("Importación de " + tabla + " en " + destino.getId() + " falló: "
+                    + importResponse.body(), importResponse.statusCode());
+        }
+        long aplicadas = parseCounter(importResponse.body(), "aplicadas");
+        m.filasAplicadas.addAndGet(aplicadas);
+        LOGGER.log(Level.FINE, "Migración {0}: {1} {2} -> {3}: {4}",
+                new Object[]{m.id, tabla, origen.getId(), destino.getId(), importResponse.body().replace('\n', ' ')});
+        return marca;
+    }
+
+    private void switchOwnership(Migration m, Map<String, WorkerNodeInfo> origenes, List<WorkerNodeInfo> destinos,
+                                 Map<String, Timestamp> marcas) throws IOException, InterruptedException {
+        WriteFence fence = registry.getWriteFence();
+        long inicio = System.currentTimeMillis();
+        fence.close(m.range);
+        try {
+            if (!fence.awaitDrained(m.range, maxEsperaBarreraMs)) {
+                throw new IllegalStateException("Las escrituras en curso sobre " + m.range
+                        + " no terminaron en " + maxEsperaBarreraMs + " ms; se cancela el cambio de dueño.");
+            }
+            // Con la barrera cerrada y las escrituras drenadas se vuelve a elegir el origen: uno que quedó
+            // divergente durante la puesta al día dejaría saldos viejos como la única copia del rango
+            Map<String, WorkerNodeInfo> origenesFinales = pickSources(m.range, m.targetPartition);
+            Map<String, Timestamp> marcasFinales = new HashMap<>(marcas);
+            origenesFinales.forEach((partitionKey, origen) -> {
+                if (origenes.get(partitionKey) != origen) {
+                    LOGGER.warning("Migración " + m.id + ": el origen de " + partitionKey + " ya no está al día; la última ronda copia desde "
+                            + origen.getId());
+                    marcasFinales.remove(partitionKey);
+                }
+            });
+            copyRound(m, origenesFinales, destinos, marcasFinales);
+            registry.reassignRange(m.range, m.targetPartition);
+        } finally {
+            fence.open(m.range);
+            m.barreraMillis = System.currentTimeMillis() - inicio;
+        }
+        LOGGER.info("Migración " + m.id + ": rango " + m.range + " ahora pertenece a " + m.targetPartition
+                + " (escrituras retenidas durante " + m.barreraMillis + " ms)");
+    }
+
+    private void purgeSources(Migration m, Iterable<String> sourcePartitions) throws IOException, InterruptedException {
+        Map<String, String> params = Map.of("desde", m.range.getDesde(), "hasta", m.range.getHasta());
+        for (String partitionKey : sourcePartitions) {
+            for (WorkerNodeInfo replica : registry.getNodesForPartition(partitionKey)) {
+                HttpRequest request = HttpRequest.newBuilder(uri(replica, "purgar", params))
+                        .timeout(timeout)
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build();
+                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    // El cambio de dueño ya ocurrió: se sigue con las demás réplicas y se reporta
+                    LOGGER.warning("Migración " + m.id + ": no se pudo purgar " + m.range + " en " + replica.getId()
+                            + ": " + response.body());
+                    m.error = "Purga incompleta en " + replica.getId();
+                }
+            }
+        }
+    }
+
+    private static URI uri(WorkerNodeInfo node, String operacion, Map<String, String> params) {
+        String query = params.entrySet().stream()
+                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+        return URI.create(node.getAddress() + WORKER_PATH + operacion + "?" + query);
+    }
+
+    private static long parseCounter(String body, String name) {
+        for (String line : body.split("\n")) {
+            if (line.startsWith(name + "=")) {
+                return Long.parseLong(line.substring(name.length() + 1).trim());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,35 @@
+package com.parcial.central.services;
+
+import java.util.List;
+
+/**
+ * Decide a qué partición de cuentas ("Cuenta-P1", "Cuenta-P2", ...) pertenece una cuenta.
+ * Se llama en cada solicitud, así que las implementaciones no deben reservar memoria al enrutar.
+ */
+public interface Partitioner {
+
+    String getPartitionKeyForAccount(String accountId);
+
+    List<String> getPartitionKeys();
+
+    static String partitionKey(int index) {
+        return "Cuenta-P" + (index + 1);
+    }
+
+    /**
+     * PARTITIONER=parity (por defecto, reparto original por paridad en 2 particiones) o
+     * PARTITIONER=consistent-hash con PARTITION_COUNT particiones y PARTITION_VIRTUAL_NODES nodos virtuales.
+     * El particionador solo enruta: no mueve datos. Los workers deben tener cargada cada cuenta en la
+     * partición que este elige (ver {@link ParityPartitioner} sobre los datos de ejemplo); cambiarlo
+     * con datos ya cargados exige recargarlos o migrarlos con {@link PartitionRebalancer}.
+     */
+    static Partitioner fromEnvironment() {
+        String type = System.getenv().getOrDefault("PARTITIONER", "parity");
+        if ("consistent-hash".equalsIgnoreCase(type)) {
+            int partitions = Integer.parseInt(System.getenv().getOrDefault("PARTITION_COUNT", "2"));
+            int virtualNodes = Integer.parseInt(System.getenv().getOrDefault("PARTITION_VIRTUAL_NODES", "128"));
+            return new ConsistentHashPartitioner(partitions, virtualNodes);
+        }
+        return new ParityPartitioner();
+    }
+}
@@ -0,0 +1,118 @@
+package com.parcial.central.services;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Sigue las réplicas que quedaron atrás en una escritura con quórum ({@link WriteQuorum}).
+ *
+ * Una réplica está "rezagada" para una cuenta mientras tiene una escritura sin responder, y
+ * "divergente" cuando terminó distinto que el quórum: no aplicó una escritura que el cliente vio
+ * confirmada, o aplicó una que se le informó como fallida. Las lecturas evitan ambas (ver
+ * {@link WorkerNodeRegistry#rankReplicasForRead(String, String)}); las divergentes quedan
+ * anotadas hasta que una reparación las marque con {@link #markRepaired}.
+ */
+public class ReplicaRepairTracker {
+    private static final Logger LOGGER = Logger.getLogger(ReplicaRepairTracker.class.getName());
+
+    // Dirección de nodo -> cuenta -> escrituras sin responder
+    private final Map<String, Map<String, Integer>> lagging = new ConcurrentHashMap<>();
+    // Dirección de nodo -> cuentas que necesitan reparación
+    private final Map<String, Set<String>> divergent = new ConcurrentHashMap<>();
+    private final AtomicLong lateConfirmations = new AtomicLong();
+    private final AtomicLong divergences = new AtomicLong();
+
+    /**
+     * Sigue en segundo plano la escritura aún en curso de una réplica.
+     * @param expectSuccess Resultado del quórum: si la réplica termina distinto, queda divergente.
+     */
+    public void trackPending(String address, CompletableFuture<String> pending, Predicate<String> isSuccess,
+                             boolean expectSuccess, String... accountIds) {
+        Map<String, Integer> accounts = lagging.computeIfAbsent(address, k -> new ConcurrentHashMap<>());
+        for (String accountId : accountIds) {
+            accounts.merge(accountId, 1, Integer::sum);
+        }
+        pending.whenComplete((response, ex) -> {
+            for (String accountId : accountIds) {
+                accounts.computeIfPresent(accountId, (k, count) -> count > 1 ? count - 1 : null);
+            }
+            boolean succeeded = ex == null && response != null && isSuccess.test(response);
+            if (succeeded != expectSuccess) {
+                markDivergent(address, accountIds);
+            } else if (succeeded) {
+                lateConfirmations.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Anota que las cuentas de la réplica no coinciden con el resultado del quórum.
+     */
+    public void markDivergent(String address, String... accountIds) {
+        Set<String> accounts = divergent.computeIfAbsent(address, k -> ConcurrentHashMap.newKeySet());
+        for (String accountId : accountIds) {
+            if (accounts.add(accountId)) {
+                divergences.incrementAndGet();
+            }
+        }
+        LOGGER.warning("Réplica " + address + " divergente para las cuentas " + String.join(", ", accountIds)
+                + "; pendiente de reparación.");
+    }
+
+    public void markRepaired(String address, String accountId) {
+        Set<String> accounts = divergent.get(address);
+        if (accounts != null) {
+            accounts.remove(accountId);
+        }
+    }
+
+    /**
+     * @return true si la réplica tiene escrituras en curso o divergencias para la cuenta.
+     */
+    public boolean isBehind(String address, String accountId) {
+        Map<String, Integer> accounts = lagging.get(address);
+        if (accounts != null && accounts.containsKey(accountId)) {
+            return true;
+        }
+        Set<String> diverged = divergent.get(address);
+        return diverged != null && diverged.contains(accountId);
+    }
+
+    /**
+     * @return true si la réplica tiene escrituras en curso o divergencias para alguna cuenta del rango.
+     */
+    public boolean isBehindInRange(String address, AccountRange range) {
+        Map<String, Integer> accounts = lagging.get(address);
+        if (accounts != null && accounts.keySet().stream().anyMatch(range::contains)) {
+            return true;
+        }
+        Set<String> diverged = divergent.get(address);
+        return diverged != null && diverged.stream().anyMatch(range::contains);
+    }
+
+    public Set<String> getDivergentAccounts(String address) {
+        Set<String> accounts = divergent.get(address);
+        return accounts == null ? Collections.emptySet() : Collections.unmodifiableSet(accounts);
+    }
+
+    public Set<String> getTrackedAddresses() {
+        Set<String> addresses = ConcurrentHashMap.newKeySet();
+        addresses.addAll(lagging.keySet());
+        addresses.addAll(divergent.keySet());
+        return addresses;
+    }
+
+    public int getLaggingCount(String address) {
+        Map<String, Integer> accounts = lagging.get(address);
+        return accounts == null ? 0 : accounts.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public long getLateConfirmations() { return lateConfirmations.get(); }
+    public long getDivergences() { return divergences.get(); }
+}
@@ -0,0 +1,37 @@
+package com.parcial.central.services;
+
+/**
+ * Cómo se replican las transferencias dentro de una partición (REPLICATION_MODE).
+ * Se lee una sola vez, al crear el {@link WorkerNodeRegistry}, y todos los componentes la toman de
+ * ahí ({@link WorkerNodeRegistry#getReplicationMode()}), así no pueden discrepar.
+ */
+public enum ReplicationMode {
+    /** El Central envía la orden a todas las réplicas y confirma con quórum W de N ({@link WriteQuorum}). */
+    QUORUM("quorum"),
+    /** Solo al primario, que la ejecuta y replica el cambio a los backups (ver ReplicationLog en el worker). */
+    PRIMARY_BACKUP("primary-backup");
+
+    private final String nombre;
+
+    ReplicationMode(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * REPLICATION_MODE=quorum (por defecto) o REPLICATION_MODE=primary-backup, sin distinguir mayúsculas.
+     * @throws IllegalArgumentException Con otro valor: el Central no arranca con un modo desconocido.
+     */
+    public static ReplicationMode fromEnvironment() {
+        String valor = System.getenv().getOrDefault("REPLICATION_MODE", QUORUM.nombre).trim();
+        for (ReplicationMode mode : values()) {
+            if (mode.nombre.equalsIgnoreCase(valor)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("REPLICATION_MODE desconocido: " + valor + " (use quorum o primary-backup)");
+    }
+}
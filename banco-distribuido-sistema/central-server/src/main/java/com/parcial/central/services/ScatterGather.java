@@ -0,0 +1,115 @@
+package com.parcial.central.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Envía una solicitud asíncrona a varios destinos y reúne las respuestas sin bloquear ningún hilo:
+ * cada destino tiene su propio plazo y toda la operación tiene un plazo global. Al vencer el plazo
+ * global se devuelve lo que haya llegado; los destinos que faltan se reportan como fallidos
+ * (con TimeoutException) en lugar de asumir un valor por defecto.
+ */
+public final class ScatterGather {
+
+    private ScatterGather() {
+    }
+
+    /**
+     * Resultado de una operación scatter-gather. Cada destino aparece exactamente en uno de los dos mapas.
+     */
+    public static final class Result<K, V> {
+        private final Map<K, V> successes;
+        private final Map<K, Throwable> failures;
+        private final long elapsedMillis;
+
+        Result(Map<K, V> successes, Map<K, Throwable> failures, long elapsedMillis) {
+            this.successes = Collections.unmodifiableMap(successes);
+            this.failures = Collections.unmodifiableMap(failures);
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public Map<K, V> getSuccesses() { return successes; }
+        public Map<K, Throwable> getFailures() { return failures; }
+        public boolean isComplete() { return failures.isEmpty(); }
+        public long getElapsedMillis() { return elapsedMillis; }
+    }
+
+    /**
+     * @param targets          Destinos a consultar (se consultan todos en paralelo).
+     * @param call             Inicia la solicitud a un destino; no debe bloquear. Cancelar el futuro que
+     *                         devuelve debe cancelar la solicitud (ver {@link FutureCancellation}).
+     * @param perTargetTimeoutMs Plazo de cada destino.
+     * @param globalTimeoutMs  Plazo de toda la operación; al vencer se completa con lo recibido.
+     * @return Futuro que siempre completa normalmente, como mucho tras el plazo global.
+     */
+    public static <K, V> CompletableFuture<Result<K, V>> gather(List<K> targets, Function<K, CompletableFuture<V>> call,
+                                                               long perTargetTimeoutMs, long globalTimeoutMs) {
+        long startNanos = System.nanoTime();
+        Map<K, V> successes = new ConcurrentHashMap<>();
+        Map<K, Throwable> failures = new ConcurrentHashMap<>();
+        List<CompletableFuture<V>> requests = new ArrayList<>(targets.size());
+        List<CompletableFuture<Void>> settled = new ArrayList<>(targets.size());
+
+        for (K target : targets) {
+            CompletableFuture<V> request;
+            try {
+                request = call.apply(target);
+            } catch (RuntimeException e) {
+                request = CompletableFuture.failedFuture(e);
+            }
+            requests.add(request);
+            settled.add(request
+                    .orTimeout(perTargetTimeoutMs, TimeUnit.MILLISECONDS)
+                    .handle((value, ex) -> {
+                        if (ex != null) {
+                            failures.put(target, unwrap(ex));
+                        } else if (value == null) {
+                            failures.put(target, new IllegalStateException("Respuesta vacía"));
+                        } else {
+                            successes.put(target, value);
+                        }
+                        return null;
+                    }));
+        }
+
+        return CompletableFuture.allOf(settled.toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, globalTimeoutMs, TimeUnit.MILLISECONDS)
+                .thenApply(ignored -> {
+                    // Copia consistente en el orden de los destinos; lo que llegue después se descarta
+                    Map<K, V> okSnapshot = new LinkedHashMap<>();
+                    Map<K, Throwable> failedSnapshot = new LinkedHashMap<>();
+                    for (int i = 0; i < targets.size(); i++) {
+                        K target = targets.get(i);
+                        V value = successes.get(target);
+                        Throwable failure = failures.get(target);
+                        if (value != null) {
+                            okSnapshot.put(target, value);
+                        } else if (failure != null) {
+                            failedSnapshot.put(target, failure);
+                        } else {
+                            failedSnapshot.put(target, new TimeoutException("Sin respuesta dentro del plazo global de " + globalTimeoutMs + " ms"));
+                            requests.get(i).cancel(true);
+                        }
+                    }
+                    return new Result<>(okSnapshot, failedSnapshot, (System.nanoTime() - startNanos) / 1_000_000);
+                });
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        Throwable cause = ex;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
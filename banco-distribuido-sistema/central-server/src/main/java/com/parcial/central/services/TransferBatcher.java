@@ -0,0 +1,231 @@
+package com.parcial.central.services;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Agrupa en lotes las transferencias dirigidas a la misma partición. El lote es uno solo y se
+ * envía igual, con las mismas transferencias en el mismo orden, a cada réplica destino: todas las
+ * réplicas aplican los cambios en el mismo orden y rechazan las mismas transferencias. Un lote se
+ * envía a /api/worker/transferir-lote cuando junta TRANSFER_LOTE_MAX transferencias o cuando pasan
+ * TRANSFER_LOTE_ESPERA_MS desde la primera; el worker lo aplica en orden en una sola transacción y
+ * responde una línea por transferencia, que completa el futuro de cada una con el mismo texto que
+ * daría /api/worker/transferir. Con TRANSFER_LOTE_MAX=1 cada transferencia va sola, como antes.
+ *
+ * Por los dos caminos el resultado es el mismo: un rechazo de negocio (409 del endpoint individual)
+ * completa el futuro con su texto "ERROR: RECHAZADA_...", y un error técnico del worker (500, o la
+ * línea "ERROR: ERROR - ..." de un lote) lo completa con una excepción, como un fallo del nodo.
+ */
+public class TransferBatcher {
+    private static final Logger LOGGER = Logger.getLogger(TransferBatcher.class.getName());
+    private static final String PATH_INDIVIDUAL = "/api/worker/transferir";
+    private static final String PATH_LOTE = "/api/worker/transferir-lote";
+    private static final String PREFIJO_ERROR_TECNICO = "ERROR: ERROR";
+
+    private final WorkerNodeClient workerNodeClient;
+    private final int maxLote = Math.max(1, Integer.parseInt(System.getenv().getOrDefault("TRANSFER_LOTE_MAX", "32")));
+    private final long esperaMs = Long.parseLong(System.getenv().getOrDefault("TRANSFER_LOTE_ESPERA_MS", "2"));
+    private final ScheduledExecutorService timer;
+    // Destino (partición, réplicas y, en primary-backup, backups) -> lote abierto; protegido por this
+    private final Map<String, Lote> abiertos = new HashMap<>();
+
+    private final AtomicLong lotesEnviados = new AtomicLong();
+    private final AtomicLong transferenciasEnLotes = new AtomicLong();
+    private final AtomicLong individuales = new AtomicLong();
+
+    private static final class Pendiente {
+        final String cuentaOrigen;
+        final String cuentaDestino;
+        final String monto;
+        final List<CompletableFuture<String>> futures = new ArrayList<>(); // Uno por réplica, en el orden del lote
+
+        Pendiente(String cuentaOrigen, String cuentaDestino, String monto, int replicas) {
+            this.cuentaOrigen = cuentaOrigen;
+            this.cuentaDestino = cuentaDestino;
+            this.monto = monto;
+            for (int i = 0; i < replicas; i++) {
+                futures.add(new CompletableFuture<>());
+            }
+        }
+    }
+
+    private static final class Lote {
+        final List<String> addresses;
+        final String backups; // null sin replicación primario-backup
+        final List<Pendiente> transferencias = new ArrayList<>();
+        ScheduledFuture<?> vencimiento;
+
+        Lote(List<String> addresses, String backups) {
+            this.addresses = addresses;
+            this.backups = backups;
+        }
+    }
+
+    public TransferBatcher(WorkerNodeClient workerNodeClient) {
+        this.workerNodeClient = workerNodeClient;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "transfer-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+        LOGGER.info("Lotes de transferencias: máximo " + maxLote + ", espera máxima " + esperaMs + " ms");
+    }
+
+    /**
+     * Encola una transferencia para el siguiente lote hacia la partición.
+     * @param addresses Réplicas destino; todas reciben el mismo lote.
+     * @param backups Direcciones de backup separadas por comas (primario en primary-backup), o null.
+     * @return Un futuro por réplica, en el orden de addresses, con la respuesta de esa réplica para esta
+     *         transferencia ("CONFIRMACIÓN: ..." o "ERROR: ..."). Falla como una solicitud individual si
+     *         el lote no se pudo enviar a esa réplica.
+     */
+    public List<CompletableFuture<String>> submit(String partitionKey, List<String> addresses, String backups,
+                                                  String cuentaOrigen, String cuentaDestino, String monto) {
+        List<String> replicas = List.copyOf(addresses);
+        Pendiente pendiente = new Pendiente(cuentaOrigen, cuentaDestino, monto, replicas.size());
+        if (maxLote == 1) {
+            enviar(List.of(pendiente), replicas, backups);
+            return pendiente.futures;
+        }
+        String clave = partitionKey + "|" + String.join(",", replicas) + (backups == null ? "" : "|" + backups);
+        Lote lleno = null;
+        synchronized (this) {
+            Lote lote = abiertos.get(clave);
+            if (lote == null) {
+                Lote nuevo = new Lote(replicas, backups);
+                nuevo.vencimiento = timer.schedule(() -> vencer(clave, nuevo), esperaMs, TimeUnit.MILLISECONDS);
+                abiertos.put(clave, nuevo);
+                lote = nuevo;
+            }
+            lote.transferencias.add(pendiente);
+            if (lote.transferencias.size() >= maxLote) {
+                abiertos.remove(clave);
+                lote.vencimiento.cancel(false);
+                lleno = lote;
+            }
+        }
+        if (lleno != null) {
+            enviar(lleno.transferencias, lleno.addresses, lleno.backups);
+        }
+        return pendiente.futures;
+    }
+
+    public long getLotesEnviados() { return lotesEnviados.get(); }
+    public long getTransferenciasEnLotes() { return transferenciasEnLotes.get(); }
+    public long getIndividuales() { return individuales.get(); }
+
+    /**
+     * Envía lo que quede en los lotes abiertos y detiene el temporizador.
+     */
+    public void shutdown() {
+        List<Lote> pendientes;
+        synchronized (this) {
+            pendientes = new ArrayList<>(abiertos.values());
+            abiertos.clear();
+        }
+        pendientes.forEach(lote -> enviar(lote.transferencias, lote.addresses, lote.backups));
+        timer.shutdownNow();
+    }
+
+    private void vencer(String clave, Lote lote) {
+        synchronized (this) {
+            if (abiertos.get(clave) != lote) {
+                return; // Ya se envió por tamaño
+            }
+            abiertos.remove(clave);
+        }
+        enviar(lote.transferencias, lote.addresses, lote.backups);
+    }
+
+    private void enviar(List<Pendiente> transferencias, List<String> addresses, String backups) {
+        for (int replica = 0; replica < addresses.size(); replica++) {
+            enviar(transferencias, addresses.get(replica), replica, backups);
+        }
+    }
+
+    private void enviar(List<Pendiente> transferencias, String address, int replica, String backups) {
+        Map<String, String> workerParams = new HashMap<>();
+        if (backups != null) {
+            workerParams.put("backups", backups);
+        }
+        if (transferencias.size() == 1) {
+            // Una sola: el endpoint individual (y el transporte binario, si está activo)
+            Pendiente p = transferencias.get(0);
+            workerParams.put("cuentaOrigen", p.cuentaOrigen);
+            workerParams.put("cuentaDestino", p.cuentaDestino);
+            workerParams.put("monto", p.monto);
+            individuales.incrementAndGet();
+            workerNodeClient.sendPostRequestAsync(address, PATH_INDIVIDUAL, workerParams).whenComplete((response, ex) -> {
+                String rechazo = ex != null ? rechazoDeNegocio(ex) : null;
+                if (rechazo != null) {
+                    p.futures.get(replica).complete(rechazo);
+                } else if (ex != null) {
+                    p.futures.get(replica).completeExceptionally(ex);
+                } else {
+                    p.futures.get(replica).complete(response);
+                }
+            });
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Pendiente p : transferencias) {
+            sb.append(codificar(p.cuentaOrigen)).append('\t')
+              .append(codificar(p.cuentaDestino)).append('\t')
+              .append(codificar(p.monto)).append('\n');
+        }
+        workerParams.put("transferencias", sb.toString());
+        lotesEnviados.incrementAndGet();
+        transferenciasEnLotes.addAndGet(transferencias.size());
+        LOGGER.log(Level.FINE, "Enviando lote de {0} transferencias a {1}", new Object[]{transferencias.size(), address});
+        workerNodeClient.sendPostRequestAsync(address, PATH_LOTE, workerParams).whenComplete((response, ex) -> {
+            if (ex != null) {
+                transferencias.forEach(p -> p.futures.get(replica).completeExceptionally(ex));
+                return;
+            }
+            String[] lineas = response.split("\n");
+            for (int i = 0; i < transferencias.size(); i++) {
+                if (i < lineas.length && lineas[i].startsWith(PREFIJO_ERROR_TECNICO)) {
+                    transferencias.get(i).futures.get(replica).completeExceptionally(
+                            new WorkerResponseException("Transferencia del lote fallida en " + address + ": " + lineas[i], 500, lineas[i]));
+                } else if (i < lineas.length) {
+                    transferencias.get(i).futures.get(replica).complete(lineas[i]);
+                } else {
+                    transferencias.get(i).futures.get(replica).completeExceptionally(new WorkerResponseException(
+                            "Respuesta de lote incompleta de " + address + ": " + lineas.length + " de " + transferencias.size(), 500));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return El texto del rechazo si el worker respondió 409 a la transferencia, o null si es otro fallo.
+     */
+    private static String rechazoDeNegocio(Throwable ex) {
+        Throwable causa = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (causa instanceof WorkerResponseException) {
+            WorkerResponseException respuesta = (WorkerResponseException) causa;
+            if (respuesta.getStatusCode() == 409 && respuesta.getBody() != null) {
+                return respuesta.getBody();
+            }
+        }
+        return null;
+    }
+
+    private static String codificar(String valor) {
+        return URLEncoder.encode(valor, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,388 @@
+package com.parcial.central.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Coordinador de commit en dos fases para transferencias cuya cuenta origen y destino están en
+ * particiones distintas. Participan todas las réplicas de ambas particiones: las de la origen con
+ * rol DEBITO y las de la destino con rol CREDITO (ver /api/worker/2pc en los workers).
+ *
+ * - Fase 1: los "preparar" se envían a la vez a todos los participantes (no en cadena), así la
+ *   transferencia cuesta unos dos round trips: preparar en paralelo y confirmar en paralelo.
+ * - Decisión: COMMIT solo si todos votan SI dentro de DOS_FASES_PREPARE_TIMEOUT_MS. El COMMIT se
+ *   escribe en el {@link DecisionLog} (fsync) ANTES de enviar ningún "confirmar"; el aborto no se
+ *   registra (aborto presunto). Si algún participante votó NO por una regla de negocio (saldo
+ *   insuficiente, cuenta inexistente) el {@link Outcome} lo indica con el mismo texto
+ *   "ERROR: RECHAZADA_..." que daría una transferencia en una sola partición.
+ * - Fase 2: se envía "confirmar" a todos y se responde al cliente al recibir las confirmaciones o al
+ *   vencer DOS_FASES_COMMIT_TIMEOUT_MS: la decisión ya es durable. Los participantes que no
+ *   confirmaron se reintentan en segundo plano (también los recuperados del log tras un reinicio).
+ *   Un 409 al confirmar (el participante no tiene la transacción preparada) no cuenta como confirmado:
+ *   es una inconsistencia que se reporta y se sigue reintentando.
+ * - Consulta de decisión ({@link #decisionFor}): los COMMIT terminados se recuerdan durante la
+ *   retención del log; una transacción más vieja que eso y desconocida se responde DESCONOCIDA, no
+ *   ABORT, porque pudo haberse confirmado.
+ * - Barrera de escritura: la transferencia no termina para la {@link WriteFence} hasta que TODOS los
+ *   participantes confirmaron ({@link Outcome#getApplied()}), aunque el cliente ya tenga su respuesta;
+ *   así una migración no copia un rango con un crédito todavía sin aplicar. Los COMMIT recuperados del
+ *   log toman su propio ticket de la barrera al arrancar y lo liberan al terminar.
+ *
+ * Los workers no mantienen bloqueos de fila entre fases: el débito se reserva al preparar.
+ */
+public class TwoPhaseCommitCoordinator {
+    private static final Logger LOGGER = Logger.getLogger(TwoPhaseCommitCoordinator.class.getName());
+    private static final String WORKER_PATH = "/api/worker/2pc/";
+    private static final String DEBITO = "DEBITO";
+    private static final String CREDITO = "CREDITO";
+
+    public static final String DECISION_COMMIT = "COMMIT";
+    public static final String DECISION_ABORT = "ABORT";
+    public static final String DECISION_PENDIENTE = "PENDIENTE";
+    public static final String DECISION_DESCONOCIDA = "DESCONOCIDA";
+    private static final String PREFIJO_VOTO_NO = "VOTO: NO - ";
+    private static final String PREFIJO_RECHAZO = "RECHAZADA_";
+
+    private static final AtomicLong SECUENCIA_TRANSACCION = new AtomicLong();
+
+    private final WorkerNodeClient workerNodeClient;
+    private final DecisionLog decisionLog;
+    private final long prepareTimeoutMs = Long.parseLong(System.getenv().getOrDefault("DOS_FASES_PREPARE_TIMEOUT_MS", "3000"));
+    private final long commitTimeoutMs = Long.parseLong(System.getenv().getOrDefault("DOS_FASES_COMMIT_TIMEOUT_MS", "3000"));
+    // Transacciones en fase de preparación (todavía sin decisión)
+    private final Set<String> preparing = ConcurrentHashMap.newKeySet();
+    // COMMIT registrado y algún participante aún sin confirmar
+    private final Map<String, UnackedCommit> unacked = new ConcurrentHashMap<>();
+    // COMMIT aplicado por todos -> momento del fin, durante la retención del log
+    private final Map<String, Long> finished = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService retrier;
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong aborts = new AtomicLong();
+
+    /**
+     * Resultado de una transferencia distribuida.
+     */
+    public static final class Outcome {
+        private final String transactionId;
+        private final boolean committed;
+        private final String message;
+        private final String rejection;
+        private final CompletableFuture<Void> applied;
+
+        Outcome(String transactionId, boolean committed, String message, String rejection, CompletableFuture<Void> applied) {
+            this.transactionId = transactionId;
+            this.committed = committed;
+            this.message = message;
+            this.rejection = rejection;
+            this.applied = applied;
+        }
+
+        public String getTransactionId() { return transactionId; }
+        public boolean isCommitted() { return committed; }
+        public String getMessage() { return message; }
+        /** true si se abortó porque un participante votó NO por una regla de negocio. */
+        public boolean isRejected() { return rejection != null; }
+        /** "ERROR: RECHAZADA_... - motivo" del primer voto NO de negocio, o null. */
+        public String getRejection() { return rejection; }
+        /** Completa cuando todos los participantes aplicaron la decisión (de inmediato si se abortó). */
+        public CompletableFuture<Void> getApplied() { return applied; }
+    }
+
+    private static final class Participant {
+        final String address;
+        final String rol;
+
+        Participant(String address, String rol) {
+            this.address = address;
+            this.rol = rol;
+        }
+
+        @Override
+        public String toString() {
+            return rol + "@" + address;
+        }
+    }
+
+    private static final class UnackedCommit {
+        final String transactionId;
+        final Set<Participant> remaining = ConcurrentHashMap.newKeySet();
+        final Set<Participant> conflicting = ConcurrentHashMap.newKeySet(); // Respondieron 409 (ya reportados)
+        final CompletableFuture<Void> applied = new CompletableFuture<>();
+
+        UnackedCommit(String transactionId, List<Participant> participants) {
+            this.transactionId = transactionId;
+            this.remaining.addAll(participants);
+        }
+    }
+
+    public TwoPhaseCommitCoordinator(WorkerNodeClient workerNodeClient, DecisionLog decisionLog, WriteFence writeFence) {
+        this.workerNodeClient = workerNodeClient;
+        this.decisionLog = decisionLog;
+        decisionLog.getRecoveredCommits().forEach((id, fields) -> {
+            List<Participant> participants = participantsFromLog(fields);
+            if (participants.isEmpty()) {
+                decisionLog.logEnd(id, System.currentTimeMillis()); // Registro sin participantes legibles: nada que reenviar
+                finished.put(id, System.currentTimeMillis());
+            } else {
+                UnackedCommit pending = new UnackedCommit(id, participants);
+                unacked.put(id, pending);
+                // Hasta que se aplique, las cuentas de la transferencia cuentan como escritura en curso
+                writeFence.admit(fields[0], fields[1])
+                        .thenAccept(ticket -> pending.applied.whenComplete((v, ex) -> writeFence.release(ticket)));
+            }
+        });
+        finished.putAll(decisionLog.getRecoveredEnds());
+        this.retrier = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "2pc-reintentos");
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Long.parseLong(System.getenv().getOrDefault("DOS_FASES_REINTENTO_S", "5"));
+        this.retrier.scheduleWithFixedDelay(() -> {
+            retryUnacked();
+            forgetExpired();
+        }, 0, intervalo, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Ejecuta la transferencia entre particiones. El futuro siempre completa normalmente.
+     */
+    public CompletableFuture<Outcome> transfer(String cuentaOrigen, String cuentaDestino, String monto,
+                                               List<WorkerNodeInfo> replicasOrigen, List<WorkerNodeInfo> replicasDestino) {
+        String transactionId = "2PC-" + System.currentTimeMillis() + "-" + SECUENCIA_TRANSACCION.incrementAndGet();
+        List<Participant> participants = new ArrayList<>();
+        replicasOrigen.forEach(node -> participants.add(new Participant(node.getAddress(), DEBITO)));
+        replicasDestino.forEach(node -> participants.add(new Participant(node.getAddress(), CREDITO)));
+        preparing.add(transactionId);
+
+        List<CompletableFuture<String>> votes = participants.stream()
+                .map(p -> prepare(transactionId, p, cuentaOrigen, cuentaDestino, monto))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(votes.toArray(new CompletableFuture[0])).thenCompose(ignored -> {
+            List<String> rechazos = new ArrayList<>();
+            String rechazoNegocio = null;
+            for (int i = 0; i < participants.size(); i++) {
+                String vote = votes.get(i).join();
+                if (vote != null) {
+                    rechazos.add(participants.get(i) + ": " + vote);
+                    if (rechazoNegocio == null) {
+                        rechazoNegocio = businessRejection(vote);
+                    }
+                }
+            }
+            if (!rechazos.isEmpty()) {
+                return CompletableFuture.completedFuture(abort(transactionId, participants, cuentaOrigen, cuentaDestino, monto,
+                        String.join("; ", rechazos), rechazoNegocio));
+            }
+            return commit(transactionId, participants, cuentaOrigen, cuentaDestino, monto);
+        });
+    }
+
+    /**
+     * Decisión de una transacción, para los workers que no la recibieron.
+     */
+    public String decisionFor(String transactionId) {
+        // Primero "preparing": al decidir COMMIT se agrega a "unacked" antes de quitarla de "preparing",
+        // y al terminar se agrega a "finished" antes de quitarla de "unacked"
+        if (preparing.contains(transactionId)) {
+            return DECISION_PENDIENTE;
+        }
+        if (unacked.containsKey(transactionId) || finished.containsKey(transactionId)) {
+            return DECISION_COMMIT;
+        }
+        // Aborto presunto solo dentro de la retención: más atrás ya no se recuerdan los COMMIT terminados
+        long inicio = startMillis(transactionId);
+        return inicio > System.currentTimeMillis() - decisionLog.getRetencionMs() ? DECISION_ABORT : DECISION_DESCONOCIDA;
+    }
+
+    public long getCommits() { return commits.get(); }
+    public long getAborts() { return aborts.get(); }
+    public int getUnackedCount() { return unacked.size(); }
+
+    public void shutdown() {
+        retrier.shutdownNow();
+        decisionLog.close();
+    }
+
+    /**
+     * @return null si el participante votó SI; si no, el motivo del rechazo.
+     */
+    private CompletableFuture<String> prepare(String transactionId, Participant p, String cuentaOrigen,
+                                              String cuentaDestino, String monto) {
+        return workerNodeClient.sendPostRequestAsync(p.address, WORKER_PATH + "preparar",
+                        phaseParams(transactionId, p.rol, cuentaOrigen, cuentaDestino, monto))
+                .orTimeout(prepareTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((response, ex) -> {
+                    if (ex != null) {
+                        return "sin respuesta (" + rootMessage(ex) + ")";
+                    }
+                    return response.startsWith("VOTO: SI") ? null : response;
+                });
+    }
+
+    private CompletableFuture<Outcome> commit(String transactionId, List<Participant> participants,
+                                              String cuentaOrigen, String cuentaDestino, String monto) {
+        return decisionLog.logCommit(transactionId, cuentaOrigen, cuentaDestino, monto,
+                        addresses(participants, DEBITO), addresses(participants, CREDITO))
+                .handle((logged, ex) -> ex)
+                .thenCompose(logFailure -> {
+                    if (logFailure != null) {
+                        // No se pudo registrar la decisión: no se envió ningún confirmar, así que se aborta
+                        LOGGER.log(Level.SEVERE, "2PC " + transactionId + ": no se pudo registrar el COMMIT", logFailure);
+                        return CompletableFuture.completedFuture(abort(transactionId, participants, cuentaOrigen, cuentaDestino,
+                                monto, "Error al registrar la decisión: " + rootMessage(logFailure), null));
+                    }
+                    UnackedCommit pending = new UnackedCommit(transactionId, participants);
+                    unacked.put(transactionId, pending);
+                    preparing.remove(transactionId);
+                    commits.incrementAndGet();
+                    List<CompletableFuture<Void>> acks = participants.stream()
+                            .map(p -> sendCommit(pending, p))
+                            .collect(Collectors.toList());
+                    return CompletableFuture.allOf(acks.toArray(new CompletableFuture[0]))
+                            .completeOnTimeout(null, commitTimeoutMs, TimeUnit.MILLISECONDS)
+                            .thenApply(v -> {
+                                if (!pending.remaining.isEmpty()) {
+                                    LOGGER.warning("2PC " + transactionId + ": confirmada; pendiente de aplicar en "
+                                            + pending.remaining + " (se reintenta en segundo plano)");
+                                }
+                                return new Outcome(transactionId, true, "Transferencia distribuida " + transactionId + " realizada.",
+                                        null, pending.applied);
+                            });
+                });
+    }
+
+    private Outcome abort(String transactionId, List<Participant> participants, String cuentaOrigen,
+                          String cuentaDestino, String monto, String motivo, String rechazo) {
+        preparing.remove(transactionId);
+        aborts.incrementAndGet();
+        LOGGER.info("2PC " + transactionId + ": ABORT (" + motivo + ")");
+        // Mejor esfuerzo: el que no reciba el abortar lo resolverá consultando la decisión (aborto presunto)
+        for (Participant p : participants) {
+            workerNodeClient.sendPostRequestAsync(p.address, WORKER_PATH + "abortar",
+                            phaseParams(transactionId, p.rol, cuentaOrigen, cuentaDestino, monto))
+                    .exceptionally(ex -> {
+                        LOGGER.log(Level.WARNING, "2PC " + transactionId + ": abortar no llegó a " + p + ": " + rootMessage(ex));
+                        return null;
+                    });
+        }
+        return new Outcome(transactionId, false, motivo, rechazo, CompletableFuture.completedFuture(null));
+    }
+
+    private CompletableFuture<Void> sendCommit(UnackedCommit pending, Participant p) {
+        Map<String, String> params = Map.of("idTransaccion", pending.transactionId, "rol", p.rol);
+        return workerNodeClient.sendPostRequestAsync(p.address, WORKER_PATH + "confirmar", params)
+                .handle((response, ex) -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof WorkerResponseException && ((WorkerResponseException) cause).getStatusCode() == 409) {
+                        // El participante no tiene la transacción preparada (la abortó por su cuenta o no la
+                        // conoce): la decisión COMMIT ya es durable, así que no se da por aplicada. Queda
+                        // pendiente (y la barrera retenida) hasta que se corrija a mano; se reporta una vez.
+                        if (pending.conflicting.add(p)) {
+                            LOGGER.severe("2PC " + pending.transactionId + ": " + p + " no puede confirmar un COMMIT registrado: "
+                                    + cause.getMessage());
+                        }
+                        return null;
+                    }
+                    if (cause == null) {
+                        pending.remaining.remove(p);
+                        if (pending.remaining.isEmpty() && unacked.containsKey(pending.transactionId)) {
+                            long fin = System.currentTimeMillis();
+                            finished.put(pending.transactionId, fin);
+                            if (unacked.remove(pending.transactionId, pending)) {
+                                decisionLog.logEnd(pending.transactionId, fin);
+                                pending.applied.complete(null);
+                            }
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private void retryUnacked() {
+        for (UnackedCommit pending : unacked.values()) {
+            for (Participant p : new ArrayList<>(pending.remaining)) {
+                sendCommit(pending, p);
+            }
+        }
+    }
+
+    private void forgetExpired() {
+        long limite = System.currentTimeMillis() - decisionLog.getRetencionMs();
+        finished.values().removeIf(fin -> fin < limite);
+    }
+
+    /**
+     * @return "ERROR: RECHAZADA_... - motivo" si el voto es un NO de negocio, o null.
+     */
+    private static String businessRejection(String vote) {
+        if (vote.startsWith(PREFIJO_VOTO_NO) && vote.startsWith(PREFIJO_RECHAZO, PREFIJO_VOTO_NO.length())) {
+            return "ERROR: " + vote.substring(PREFIJO_VOTO_NO.length());
+        }
+        return null;
+    }
+
+    /**
+     * @return El momento de creación codificado en el id ("2PC-<ms>-<secuencia>"), o 0 si no lo tiene.
+     */
+    private static long startMillis(String transactionId) {
+        String[] parts = transactionId.split("-");
+        if (parts.length >= 3 && "2PC".equals(parts[0])) {
+            try {
+                return Long.parseLong(parts[1]);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    private static Map<String, String> phaseParams(String transactionId, String rol, String cuentaOrigen,
+                                                   String cuentaDestino, String monto) {
+        boolean debito = DEBITO.equals(rol);
+        return Map.of(
+                "idTransaccion", transactionId,
+                "rol", rol,
+                "cuenta", debito ? cuentaOrigen : cuentaDestino,
+                "contraparte", debito ? cuentaDestino : cuentaOrigen,
+                "monto", monto);
+    }
+
+    private static String addresses(List<Participant> participants, String rol) {
+        return participants.stream().filter(p -> p.rol.equals(rol)).map(p -> p.address).collect(Collectors.joining(","));
+    }
+
+    /**
+     * Reconstruye los participantes de un COMMIT del log: campos (origen, destino, monto, débitos, créditos).
+     */
+    private static List<Participant> participantsFromLog(String[] fields) {
+        List<Participant> participants = new ArrayList<>();
+        if (fields.length >= 5) {
+            Arrays.stream(fields[3].split(",")).filter(a -> !a.isEmpty()).forEach(a -> participants.add(new Participant(a, DEBITO)));
+            Arrays.stream(fields[4].split(",")).filter(a -> !a.isEmpty()).forEach(a -> participants.add(new Participant(a, CREDITO)));
+        }
+        return participants;
+    }
+
+    private static String rootMessage(Throwable ex) {
+        Throwable cause = ex;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getClass().getSimpleName() + (cause.getMessage() != null ? ": " + cause.getMessage() : "");
+    }
+}
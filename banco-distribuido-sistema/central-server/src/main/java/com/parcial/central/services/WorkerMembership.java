@@ -0,0 +1,158 @@
+package com.parcial.central.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Membresía de Nodos Trabajadores del {@link WorkerNodeRegistry}, cargada de (en este orden):
+ * - WORKERS_ARCHIVO: archivo con un nodo por línea (p. ej. un ConfigMap montado como volumen).
+ *   Se relee cuando cambia, sin reiniciar el Central (ver {@link #reloadIfChanged()}).
+ * - WORKERS: la misma lista en una variable de entorno, con los nodos separados por ';'.
+ * - La lista por defecto que recibe el constructor.
+ * Cada nodo es "id direccion particiones", p. ej.
+ * "worker-db-0 http://worker-db-0.worker-db-svc.banco.svc.cluster.local:8081 Cliente-P1,Cuenta-P1,Transacciones-P1".
+ * Las líneas vacías y las que empiezan por '#' se ignoran.
+ *
+ * Al recargar se agregan los nodos nuevos, se actualizan los que cambiaron y se retiran los que
+ * ya no están. Solo se retiran nodos que vinieron de esta configuración: los registrados en caliente
+ * por /api/admin/workers (destinos de un rebalanceo) se conservan. Una lista vacía o ilegible no
+ * retira nada: se mantiene la membresía anterior.
+ */
+public class WorkerMembership {
+    private static final Logger LOGGER = Logger.getLogger(WorkerMembership.class.getName());
+
+    private final WorkerNodeRegistry registry;
+    private final Path file;
+    private final String fallback;
+    // Nodos aplicados desde la configuración: id -> "direccion particiones"
+    private Map<String, String> applied = new LinkedHashMap<>();
+    private long fileModifiedMillis = -1;
+    private long fileSize = -1;
+    private long reloads = 0;
+
+    public WorkerMembership(WorkerNodeRegistry registry, String defaultWorkers) {
+        this.registry = registry;
+        String archivo = System.getenv().getOrDefault("WORKERS_ARCHIVO", "");
+        this.file = archivo.isBlank() ? null : Path.of(archivo);
+        String env = System.getenv().getOrDefault("WORKERS", "");
+        this.fallback = env.isBlank() ? defaultWorkers : env.replace(';', '\n');
+    }
+
+    /**
+     * Carga inicial: el archivo si existe; si no, WORKERS o la lista por defecto.
+     */
+    public synchronized void load() {
+        if (file != null && Files.isRegularFile(file)) {
+            reload();
+            return;
+        }
+        if (file != null) {
+            LOGGER.warning("No existe el archivo de membresía " + file + "; se usa WORKERS o la lista por defecto hasta que aparezca.");
+        }
+        apply(fallback, "configuración inicial");
+    }
+
+    /**
+     * Relee el archivo si cambió su fecha de modificación o su tamaño. Lo llama {@link HealthProber}
+     * antes de cada ronda de sondeo.
+     */
+    public synchronized void reloadIfChanged() {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (!Files.isRegularFile(file)) {
+                return;
+            }
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            long size = Files.size(file);
+            if (modified != fileModifiedMillis || size != fileSize) {
+                reload();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "No se pudo consultar el archivo de membresía " + file, e);
+        }
+    }
+
+    /**
+     * Relee la membresía sin mirar si cambió.
+     * @return false si no hay archivo de membresía o no se pudo leer.
+     */
+    public synchronized boolean reload() {
+        if (file == null) {
+            return false;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            long size = Files.size(file);
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            fileModifiedMillis = modified;
+            fileSize = size;
+            return apply(content, file.toString());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "No se pudo leer el archivo de membresía " + file, e);
+            return false;
+        }
+    }
+
+    // Debe llamarse con el monitor tomado
+    private boolean apply(String content, String source) {
+        Map<String, String> configured = new LinkedHashMap<>();
+        for (String line : content.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            List<String> fields = Arrays.stream(trimmed.split("\\s+")).collect(Collectors.toList());
+            if (fields.size() != 3) {
+                LOGGER.warning("Membresía (" + source + "): línea ignorada, se esperaba 'id direccion particiones': " + trimmed);
+                continue;
+            }
+            configured.put(fields.get(0), fields.get(1) + " " + fields.get(2));
+        }
+        if (configured.isEmpty()) {
+            LOGGER.warning("Membresía (" + source + ") sin nodos válidos; se mantiene la anterior.");
+            return false;
+        }
+
+        int added = 0;
+        int updated = 0;
+        for (Map.Entry<String, String> entry : configured.entrySet()) {
+            String previous = applied.get(entry.getKey());
+            if (Objects.equals(previous, entry.getValue())) {
+                continue;
+            }
+            String[] fields = entry.getValue().split(" ");
+            registry.addWorkerNode(entry.getKey(), fields[0], fields[1]);
+            if (previous == null) {
+                added++;
+            } else {
+                updated++;
+            }
+        }
+        Set<String> gone = new HashSet<>(applied.keySet());
+        gone.removeAll(configured.keySet());
+        gone.forEach(registry::removeWorkerNode);
+        applied = configured;
+        reloads++;
+        LOGGER.info("Membresía cargada de " + source + ": " + configured.size() + " nodos (" + added + " nuevos, "
+                + updated + " actualizados, " + gone.size() + " retirados)");
+        return true;
+    }
+
+    public synchronized int getConfiguredCount() { return applied.size(); }
+    public synchronized long getReloads() { return reloads; }
+    public Path getFile() { return file; }
+}
@@ -1,16 +1,29 @@
 package com.parcial.central.services;
 
+import com.parcial.common.BinaryProtocol;
+
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService; // Usar ExecutorService para llamadas asíncronas
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -18,20 +31,71 @@ import java.util.stream.Collectors;
 /**
  * Cliente HTTP para que el Nodo Central se comunique con los Nodos Trabajadores.
  * Utiliza HttpClient de Java 11+ y un ExecutorService para gestionar las llamadas asíncronas.
+ * Con el transporte BINARY, saldo/transferir/arqueoParcial viajan por el protocolo binario
+ * ({@link BinaryWorkerClient}) y la respuesta se traduce al mismo texto que devolvería el
+ * endpoint HTTP, así los handlers no cambian. Lo que no se puede codificar sigue por HTTP.
+ * Cada nodo tiene un {@link NodeRequestLimiter}: como máximo WORKER_MAX_IN_FLIGHT solicitudes
+ * (y por tanto conexiones HTTP/1.1 keep-alive) en vuelo, y una cola acotada para el resto.
+ * Antes del limitador pasa el {@link CircuitBreaker} del nodo: con el circuito abierto la llamada
+ * falla al instante con {@link CircuitOpenException} en vez de esperar los timeouts.
  */
 public class WorkerNodeClient {
     private static final Logger LOGGER = Logger.getLogger(WorkerNodeClient.class.getName());
+
+    public enum Transport { HTTP, BINARY }
+
     private final HttpClient httpClient;
     private final ExecutorService executorService; // Pool de hilos para las llamadas HTTP salientes
+    private final BinaryWorkerClient binaryClient; // null con transporte HTTP
+    private final WorkerNodeRegistry registry; // Recibe las estadísticas por nodo; puede ser null
+    // Un limitador por dirección de nodo (las réplicas que comparten dirección comparten límite)
+    private final Map<String, NodeRequestLimiter> nodeLimiters = new ConcurrentHashMap<>();
+    private final int maxInFlightPerNode;
+    private final int maxQueuedPerNode;
+    private final long keepAliveMillis;
 
     public WorkerNodeClient(ExecutorService executorService) {
+        this(executorService, (WorkerNodeRegistry) null);
+    }
+
+    public WorkerNodeClient(ExecutorService executorService, WorkerNodeRegistry registry) {
+        this(executorService, Transport.valueOf(System.getenv().getOrDefault("WORKER_TRANSPORT", "HTTP").toUpperCase()), registry);
+    }
+
+    public WorkerNodeClient(ExecutorService executorService, Transport transport) {
+        this(executorService, transport, null);
+    }
+
+    public WorkerNodeClient(ExecutorService executorService, Transport transport, WorkerNodeRegistry registry) {
         this.executorService = executorService;
+        this.registry = registry;
+        this.maxInFlightPerNode = Integer.parseInt(System.getenv().getOrDefault("WORKER_MAX_IN_FLIGHT", "16"));
+        this.maxQueuedPerNode = Integer.parseInt(System.getenv().getOrDefault("WORKER_MAX_QUEUED", "256"));
+        this.keepAliveMillis = Long.parseLong(System.getenv().getOrDefault("WORKER_HTTP_KEEPALIVE_S", "30")) * 1000L;
+        // El HttpClient del JDK lee el keep-alive de su pool de conexiones de esta propiedad (una sola vez)
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(keepAliveMillis / 1000L));
+        }
+        // HTTP_2 solo multiplexa si el worker acepta h2c; el HttpServer del JDK no lo hace y el cliente
+        // vuelve a HTTP/1.1 tras el intento de upgrade. Por eso el valor por defecto es HTTP_1_1.
+        HttpClient.Version httpVersion = HttpClient.Version.valueOf(System.getenv().getOrDefault("WORKER_HTTP_VERSION", "HTTP_1_1"));
         this.httpClient = HttpClient.newBuilder()
                 .executor(this.executorService) // HttpClient usará este pool para operaciones asíncronas
-                .version(HttpClient.Version.HTTP_1_1)
+                .version(httpVersion)
                 .connectTimeout(Duration.ofSeconds(5))
                 .build();
-        LOGGER.info("WorkerNodeClient inicializado con ExecutorService dedicado.");
+        BinaryWorkerClient binary = null;
+        if (transport == Transport.BINARY) {
+            int binaryPort = Integer.parseInt(System.getenv().getOrDefault("WORKER_BINARY_PORT", "9091"));
+            try {
+                binary = new BinaryWorkerClient(binaryPort, executorService);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "No se pudo iniciar el transporte binario, se usará HTTP", e);
+            }
+        }
+        this.binaryClient = binary;
+        LOGGER.info("WorkerNodeClient inicializado con ExecutorService dedicado (transporte: "
+                + (binaryClient != null ? Transport.BINARY : Transport.HTTP) + ").");
     }
 
     /**
@@ -43,6 +107,23 @@ public class WorkerNodeClient {
      * @return CompletableFuture que contendrá la respuesta del trabajador como String.
      */
     public CompletableFuture<String> sendGetRequestAsync(String workerNodeAddress, String path, Map<String, String> params) {
+        if (saturado()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Pool de llamadas salientes lleno; solicitud a " + workerNodeAddress + " no enviada"));
+        }
+        if (!admit(workerNodeAddress)) {
+            return CompletableFuture.failedFuture(new CircuitOpenException(workerNodeAddress));
+        }
+        return submitRecorded(workerNodeAddress, () -> doGetRequest(workerNodeAddress, path, params));
+    }
+
+    private CompletableFuture<String> doGetRequest(String workerNodeAddress, String path, Map<String, String> params) {
+        if (binaryClient != null) {
+            CompletableFuture<String> binaryFuture = sendBinaryGet(workerNodeAddress, path, params);
+            if (binaryFuture != null) {
+                return binaryFuture;
+            }
+        }
         String queryString = params.entrySet().stream()
                 .map(entry -> URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8))
                 .collect(Collectors.joining("&"));
@@ -57,16 +138,17 @@ public class WorkerNodeClient {
         LOGGER.log(Level.INFO, "Enviando GET asíncrono a {0} (hilo: {1})", new Object[]{uri, Thread.currentThread().getName()});
 
         // sendAsync usa el executor del HttpClient (que configuramos nosotros) o el default.
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        CompletableFuture<HttpResponse<String>> root = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        return FutureCancellation.propagate(root
                 .thenApply(response -> {
                     LOGGER.log(Level.INFO, "Respuesta de {0}: {1} (hilo: {2})", new Object[]{uri, response.statusCode(), Thread.currentThread().getName()});
                     if (response.statusCode() >= 200 && response.statusCode() < 300) {
                         return response.body();
                     } else {
                         // En un escenario real, lanzar una excepción más específica.
-                        throw new RuntimeException("Solicitud GET fallida a " + uri + " con estado: " + response.statusCode() + " Body: " + response.body());
+                        throw new WorkerResponseException("Solicitud GET fallida a " + uri + " con estado: " + response.statusCode() + " Body: " + response.body(), response.statusCode(), response.body());
                     }
-                });
+                }), root);
     }
 
     /**
@@ -78,6 +160,23 @@ public class WorkerNodeClient {
      * @return CompletableFuture que contendrá la respuesta del trabajador como String.
      */
     public CompletableFuture<String> sendPostRequestAsync(String workerNodeAddress, String path, Map<String, String> formData) {
+        if (saturado()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException(
+                    "Pool de llamadas salientes lleno; solicitud a " + workerNodeAddress + " no enviada"));
+        }
+        if (!admit(workerNodeAddress)) {
+            return CompletableFuture.failedFuture(new CircuitOpenException(workerNodeAddress));
+        }
+        return submitRecorded(workerNodeAddress, () -> doPostRequest(workerNodeAddress, path, formData));
+    }
+
+    private CompletableFuture<String> doPostRequest(String workerNodeAddress, String path, Map<String, String> formData) {
+        if (binaryClient != null) {
+            CompletableFuture<String> binaryFuture = sendBinaryPost(workerNodeAddress, path, formData);
+            if (binaryFuture != null) {
+                return binaryFuture;
+            }
+        }
         String formBody = formData.entrySet().stream()
                 .map(entry -> URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8))
                 .collect(Collectors.joining("&"));
@@ -92,19 +191,168 @@ public class WorkerNodeClient {
         
         LOGGER.log(Level.INFO, "Enviando POST asíncrono a {0} con form data: {1} (hilo: {2})", new Object[]{uri, formBody, Thread.currentThread().getName()});
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        CompletableFuture<HttpResponse<String>> root = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+        return FutureCancellation.propagate(root
                 .thenApply(response -> {
                     LOGGER.log(Level.INFO, "Respuesta de {0}: {1} (hilo: {2})", new Object[]{uri, response.statusCode(), Thread.currentThread().getName()});
                     if (response.statusCode() >= 200 && response.statusCode() < 300) {
                         return response.body();
                     } else {
-                        throw new RuntimeException("Solicitud POST fallida a " + uri + " con estado: " + response.statusCode() + " Body: " + response.body());
+                        throw new WorkerResponseException("Solicitud POST fallida a " + uri + " con estado: " + response.statusCode() + " Body: " + response.body(), response.statusCode(), response.body());
                     }
-                });
+                }), root);
     }
     
+    /**
+     * Con la cola del pool de llamadas salientes llena la solicitud se rechaza antes de salir (el handler
+     * responde 503) en vez de encolarla sin límite. No cuenta como fallo del nodo: es capacidad local.
+     */
+    private boolean saturado() {
+        return executorService instanceof ThreadPoolExecutor
+                && ((ThreadPoolExecutor) executorService).getQueue().remainingCapacity() == 0;
+    }
+
+    // Sin registro (cliente de pruebas o herramientas) no hay circuitos
+    private boolean admit(String workerNodeAddress) {
+        return registry == null || registry.breakerFor(workerNodeAddress).tryAcquire();
+    }
+
+    /**
+     * Envía la solicitud por el {@link NodeRequestLimiter} del nodo y alimenta las {@link NodeStats}
+     * del registro (latencia, en vuelo, errores) y el {@link CircuitBreaker} del nodo con ella.
+     * Un 4xx es una respuesta normal del nodo; solo los 5xx y los fallos de red cuentan como error.
+     * La latencia se mide desde que la solicitud sale, no desde que entró en la cola del limitador, y
+     * un rechazo por cola llena se ignora: la espera y la saturación son del Central, no del nodo.
+     */
+    private CompletableFuture<String> submitRecorded(String workerNodeAddress, Supplier<CompletableFuture<String>> call) {
+        NodeRequestLimiter limiter = limiterFor(workerNodeAddress);
+        if (registry == null) {
+            return limiter.submit(call);
+        }
+        NodeStats stats = registry.statsFor(workerNodeAddress);
+        CircuitBreaker breaker = registry.breakerFor(workerNodeAddress);
+        stats.onStart();
+        AtomicLong startNanos = new AtomicLong();
+        CompletableFuture<String> future = limiter.submit(() -> {
+            startNanos.set(System.nanoTime());
+            return call.get();
+        });
+        return FutureCancellation.propagate(future.whenComplete((response, ex) -> {
+            long latencyNanos = System.nanoTime() - startNanos.get();
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause == null) {
+                stats.onSuccess(latencyNanos);
+                breaker.onSuccess(latencyNanos);
+            } else if (cause instanceof CancellationException || cause instanceof RejectedExecutionException) {
+                stats.onCancel();
+                breaker.onIgnored();
+            } else if (cause instanceof WorkerResponseException && !((WorkerResponseException) cause).isNodeFailure()) {
+                stats.onSuccess(latencyNanos);
+                breaker.onSuccess(latencyNanos);
+            } else {
+                stats.onFailure(latencyNanos);
+                breaker.onFailure(latencyNanos);
+            }
+        }), future);
+    }
+
+    private NodeRequestLimiter limiterFor(String workerNodeAddress) {
+        return nodeLimiters.computeIfAbsent(workerNodeAddress,
+                address -> new NodeRequestLimiter(address, maxInFlightPerNode, maxQueuedPerNode, keepAliveMillis));
+    }
+
+    /**
+     * @return Los limitadores por nodo, para exponer sus métricas.
+     */
+    public Collection<NodeRequestLimiter> getNodeLimiters() {
+        return nodeLimiters.values();
+    }
+
+    /**
+     * @return El futuro de la solicitud binaria, o null si el path o los parámetros no tienen
+     *         codificación binaria (el llamador usa HTTP).
+     */
+    private CompletableFuture<String> sendBinaryGet(String workerNodeAddress, String path, Map<String, String> params) {
+        switch (path) {
+            case "/api/worker/saldo": {
+                long cuenta = BinaryProtocol.encodeCuenta(params.get("cuentaId"));
+                if (cuenta < 0) {
+                    return null;
+                }
+                CompletableFuture<ByteBuffer> root = binaryClient.request(workerNodeAddress, BinaryProtocol.OP_SALDO, cuenta);
+                return FutureCancellation.propagate(root
+                        .thenApply(response -> {
+                            checkStatus(response, workerNodeAddress, "SALDO");
+                            return String.valueOf(BinaryProtocol.centimosToDouble(response.getLong()));
+                        }), root);
+            }
+            case "/api/worker/arqueoParcial": {
+                CompletableFuture<ByteBuffer> root = binaryClient.request(workerNodeAddress, BinaryProtocol.OP_ARQUEO);
+                return FutureCancellation.propagate(root
+                        .thenApply(response -> {
+                            checkStatus(response, workerNodeAddress, "ARQUEO");
+                            return String.valueOf(BinaryProtocol.centimosToDouble(response.getLong()));
+                        }), root);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private CompletableFuture<String> sendBinaryPost(String workerNodeAddress, String path, Map<String, String> formData) {
+        if (!"/api/worker/transferir".equals(path) || formData.containsKey("backups")) {
+            return null; // La orden al primario con su lista de backups no tiene equivalente binario
+        }
+        long origen = BinaryProtocol.encodeCuenta(formData.get("cuentaOrigen"));
+        long destino = BinaryProtocol.encodeCuenta(formData.get("cuentaDestino"));
+        long montoCentimos;
+        try {
+            montoCentimos = new BigDecimal(formData.get("monto")).movePointRight(2).longValueExact();
+        } catch (RuntimeException e) {
+            return null; // Monto no representable en céntimos: el worker lo valida por HTTP
+        }
+        if (origen < 0 || destino < 0) {
+            return null;
+        }
+        CompletableFuture<ByteBuffer> root = binaryClient.request(workerNodeAddress, BinaryProtocol.OP_TRANSFERIR, origen, destino, montoCentimos);
+        return FutureCancellation.propagate(root
+                .thenApply(response -> {
+                    checkStatus(response, workerNodeAddress, "TRANSFERIR");
+                    String transaccionId = BinaryProtocol.getString(response);
+                    return "CONFIRMACIÓN: Transferencia " + transaccionId + " realizada.";
+                }), root);
+    }
+
+    /**
+     * Lee el status de una respuesta binaria y deja el buffer en el payload.
+     * Igual que un código HTTP no 2xx, un status distinto de OK se lanza como excepción.
+     */
+    private static void checkStatus(ByteBuffer response, String workerNodeAddress, String operacion) {
+        byte status = response.get();
+        if (status != BinaryProtocol.STATUS_OK) {
+            String mensaje = BinaryProtocol.getString(response);
+            // Un rechazo llega como "ESTADO - detalle": el cuerpo es el mismo texto que daría el endpoint HTTP
+            String body = status == BinaryProtocol.STATUS_RECHAZADA ? "ERROR: " + mensaje : mensaje;
+            throw new WorkerResponseException("Solicitud binaria " + operacion + " fallida a " + workerNodeAddress
+                    + " con estado: " + status + " Body: " + mensaje, toHttpStatus(status), body);
+        }
+    }
+
+    // Mismo código que devolvería el endpoint HTTP equivalente del worker
+    private static int toHttpStatus(byte status) {
+        switch (status) {
+            case BinaryProtocol.STATUS_NO_ENCONTRADA: return 404;
+            case BinaryProtocol.STATUS_SOLICITUD_INVALIDA: return 400;
+            case BinaryProtocol.STATUS_RECHAZADA: return 409;
+            default: return 500;
+        }
+    }
+
     // Método para cerrar el ExecutorService cuando el servidor se detiene
     public void shutdown() {
+        if (binaryClient != null) {
+            binaryClient.shutdown();
+        }
         LOGGER.info("Cerrando ExecutorService de WorkerNodeClient...");
         executorService.shutdown();
         try {
@@ -1,16 +1,30 @@
 package com.parcial.central.services;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Registra y gestiona la información sobre los Nodos Trabajadores disponibles.
  * Incluye sus direcciones y las particiones de datos que manejan.
  * En un sistema real, esto podría integrarse con un servicio de descubrimiento.
+ * También guarda las {@link NodeStats} de cada nodo (las alimenta {@link WorkerNodeClient}) y con
+ * ellas ordena las réplicas para las lecturas, de modo que las lentas o con errores se evitan solas.
+ * Los rangos de cuentas migrados en línea ({@link PartitionRebalancer}) se asignan con
+ * {@link #reassignRange} y tienen prioridad sobre el particionador.
+ * La membresía puede cambiar en caliente ({@link WorkerMembership}, {@link #addWorkerNode},
+ * {@link #removeWorkerNode}); la salud de cada nodo ({@link NodeHealth}) la actualiza {@link HealthProber}.
  */
 public class WorkerNodeRegistry {
     private static final Logger LOGGER = Logger.getLogger(WorkerNodeRegistry.class.getName());
@@ -18,44 +32,279 @@ public class WorkerNodeRegistry {
     private final Map<String, WorkerNodeInfo> workerNodes = new ConcurrentHashMap<>();
     // Mapa de clave de partición a lista de nodos que la sirven (para réplicas)
     private final Map<String, List<WorkerNodeInfo>> partitionToNodesMap = new ConcurrentHashMap<>();
+    // Estadísticas por dirección de nodo (las réplicas que comparten dirección comparten estadísticas)
+    private final Map<String, NodeStats> nodeStats = new ConcurrentHashMap<>();
+    // Interruptores de circuito por dirección de nodo (ver CircuitBreaker)
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    // Salud informada por el sondeo periódico, por dirección de nodo
+    private final Map<String, NodeHealth> nodeHealth = new ConcurrentHashMap<>();
+    private final Partitioner partitioner;
+    private final ReplicationMode replicationMode;
+    // Rangos reasignados por migraciones, el más reciente primero. Se reemplaza entero (copy-on-write):
+    // el enrutamiento lee el array sin bloqueo y el cambio de dueño es atómico.
+    private volatile RangeAssignment[] rangeAssignments = new RangeAssignment[0];
+    private final WriteFence writeFence = new WriteFence();
+    private final ReplicaRepairTracker repairTracker = new ReplicaRepairTracker();
+    private final BalanceCache balanceCache = BalanceCache.fromEnvironment();
 
-    public void addWorkerNode(String id, String address, String partitionsStr) {
+    /**
+     * Rango de cuentas asignado a una partición distinta de la que indica el particionador.
+     */
+    public static final class RangeAssignment {
+        private final AccountRange range;
+        private final String partitionKey;
+
+        RangeAssignment(AccountRange range, String partitionKey) {
+            this.range = range;
+            this.partitionKey = partitionKey;
+        }
+
+        public AccountRange getRange() { return range; }
+        public String getPartitionKey() { return partitionKey; }
+    }
+
+    public WorkerNodeRegistry() {
+        this(Partitioner.fromEnvironment(), ReplicationMode.fromEnvironment());
+    }
+
+    public WorkerNodeRegistry(Partitioner partitioner, ReplicationMode replicationMode) {
+        this.partitioner = partitioner;
+        this.replicationMode = replicationMode;
+        LOGGER.info("Particionador de cuentas: " + partitioner.getClass().getSimpleName()
+                + " con particiones " + partitioner.getPartitionKeys() + "; replicación " + replicationMode.getNombre()
+                + ". Los datos de los workers deben estar repartidos con este mismo criterio.");
+    }
+
+    /**
+     * Registra un nodo, o lo reemplaza si ya hay uno con ese id. Al reemplazarlo conserva su posición
+     * en las particiones que sigue sirviendo: el orden de las réplicas decide el primario.
+     */
+    public synchronized void addWorkerNode(String id, String address, String partitionsStr) {
         WorkerNodeInfo nodeInfo = new WorkerNodeInfo(id, address);
-        workerNodes.put(id, nodeInfo);
-        String[] partitionKeys = partitionsStr.split(",");
-        for (String pk : partitionKeys) {
-            partitionToNodesMap.computeIfAbsent(pk.trim(), k -> new ArrayList<>()).add(nodeInfo);
-            nodeInfo.addManagedPartition(pk.trim());
+        Arrays.stream(partitionsStr.split(","))
+                .map(String::trim)
+                .filter(pk -> !pk.isEmpty())
+                .distinct()
+                .forEach(nodeInfo::addManagedPartition);
+        WorkerNodeInfo previous = workerNodes.put(id, nodeInfo);
+        if (previous != null) {
+            for (String pk : previous.getManagedPartitions()) {
+                List<WorkerNodeInfo> replicas = partitionToNodesMap.get(pk);
+                int index = replicas.indexOf(previous);
+                if (index < 0) {
+                    continue;
+                }
+                if (nodeInfo.getManagedPartitions().contains(pk)) {
+                    replicas.set(index, nodeInfo);
+                } else {
+                    replicas.remove(index);
+                }
+            }
+        }
+        for (String pk : nodeInfo.getManagedPartitions()) {
+            if (previous == null || !previous.getManagedPartitions().contains(pk)) {
+                // Copy-on-write: se pueden registrar nodos mientras las solicitudes recorren las réplicas
+                partitionToNodesMap.computeIfAbsent(pk, k -> new CopyOnWriteArrayList<>()).add(nodeInfo);
+            }
+        }
+        if (previous != null && !previous.getAddress().equals(address)) {
+            forgetAddressIfUnused(previous.getAddress());
+        }
+        LOGGER.info("Nodo trabajador " + (previous != null ? "actualizado" : "registrado") + ": " + id + " en "
+                + address + " manejando particiones: " + partitionsStr);
+    }
+
+    /**
+     * Quita un nodo de la membresía: deja de recibir tráfico nuevo; lo que ya estaba en curso termina.
+     * @return false si no había un nodo con ese id.
+     */
+    public synchronized boolean removeWorkerNode(String id) {
+        WorkerNodeInfo removed = workerNodes.remove(id);
+        if (removed == null) {
+            return false;
+        }
+        for (String pk : removed.getManagedPartitions()) {
+            List<WorkerNodeInfo> replicas = partitionToNodesMap.get(pk);
+            if (replicas != null) {
+                replicas.remove(removed);
+            }
+        }
+        forgetAddressIfUnused(removed.getAddress());
+        LOGGER.info("Nodo trabajador retirado: " + id + " (" + removed.getAddress() + ")");
+        return true;
+    }
+
+    // Estadísticas, circuito y salud son por dirección: se descartan cuando ningún nodo la usa, para que
+    // las métricas y el sondeo no sigan mostrando nodos retirados y un alta posterior empiece de cero
+    private void forgetAddressIfUnused(String address) {
+        if (workerNodes.values().stream().anyMatch(node -> node.getAddress().equals(address))) {
+            return;
         }
-        LOGGER.info("Nodo trabajador registrado: " + id + " en " + address + " manejando particiones: " + partitionsStr);
+        nodeStats.remove(address);
+        breakers.remove(address);
+        nodeHealth.remove(address);
+    }
+
+    public WorkerNodeInfo getWorkerNode(String id) {
+        return workerNodes.get(id);
     }
 
     public List<WorkerNodeInfo> getNodesForPartition(String partitionKey) {
         return partitionToNodesMap.getOrDefault(partitionKey, Collections.emptyList());
     }
 
+    /**
+     * @return Las claves de las particiones de cuentas ("Cuenta-P1", ...) que son dueñas de alguna
+     *         cuenta, ordenadas: las del particionador más las que recibieron rangos migrados. Una
+     *         partición con nodos registrados pero sin rangos asignados (destino de una migración en
+     *         curso) no se incluye, para que el arqueo no cuente dos veces las filas copiadas.
+     */
+    public List<String> getAccountPartitionKeys() {
+        return Stream.concat(partitioner.getPartitionKeys().stream(),
+                        Arrays.stream(rangeAssignments).map(RangeAssignment::getPartitionKey))
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    public NodeStats statsFor(String address) {
+        return nodeStats.computeIfAbsent(address, NodeStats::new);
+    }
+
+    public Collection<NodeStats> getAllNodeStats() {
+        return nodeStats.values();
+    }
+
+    public CircuitBreaker breakerFor(String address) {
+        return breakers.computeIfAbsent(address, CircuitBreaker::new);
+    }
+
+    public Collection<CircuitBreaker> getAllBreakers() {
+        return breakers.values();
+    }
+
+    public NodeHealth healthFor(String address) {
+        return nodeHealth.computeIfAbsent(address, NodeHealth::new);
+    }
+
+    public Collection<NodeHealth> getAllNodeHealth() {
+        return nodeHealth.values();
+    }
+
+    /**
+     * @return false si el sondeo da el nodo por caído o su circuito está abierto.
+     */
+    public boolean isAvailable(String address) {
+        return healthFor(address).isAlive() && breakerFor(address).getState() != CircuitBreaker.State.OPEN;
+    }
+
+    /**
+     * Ordena las réplicas de una partición para una lectura. La primera se elige con "power of two
+     * choices": de dos réplicas al azar, la de menor coste. Así la carga se reparte sin que todas las
+     * lecturas persigan a la misma réplica "mejor". El resto va detrás por coste ascendente, para la
+     * cobertura y el failover. El coste es el de {@link NodeStats#cost()} escalado por la carga que
+     * informa el propio nodo ({@link NodeHealth}); sin muestras de latencia decide solo la carga.
+     * Las réplicas no disponibles (caídas según el sondeo o con el circuito abierto) quedan al final.
+     */
+    public List<WorkerNodeInfo> rankReplicasForRead(String partitionKey) {
+        List<WorkerNodeInfo> replicas = new ArrayList<>(getNodesForPartition(partitionKey));
+        List<WorkerNodeInfo> unavailable = new ArrayList<>();
+        replicas.removeIf(node -> !isAvailable(node.getAddress()) && unavailable.add(node));
+        if (replicas.size() < 2) {
+            replicas.addAll(unavailable);
+            return replicas;
+        }
+        // El coste se lee una sola vez: cambia mientras otras solicitudes terminan
+        Map<WorkerNodeInfo, Double> cost = new HashMap<>();
+        replicas.forEach(node -> cost.put(node,
+                (statsFor(node.getAddress()).cost() + 1.0) * (1.0 + healthFor(node.getAddress()).getLoad())));
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(replicas.size());
+        int b = random.nextInt(replicas.size() - 1);
+        if (b >= a) {
+            b++;
+        }
+        WorkerNodeInfo first = cost.get(replicas.get(a)) <= cost.get(replicas.get(b)) ? replicas.get(a) : replicas.get(b);
+        replicas.remove(first);
+        replicas.sort(Comparator.comparingDouble(cost::get));
+        replicas.add(0, first);
+        replicas.addAll(unavailable);
+        return replicas;
+    }
+
+    /**
+     * Como {@link #rankReplicasForRead(String)}, pero las réplicas rezagadas o divergentes para la
+     * cuenta (ver {@link ReplicaRepairTracker}) pasan al final: solo se leen si no queda otra.
+     */
+    public List<WorkerNodeInfo> rankReplicasForRead(String partitionKey, String accountId) {
+        List<WorkerNodeInfo> ranked = rankReplicasForRead(partitionKey);
+        List<WorkerNodeInfo> behind = new ArrayList<>();
+        ranked.removeIf(node -> repairTracker.isBehind(node.getAddress(), accountId) && behind.add(node));
+        ranked.addAll(behind);
+        return ranked;
+    }
+
+    /**
+     * Primario de la partición en la replicación primario-backup: la primera réplica registrada.
+     * @return null si la partición no tiene réplicas.
+     */
+    public WorkerNodeInfo getPrimaryForPartition(String partitionKey) {
+        List<WorkerNodeInfo> replicas = getNodesForPartition(partitionKey);
+        return replicas.isEmpty() ? null : replicas.get(0);
+    }
+
     public List<WorkerNodeInfo> getAllWorkerNodes() {
         return new ArrayList<>(workerNodes.values());
     }
     
     /**
-     * Determina la clave de partición para una cuenta dada.
-     * Esta es una lógica de ejemplo; en un sistema real, sería más robusta.
-     * Asumimos 2 particiones para cada tipo de tabla (Cliente, Cuenta, Transacciones)
-     * y que la partición de cuenta determina las otras.
+     * Determina la clave de partición para una cuenta dada (ver {@link Partitioner}).
+     * Se llama en cada solicitud; el particionador no reserva memoria.
      */
     public String getPartitionKeyForAccount(String accountId) {
-        // Lógica de ejemplo: si el ID de cuenta es numérico, par o impar para 2 particiones
-        try {
-            long numericId = Long.parseLong(accountId.replaceAll("[^0-9]", ""));
-            if (numericId % 2 == 0) {
-                return "Cuenta-P2"; // O cualquier clave que uses para la partición 2 de Cuentas
-            } else {
-                return "Cuenta-P1"; // Clave para la partición 1 de Cuentas
+        for (RangeAssignment assignment : rangeAssignments) {
+            if (assignment.range.contains(accountId)) {
+                return assignment.partitionKey;
             }
-        } catch (NumberFormatException e) {
-            // Fallback o una estrategia de hash más consistente
-            return "Cuenta-P" + (Math.abs(accountId.hashCode() % 2) + 1);
         }
+        return partitioner.getPartitionKeyForAccount(accountId);
+    }
+
+    /**
+     * Cambia atómicamente el dueño de un rango de cuentas: las solicitudes que se enruten después
+     * van a la nueva partición. Si se solapa con un rango anterior, el nuevo tiene prioridad.
+     */
+    public synchronized void reassignRange(AccountRange range, String partitionKey) {
+        RangeAssignment[] current = rangeAssignments;
+        RangeAssignment[] updated = new RangeAssignment[current.length + 1];
+        updated[0] = new RangeAssignment(range, partitionKey);
+        System.arraycopy(current, 0, updated, 1, current.length);
+        rangeAssignments = updated;
+        LOGGER.info("Rango de cuentas " + range + " reasignado a la partición " + partitionKey);
+    }
+
+    public List<RangeAssignment> getRangeAssignments() {
+        return List.of(rangeAssignments);
+    }
+
+    public ReplicaRepairTracker getRepairTracker() {
+        return repairTracker;
+    }
+
+    public WriteFence getWriteFence() {
+        return writeFence;
+    }
+
+    public BalanceCache getBalanceCache() {
+        return balanceCache;
+    }
+
+    public Partitioner getPartitioner() {
+        return partitioner;
+    }
+
+    public ReplicationMode getReplicationMode() {
+        return replicationMode;
     }
-}
\ No newline at end of file
+}
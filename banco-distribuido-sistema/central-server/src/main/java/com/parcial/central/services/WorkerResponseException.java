@@ -0,0 +1,36 @@
+package com.parcial.central.services;
+
+/**
+ * El Nodo Trabajador respondió, pero con un código de error (HTTP no 2xx, o el status
+ * equivalente del protocolo binario). Un 4xx es una respuesta válida del nodo (p. ej. cuenta
+ * no encontrada, o 409 para una transferencia rechazada por saldo), no un fallo del nodo.
+ */
+public class WorkerResponseException extends RuntimeException {
+    private final int statusCode;
+    private final String body;
+
+    public WorkerResponseException(String message, int statusCode) {
+        this(message, statusCode, null);
+    }
+
+    /**
+     * @param body Cuerpo de la respuesta del worker (en el binario, su equivalente en texto), o null.
+     */
+    public WorkerResponseException(String message, int statusCode, String body) {
+        super(message);
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public boolean isNodeFailure() {
+        return statusCode >= 500;
+    }
+}
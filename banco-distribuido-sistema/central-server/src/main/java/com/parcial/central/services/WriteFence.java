@@ -0,0 +1,137 @@
+package com.parcial.central.services;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Barrera para las escrituras de rangos de cuentas mientras se cambia su dueño (migración) o se
+ * reparan sus réplicas (anti-entropía). Las transferencias piden admisión con {@link #admit};
+ * mientras hay una barrera sobre un rango, las que tocan alguna cuenta del rango quedan retenidas
+ * (no se rechazan) hasta {@link #open}.
+ * Quien levanta la barrera espera a que terminen las escrituras ya admitidas sobre el rango
+ * ({@link #awaitDrained}), hace su trabajo y la baja: las transferencias retenidas siguen entonces
+ * su curso (en una migración, ya hacia el nuevo dueño). Puede haber varias barreras a la vez sobre
+ * rangos que no se solapan.
+ */
+public class WriteFence {
+    private final AtomicLong ticketSequence = new AtomicLong();
+    // Escrituras admitidas y aún sin terminar: ticket -> cuentas que tocan
+    private final Map<Long, String[]> inFlight = new ConcurrentHashMap<>();
+    private final List<Held> held = new ArrayList<>(); // Protegido por this
+    private final List<AccountRange> fencedRanges = new ArrayList<>(); // Protegido por this
+
+    private static final class Held {
+        final String[] accountIds;
+        final CompletableFuture<Long> waiting = new CompletableFuture<>();
+
+        Held(String[] accountIds) {
+            this.accountIds = accountIds;
+        }
+    }
+
+    /**
+     * @return Futuro con el ticket a devolver en {@link #release}; ya completado salvo que alguna de
+     *         las cuentas esté detrás de una barrera.
+     */
+    public CompletableFuture<Long> admit(String... accountIds) {
+        synchronized (this) {
+            if (isFenced(accountIds)) {
+                Held h = new Held(accountIds);
+                held.add(h);
+                return h.waiting.thenApply(ignored -> register(accountIds));
+            }
+            return CompletableFuture.completedFuture(register(accountIds));
+        }
+    }
+
+    public void release(long ticket) {
+        inFlight.remove(ticket);
+    }
+
+    /**
+     * @throws IllegalStateException Si ya hay una barrera sobre un rango que se solapa.
+     */
+    public synchronized void close(AccountRange range) {
+        for (AccountRange fenced : fencedRanges) {
+            if (fenced.overlaps(range)) {
+                throw new IllegalStateException("Ya hay una barrera de escritura sobre " + fenced);
+            }
+        }
+        fencedRanges.add(range);
+    }
+
+    /**
+     * Espera (sondeando) a que no quede ninguna escritura admitida sobre el rango.
+     * @return false si vence el plazo.
+     */
+    public boolean awaitDrained(AccountRange range, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1_000_000;
+        while (inFlight.values().stream().anyMatch(ids -> touches(range, ids))) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    /**
+     * Baja la barrera del rango y libera las escrituras retenidas que no toquen otra barrera.
+     */
+    public void open(AccountRange range) {
+        List<Held> released = new ArrayList<>();
+        synchronized (this) {
+            fencedRanges.remove(range);
+            for (Iterator<Held> it = held.iterator(); it.hasNext(); ) {
+                Held h = it.next();
+                if (!isFenced(h.accountIds)) {
+                    it.remove();
+                    released.add(h);
+                }
+            }
+        }
+        released.forEach(h -> h.waiting.complete(0L));
+    }
+
+    public synchronized int getHeldCount() {
+        return held.size();
+    }
+
+    public synchronized int getFencedCount() {
+        return fencedRanges.size();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private long register(String[] accountIds) {
+        long ticket = ticketSequence.incrementAndGet();
+        inFlight.put(ticket, accountIds);
+        return ticket;
+    }
+
+    // Llamar con el lock tomado
+    private boolean isFenced(String[] accountIds) {
+        for (AccountRange range : fencedRanges) {
+            if (touches(range, accountIds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean touches(AccountRange range, String[] accountIds) {
+        for (String id : accountIds) {
+            if (range.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,140 @@
+package com.parcial.central.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Escritura con quórum W de N: se envía a todas las réplicas y el resultado completa en cuanto W
+ * confirman, o en cuanto ya no es posible llegar a W (fallaron más de N - W). Las réplicas que
+ * todavía no respondieron en ese momento quedan en {@link Outcome#getPending()} para que quien
+ * llama las siga en segundo plano (ver {@link ReplicaRepairTracker}) sin retrasar la respuesta.
+ *
+ * W se configura con WRITE_QUORUM: "majority" (por defecto, N/2 + 1), "all" o un número.
+ */
+public final class WriteQuorum<N> {
+    private final List<N> replicas;
+    private final Predicate<String> isSuccess;
+    private final int required;
+    private final Map<N, CompletableFuture<String>> calls = new LinkedHashMap<>();
+    private final List<N> confirmed = new ArrayList<>();
+    private final List<N> failed = new ArrayList<>();
+    private final List<String> responses = new ArrayList<>();
+    private final CompletableFuture<Outcome<N>> result = new CompletableFuture<>();
+
+    /**
+     * Estado de las réplicas en el momento de decidir.
+     */
+    public static final class Outcome<N> {
+        private final boolean reached;
+        private final int required;
+        private final List<N> confirmed;
+        private final List<N> failed;
+        private final Map<N, CompletableFuture<String>> pending;
+        private final List<String> responses;
+
+        Outcome(boolean reached, int required, List<N> confirmed, List<N> failed,
+                Map<N, CompletableFuture<String>> pending, List<String> responses) {
+            this.reached = reached;
+            this.required = required;
+            this.confirmed = confirmed;
+            this.failed = failed;
+            this.pending = pending;
+            this.responses = responses;
+        }
+
+        public boolean isReached() { return reached; }
+        public int getRequired() { return required; }
+        public List<N> getConfirmed() { return confirmed; }
+        public List<N> getFailed() { return failed; }
+        /** Réplicas sin respuesta al decidir, con la solicitud todavía en curso. */
+        public Map<N, CompletableFuture<String>> getPending() { return pending; }
+        /** Respuestas recibidas hasta decidir, en orden de llegada. */
+        public List<String> getResponses() { return responses; }
+    }
+
+    private WriteQuorum(List<N> replicas, Predicate<String> isSuccess, int required) {
+        this.replicas = replicas;
+        this.isSuccess = isSuccess;
+        this.required = required;
+    }
+
+    /**
+     * @param replicas  Réplicas de la partición; la solicitud va a todas.
+     * @param call      Inicia la escritura en una réplica; no debe bloquear. Una excepción cuenta como fallo.
+     * @param isSuccess Indica si la respuesta de una réplica es una confirmación.
+     * @param required  Confirmaciones necesarias (W), entre 1 y el número de réplicas.
+     */
+    public static <N> CompletableFuture<Outcome<N>> execute(List<N> replicas, Function<N, CompletableFuture<String>> call,
+                                                            Predicate<String> isSuccess, int required) {
+        if (required < 1 || required > replicas.size()) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "Quórum de escritura " + required + " imposible con " + replicas.size() + " réplicas."));
+        }
+        WriteQuorum<N> quorum = new WriteQuorum<>(replicas, isSuccess, required);
+        for (N replica : replicas) {
+            CompletableFuture<String> future;
+            try {
+                future = call.apply(replica);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            quorum.calls.put(replica, future);
+        }
+        // Los callbacks se registran después de lanzar todas para que "pending" esté completo al decidir
+        quorum.calls.forEach((replica, future) ->
+                future.whenComplete((response, ex) -> quorum.onResponse(replica, response, ex)));
+        return quorum.result;
+    }
+
+    /**
+     * W según WRITE_QUORUM para una partición de {@code replicas} réplicas.
+     */
+    public static int requiredFor(int replicas) {
+        String config = System.getenv().getOrDefault("WRITE_QUORUM", "majority").trim();
+        if ("all".equalsIgnoreCase(config)) {
+            return replicas;
+        }
+        if ("majority".equalsIgnoreCase(config)) {
+            return replicas / 2 + 1;
+        }
+        return Math.max(1, Math.min(replicas, Integer.parseInt(config)));
+    }
+
+    private void onResponse(N replica, String response, Throwable ex) {
+        Outcome<N> outcome;
+        synchronized (this) {
+            if (ex == null && response != null && isSuccess.test(response)) {
+                confirmed.add(replica);
+            } else {
+                failed.add(replica);
+            }
+            if (response != null) {
+                responses.add(response);
+            } else if (ex != null) {
+                responses.add("ERROR: " + ex.getMessage());
+            }
+            if (result.isDone()) {
+                return;
+            }
+            boolean reached = confirmed.size() >= required;
+            if (!reached && failed.size() <= replicas.size() - required) {
+                return;
+            }
+            Map<N, CompletableFuture<String>> pending = new LinkedHashMap<>();
+            calls.forEach((r, future) -> {
+                if (!confirmed.contains(r) && !failed.contains(r)) {
+                    pending.put(r, future);
+                }
+            });
+            outcome = new Outcome<>(reached, required, List.copyOf(confirmed), List.copyOf(failed),
+                    Collections.unmodifiableMap(pending), List.copyOf(responses));
+        }
+        result.complete(outcome);
+    }
+}
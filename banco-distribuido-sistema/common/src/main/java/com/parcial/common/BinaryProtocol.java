@@ -0,0 +1,106 @@
+package com.parcial.common;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocolo binario Central <-> Worker (alternativa compacta al HTTP con form-urlencoded).
+ * Lo comparten el Servidor Central (cliente) y el Nodo Trabajador (servidor).
+ *
+ * Trama (big-endian): [int longitud][byte opcode][long requestId][payload]
+ * donde longitud cuenta los bytes que siguen al propio int. El requestId permite
+ * tener varias solicitudes en vuelo sobre la misma conexión persistente.
+ *
+ * Solicitudes:
+ *   SALDO      payload: long cuenta
+ *   TRANSFERIR payload: long cuentaOrigen, long cuentaDestino, long montoCentimos
+ *   ARQUEO     payload: (vacío)
+ * Respuestas: opcode = opcode de la solicitud | RESPONSE_FLAG, requestId, byte status y:
+ *   STATUS_OK: SALDO y ARQUEO -> long céntimos; TRANSFERIR -> string ID de transacción
+ *   otro status: string mensaje (en TRANSFERIR rechazada: "ESTADO - detalle")
+ * Los string se codifican como short longitud + bytes UTF-8.
+ * Las cuentas viajan como número: "CU001" <-> 1 (solo IDs con el formato canónico "CU" + 3 o más dígitos).
+ */
+public final class BinaryProtocol {
+    public static final byte OP_SALDO = 0x01;
+    public static final byte OP_TRANSFERIR = 0x02;
+    public static final byte OP_ARQUEO = 0x03;
+    public static final byte RESPONSE_FLAG = (byte) 0x80;
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NO_ENCONTRADA = 1;
+    public static final byte STATUS_RECHAZADA = 2;
+    public static final byte STATUS_ERROR = 3;
+    public static final byte STATUS_SOLICITUD_INVALIDA = 4;
+
+    public static final int HEADER_BYTES = 1 + 8; // opcode + requestId
+    public static final int MAX_FRAME_BYTES = 64 * 1024;
+
+    private static final String PREFIJO_CUENTA = "CU";
+
+    private BinaryProtocol() {
+    }
+
+    public static String decodeCuenta(long numero) {
+        return PREFIJO_CUENTA + String.format("%03d", numero);
+    }
+
+    /**
+     * @return El número de la cuenta, o -1 si el ID no tiene el formato canónico.
+     */
+    public static long encodeCuenta(String cuentaId) {
+        if (cuentaId == null || !cuentaId.startsWith(PREFIJO_CUENTA) || cuentaId.length() > PREFIJO_CUENTA.length() + 18) {
+            return -1;
+        }
+        long numero = 0;
+        for (int i = PREFIJO_CUENTA.length(); i < cuentaId.length(); i++) {
+            char c = cuentaId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            numero = numero * 10 + (c - '0');
+        }
+        return decodeCuenta(numero).equals(cuentaId) ? numero : -1;
+    }
+
+    public static double centimosToDouble(long centimos) {
+        return BigDecimal.valueOf(centimos, 2).doubleValue();
+    }
+
+    public static long doubleToCentimos(double monto) {
+        return BigDecimal.valueOf(monto).movePointRight(2).setScale(0, java.math.RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    public static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, Short.MAX_VALUE);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reserva un buffer para una trama y escribe la cabecera; el llamador escribe el payload
+     * y luego llama a {@link #finishFrame}.
+     */
+    public static ByteBuffer startFrame(byte opcode, long requestId, int maxPayloadBytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + HEADER_BYTES + maxPayloadBytes);
+        buffer.putInt(0); // Longitud, se completa en finishFrame
+        buffer.put(opcode);
+        buffer.putLong(requestId);
+        return buffer;
+    }
+
+    public static ByteBuffer finishFrame(ByteBuffer buffer) {
+        buffer.putInt(0, buffer.position() - 4);
+        buffer.flip();
+        return buffer;
+    }
+}
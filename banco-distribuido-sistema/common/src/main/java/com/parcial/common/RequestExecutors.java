@@ -0,0 +1,60 @@
+package com.parcial.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Crea el executor de los handlers HTTP según el modo de ejecución (HTTP_EXECUTION_MODE):
+ * - "platform": ThreadPoolExecutor acotado (comportamiento original), con una cola de
+ *   HTTP_QUEUE_CAPACITY solicitudes. Con la cola llena la solicitud se atiende en el hilo que acepta
+ *   conexiones, lo que frena la aceptación en vez de acumular solicitudes sin límite.
+ * - "virtual": un hilo virtual por solicitud. Requiere un runtime Java 21+; se obtiene por reflexión
+ *   para que el código siga compilando con Java 17. En un runtime anterior se usa "platform".
+ * Lo usan el Servidor Central y el Nodo Trabajador.
+ */
+public final class RequestExecutors {
+    private static final Logger LOGGER = Logger.getLogger(RequestExecutors.class.getName());
+
+    public static final String MODE_PLATFORM = "platform";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private RequestExecutors() {
+    }
+
+    public static String modeFromEnvironment() {
+        return System.getenv().getOrDefault("HTTP_EXECUTION_MODE", MODE_PLATFORM).toLowerCase();
+    }
+
+    public static ExecutorService create(String mode, int corePoolSize, int maxPoolSize, long keepAliveSeconds) {
+        if (MODE_VIRTUAL.equals(mode)) {
+            ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+            if (virtual != null) {
+                return virtual;
+            }
+        } else if (!MODE_PLATFORM.equals(mode)) {
+            LOGGER.warning("Modo de ejecución desconocido '" + mode + "', se usa '" + MODE_PLATFORM + "'.");
+        }
+        int queueCapacity = Integer.parseInt(System.getenv().getOrDefault("HTTP_QUEUE_CAPACITY", "1000"));
+        return new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveSeconds, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static boolean isVirtual(ExecutorService executor) {
+        return !(executor instanceof ThreadPoolExecutor);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.WARNING, "Hilos virtuales no disponibles en Java " + Runtime.version().feature()
+                    + " (se requiere 21+), se usa el modo '" + MODE_PLATFORM + "'.");
+            return null;
+        }
+    }
+}
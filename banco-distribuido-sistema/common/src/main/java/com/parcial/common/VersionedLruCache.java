@@ -0,0 +1,211 @@
+package com.parcial.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caché por clave con memoria acotada y desalojo LRU, y versiones por franja de claves; es la base
+ * de las cachés de saldos del Central y de los workers.
+ *
+ * Está dividida en segmentos (cada uno un LinkedHashMap en orden de acceso con su propio lock) para
+ * que los hilos no compitan por un único lock. Las versiones son por franja (hash de la clave):
+ * - Una escritura sube la versión de sus claves al empezar ({@link #beginWrite}) y al terminar
+ *   ({@link #endWrite}); mientras está en curso la franja no admite rellenos ni sirve entradas.
+ *   Al terminar puede dejar en caché el valor confirmado, solo si ninguna otra escritura tocó la
+ *   franja entre medio.
+ * - Una lectura toma la versión ({@link #version}) antes de ir al origen y rellena con
+ *   {@link #putIfVersion}, que se descarta si la clave se escribió desde entonces.
+ * - Los cambios por otra vía llaman a {@link #invalidate}.
+ * Así una entrada siempre es posterior a la última escritura terminada de su clave. El TTL acota
+ * lo que puede durar un valor cambiado por fuera de estas reglas.
+ *
+ * @param <V> Tipo del valor cacheado.
+ */
+public class VersionedLruCache<V> {
+    private static final int SEGMENTS = 16;
+    private static final int STRIPES = 1 << 14;
+
+    private final Segment<V>[] segments;
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    private final AtomicIntegerArray writesInFlight = new AtomicIntegerArray(STRIPES);
+    private final long ttlNanos;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rejectedFills = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private static final class Entry<V> {
+        final V value;
+        final long version;
+        final long createdNanos = System.nanoTime();
+
+        Entry(V value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+
+    private static final class Segment<V> extends LinkedHashMap<String, Entry<V>> {
+        private static final long serialVersionUID = 1L;
+        private final int maxEntries;
+        private final transient AtomicLong evictions;
+
+        Segment(int maxEntries, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public VersionedLruCache(int maxEntries, long ttlMillis) {
+        int perSegment = Math.max(1, maxEntries / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(perSegment, evictions);
+        }
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    /**
+     * @return El valor cacheado, o null si no está, venció, o su franja cambió o tiene una escritura en curso.
+     */
+    public V get(String key) {
+        int stripe = stripeFor(key);
+        Segment<V> segment = segmentFor(key);
+        Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && (entry.version != versions.get(stripe) || writesInFlight.get(stripe) > 0
+                    || System.nanoTime() - entry.createdNanos > ttlNanos)) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        (entry != null ? hits : misses).incrementAndGet();
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * @return Versión actual de la clave, a tomar antes de leer el valor del origen.
+     */
+    public long version(String key) {
+        return versions.get(stripeFor(key));
+    }
+
+    /**
+     * Relleno desde una lectura. Se descarta si la clave se escribió (o se está escribiendo)
+     * desde que se tomó la versión.
+     * @return true si el valor quedó en caché.
+     */
+    public boolean putIfVersion(String key, V value, long version) {
+        int stripe = stripeFor(key);
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            // Bajo el lock del segmento: beginWrite sube la versión antes de borrar en este mismo segmento
+            if (versions.get(stripe) != version || writesInFlight.get(stripe) > 0) {
+                rejectedFills.incrementAndGet();
+                return false;
+            }
+            segment.put(key, new Entry<>(value, version));
+            return true;
+        }
+    }
+
+    /**
+     * Antes de escribir la clave en el origen.
+     * @return La versión de la franja al empezar, para {@link #endWrite}.
+     */
+    public long beginWrite(String key) {
+        int stripe = stripeFor(key);
+        writesInFlight.incrementAndGet(stripe);
+        long version = versions.incrementAndGet(stripe);
+        remove(key);
+        return version;
+    }
+
+    /**
+     * Cierra una escritura abierta con {@link #beginWrite} (una sola vez por apertura).
+     * @param confirmedValue Valor confirmado a dejar en caché, o null para solo invalidar.
+     * @param beginVersion Lo que devolvió {@link #beginWrite}.
+     */
+    public void endWrite(String key, V confirmedValue, long beginVersion) {
+        int stripe = stripeFor(key);
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            // Sin otras escrituras en la franja desde el inicio, este es el último valor confirmado
+            boolean ultima = versions.get(stripe) == beginVersion && writesInFlight.get(stripe) == 1;
+            long version = versions.incrementAndGet(stripe);
+            writesInFlight.decrementAndGet(stripe);
+            if (confirmedValue != null && ultima) {
+                segment.put(key, new Entry<>(confirmedValue, version));
+            } else {
+                segment.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Descarta las claves cuyo valor cambió por otra vía.
+     */
+    public void invalidate(String... keys) {
+        for (String key : keys) {
+            int stripe = stripeFor(key);
+            Segment<V> segment = segmentFor(key);
+            synchronized (segment) {
+                versions.incrementAndGet(stripe);
+                segment.remove(key);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getRejectedFills() { return rejectedFills.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private void remove(String key) {
+        Segment<V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    private static int stripeFor(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private Segment<V> segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+}
@@ -1,13 +1,25 @@
 package com.parcial.worker;
 
 import com.sun.net.httpserver.HttpServer;
+import com.parcial.common.RequestExecutors;
+import com.parcial.worker.binary.BinaryProtocolServer;
 import com.parcial.worker.handlers.*; // Asumiendo handlers del worker
+import com.parcial.worker.persistence.AccountLockMetrics;
+import com.parcial.worker.persistence.ArqueoParcialTracker;
+import com.parcial.worker.persistence.CuentaDigest;
 import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.GroupCommitWriter;
+import com.parcial.worker.persistence.LatencyHistogram;
+import com.parcial.worker.persistence.dao.CuentaDAO;
+import com.parcial.worker.persistence.dao.DigestDAO;
+import com.parcial.worker.services.ReplicationLog;
+import com.parcial.worker.services.TransferService;
+import com.parcial.worker.services.TwoPhaseParticipant;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,7 +27,8 @@ import java.util.logging.Logger;
 /**
  * Servidor para un Nodo Trabajador. Escucha solicitudes del Servidor Central
  * y opera sobre su base de datos PostgreSQL local.
- * Utiliza un ThreadPoolExecutor para manejar la concurrencia.
+ * Utiliza un ThreadPoolExecutor para manejar la concurrencia, o un hilo virtual por
+ * solicitud si HTTP_EXECUTION_MODE=virtual (ver {@link RequestExecutors}).
  */
 public class WorkerNodeServer {
     private static final Logger LOGGER = Logger.getLogger(WorkerNodeServer.class.getName());
@@ -26,26 +39,50 @@ public class WorkerNodeServer {
     private static final long KEEP_ALIVE_TIME = 60L;
     
     private final int port;
+    private final int binaryPort;
+    private final int healthPort;
     private final String workerId;
     private HttpServer server;
+    private HttpServer healthServer;
+    private ExecutorService healthExecutor;
     private final DatabaseManager dbManager;
-    private final ThreadPoolExecutor requestHandlerThreadPool;
+    private final AccountLockMetrics lockMetrics = new AccountLockMetrics();
+    private final LatencyHistogram transferLatency = new LatencyHistogram();
+    private final ExecutorService requestHandlerThreadPool;
+    private final boolean groupCommitEnabled;
+    private TransferService transferService;
+    private ReplicationLog replicationLog;
+    private ArqueoParcialTracker arqueoTracker;
+    private CuentaDigest cuentaDigest;
+    private TwoPhaseParticipant twoPhaseParticipant;
+    private BinaryProtocolServer binaryServer;
 
     public WorkerNodeServer(int port, String workerId, String dbUrl, String dbUser, String dbPassword) {
+        this(port, workerId, dbUrl, dbUser, dbPassword, false);
+    }
+
+    /**
+     * @param groupCommitEnabled Si es true, las transferencias se agrupan en lotes con un solo commit
+     *                           (ver {@link GroupCommitWriter}); si no, una transacción por solicitud.
+     */
+    public WorkerNodeServer(int port, String workerId, String dbUrl, String dbUser, String dbPassword, boolean groupCommitEnabled) {
         this.port = port;
+        this.binaryPort = Integer.parseInt(System.getenv().getOrDefault("BINARY_PORT", "9091"));
+        this.healthPort = Integer.parseInt(System.getenv().getOrDefault("HEALTH_PORT", "8082"));
         this.workerId = workerId;
+        this.groupCommitEnabled = groupCommitEnabled;
         // Inicializar el gestor de la base de datos
         this.dbManager = new DatabaseManager(dbUrl, dbUser, dbPassword); 
         LOGGER.info("Worker [" + workerId + "] conectado a DB: " + dbUrl);
 
-        this.requestHandlerThreadPool = new ThreadPoolExecutor(
+        this.requestHandlerThreadPool = RequestExecutors.create(
+                RequestExecutors.modeFromEnvironment(),
                 CORE_POOL_SIZE,
                 MAX_POOL_SIZE,
-                KEEP_ALIVE_TIME,
-                TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>()
+                KEEP_ALIVE_TIME
         );
-        LOGGER.info("Worker [" + workerId + "] ThreadPool para Handlers HTTP inicializado.");
+        LOGGER.info("Worker [" + workerId + "] " + (RequestExecutors.isVirtual(requestHandlerThreadPool)
+                ? "hilos virtuales" : "ThreadPool") + " para Handlers HTTP inicializado.");
     }
 
     public void start() throws IOException {
@@ -54,13 +91,54 @@ public class WorkerNodeServer {
 
         // Contextos/endpoints específicos del worker
         server.createContext("/api/worker/saldo", new WorkerSaldoHandler(dbManager, workerId));
-        server.createContext("/api/worker/transferir", new WorkerTransferirHandler(dbManager, workerId));
-        server.createContext("/api/worker/arqueoParcial", new WorkerArqueoParcialHandler(dbManager, workerId));
-        // Podría tener un endpoint de health check /api/worker/health
-
+        replicationLog = new ReplicationLog(workerId);
+        transferService = new TransferService(dbManager, workerId, lockMetrics, transferLatency,
+                groupCommitEnabled ? GroupCommitWriter.Config.fromEnvironment() : null, replicationLog);
+        server.createContext("/api/worker/transferir", new WorkerTransferirHandler(dbManager, workerId, transferService));
+        // Lotes de transferencias agrupadas por el Central: un round trip HTTP y una transacción por lote
+        server.createContext("/api/worker/transferir-lote", new WorkerTransferirLoteHandler(dbManager, workerId, transferService));
+        long intervaloReconciliacion = Long.parseLong(System.getenv().getOrDefault("ARQUEO_RECONCILE_INTERVAL_S", "60"));
+        arqueoTracker = new ArqueoParcialTracker(new CuentaDAO(dbManager, workerId), workerId, intervaloReconciliacion);
+        server.createContext("/api/worker/arqueoParcial", new WorkerArqueoParcialHandler(dbManager, workerId, arqueoTracker));
+        // Anti-entropía: digests de Cuenta para que el Central compare réplicas y repare las diferencias
+        DigestDAO digestDAO = new DigestDAO(dbManager, workerId);
+        cuentaDigest = new CuentaDigest(digestDAO, workerId);
+        server.createContext("/api/worker/digest", new WorkerDigestHandler(dbManager, workerId, digestDAO, cuentaDigest,
+                arqueoTracker, replicationLog));
+        // Replicación primario-backup: aquí llegan los lotes del log de cambios cuando este worker es backup
+        WorkerReplicacionHandler replicacionHandler = new WorkerReplicacionHandler(dbManager, workerId);
+        server.createContext("/api/worker/replicacion", replicacionHandler);
+        server.createContext("/api/worker/metrics", new WorkerMetricsHandler(dbManager, workerId, lockMetrics, transferLatency, arqueoTracker,
+                groupCommitEnabled ? "group-commit" : "per-request", replicationLog, replicacionHandler));
+        // Exportación/importación de rangos de cuentas para el rebalanceo en línea de particiones
+        server.createContext("/api/worker/migracion", new WorkerMigracionHandler(dbManager, workerId, arqueoTracker));
+        // Transferencias entre particiones: fases del commit en dos fases coordinado por el Central
+        twoPhaseParticipant = new TwoPhaseParticipant(dbManager, workerId, arqueoTracker);
+        server.createContext("/api/worker/2pc", new WorkerDosFasesHandler(dbManager, workerId, twoPhaseParticipant));
         server.start();
-        LOGGER.log(Level.INFO, "Nodo Trabajador [{0}] iniciado en el puerto: {1}", new Object[]{workerId, port});
-        LOGGER.log(Level.INFO, "Worker [{0}] usando ThreadPool para manejar hasta {1} solicitudes concurrentes.", new Object[]{workerId, MAX_POOL_SIZE});
+        // Sondeo de salud del Central: conectividad con la BD y carga. Va en su propio servidor y puerto
+        // (HEALTH_PORT) con un hilo propio: con el pool de los handlers ocupado por transferencias, el
+        // sondeo esperaría en su cola, vencería SALUD_TIMEOUT_MS y el Central daría el nodo por caído.
+        healthExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "salud-" + workerId);
+            t.setDaemon(true);
+            return t;
+        });
+        healthServer = HttpServer.create(new InetSocketAddress(healthPort), 0);
+        healthServer.setExecutor(healthExecutor);
+        healthServer.createContext("/api/worker/health", new WorkerHealthHandler(dbManager, workerId, requestHandlerThreadPool));
+        healthServer.start();
+        // Protocolo binario para el Central (alternativa al HTTP); comparte el pool de hilos y los servicios
+        binaryServer = new BinaryProtocolServer(binaryPort, workerId, requestHandlerThreadPool,
+                new CuentaDAO(dbManager, workerId), transferService, arqueoTracker);
+        binaryServer.start();
+        LOGGER.log(Level.INFO, "Nodo Trabajador [{0}] iniciado en el puerto: {1} (salud en el puerto {2})",
+                new Object[]{workerId, port, healthPort});
+        if (RequestExecutors.isVirtual(requestHandlerThreadPool)) {
+            LOGGER.log(Level.INFO, "Worker [{0}] usando un hilo virtual por solicitud.", workerId);
+        } else {
+            LOGGER.log(Level.INFO, "Worker [{0}] usando ThreadPool para manejar hasta {1} solicitudes concurrentes.", new Object[]{workerId, MAX_POOL_SIZE});
+        }
     }
 
     public void stop(int delay) {
@@ -68,6 +146,13 @@ public class WorkerNodeServer {
         if (server != null) {
             server.stop(delay);
         }
+        if (healthServer != null) {
+            healthServer.stop(0);
+            healthExecutor.shutdownNow();
+        }
+        if (binaryServer != null) {
+            binaryServer.stop();
+        }
         if (requestHandlerThreadPool != null) {
             requestHandlerThreadPool.shutdown();
              try {
@@ -79,7 +164,21 @@ public class WorkerNodeServer {
                 Thread.currentThread().interrupt();
             }
         }
-        // dbManager.closeDataSource(); // Si usaras un pool de conexiones como HikariCP
+        if (twoPhaseParticipant != null) {
+            twoPhaseParticipant.shutdown();
+        }
+        if (arqueoTracker != null) {
+            arqueoTracker.shutdown();
+        }
+        if (cuentaDigest != null) {
+            cuentaDigest.shutdown();
+        }
+        if (transferService != null) {
+            transferService.close(); // Aplicar lo encolado en group commit antes de cerrar el pool
+        }
+        if (dbManager != null) {
+            dbManager.close(); // Cerrar el pool de conexiones a la BD
+        }
         LOGGER.info("Nodo Trabajador [" + workerId + "] detenido.");
     }
 
@@ -100,8 +199,9 @@ public class WorkerNodeServer {
         }
 
         String dbUrl = "jdbc:postgresql://" + dbHost + ":" + dbPort + "/" + dbName;
+        boolean groupCommitEnabled = Boolean.parseBoolean(System.getenv().getOrDefault("GROUP_COMMIT_ENABLED", "false"));
 
-        WorkerNodeServer workerNode = new WorkerNodeServer(workerPort, workerId, dbUrl, dbUser, dbPassword);
+        WorkerNodeServer workerNode = new WorkerNodeServer(workerPort, workerId, dbUrl, dbUser, dbPassword, groupCommitEnabled);
         try {
             workerNode.start();
             Runtime.getRuntime().addShutdownHook(new Thread(() -> workerNode.stop(0)));
@@ -0,0 +1,286 @@
+package com.parcial.worker.binary;
+
+import com.parcial.common.BinaryProtocol;
+import com.parcial.worker.persistence.ArqueoParcialTracker;
+import com.parcial.worker.persistence.dao.CuentaDAO;
+import com.parcial.worker.services.TransferResult;
+import com.parcial.worker.services.TransferService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Servidor NIO del protocolo binario ({@link BinaryProtocol}) del Nodo Trabajador.
+ * Un único hilo selector hace todo el I/O de las conexiones persistentes del Central;
+ * cada trama decodificada se procesa en el pool de hilos del worker (el mismo del HttpServer)
+ * y la respuesta se encola de vuelta al selector. Los endpoints HTTP siguen disponibles.
+ */
+public class BinaryProtocolServer {
+    private static final Logger LOGGER = Logger.getLogger(BinaryProtocolServer.class.getName());
+
+    private final int port;
+    private final String workerId;
+    private final ExecutorService executor;
+    private final CuentaDAO cuentaDAO;
+    private final TransferService transferService;
+    private final ArqueoParcialTracker arqueoTracker;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running = false;
+    // Conexiones con respuestas pendientes de escribir; el selector activa OP_WRITE para ellas
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer readBuffer = ByteBuffer.allocate(4 + BinaryProtocol.MAX_FRAME_BYTES);
+        final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        SelectionKey key;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    public BinaryProtocolServer(int port, String workerId, ExecutorService executor, CuentaDAO cuentaDAO,
+                                TransferService transferService, ArqueoParcialTracker arqueoTracker) {
+        this.port = port;
+        this.workerId = workerId;
+        this.executor = executor;
+        this.cuentaDAO = cuentaDAO;
+        this.transferService = transferService;
+        this.arqueoTracker = arqueoTracker;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::runLoop, "binary-protocol-selector-" + workerId);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        LOGGER.log(Level.INFO, "Worker [{0}] protocolo binario escuchando en el puerto: {1}", new Object[]{workerId, port});
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        try {
+            if (selectorThread != null) {
+                selectorThread.join(5_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error al cerrar el servidor del protocolo binario", e);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                selector.select();
+                Connection pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    if (pending.key != null && pending.key.isValid()) {
+                        pending.key.interestOps(pending.key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read((Connection) key.attachment());
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write((Connection) key.attachment());
+                            }
+                        }
+                    } catch (IOException e) {
+                        LOGGER.log(Level.FINE, "Conexión binaria cerrada: " + e.getMessage());
+                        close(key);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error en el selector del protocolo binario", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        LOGGER.log(Level.INFO, "Worker [{0}] conexión binaria aceptada desde {1}", new Object[]{workerId, channel.getRemoteAddress()});
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.readBuffer) < 0) {
+            throw new IOException("Conexión cerrada por el cliente");
+        }
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < BinaryProtocol.HEADER_BYTES || length > BinaryProtocol.MAX_FRAME_BYTES) {
+                throw new IOException("Trama binaria con longitud inválida: " + length);
+            }
+            if (buffer.remaining() < 4 + length) {
+                break;
+            }
+            buffer.getInt();
+            byte[] frame = new byte[length];
+            buffer.get(frame);
+            dispatch(connection, ByteBuffer.wrap(frame));
+        }
+        buffer.compact();
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer next;
+        while ((next = connection.writeQueue.peek()) != null) {
+            connection.channel.write(next);
+            if (next.hasRemaining()) {
+                return; // El socket está lleno; se sigue cuando vuelva a ser escribible
+            }
+            connection.writeQueue.poll();
+        }
+        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+        // Una respuesta pudo encolarse justo después de vaciar la cola
+        if (!connection.writeQueue.isEmpty()) {
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Error al cerrar conexión binaria", e);
+        }
+    }
+
+    private void dispatch(Connection connection, ByteBuffer frame) {
+        try {
+            executor.execute(() -> process(frame).thenAccept(response -> enqueue(connection, response)));
+        } catch (RejectedExecutionException e) {
+            frame.rewind();
+            enqueue(connection, status(frame.get(), frame.getLong(), BinaryProtocol.STATUS_ERROR, "Worker deteniéndose."));
+        }
+    }
+
+    private void enqueue(Connection connection, ByteBuffer response) {
+        connection.writeQueue.add(response);
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    private CompletableFuture<ByteBuffer> process(ByteBuffer frame) {
+        byte opcode = frame.get();
+        long requestId = frame.getLong();
+        try {
+            switch (opcode) {
+                case BinaryProtocol.OP_SALDO: {
+                    String cuentaId = BinaryProtocol.decodeCuenta(frame.getLong());
+                    Optional<Double> saldo = cuentaDAO.getSaldo(cuentaId);
+                    return CompletableFuture.completedFuture(saldo.isPresent()
+                            ? okLong(opcode, requestId, BinaryProtocol.doubleToCentimos(saldo.get()))
+                            : status(opcode, requestId, BinaryProtocol.STATUS_NO_ENCONTRADA, "Cuenta " + cuentaId + " no encontrada en este nodo."));
+                }
+                case BinaryProtocol.OP_TRANSFERIR: {
+                    String cuentaOrigen = BinaryProtocol.decodeCuenta(frame.getLong());
+                    String cuentaDestino = BinaryProtocol.decodeCuenta(frame.getLong());
+                    double monto = BinaryProtocol.centimosToDouble(frame.getLong());
+                    String errorValidacion = TransferService.validar(cuentaOrigen, cuentaDestino, monto);
+                    if (errorValidacion != null) {
+                        return CompletableFuture.completedFuture(status(opcode, requestId, BinaryProtocol.STATUS_SOLICITUD_INVALIDA, errorValidacion));
+                    }
+                    return transferService.transferir(cuentaOrigen, cuentaDestino, monto)
+                            .thenApply(resultado -> transferResponse(opcode, requestId, resultado));
+                }
+                case BinaryProtocol.OP_ARQUEO:
+                    return CompletableFuture.completedFuture(
+                            okLong(opcode, requestId, BinaryProtocol.doubleToCentimos(arqueoTracker.getTotal())));
+                default:
+                    return CompletableFuture.completedFuture(
+                            status(opcode, requestId, BinaryProtocol.STATUS_SOLICITUD_INVALIDA, "Opcode desconocido: " + opcode));
+            }
+        } catch (BufferUnderflowException e) {
+            return CompletableFuture.completedFuture(status(opcode, requestId, BinaryProtocol.STATUS_SOLICITUD_INVALIDA, "Trama incompleta."));
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error procesando trama binaria", e);
+            return CompletableFuture.completedFuture(status(opcode, requestId, BinaryProtocol.STATUS_ERROR, String.valueOf(e.getMessage())));
+        }
+    }
+
+    private static ByteBuffer transferResponse(byte opcode, long requestId, TransferResult resultado) {
+        if (resultado.isConfirmada()) {
+            ByteBuffer buffer = BinaryProtocol.startFrame((byte) (opcode | BinaryProtocol.RESPONSE_FLAG), requestId, 3 + 256);
+            buffer.put(BinaryProtocol.STATUS_OK);
+            BinaryProtocol.putString(buffer, resultado.getTransaccionId());
+            return BinaryProtocol.finishFrame(buffer);
+        }
+        byte status = resultado.isRechazada() ? BinaryProtocol.STATUS_RECHAZADA : BinaryProtocol.STATUS_ERROR;
+        return status(opcode, requestId, status, resultado.getEstado() + " - " + resultado.getMensaje());
+    }
+
+    private static ByteBuffer okLong(byte opcode, long requestId, long value) {
+        ByteBuffer buffer = BinaryProtocol.startFrame((byte) (opcode | BinaryProtocol.RESPONSE_FLAG), requestId, 1 + 8);
+        buffer.put(BinaryProtocol.STATUS_OK);
+        buffer.putLong(value);
+        return BinaryProtocol.finishFrame(buffer);
+    }
+
+    private static ByteBuffer status(byte opcode, long requestId, byte status, String mensaje) {
+        byte[] bytes = mensaje.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = BinaryProtocol.startFrame((byte) (opcode | BinaryProtocol.RESPONSE_FLAG), requestId, 1 + 2 + bytes.length);
+        buffer.put(status);
+        BinaryProtocol.putString(buffer, mensaje);
+        return BinaryProtocol.finishFrame(buffer);
+    }
+}
@@ -1,29 +1,40 @@
 package com.parcial.worker.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.ArqueoParcialTracker;
 import com.parcial.worker.persistence.DatabaseManager;
-import com.parcial.worker.persistence.dao.CuentaDAO;
 
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Responde el arqueo parcial desde el total mantenido incrementalmente (O(1)).
+ * El header X-Arqueo-Staleness-Ms indica hace cuánto se reconcilió contra la tabla.
+ */
 public class WorkerArqueoParcialHandler extends BaseWorkerHandler {
     private static final Logger LOGGER = Logger.getLogger(WorkerArqueoParcialHandler.class.getName());
-    private final CuentaDAO cuentaDAO;
+    private final ArqueoParcialTracker arqueoTracker;
 
-    public WorkerArqueoParcialHandler(DatabaseManager dbManager, String workerId) {
+    public WorkerArqueoParcialHandler(DatabaseManager dbManager, String workerId, ArqueoParcialTracker arqueoTracker) {
         super(dbManager, workerId);
-        this.cuentaDAO = new CuentaDAO(dbManager, workerId);
+        this.arqueoTracker = arqueoTracker;
     }
 
     @Override
     protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
         LOGGER.log(Level.INFO, "Worker [{0}] API: Solicitud ARQUEO_PARCIAL (hilo: {1})", 
             new Object[]{workerId, Thread.currentThread().getName()});
-        
-        double arqueoParcial = cuentaDAO.getArqueoParcial();
-        sendResponse(exchange, 200, String.valueOf(arqueoParcial));
+
+        try {
+            double arqueoParcial = arqueoTracker.getTotal();
+            exchange.getResponseHeaders().set("X-Arqueo-Staleness-Ms", String.valueOf(arqueoTracker.getStalenessMillis()));
+            sendResponse(exchange, 200, String.valueOf(arqueoParcial));
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error al calcular arqueo parcial", e);
+            sendResponse(exchange, 500, "Error: No se pudo calcular el arqueo parcial.");
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package com.parcial.worker.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.ArqueoParcialTracker;
+import com.parcial.worker.persistence.CuentaDigest;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.dao.DigestDAO;
+import com.parcial.worker.services.ReplicationLog;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Endpoints de anti-entropía sobre la tabla Cuenta, usados por el reconciliador del Servidor Central:
+ * - GET  /api/worker/digest/nodos?niveles=&nivel=&desde=&hasta=  digests del árbol de Merkle ("indice=hex" por línea)
+ * - GET  /api/worker/digest/filas?niveles=&buckets=1,2,...      filas de esos buckets (ver {@link DigestDAO.Fila})
+ * - GET  /api/worker/digest/pendientes?cuenta=                  si la cuenta tiene cambios sin confirmar hacia
+ *                                                                sus backups (primario-backup, ver {@link ReplicationLog})
+ * - POST /api/worker/digest/reparar                             cuerpo: filas a sobrescribir, una por línea
+ */
+public class WorkerDigestHandler extends BaseWorkerHandler {
+    private static final Logger LOGGER = Logger.getLogger(WorkerDigestHandler.class.getName());
+    private final DigestDAO digestDAO;
+    private final CuentaDigest cuentaDigest;
+    private final ArqueoParcialTracker arqueoTracker;
+    private final ReplicationLog replicationLog;
+
+    public WorkerDigestHandler(DatabaseManager dbManager, String workerId, DigestDAO digestDAO, CuentaDigest cuentaDigest,
+                               ArqueoParcialTracker arqueoTracker, ReplicationLog replicationLog) {
+        super(dbManager, workerId);
+        this.digestDAO = digestDAO;
+        this.cuentaDigest = cuentaDigest;
+        this.arqueoTracker = arqueoTracker;
+        this.replicationLog = replicationLog;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Los parámetros van siempre en la query: en reparar el cuerpo son las filas, no un formulario
+        handleRequest(exchange, parseQueryParams(exchange.getRequestURI().getQuery()));
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String operacion = path.substring(path.lastIndexOf('/') + 1);
+        String metodo = exchange.getRequestMethod();
+        try {
+            if ("nodos".equals(operacion) && "GET".equalsIgnoreCase(metodo)) {
+                nodos(exchange, params);
+            } else if ("filas".equals(operacion) && "GET".equalsIgnoreCase(metodo)) {
+                filas(exchange, params);
+            } else if ("pendientes".equals(operacion) && "GET".equalsIgnoreCase(metodo)) {
+                sendResponse(exchange, 200, "pendientes=" + replicationLog.tienePendientes(requerido(params, "cuenta")) + "\n");
+            } else if ("reparar".equals(operacion) && "POST".equalsIgnoreCase(metodo)) {
+                reparar(exchange);
+            } else {
+                sendResponse(exchange, 404, "Error: Operación de digest no soportada: " + metodo + " " + operacion);
+            }
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, "Error: " + e.getMessage());
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Anti-entropía: error en " + operacion, e);
+            sendResponse(exchange, 500, "Error: " + e.getMessage());
+        }
+    }
+
+    private void nodos(HttpExchange exchange, Map<String, String> params) throws IOException, SQLException {
+        int niveles = entero(params, "niveles");
+        int nivel = entero(params, "nivel");
+        int desde = Integer.parseInt(params.getOrDefault("desde", "0"));
+        int hasta = params.containsKey("hasta") ? entero(params, "hasta") : desde + 1;
+        long[] digests = cuentaDigest.nodos(niveles, nivel, desde, hasta);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < digests.length; i++) {
+            sb.append(desde + i).append('=').append(Long.toHexString(digests[i])).append('\n');
+        }
+        sendResponse(exchange, 200, sb.toString());
+    }
+
+    private void filas(HttpExchange exchange, Map<String, String> params) throws IOException, SQLException {
+        int niveles = entero(params, "niveles");
+        List<Integer> buckets = new ArrayList<>();
+        for (String bucket : requerido(params, "buckets").split(",")) {
+            buckets.add(Integer.parseInt(bucket.trim()));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (DigestDAO.Fila fila : digestDAO.filas(niveles, buckets)) {
+            sb.append(fila.aLinea()).append('\n');
+        }
+        sendResponse(exchange, 200, sb.toString());
+    }
+
+    private void reparar(HttpExchange exchange) throws IOException, SQLException {
+        List<DigestDAO.Fila> filas = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String linea;
+            while ((linea = reader.readLine()) != null) {
+                if (!linea.isEmpty()) {
+                    filas.add(DigestDAO.Fila.parse(linea));
+                }
+            }
+        }
+        DigestDAO.ResultadoReparacion resultado;
+        ArqueoParcialTracker.Cambio cambio = arqueoTracker.iniciarCambio();
+        try {
+            resultado = digestDAO.reparar(filas);
+            cambio.aplicar(resultado.getDeltaSaldos());
+        } finally {
+            cambio.cerrar();
+        }
+        dbManager.getBalanceCache().invalidate(resultado.getCuentas().toArray(new String[0]));
+        LOGGER.log(Level.INFO, "Worker [{0}] Anti-entropía: {1} cuentas reparadas, {2} fallidas (delta de saldos {3})",
+                new Object[]{workerId, resultado.getReparadas(), resultado.getFallidas(), resultado.getDeltaSaldos()});
+        sendResponse(exchange, 200, "reparadas=" + resultado.getReparadas() + "\nfallidas=" + resultado.getFallidas() + "\n");
+    }
+
+    private static int entero(Map<String, String> params, String nombre) {
+        return Integer.parseInt(requerido(params, nombre));
+    }
+
+    private static String requerido(Map<String, String> params, String nombre) {
+        String valor = params.get(nombre);
+        if (valor == null || valor.isBlank()) {
+            throw new IllegalArgumentException("Falta el parámetro '" + nombre + "'.");
+        }
+        return valor;
+    }
+}
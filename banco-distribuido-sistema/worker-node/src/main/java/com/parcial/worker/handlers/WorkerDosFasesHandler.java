@@ -0,0 +1,95 @@
+package com.parcial.worker.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.dao.TransferenciaDistribuidaDAO;
+import com.parcial.worker.services.TwoPhaseParticipant;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fases del commit en dos fases de una transferencia entre particiones (POST, form-urlencoded):
+ * - /api/worker/2pc/preparar (idTransaccion, rol, cuenta, contraparte, monto): responde "VOTO: SI" o "VOTO: NO - motivo";
+ *   un rechazo de negocio lleva su estado delante del motivo ("VOTO: NO - RECHAZADA_SALDO_INSUFICIENTE - ...").
+ * - /api/worker/2pc/confirmar (idTransaccion, rol)
+ * - /api/worker/2pc/abortar (idTransaccion, rol, cuenta, contraparte, monto)
+ * rol es DEBITO (esta partición tiene la cuenta origen) o CREDITO (la cuenta destino).
+ */
+public class WorkerDosFasesHandler extends BaseWorkerHandler {
+    private static final Logger LOGGER = Logger.getLogger(WorkerDosFasesHandler.class.getName());
+    private final TwoPhaseParticipant participant;
+
+    public WorkerDosFasesHandler(DatabaseManager dbManager, String workerId, TwoPhaseParticipant participant) {
+        super(dbManager, workerId);
+        this.participant = participant;
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "Método no Soportado");
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        String fase = path.substring(path.lastIndexOf('/') + 1);
+        String transaccionId = params.get("idTransaccion");
+        String rol = params.get("rol");
+        if (transaccionId == null || !(TransferenciaDistribuidaDAO.DEBITO.equals(rol) || TransferenciaDistribuidaDAO.CREDITO.equals(rol))) {
+            sendResponse(exchange, 400, "Error: Parámetros 'idTransaccion' y 'rol' (DEBITO o CREDITO) son requeridos.");
+            return;
+        }
+        LOGGER.log(Level.FINE, "Worker [{0}] API: 2PC {1} {2} ({3}) (hilo: {4})",
+                new Object[]{workerId, fase, transaccionId, rol, Thread.currentThread().getName()});
+
+        try {
+            switch (fase) {
+                case "preparar": {
+                    BigDecimal monto = monto(params);
+                    if (monto == null || params.get("cuenta") == null || params.get("contraparte") == null) {
+                        sendResponse(exchange, 400, "Error: Faltan parámetros para preparar la transacción.");
+                        return;
+                    }
+                    TransferenciaDistribuidaDAO.Voto voto = participant.preparar(transaccionId, rol,
+                            params.get("cuenta"), params.get("contraparte"), monto);
+                    sendResponse(exchange, 200, voto.isSi() ? "VOTO: SI" : "VOTO: NO - "
+                            + (voto.getRechazo() != null ? voto.getRechazo().getEstado() + " - " : "") + voto.getMotivo());
+                    return;
+                }
+                case "confirmar":
+                    participant.confirmar(transaccionId, rol);
+                    sendResponse(exchange, 200, "CONFIRMACIÓN: Transacción " + transaccionId + " confirmada.");
+                    return;
+                case "abortar":
+                    participant.abortar(transaccionId, rol, params.get("cuenta"), params.get("contraparte"), monto(params));
+                    sendResponse(exchange, 200, "CONFIRMACIÓN: Transacción " + transaccionId + " abortada.");
+                    return;
+                default:
+                    sendResponse(exchange, 404, "Error: Fase desconocida: " + fase);
+            }
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] 2PC: " + e.getMessage());
+            sendResponse(exchange, 409, "Error: " + e.getMessage());
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error en fase " + fase + " de " + transaccionId, e);
+            sendResponse(exchange, 500, "Error: " + e.getMessage());
+        }
+    }
+
+    private static BigDecimal monto(Map<String, String> params) {
+        String montoStr = params.get("monto");
+        if (montoStr == null) {
+            return null;
+        }
+        try {
+            BigDecimal monto = new BigDecimal(montoStr);
+            return monto.signum() > 0 ? monto : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
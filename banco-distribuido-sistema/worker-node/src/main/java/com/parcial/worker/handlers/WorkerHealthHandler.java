@@ -0,0 +1,83 @@
+package com.parcial.worker.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.ConnectionPool;
+import com.parcial.worker.persistence.DatabaseManager;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Estado del Nodo Trabajador para el sondeo del Central: GET /api/worker/health.
+ * Responde en texto plano ("clave=valor") la conectividad con la BD y la carga:
+ * - status=UP: la BD responde. Código 200.
+ * - status=DEGRADED: todas las conexiones del pool están prestadas; no se pide otra para no hacer
+ *   cola detrás de las transferencias. El nodo está vivo pero sin capacidad. Código 200.
+ * - status=DOWN: no se pudo obtener o validar una conexión. Código 503.
+ * "load" (0 a 1) es la ocupación mayor entre el pool de conexiones y los hilos de los handlers.
+ * Se sirve en un servidor aparte (HEALTH_PORT, ver WorkerNodeServer), fuera del pool que mide.
+ */
+public class WorkerHealthHandler extends BaseWorkerHandler {
+    private static final Logger LOGGER = Logger.getLogger(WorkerHealthHandler.class.getName());
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final ExecutorService httpExecutor;
+
+    public WorkerHealthHandler(DatabaseManager dbManager, String workerId, ExecutorService httpExecutor) {
+        super(dbManager, workerId);
+        this.httpExecutor = httpExecutor;
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
+        ConnectionPool pool = dbManager.getConnectionPool();
+        int poolActive = pool.getActiveConnections();
+        int poolMax = pool.getMaxConnections();
+
+        String status;
+        long pingMs = -1;
+        if (poolActive >= poolMax) {
+            status = "DEGRADED";
+        } else {
+            long start = System.nanoTime();
+            boolean valid;
+            try (Connection conn = dbManager.getConnection()) {
+                valid = conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Worker [" + workerId + "] Health: la BD no responde", e);
+                valid = false;
+            }
+            pingMs = (System.nanoTime() - start) / 1_000_000L;
+            status = valid ? "UP" : "DOWN";
+        }
+
+        double load = (double) poolActive / poolMax;
+        StringBuilder sb = new StringBuilder();
+        sb.append("status=").append(status).append('\n');
+        sb.append("worker.id=").append(workerId).append('\n');
+        sb.append("db.pingMs=").append(pingMs).append('\n');
+        sb.append("db.pool.active=").append(poolActive).append('\n');
+        sb.append("db.pool.max=").append(poolMax).append('\n');
+        if (httpExecutor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) httpExecutor;
+            // La cola solo crece con todos los hilos base ocupados
+            int active = executor.getActiveCount();
+            int queued = executor.getQueue().size();
+            sb.append("http.active=").append(active).append('\n');
+            sb.append("http.queued=").append(queued).append('\n');
+            load = Math.max(load, Math.min(1.0, (double) (active + queued) / executor.getCorePoolSize()));
+        }
+        sb.append("cpu.loadAverage=").append(String.format(Locale.ROOT, "%.2f", ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage())).append('\n');
+        // Locale.ROOT: el Central lee estos valores como números
+        sb.append("load=").append(String.format(Locale.ROOT, "%.4f", load)).append('\n');
+        sendResponse(exchange, "DOWN".equals(status) ? 503 : 200, sb.toString());
+    }
+}
@@ -0,0 +1,97 @@
+package com.parcial.worker.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.AccountLockMetrics;
+import com.parcial.worker.persistence.ArqueoParcialTracker;
+import com.parcial.worker.persistence.BalanceCache;
+import com.parcial.worker.persistence.ConnectionPool;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.LatencyHistogram;
+import com.parcial.worker.services.ReplicationLog;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Expone métricas internas del Nodo Trabajador en texto plano (una métrica "clave=valor" por línea).
+ */
+public class WorkerMetricsHandler extends BaseWorkerHandler {
+    private static final Logger LOGGER = Logger.getLogger(WorkerMetricsHandler.class.getName());
+    // Solo las cuentas más disputadas: el listado completo crecería con el número de cuentas
+    private static final int TOP_CUENTAS = Integer.parseInt(System.getenv().getOrDefault("CONTENCION_TOP", "20"));
+
+    private final AccountLockMetrics lockMetrics;
+    private final LatencyHistogram transferLatency;
+    private final ArqueoParcialTracker arqueoTracker;
+    private final String transferMode;
+    private final ReplicationLog replicationLog;
+    private final WorkerReplicacionHandler replicacionHandler;
+
+    public WorkerMetricsHandler(DatabaseManager dbManager, String workerId, AccountLockMetrics lockMetrics,
+                                LatencyHistogram transferLatency, ArqueoParcialTracker arqueoTracker, String transferMode,
+                                ReplicationLog replicationLog, WorkerReplicacionHandler replicacionHandler) {
+        super(dbManager, workerId);
+        this.lockMetrics = lockMetrics;
+        this.transferLatency = transferLatency;
+        this.arqueoTracker = arqueoTracker;
+        this.transferMode = transferMode;
+        this.replicationLog = replicationLog;
+        this.replicacionHandler = replicacionHandler;
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
+        LOGGER.log(Level.FINE, "Worker [{0}] API: Solicitud METRICS (hilo: {1})",
+            new Object[]{workerId, Thread.currentThread().getName()});
+
+        ConnectionPool pool = dbManager.getConnectionPool();
+        StringBuilder sb = new StringBuilder();
+        sb.append("worker.id=").append(workerId).append('\n');
+        sb.append("db.pool.total=").append(pool.getTotalConnections()).append('\n');
+        sb.append("db.pool.active=").append(pool.getActiveConnections()).append('\n');
+        sb.append("db.pool.idle=").append(pool.getIdleConnections()).append('\n');
+        sb.append("db.statementCache.hits=").append(pool.getStatementCacheHits()).append('\n');
+        sb.append("db.statementCache.misses=").append(pool.getStatementCacheMisses()).append('\n');
+        BalanceCache balanceCache = dbManager.getBalanceCache();
+        sb.append("balanceCache.size=").append(balanceCache.size()).append('\n');
+        sb.append("balanceCache.hits=").append(balanceCache.getHits()).append('\n');
+        sb.append("balanceCache.misses=").append(balanceCache.getMisses()).append('\n');
+        sb.append("balanceCache.hitRatio=").append(String.format("%.4f", balanceCache.getHitRatio())).append('\n');
+        sb.append("balanceCache.rejectedFills=").append(balanceCache.getRejectedFills()).append('\n');
+        sb.append("balanceCache.evictions=").append(balanceCache.getEvictions()).append('\n');
+        sb.append("arqueo.stalenessMs=").append(arqueoTracker.getStalenessMillis()).append('\n');
+        sb.append("arqueo.reconciliations=").append(arqueoTracker.getReconciliaciones()).append('\n');
+        sb.append("arqueo.reconciliationsDiscarded=").append(arqueoTracker.getReconciliacionesDescartadas()).append('\n');
+        sb.append("transfer.mode=").append(transferMode).append('\n');
+        sb.append("transfer.count=").append(transferLatency.getCount()).append('\n');
+        sb.append("transfer.throughputPerSec=").append(String.format("%.2f", transferLatency.getThroughputPerSecond())).append('\n');
+        sb.append("transfer.p50Ms=").append(String.format("%.3f", transferLatency.getPercentileMillis(50))).append('\n');
+        sb.append("transfer.p99Ms=").append(String.format("%.3f", transferLatency.getPercentileMillis(99))).append('\n');
+        sb.append("tx.retries=").append(lockMetrics.getTotalRetries()).append('\n');
+        sb.append("tx.retriesExhausted=").append(lockMetrics.getTotalExhaustedRetries()).append('\n');
+        sb.append("replication.waitTimeouts=").append(replicationLog.getEsperasAgotadas()).append('\n');
+        replicationLog.getBackups().stream().sorted().forEach(backup -> {
+            String prefix = "replication.backup." + backup + ".";
+            sb.append(prefix).append("pending=").append(replicationLog.getPendientes(backup)).append('\n');
+            sb.append(prefix).append("acked=").append(replicationLog.getConfirmados(backup)).append('\n');
+            sb.append(prefix).append("batches=").append(replicationLog.getLotes(backup)).append('\n');
+            sb.append(prefix).append("retries=").append(replicationLog.getReintentos(backup)).append('\n');
+            sb.append(prefix).append("dropped=").append(replicationLog.getDescartados(backup)).append('\n');
+        });
+        sb.append("replication.applied=").append(replicacionHandler.getAplicados()).append('\n');
+        sb.append("replication.duplicates=").append(replicacionHandler.getDuplicados()).append('\n');
+        sb.append("replication.failed=").append(replicacionHandler.getFallidos()).append('\n');
+        sb.append("replication.gaps=").append(replicacionHandler.getSaltos()).append('\n');
+        sb.append("contention.trackedAccounts=").append(lockMetrics.getTrackedAccounts()).append('\n');
+        lockMetrics.topByLockWait(TOP_CUENTAS).forEach((cuentaId, stats) -> {
+            String prefix = "account." + cuentaId + ".";
+            sb.append(prefix).append("lockAcquisitions=").append(stats.getLockAcquisitions()).append('\n');
+            sb.append(prefix).append("lockWaitMs=").append(stats.getLockWaitMillis()).append('\n');
+            sb.append(prefix).append("maxLockWaitMs=").append(stats.getMaxLockWaitMillis()).append('\n');
+            sb.append(prefix).append("retries=").append(stats.getRetries()).append('\n');
+        });
+        sendResponse(exchange, 200, sb.toString());
+    }
+}
@@ -0,0 +1,150 @@
+package com.parcial.worker.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.ArqueoParcialTracker;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.dao.MigracionDAO;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Endpoints de migración de cuentas entre workers, usados por el rebalanceo del Servidor Central:
+ * - GET  /api/worker/migracion/exportar?tabla=&desde=&hasta=[&desdeFecha=]  filas en CSV (streaming)
+ * - POST /api/worker/migracion/importar?tabla=&desde=&hasta=   cuerpo CSV de exportar del mismo rango
+ * - POST /api/worker/migracion/purgar?desde=&hasta=   borra el rango una vez migrado
+ *
+ * exportar responde con el header X-Migracion-Marca: la hora local del worker al empezar la
+ * exportación, que el Central usa como punto de partida de la siguiente ronda de puesta al día
+ * (FECHA_HORA de las transferencias la asigna este mismo reloj).
+ */
+public class WorkerMigracionHandler extends BaseWorkerHandler {
+    private static final Logger LOGGER = Logger.getLogger(WorkerMigracionHandler.class.getName());
+    private final MigracionDAO migracionDAO;
+    private final ArqueoParcialTracker arqueoTracker;
+
+    public WorkerMigracionHandler(DatabaseManager dbManager, String workerId, ArqueoParcialTracker arqueoTracker) {
+        super(dbManager, workerId);
+        this.migracionDAO = new MigracionDAO(dbManager, workerId);
+        this.arqueoTracker = arqueoTracker;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // Los parámetros van siempre en la query: en importar el cuerpo es el CSV, no un formulario
+        handleRequest(exchange, parseQueryParams(exchange.getRequestURI().getQuery()));
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String operacion = path.substring(path.lastIndexOf('/') + 1);
+        String metodo = exchange.getRequestMethod();
+        try {
+            if ("exportar".equals(operacion) && "GET".equalsIgnoreCase(metodo)) {
+                exportar(exchange, params);
+            } else if ("importar".equals(operacion) && "POST".equalsIgnoreCase(metodo)) {
+                importar(exchange, params);
+            } else if ("purgar".equals(operacion) && "POST".equalsIgnoreCase(metodo)) {
+                purgar(exchange, params);
+            } else {
+                sendResponse(exchange, 404, "Error: Operación de migración no soportada: " + metodo + " " + operacion);
+            }
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, "Error: " + e.getMessage());
+        }
+    }
+
+    private void exportar(HttpExchange exchange, Map<String, String> params) throws IOException {
+        MigracionDAO.Tabla tabla = MigracionDAO.Tabla.parse(requerido(params, "tabla"));
+        String desde = cuenta(params, "desde");
+        String hasta = cuenta(params, "hasta");
+        String desdeFechaStr = params.get("desdeFecha");
+        Timestamp desdeFecha = desdeFechaStr != null ? Timestamp.valueOf(desdeFechaStr) : null;
+
+        exchange.getResponseHeaders().set("Content-Type", "text/csv; charset=UTF-8");
+        exchange.getResponseHeaders().set("X-Migracion-Marca", Timestamp.valueOf(LocalDateTime.now()).toString());
+        exchange.sendResponseHeaders(200, 0); // Longitud desconocida: respuesta en chunks
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            long filas = migracionDAO.exportar(tabla, desde, hasta, desdeFecha, out);
+            LOGGER.log(Level.INFO, "Worker [{0}] Migración: {1} filas exportadas", new Object[]{workerId, filas});
+        } catch (SQLException e) {
+            // Los headers ya se enviaron: cortar la conexión para que el Central vea la respuesta incompleta
+            LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error al exportar " + tabla + " para migración", e);
+            exchange.close();
+        }
+    }
+
+    private void importar(HttpExchange exchange, Map<String, String> params) throws IOException {
+        MigracionDAO.Tabla tabla = MigracionDAO.Tabla.parse(requerido(params, "tabla"));
+        String desde = cuenta(params, "desde");
+        String hasta = cuenta(params, "hasta");
+        MigracionDAO.ResultadoImportacion resultado;
+        ArqueoParcialTracker.Cambio cambio = arqueoTracker.iniciarCambio();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            resultado = migracionDAO.importar(tabla, desde, hasta, in);
+            cambio.aplicar(resultado.getDeltaSaldos());
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error al importar " + tabla + " para migración", e);
+            sendResponse(exchange, 500, "Error: No se pudo importar " + tabla + ": " + e.getMessage());
+            return;
+        } finally {
+            cambio.cerrar();
+        }
+        if (!resultado.getCuentasModificadas().isEmpty()) {
+            dbManager.getBalanceCache().invalidate(resultado.getCuentasModificadas().toArray(new String[0]));
+        }
+        sendResponse(exchange, 200, "recibidas=" + resultado.getRecibidas() + "\naplicadas=" + resultado.getAplicadas() + "\n");
+    }
+
+    private void purgar(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String desde = cuenta(params, "desde");
+        String hasta = cuenta(params, "hasta");
+        MigracionDAO.ResultadoPurga resultado;
+        ArqueoParcialTracker.Cambio cambio = arqueoTracker.iniciarCambio();
+        try {
+            resultado = migracionDAO.purgar(desde, hasta);
+            cambio.aplicar(resultado.getDeltaSaldos());
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error al purgar rango migrado", e);
+            sendResponse(exchange, 500, "Error: No se pudo purgar el rango: " + e.getMessage());
+            return;
+        } finally {
+            cambio.cerrar();
+        }
+        if (!resultado.getCuentasEliminadas().isEmpty()) {
+            dbManager.getBalanceCache().invalidate(resultado.getCuentasEliminadas().toArray(new String[0]));
+        }
+        LOGGER.log(Level.INFO, "Worker [{0}] Migración: rango [{1}, {2}] purgado ({3} cuentas, {4} transacciones)",
+                new Object[]{workerId, desde, hasta, resultado.getCuentasEliminadas().size(), resultado.getTransaccionesEliminadas()});
+        sendResponse(exchange, 200, "cuentas=" + resultado.getCuentasEliminadas().size()
+                + "\ntransacciones=" + resultado.getTransaccionesEliminadas() + "\n");
+    }
+
+    private static String requerido(Map<String, String> params, String nombre) {
+        String valor = params.get(nombre);
+        if (valor == null || valor.isEmpty()) {
+            throw new IllegalArgumentException("Parámetro '" + nombre + "' es requerido.");
+        }
+        return valor;
+    }
+
+    private static String cuenta(Map<String, String> params, String nombre) {
+        String valor = requerido(params, nombre);
+        if (!MigracionDAO.esIdValido(valor)) {
+            throw new IllegalArgumentException("ID de cuenta inválido en '" + nombre + "': " + valor);
+        }
+        return valor;
+    }
+}
@@ -0,0 +1,129 @@
+package com.parcial.worker.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.dao.ReplicacionDAO;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lado backup de la replicación primario-backup (POST /api/worker/replicacion?primario=&epoca=):
+ * recibe un lote del log de cambios del primario (una línea por cambio, ver {@link ReplicacionDAO.Cambio})
+ * y lo aplica en orden, sin volver a validar saldos.
+ *
+ * Por cada primario se recuerda la última secuencia aplicada de su época actual: los lotes de un
+ * mismo primario se aplican de a uno y lo ya aplicado (un reenvío tras un timeout) se descarta
+ * antes de ir a la base de datos. Un salto en la secuencia significa que el primario descartó
+ * cambios para este backup; se registra para que la reparación lo resuelva.
+ */
+public class WorkerReplicacionHandler extends BaseWorkerHandler {
+    private static final Logger LOGGER = Logger.getLogger(WorkerReplicacionHandler.class.getName());
+    private final ReplicacionDAO replicacionDAO;
+    private final Map<String, Posicion> posiciones = new ConcurrentHashMap<>();
+    private final AtomicLong aplicados = new AtomicLong();
+    private final AtomicLong duplicados = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private final AtomicLong saltos = new AtomicLong();
+
+    // Última secuencia aplicada de un primario; también es el lock que ordena sus lotes
+    private static final class Posicion {
+        long epoca;
+        long ultima;
+    }
+
+    public WorkerReplicacionHandler(DatabaseManager dbManager, String workerId) {
+        super(dbManager, workerId);
+        this.replicacionDAO = new ReplicacionDAO(dbManager, workerId);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // El cuerpo es el lote del log, no un formulario: los parámetros van en la query
+        handleRequest(exchange, parseQueryParams(exchange.getRequestURI().getQuery()));
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "Método no permitido. Usar POST.");
+            return;
+        }
+        String primario = params.get("primario");
+        long epoca;
+        List<ReplicacionDAO.Cambio> cambios = new ArrayList<>();
+        try {
+            if (primario == null || primario.isEmpty()) {
+                throw new IllegalArgumentException("Falta el parámetro 'primario'.");
+            }
+            epoca = Long.parseLong(params.getOrDefault("epoca", "0"));
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+                String linea;
+                while ((linea = reader.readLine()) != null) {
+                    if (!linea.isEmpty()) {
+                        cambios.add(ReplicacionDAO.Cambio.parse(linea));
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, "Error: " + e.getMessage());
+            return;
+        }
+
+        Posicion posicion = posiciones.computeIfAbsent(primario, k -> new Posicion());
+        long ultima;
+        synchronized (posicion) {
+            if (posicion.epoca != epoca) {
+                // Primario nuevo o reiniciado: su secuencia empieza de cero
+                posicion.epoca = epoca;
+                posicion.ultima = 0;
+            }
+            List<ReplicacionDAO.Cambio> nuevos = new ArrayList<>(cambios.size());
+            for (ReplicacionDAO.Cambio cambio : cambios) {
+                if (cambio.getSecuencia() > posicion.ultima) {
+                    nuevos.add(cambio);
+                }
+            }
+            if (!nuevos.isEmpty() && nuevos.get(0).getSecuencia() > posicion.ultima + 1 && posicion.ultima > 0) {
+                saltos.incrementAndGet();
+                LOGGER.log(Level.SEVERE, "Worker [{0}] Replicación: salto en el log de {1} ({2} -> {3}); faltan cambios",
+                        new Object[]{workerId, primario, posicion.ultima, nuevos.get(0).getSecuencia()});
+            }
+            duplicados.addAndGet(cambios.size() - nuevos.size());
+            if (!nuevos.isEmpty()) {
+                ReplicacionDAO.ResultadoAplicacion resultado;
+                try {
+                    resultado = replicacionDAO.aplicar(nuevos);
+                } catch (SQLException e) {
+                    LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Replicación: error al aplicar lote de " + primario, e);
+                    sendResponse(exchange, 500, "Error: " + e.getMessage());
+                    return;
+                }
+                posicion.ultima = nuevos.get(nuevos.size() - 1).getSecuencia();
+                aplicados.addAndGet(resultado.getAplicados());
+                duplicados.addAndGet(resultado.getDuplicados());
+                fallidos.addAndGet(resultado.getFallidos());
+                nuevos.forEach(c -> dbManager.getBalanceCache().invalidate(c.getCuentaOrigen(), c.getCuentaDestino()));
+            }
+            ultima = posicion.ultima;
+        }
+        LOGGER.log(Level.FINE, "Worker [{0}] Replicación: lote de {1} cambios de {2} aplicado hasta {3}",
+                new Object[]{workerId, cambios.size(), primario, ultima});
+        sendResponse(exchange, 200, "APLICADO: " + ultima);
+    }
+
+    public long getAplicados() { return aplicados.get(); }
+    public long getDuplicados() { return duplicados.get(); }
+    public long getFallidos() { return fallidos.get(); }
+    public long getSaltos() { return saltos.get(); }
+}
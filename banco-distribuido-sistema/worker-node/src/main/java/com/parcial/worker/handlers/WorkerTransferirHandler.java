@@ -2,31 +2,27 @@ package com.parcial.worker.handlers;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.parcial.worker.persistence.DatabaseManager;
-import com.parcial.worker.persistence.dao.CuentaDAO;
-import com.parcial.worker.persistence.dao.TransaccionDAO; // Asumiento que existe
+import com.parcial.worker.services.TransferResult;
+import com.parcial.worker.services.TransferService;
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Manejador para la operación de transferencia de fondos en un Nodo Trabajador.
- * Realiza la operación dentro de una transacción de base de datos.
+ * La transacción la ejecuta {@link TransferService}; aquí solo se validan parámetros y se arma la respuesta.
+ * Con el parámetro opcional "backups" (direcciones separadas por comas) este worker actúa como primario.
  */
 public class WorkerTransferirHandler extends BaseWorkerHandler { // Asumiendo que tienes una clase base
     private static final Logger LOGGER = Logger.getLogger(WorkerTransferirHandler.class.getName());
-    private final CuentaDAO cuentaDAO;
-    private final TransaccionDAO transaccionDAO; // Necesitas crear esta clase DAO
+    private final TransferService transferService;
 
-    public WorkerTransferirHandler(DatabaseManager dbManager, String workerId) {
+    public WorkerTransferirHandler(DatabaseManager dbManager, String workerId, TransferService transferService) {
         super(dbManager, workerId); // Llama al constructor de BaseWorkerHandler
-        this.cuentaDAO = new CuentaDAO(dbManager, workerId);
-        this.transaccionDAO = new TransaccionDAO(dbManager, workerId); // Inicializar
+        this.transferService = transferService;
     }
 
     @Override
@@ -48,87 +44,51 @@ public class WorkerTransferirHandler extends BaseWorkerHandler { // Asumiendo qu
             sendResponse(exchange, 400, "Error: Monto inválido.");
             return;
         }
+        String errorValidacion = TransferService.validar(cuentaOrigen, cuentaDestino, monto);
+        if (errorValidacion != null) {
+            sendResponse(exchange, 400, "Error: " + errorValidacion);
+            return;
+        }
+        // Replicación primario-backup: el Central manda la orden solo a este worker (primario) con la
+        // lista de backups, a los que se envía el cambio ya confirmado en vez de re-ejecutarlo allí
+        List<String> backups = new ArrayList<>();
+        String backupsParam = params.get("backups");
+        if (backupsParam != null && !backupsParam.isBlank()) {
+            for (String backup : backupsParam.split(",")) {
+                String direccion = backup.trim();
+                if (!direccion.startsWith("http://") && !direccion.startsWith("https://")) {
+                    sendResponse(exchange, 400, "Error: Dirección de backup inválida: " + direccion);
+                    return;
+                }
+                backups.add(direccion);
+            }
+        }
 
         LOGGER.log(Level.INFO, "Worker [{0}] API: Solicitud TRANSFERIR_FONDOS: {1} -> {2}, Monto: {3} (hilo: {4})", 
             new Object[]{workerId, cuentaOrigen, cuentaDestino, monto, Thread.currentThread().getName()});
 
-        // Lógica de transacción JDBC
-        Connection conn = null;
-        String transaccionId = "TXN-" + workerId + "-" + System.currentTimeMillis(); // ID de transacción simple
-        String estadoTransaccion = "ERROR";
-
-        try {
-            conn = dbManager.getConnection();
-            conn.setAutoCommit(false); // Iniciar transacción
-
-            // 1. Verificar saldo de la cuenta origen
-            Optional<Double> saldoOrigenOpt = cuentaDAO.getSaldoEnTransaccion(conn, cuentaOrigen); // Necesitas un método que use la conn existente
-            if (saldoOrigenOpt.isEmpty()) {
-                throw new SQLException("Cuenta origen " + cuentaOrigen + " no encontrada.");
-            }
-            double saldoOrigen = saldoOrigenOpt.get();
-            if (saldoOrigen < monto) {
-                estadoTransaccion = "RECHAZADA_SALDO_INSUFICIENTE";
-                throw new SQLException("Saldo insuficiente en cuenta " + cuentaOrigen);
-            }
-
-            // 2. Debitar de cuenta origen
-            boolean debitado = cuentaDAO.updateSaldoEnTransaccion(conn, cuentaOrigen, saldoOrigen - monto);
-            if (!debitado) {
-                throw new SQLException("No se pudo debitar de la cuenta origen " + cuentaOrigen);
-            }
-            LOGGER.info("Worker ["+workerId+"] Débito realizado en " + cuentaOrigen + " por " + monto);
-            
-            // 3. Acreditar a cuenta destino (SI ESTE WORKER MANEJA LA CUENTA DESTINO)
-            // En un sistema real, si cuentaDestino está en otra partición/worker,
-            // el Servidor Central coordinaría esto. Aquí asumimos que puede ser local.
-            // Para simplificar, si la cuenta destino NO es manejada por este worker,
-            // esta parte se omitiría aquí y el Central lo manejaría con otro worker.
-            // Vamos a simular que intentamos acreditar. Si no existe localmente, podría fallar o el DAO manejarlo.
-            
-            Optional<Double> saldoDestinoOpt = cuentaDAO.getSaldoEnTransaccion(conn, cuentaDestino);
-            if (saldoDestinoOpt.isEmpty()) {
-                 // Podría ser que la cuenta destino esté en otro worker.
-                 // Por ahora, si no está local, la transacción global fallaría o requeriría 2PC.
-                 // Aquí asumiremos que si no está, es un error para esta lógica simple.
-                 throw new SQLException("Cuenta destino " + cuentaDestino + " no encontrada en este nodo para acreditación.");
-            }
-            double saldoDestino = saldoDestinoOpt.get();
-            boolean acreditado = cuentaDAO.updateSaldoEnTransaccion(conn, cuentaDestino, saldoDestino + monto);
-            if (!acreditado) {
-                throw new SQLException("No se pudo acreditar a la cuenta destino " + cuentaDestino);
-            }
-            LOGGER.info("Worker ["+workerId+"] Crédito realizado en " + cuentaDestino + " por " + monto);
-
-            // 4. Registrar la transacción
-            estadoTransaccion = "CONFIRMADA";
-            // Necesitas un método en TransaccionDAO: registrarEnTransaccion(conn, id, origen, destino, monto, estado)
-            transaccionDAO.registrarEnTransaccion(conn, transaccionId, cuentaOrigen, cuentaDestino, monto, Timestamp.valueOf(LocalDateTime.now()), estadoTransaccion);
-            
-            conn.commit(); // Confirmar transacción
-            LOGGER.info("Worker ["+workerId+"] Transacción " + transaccionId + " COMPLETADA y commit realizado.");
-            sendResponse(exchange, 200, "CONFIRMACIÓN: Transferencia " + transaccionId + " realizada.");
-
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error en transacción de transferencia " + transaccionId + ": " + e.getMessage(), e);
-            if (conn != null) {
-                try {
-                    LOGGER.warning("Worker ["+workerId+"] Intentando rollback para transacción " + transaccionId);
-                    conn.rollback(); // Revertir transacción en caso de error
-                } catch (SQLException ex) {
-                    LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error durante el rollback para transacción " + transaccionId, ex);
-                }
-            }
-            sendResponse(exchange, 500, "ERROR: " + estadoTransaccion + " - " + e.getMessage());
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Restaurar auto-commit
-                    conn.close(); // Cerrar conexión
-                } catch (SQLException e) {
-                    LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error al cerrar conexión después de transferencia " + transaccionId, e);
+        // En modo group commit la respuesta se envía desde el hilo escritor, después del commit del lote
+        transferService.transferir(cuentaOrigen, cuentaDestino, monto, backups).whenComplete((resultado, ex) -> {
+            try {
+                if (ex != null) {
+                    LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error inesperado en la transferencia " + cuentaOrigen + " -> " + cuentaDestino, ex);
+                    sendResponse(exchange, 500, "ERROR: Error interno del worker al procesar la transferencia.");
+                } else {
+                    responder(exchange, resultado);
                 }
+            } catch (IOException ioe) {
+                LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error al enviar respuesta de transferencia " + cuentaOrigen + " -> " + cuentaDestino, ioe);
             }
+        });
+    }
+
+    // Un rechazo de negocio (saldo insuficiente, cuenta inexistente) es 409: el nodo está sano y el
+    // Central no debe contarlo en su circuito; 500 queda para los errores técnicos
+    private void responder(HttpExchange exchange, TransferResult resultado) throws IOException {
+        if (resultado.isConfirmada()) {
+            sendResponse(exchange, 200, "CONFIRMACIÓN: " + resultado.getMensaje());
+        } else {
+            sendResponse(exchange, resultado.isRechazada() ? 409 : 500, "ERROR: " + resultado.getEstado() + " - " + resultado.getMensaje());
         }
     }
      // Asumimos que tienes una clase BaseWorkerHandler como esta:
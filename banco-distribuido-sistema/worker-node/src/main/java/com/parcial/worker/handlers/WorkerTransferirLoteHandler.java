@@ -0,0 +1,126 @@
+package com.parcial.worker.handlers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.services.TransferResult;
+import com.parcial.worker.services.TransferService;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Manejador para lotes de transferencias del Servidor Central (POST /api/worker/transferir-lote).
+ * El campo "transferencias" trae una transferencia por línea: "cuentaOrigen\tcuentaDestino\tmonto",
+ * cada campo codificado como en un formulario; "backups" funciona como en {@link WorkerTransferirHandler}.
+ * Se aplican en el orden recibido (ver {@link TransferService#transferirLote}) y la respuesta trae una
+ * línea por transferencia, en el mismo orden y con el mismo texto que la respuesta del endpoint individual.
+ * Los rechazos de negocio van en sus líneas con 200; si ninguna transferencia llegó a ejecutarse por un
+ * error técnico (p. ej. sin conexión a la BD) se responde 500, como haría el endpoint individual.
+ */
+public class WorkerTransferirLoteHandler extends BaseWorkerHandler {
+    private static final Logger LOGGER = Logger.getLogger(WorkerTransferirLoteHandler.class.getName());
+    private static final int MAX_LOTE = Integer.parseInt(System.getenv().getOrDefault("TRANSFER_LOTE_MAX_WORKER", "1000"));
+    private final TransferService transferService;
+
+    public WorkerTransferirLoteHandler(DatabaseManager dbManager, String workerId, TransferService transferService) {
+        super(dbManager, workerId);
+        this.transferService = transferService;
+    }
+
+    @Override
+    protected void handleRequest(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            sendResponse(exchange, 405, "Error: Método no permitido. Usar POST.");
+            return;
+        }
+        String transferencias = params.get("transferencias");
+        if (transferencias == null || transferencias.isBlank()) {
+            sendResponse(exchange, 400, "Error: Falta el parámetro 'transferencias'.");
+            return;
+        }
+        List<String> backups = new ArrayList<>();
+        String backupsParam = params.get("backups");
+        if (backupsParam != null && !backupsParam.isBlank()) {
+            for (String backup : backupsParam.split(",")) {
+                String direccion = backup.trim();
+                if (!direccion.startsWith("http://") && !direccion.startsWith("https://")) {
+                    sendResponse(exchange, 400, "Error: Dirección de backup inválida: " + direccion);
+                    return;
+                }
+                backups.add(direccion);
+            }
+        }
+
+        String[] lineas = transferencias.split("\n");
+        if (lineas.length > MAX_LOTE) {
+            sendResponse(exchange, 400, "Error: Lote de " + lineas.length + " transferencias (máximo " + MAX_LOTE + ").");
+            return;
+        }
+        // Las inválidas se responden sin ejecutarlas; las demás van al servicio conservando el orden
+        String[] respuestas = new String[lineas.length];
+        List<Integer> posiciones = new ArrayList<>();
+        List<TransferService.Orden> ordenes = new ArrayList<>();
+        for (int i = 0; i < lineas.length; i++) {
+            String[] campos = lineas[i].split("\t", -1);
+            if (campos.length != 3) {
+                respuestas[i] = "ERROR: SOLICITUD_INVALIDA - Transferencia malformada.";
+                continue;
+            }
+            String cuentaOrigen = URLDecoder.decode(campos[0], StandardCharsets.UTF_8);
+            String cuentaDestino = URLDecoder.decode(campos[1], StandardCharsets.UTF_8);
+            double monto;
+            try {
+                monto = Double.parseDouble(URLDecoder.decode(campos[2], StandardCharsets.UTF_8));
+            } catch (NumberFormatException e) {
+                respuestas[i] = "ERROR: SOLICITUD_INVALIDA - Monto inválido.";
+                continue;
+            }
+            String errorValidacion = TransferService.validar(cuentaOrigen, cuentaDestino, monto);
+            if (errorValidacion != null) {
+                respuestas[i] = "ERROR: SOLICITUD_INVALIDA - " + errorValidacion;
+                continue;
+            }
+            posiciones.add(i);
+            ordenes.add(new TransferService.Orden(cuentaOrigen, cuentaDestino, monto));
+        }
+
+        LOGGER.log(Level.INFO, "Worker [{0}] API: Solicitud TRANSFERIR_LOTE de {1} transferencias (hilo: {2})",
+                new Object[]{workerId, lineas.length, Thread.currentThread().getName()});
+
+        transferService.transferirLote(ordenes, backups).whenComplete((resultados, ex) -> {
+            try {
+                if (ex != null) {
+                    LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error inesperado en el lote de " + lineas.length + " transferencias", ex);
+                    sendResponse(exchange, 500, "ERROR: Error interno del worker al procesar el lote de transferencias.");
+                    return;
+                }
+                for (int i = 0; i < resultados.size(); i++) {
+                    respuestas[posiciones.get(i)] = aLinea(resultados.get(i));
+                }
+                boolean todasConError = !resultados.isEmpty()
+                        && resultados.stream().noneMatch(r -> r.isConfirmada() || r.isRechazada());
+                if (todasConError && resultados.size() == lineas.length) {
+                    sendResponse(exchange, 500, "ERROR: No se pudo aplicar el lote de transferencias: " + resultados.get(0).getMensaje());
+                    return;
+                }
+                sendResponse(exchange, 200, String.join("\n", respuestas) + "\n");
+            } catch (IOException ioe) {
+                LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error al enviar respuesta del lote de transferencias", ioe);
+            }
+        });
+    }
+
+    // Mismo texto que WorkerTransferirHandler, en una sola línea
+    private static String aLinea(TransferResult resultado) {
+        String linea = resultado.isConfirmada()
+                ? "CONFIRMACIÓN: " + resultado.getMensaje()
+                : "ERROR: " + resultado.getEstado() + " - " + resultado.getMensaje();
+        return linea.replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,106 @@
+package com.parcial.worker.persistence;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Métricas de contención por cuenta: tiempo esperando bloqueos de fila y reintentos
+ * por fallos de serialización o deadlock. Permite identificar cuentas "calientes".
+ * Se siguen como mucho CONTENCION_MAX_CUENTAS cuentas (LRU): una cuenta que deja de recibir
+ * transferencias termina desalojada, así la memoria no crece con el número de cuentas.
+ */
+public class AccountLockMetrics {
+
+    /**
+     * Contadores de una cuenta. Se actualizan desde varios hilos sin sincronización adicional.
+     */
+    public static class Stats {
+        private final AtomicLong lockAcquisitions = new AtomicLong();
+        private final AtomicLong lockWaitNanos = new AtomicLong();
+        private final AtomicLong maxLockWaitNanos = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+
+        public long getLockAcquisitions() { return lockAcquisitions.get(); }
+        public long getLockWaitMillis() { return lockWaitNanos.get() / 1_000_000; }
+        public long getMaxLockWaitMillis() { return maxLockWaitNanos.get() / 1_000_000; }
+        public long getRetries() { return retries.get(); }
+    }
+
+    private final int maxAccounts;
+    // Orden de acceso: el primero es el menos usado. Se protege con su propio monitor.
+    private final Map<String, Stats> statsByAccount;
+    private final AtomicLong totalRetries = new AtomicLong();
+    private final AtomicLong totalExhaustedRetries = new AtomicLong();
+
+    public AccountLockMetrics() {
+        this(Integer.parseInt(System.getenv().getOrDefault("CONTENCION_MAX_CUENTAS", "1000")));
+    }
+
+    public AccountLockMetrics(int maxAccounts) {
+        this.maxAccounts = maxAccounts;
+        this.statsByAccount = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stats> eldest) {
+                return size() > AccountLockMetrics.this.maxAccounts;
+            }
+        };
+    }
+
+    public void recordLockWait(String cuentaId, long waitNanos) {
+        Stats stats = statsFor(cuentaId);
+        stats.lockAcquisitions.incrementAndGet();
+        stats.lockWaitNanos.addAndGet(waitNanos);
+        stats.maxLockWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Registra un reintento de una transacción que involucraba las cuentas dadas.
+     */
+    public void recordRetry(String... cuentaIds) {
+        totalRetries.incrementAndGet();
+        for (String cuentaId : cuentaIds) {
+            statsFor(cuentaId).retries.incrementAndGet();
+        }
+    }
+
+    public void recordRetriesExhausted() {
+        totalExhaustedRetries.incrementAndGet();
+    }
+
+    public long getTotalRetries() { return totalRetries.get(); }
+    public long getTotalExhaustedRetries() { return totalExhaustedRetries.get(); }
+
+    /**
+     * @return Las k cuentas con más tiempo total de espera por bloqueos, de mayor a menor.
+     */
+    public Map<String, Stats> topByLockWait(int k) {
+        List<Map.Entry<String, Stats>> entries;
+        synchronized (statsByAccount) {
+            entries = new ArrayList<>(statsByAccount.entrySet());
+        }
+        Map<String, Stats> top = new LinkedHashMap<>();
+        entries.stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, Stats> e) -> e.getValue().lockWaitNanos.get()).reversed())
+                .limit(k)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    public int getTrackedAccounts() {
+        synchronized (statsByAccount) {
+            return statsByAccount.size();
+        }
+    }
+
+    private Stats statsFor(String cuentaId) {
+        synchronized (statsByAccount) {
+            return statsByAccount.computeIfAbsent(cuentaId, k -> new Stats());
+        }
+    }
+}
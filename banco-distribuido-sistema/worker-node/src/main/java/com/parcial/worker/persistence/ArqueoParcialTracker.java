@@ -0,0 +1,175 @@
+package com.parcial.worker.persistence;
+
+import com.parcial.worker.persistence.dao.CuentaDAO;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Mantiene el total de saldos de la partición local (arqueo parcial) de forma incremental,
+ * para que /api/worker/arqueoParcial responda en O(1) sin un SUM sobre toda la tabla Cuenta.
+ *
+ * - Las operaciones que cambian el total de la partición (débito o crédito sin contraparte local,
+ *   alta de cuenta) abren un {@link Cambio} con {@link #iniciarCambio()} ANTES de su commit y lo
+ *   aplican después (o lo cierran sin aplicar si se revirtió). Una transferencia entre dos cuentas
+ *   locales no cambia el total y no necesita registrarse.
+ * - Un hilo de fondo reconcilia periódicamente contra SELECT SUM(SALDO). Cada cambio toma un número
+ *   de secuencia al abrirse, antes de su commit: el SUM solo se instala si al empezar no había cambios
+ *   abiertos y durante el SUM no se abrió ninguno. Así todo cambio que el snapshot pudo ver ya estaba
+ *   sumado al total, y los que se apliquen después del reemplazo son posteriores al snapshot. Si no,
+ *   la reconciliación se descarta y se reintenta en el siguiente ciclo.
+ */
+public class ArqueoParcialTracker {
+    private static final Logger LOGGER = Logger.getLogger(ArqueoParcialTracker.class.getName());
+    private static final int MAX_INTENTOS_CARGA_INICIAL = 3;
+
+    private final CuentaDAO cuentaDAO;
+    private final String workerId;
+    // El total se guarda en céntimos (SALDO es DECIMAL(12, 2)) para sumar sin errores de redondeo
+    private final AtomicLong totalCentimos = new AtomicLong();
+    private final AtomicLong deltaSequence = new AtomicLong();
+    // Cambios abiertos (commit en curso o sin aplicar todavía); se protege con deltaLock
+    private int cambiosAbiertos = 0;
+    private final AtomicLong reconciliaciones = new AtomicLong();
+    private final AtomicLong reconciliacionesDescartadas = new AtomicLong();
+    private volatile boolean inicializado = false;
+    private volatile long ultimaReconciliacionMillis = 0L;
+    private final ScheduledExecutorService reconciler;
+    // Protege total, secuencia y cambios abiertos frente a la instalación del resultado de una reconciliación
+    private final Object deltaLock = new Object();
+
+    /**
+     * Cambio en el total de la partición, abierto antes del commit que lo produce. Se cierra una sola
+     * vez: con {@link #aplicar} tras el commit o con {@link #cerrar} (sin efecto si ya se aplicó).
+     */
+    public final class Cambio {
+        private boolean cerrado = false;
+
+        private Cambio() {
+        }
+
+        public void aplicar(BigDecimal delta) {
+            long centimos = toCentimos(delta);
+            synchronized (deltaLock) {
+                if (cerrado) {
+                    return;
+                }
+                cerrado = true;
+                cambiosAbiertos--;
+                totalCentimos.addAndGet(centimos);
+            }
+        }
+
+        public void cerrar() {
+            synchronized (deltaLock) {
+                if (!cerrado) {
+                    cerrado = true;
+                    cambiosAbiertos--;
+                }
+            }
+        }
+    }
+
+    public ArqueoParcialTracker(CuentaDAO cuentaDAO, String workerId, long intervaloReconciliacionSegundos) {
+        this.cuentaDAO = cuentaDAO;
+        this.workerId = workerId;
+        this.reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "arqueo-reconciler-" + workerId);
+            t.setDaemon(true);
+            return t;
+        });
+        this.reconciler.scheduleWithFixedDelay(this::reconcile, 0, intervaloReconciliacionSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Abre un cambio en el total de la partición. Debe llamarse antes del commit que lo produce.
+     */
+    public Cambio iniciarCambio() {
+        synchronized (deltaLock) {
+            cambiosAbiertos++;
+            deltaSequence.incrementAndGet();
+        }
+        return new Cambio();
+    }
+
+    /**
+     * @return El arqueo parcial. Si todavía no hubo una reconciliación exitosa se reconcilia en el momento.
+     * @throws SQLException Si hace falta consultar la BD y la consulta falla.
+     */
+    public double getTotal() throws SQLException {
+        if (!inicializado) {
+            synchronized (this) {
+                for (int intento = 0; !inicializado && intento < MAX_INTENTOS_CARGA_INICIAL; intento++) {
+                    reconcileOnce();
+                }
+                if (!inicializado) {
+                    // Demasiados cambios concurrentes: responder con un SUM directo sin instalarlo
+                    return cuentaDAO.sumarSaldos().doubleValue();
+                }
+            }
+        }
+        return totalCentimos.get() / 100.0;
+    }
+
+    /**
+     * @return Milisegundos desde la última reconciliación exitosa contra la tabla, o -1 si no hubo ninguna.
+     */
+    public long getStalenessMillis() {
+        return inicializado ? System.currentTimeMillis() - ultimaReconciliacionMillis : -1L;
+    }
+
+    public long getReconciliaciones() { return reconciliaciones.get(); }
+    public long getReconciliacionesDescartadas() { return reconciliacionesDescartadas.get(); }
+
+    public void shutdown() {
+        reconciler.shutdownNow();
+    }
+
+    private void reconcile() {
+        try {
+            reconcileOnce();
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Worker [" + workerId + "] Error al reconciliar arqueo parcial", e);
+        }
+    }
+
+    private void reconcileOnce() throws SQLException {
+        long secuenciaInicio;
+        synchronized (deltaLock) {
+            if (cambiosAbiertos > 0) {
+                // Un cambio abierto pudo confirmarse antes del snapshot sin estar sumado todavía
+                reconciliacionesDescartadas.incrementAndGet();
+                return;
+            }
+            secuenciaInicio = deltaSequence.get();
+        }
+        BigDecimal suma = cuentaDAO.sumarSaldos(); // Fuera del lock: los deltas no esperan al full scan
+        long anterior;
+        synchronized (deltaLock) {
+            if (deltaSequence.get() != secuenciaInicio) {
+                reconciliacionesDescartadas.incrementAndGet();
+                LOGGER.log(Level.FINE, "Worker [{0}] Reconciliación de arqueo descartada: hubo cambios durante el SUM", workerId);
+                return;
+            }
+            anterior = totalCentimos.getAndSet(toCentimos(suma));
+        }
+        ultimaReconciliacionMillis = System.currentTimeMillis();
+        inicializado = true;
+        reconciliaciones.incrementAndGet();
+        if (anterior != toCentimos(suma)) {
+            LOGGER.log(Level.INFO, "Worker [{0}] Arqueo parcial reconciliado: {1} (antes {2})",
+                    new Object[]{workerId, suma, anterior / 100.0});
+        }
+    }
+
+    private static long toCentimos(BigDecimal monto) {
+        return monto.setScale(2, RoundingMode.HALF_EVEN).movePointRight(2).longValueExact();
+    }
+}
@@ -0,0 +1,117 @@
+package com.parcial.worker.persistence;
+
+import com.parcial.common.VersionedLruCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caché local de saldos por ID_CUENTA, sobre la misma {@link VersionedLruCache} (segmentos LRU y
+ * versiones por franja de cuentas) que usa la caché del Central.
+ *
+ * Reglas de consistencia:
+ * - Una transferencia abre una {@link Escritura} antes de tocar las cuentas: sube su versión y,
+ *   mientras está en curso, la franja no admite rellenos. Tras el commit, {@link Escritura#confirmar()}
+ *   deja en caché el saldo confirmado solo si ninguna otra escritura tocó la franja entre medio; si
+ *   se revierte, {@link Escritura#descartar()} la cierra sin escribir nada.
+ * - Las lecturas toman la versión ({@link #version}) antes de ir a la BD y rellenan con
+ *   {@link #putIfVersion}, que se descarta si la cuenta se escribió desde entonces.
+ * - Los demás cambios de saldo (2PC, replicación, reparación, migración) llaman a {@link #invalidate}
+ *   después de su commit.
+ * Las entradas vencen a los BALANCE_CACHE_TTL_MS, lo que acota un saldo cambiado por otra vía.
+ * Cada entrada ocupa aprox. 120 bytes: 1 millón de cuentas son unos 120 MB de heap.
+ */
+public class BalanceCache {
+    private final VersionedLruCache<Double> cache;
+
+    /**
+     * Escritura de una transferencia sobre sus cuentas. Se cierra una sola vez, con
+     * {@link #confirmar()} tras el commit o con {@link #descartar()} tras el rollback.
+     */
+    public final class Escritura {
+        private final String[] cuentaIds;
+        private final long[] versionInicial;
+        private final Map<String, Double> saldos = new HashMap<>();
+        private final AtomicBoolean cerrada = new AtomicBoolean();
+
+        private Escritura(String[] cuentaIds) {
+            this.cuentaIds = cuentaIds;
+            this.versionInicial = new long[cuentaIds.length];
+            for (int i = 0; i < cuentaIds.length; i++) {
+                versionInicial[i] = cache.beginWrite(cuentaIds[i]);
+            }
+        }
+
+        /**
+         * Saldo de la cuenta leído dentro de la transacción; solo se publica al confirmar.
+         * Un reintento de la transacción lo sobreescribe.
+         */
+        public void registrar(String cuentaId, double saldo) {
+            saldos.put(cuentaId, saldo);
+        }
+
+        public void confirmar() {
+            cerrar(true);
+        }
+
+        public void descartar() {
+            cerrar(false);
+        }
+
+        private void cerrar(boolean confirmada) {
+            if (!cerrada.compareAndSet(false, true)) {
+                return;
+            }
+            for (int i = 0; i < cuentaIds.length; i++) {
+                String cuentaId = cuentaIds[i];
+                cache.endWrite(cuentaId, confirmada ? saldos.get(cuentaId) : null, versionInicial[i]);
+            }
+        }
+    }
+
+    public BalanceCache(int maxEntries, long ttlMillis) {
+        this.cache = new VersionedLruCache<>(maxEntries, ttlMillis);
+    }
+
+    /**
+     * @return El saldo cacheado, o null si la cuenta no está en caché, la entrada venció o su franja
+     *         tiene una escritura en curso.
+     */
+    public Double get(String cuentaId) {
+        return cache.get(cuentaId);
+    }
+
+    /**
+     * Abre la escritura de una transferencia sobre las cuentas dadas.
+     */
+    public Escritura beginWrite(String... cuentaIds) {
+        return new Escritura(cuentaIds);
+    }
+
+    /**
+     * @return Versión actual de la cuenta, a tomar antes de leer el saldo de la BD.
+     */
+    public long version(String cuentaId) {
+        return cache.version(cuentaId);
+    }
+
+    /**
+     * Relleno desde una lectura de la BD. Se descarta si la cuenta se escribió (o se está
+     * escribiendo) desde que se tomó la versión.
+     */
+    public boolean putIfVersion(String cuentaId, double saldo, long version) {
+        return cache.putIfVersion(cuentaId, saldo, version);
+    }
+
+    public void invalidate(String... cuentaIds) {
+        cache.invalidate(cuentaIds);
+    }
+
+    public int size() { return cache.size(); }
+    public long getHits() { return cache.getHits(); }
+    public long getMisses() { return cache.getMisses(); }
+    public long getRejectedFills() { return cache.getRejectedFills(); }
+    public long getEvictions() { return cache.getEvictions(); }
+    public double getHitRatio() { return cache.getHitRatio(); }
+}
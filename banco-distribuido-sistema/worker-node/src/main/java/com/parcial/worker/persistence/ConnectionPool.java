@@ -0,0 +1,272 @@
+package com.parcial.worker.persistence;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool de conexiones JDBC acotado, implementado sin librerías de terceros.
+ * - Tamaño mínimo y máximo de conexiones físicas.
+ * - Validación al prestar (solo si la conexión estuvo inactiva un tiempo).
+ * - Desalojo de conexiones inactivas por encima del mínimo y tiempo de vida máximo.
+ * - Timeout de préstamo: si no hay conexión disponible a tiempo se falla rápido con SQLException.
+ * - Caché LRU de PreparedStatement por conexión y statements preparados del lado del servidor.
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    // Una conexión usada hace menos de esto se presta sin validar (evita un round trip extra)
+    private static final long VALIDATION_SKIP_WINDOW_MS = 500L;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_PERIOD_MS = 30_000L;
+
+    /**
+     * Parámetros del pool. Los valores por defecto se pueden sobreescribir con variables de entorno.
+     */
+    public static class Config {
+        public int minSize = 2;
+        public int maxSize = 10;
+        public long borrowTimeoutMs = 2_000L;
+        public long idleTimeoutMs = 60_000L;
+        public long maxLifetimeMs = 30 * 60_000L;
+        public int statementCacheSize = 32;
+
+        public static Config fromEnvironment() {
+            Config config = new Config();
+            config.minSize = Integer.parseInt(System.getenv().getOrDefault("DB_POOL_MIN_SIZE", String.valueOf(config.minSize)));
+            config.maxSize = Integer.parseInt(System.getenv().getOrDefault("DB_POOL_MAX_SIZE", String.valueOf(config.maxSize)));
+            config.borrowTimeoutMs = Long.parseLong(System.getenv().getOrDefault("DB_POOL_BORROW_TIMEOUT_MS", String.valueOf(config.borrowTimeoutMs)));
+            config.idleTimeoutMs = Long.parseLong(System.getenv().getOrDefault("DB_POOL_IDLE_TIMEOUT_MS", String.valueOf(config.idleTimeoutMs)));
+            config.maxLifetimeMs = Long.parseLong(System.getenv().getOrDefault("DB_POOL_MAX_LIFETIME_MS", String.valueOf(config.maxLifetimeMs)));
+            config.statementCacheSize = Integer.parseInt(System.getenv().getOrDefault("DB_POOL_STATEMENT_CACHE_SIZE", String.valueOf(config.statementCacheSize)));
+            return config;
+        }
+    }
+
+    private final String dbUrl;
+    private final String dbUser;
+    private final String dbPassword;
+    private final Config config;
+
+    // Conexiones libres; se usa como pila (LIFO) para que las menos usadas envejezcan y se desalojen
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    // Un permiso por conexión que se puede tener prestada a la vez (tamaño máximo)
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String dbUrl, String dbUser, String dbPassword, Config config) {
+        if (config.minSize < 0 || config.maxSize < 1 || config.minSize > config.maxSize) {
+            throw new IllegalArgumentException("Tamaños de pool inválidos: min=" + config.minSize + ", max=" + config.maxSize);
+        }
+        this.dbUrl = dbUrl;
+        this.dbUser = dbUser;
+        this.dbPassword = dbPassword;
+        this.config = config;
+        this.permits = new Semaphore(config.maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_PERIOD_MS, HOUSEKEEPING_PERIOD_MS, TimeUnit.MILLISECONDS);
+        LOGGER.log(Level.INFO, "Pool de conexiones creado (min={0}, max={1}, borrowTimeout={2} ms)",
+                new Object[]{config.minSize, config.maxSize, config.borrowTimeoutMs});
+    }
+
+    /**
+     * Pre-crea las conexiones mínimas. Si la BD aún no está disponible no es un error:
+     * el mantenimiento periódico volverá a intentarlo.
+     */
+    public void warmUp() {
+        fillToMinimum();
+    }
+
+    /**
+     * Presta una conexión del pool. Al llamar close() sobre ella se devuelve al pool.
+     * @return Una conexión JDBC lista para usar.
+     * @throws SQLException Si el pool está cerrado, se agota el timeout de préstamo o falla la conexión.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado.");
+        }
+        long startTime = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timeout de " + config.borrowTimeoutMs + " ms esperando conexión del pool (max=" + config.maxSize + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando conexión del pool.", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idleConnections.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = createConnection();
+            }
+            pooled.touch();
+            LOGGER.log(Level.FINE, "Conexión prestada en {0} ms (hilo: {1})",
+                    new Object[]{(System.nanoTime() - startTime) / 1_000_000, Thread.currentThread().getName()});
+            return pooled.newProxy(this);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Devuelve una conexión al pool. La llama el proxy de {@link PooledConnection} al cerrarse.
+     */
+    void release(PooledConnection pooled) {
+        try {
+            Connection physical = pooled.getPhysical();
+            if (closed || physical.isClosed() || isExpired(pooled)) {
+                discard(pooled);
+                return;
+            }
+            // Una transacción abierta no debe filtrarse al siguiente usuario de la conexión
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            pooled.resetStatements();
+            pooled.touch();
+            idleConnections.offerFirst(pooled);
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Conexión descartada al devolverla al pool", e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int getTotalConnections() { return totalConnections.get(); }
+    public int getIdleConnections() { return idleConnections.size(); }
+    public int getActiveConnections() { return config.maxSize - permits.availablePermits(); }
+    public int getMaxConnections() { return config.maxSize; }
+    public long getStatementCacheHits() { return statementCacheHits.get(); }
+    public long getStatementCacheMisses() { return statementCacheMisses.get(); }
+
+    void recordStatementCacheHit() { statementCacheHits.incrementAndGet(); }
+    void recordStatementCacheMiss() { statementCacheMisses.incrementAndGet(); }
+
+    /**
+     * Cierra el pool: detiene el mantenimiento y cierra las conexiones libres.
+     * Las conexiones prestadas se cierran físicamente cuando sus llamadores las devuelvan.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            discard(pooled);
+        }
+        LOGGER.info("Pool de conexiones cerrado.");
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        long startTime = System.nanoTime();
+        Properties props = new Properties();
+        props.setProperty("user", dbUser);
+        props.setProperty("password", dbPassword);
+        // Usar statement preparado del lado del servidor desde la primera ejecución (el driver usa 5 por defecto)
+        props.setProperty("prepareThreshold", "1");
+        Connection physical = DriverManager.getConnection(dbUrl, props);
+        totalConnections.incrementAndGet();
+        LOGGER.log(Level.FINE, "Nueva conexión física a DB creada en {0} ms (total: {1})",
+                new Object[]{(System.nanoTime() - startTime) / 1_000_000, totalConnections.get()});
+        return new PooledConnection(physical, config.statementCacheSize);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (isExpired(pooled)) {
+            return false;
+        }
+        long idleMs = (System.nanoTime() - pooled.getLastUsedAtNanos()) / 1_000_000;
+        if (idleMs < VALIDATION_SKIP_WINDOW_MS) {
+            return true;
+        }
+        try {
+            return pooled.getPhysical().isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean isExpired(PooledConnection pooled) {
+        return (System.nanoTime() - pooled.getCreatedAtNanos()) / 1_000_000 >= config.maxLifetimeMs;
+    }
+
+    private void discard(PooledConnection pooled) {
+        pooled.closePhysical();
+        totalConnections.decrementAndGet();
+    }
+
+    /**
+     * Mantenimiento periódico: desaloja conexiones inactivas (respetando el mínimo)
+     * o que superaron su tiempo de vida, y repone hasta el tamaño mínimo.
+     */
+    private void housekeep() {
+        try {
+            List<PooledConnection> toDiscard = new ArrayList<>();
+            Iterator<PooledConnection> it = idleConnections.descendingIterator(); // Las más antiguas primero
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                long idleMs = (System.nanoTime() - pooled.getLastUsedAtNanos()) / 1_000_000;
+                boolean idleTooLong = idleMs >= config.idleTimeoutMs
+                        && totalConnections.get() - toDiscard.size() > config.minSize;
+                if ((isExpired(pooled) || idleTooLong) && idleConnections.remove(pooled)) {
+                    toDiscard.add(pooled);
+                }
+            }
+            toDiscard.forEach(this::discard);
+            if (!toDiscard.isEmpty()) {
+                LOGGER.log(Level.FINE, "Pool: {0} conexiones desalojadas", toDiscard.size());
+            }
+            fillToMinimum();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error en el mantenimiento del pool de conexiones", e);
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && totalConnections.get() < config.minSize && permits.tryAcquire()) {
+            try {
+                idleConnections.offerLast(createConnection());
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "No se pudo crear conexión mínima del pool: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.parcial.worker.persistence;
+
+import com.parcial.worker.persistence.dao.DigestDAO;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Árbol de Merkle sobre la tabla Cuenta para la anti-entropía entre réplicas (ver {@link DigestDAO}).
+ * El nivel 0 es la raíz y el nivel "niveles" son los 2^niveles buckets; el nodo i de un nivel cubre
+ * a sus hijos 2i y 2i+1 del siguiente, y su digest es la suma de los de ellos.
+ *
+ * Las hojas se guardan en memoria al nivel más fino admitido (MAX_NIVELES) y se calculan recorriendo
+ * la tabla una sola vez; después solo se les suman las diferencias que el trigger de Cuenta deja en
+ * CuentaDigestCambios, así cada comparación del reconciliador cuesta lo que cambió desde la anterior.
+ * Un hilo de fondo las consume cada DIGEST_COMPACTAR_S segundos para que la tabla no crezca aunque el
+ * Central no pregunte.
+ */
+public class CuentaDigest {
+    private static final Logger LOGGER = Logger.getLogger(CuentaDigest.class.getName());
+    private static final int MAX_NIVELES = 20;
+
+    private final DigestDAO digestDAO;
+    private final String workerId;
+    private final ScheduledExecutorService compactador;
+    private long[] hojas; // Al nivel MAX_NIVELES; null hasta el primer recorrido. Protegido por this
+    private Arbol arbol;  // Derivado de las hojas; null si cambiaron. Protegido por this
+
+    private static final class Arbol {
+        final int niveles;
+        final long[][] nodos; // nodos[nivel][indice]
+
+        Arbol(int niveles, long[] hojasFinas) {
+            this.niveles = niveles;
+            this.nodos = new long[niveles + 1][];
+            // El bucket de una cuenta son los bits bajos del hash de su ID: se pliegan las hojas finas
+            long[] hojas = new long[1 << niveles];
+            int mascara = hojas.length - 1;
+            for (int i = 0; i < hojasFinas.length; i++) {
+                hojas[i & mascara] += hojasFinas[i];
+            }
+            nodos[niveles] = hojas;
+            for (int nivel = niveles - 1; nivel >= 0; nivel--) {
+                long[] hijos = nodos[nivel + 1];
+                long[] actual = new long[hijos.length / 2];
+                for (int i = 0; i < actual.length; i++) {
+                    actual[i] = hijos[2 * i] + hijos[2 * i + 1]; // Suma módulo 2^64 (desborde de long)
+                }
+                nodos[nivel] = actual;
+            }
+        }
+    }
+
+    public CuentaDigest(DigestDAO digestDAO, String workerId) {
+        this.digestDAO = digestDAO;
+        this.workerId = workerId;
+        this.compactador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "digest-compactador-" + workerId);
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Long.parseLong(System.getenv().getOrDefault("DIGEST_COMPACTAR_S", "60"));
+        compactador.scheduleWithFixedDelay(this::compactar, intervalo, intervalo, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return Digests de los nodos [desde, hasta) del nivel pedido en un árbol de "niveles" niveles.
+     */
+    public long[] nodos(int niveles, int nivel, int desde, int hasta) throws SQLException {
+        if (niveles < 0 || niveles > MAX_NIVELES || nivel < 0 || nivel > niveles) {
+            throw new IllegalArgumentException("Nivel " + nivel + " fuera del árbol de " + niveles + " niveles (máx. " + MAX_NIVELES + ").");
+        }
+        long[] nodosNivel = arbol(niveles).nodos[nivel];
+        if (desde < 0 || hasta > nodosNivel.length || desde > hasta) {
+            throw new IllegalArgumentException("Nodos [" + desde + ", " + hasta + ") fuera del nivel " + nivel + ".");
+        }
+        long[] resultado = new long[hasta - desde];
+        System.arraycopy(nodosNivel, desde, resultado, 0, resultado.length);
+        return resultado;
+    }
+
+    public void shutdown() {
+        compactador.shutdownNow();
+    }
+
+    private synchronized Arbol arbol(int niveles) throws SQLException {
+        if (hojas == null) {
+            hojas = digestDAO.hojas(MAX_NIVELES);
+            arbol = null;
+        } else {
+            aplicarCambios();
+        }
+        if (arbol == null || arbol.niveles != niveles) {
+            arbol = new Arbol(niveles, hojas);
+        }
+        return arbol;
+    }
+
+    private void aplicarCambios() throws SQLException {
+        try {
+            if (digestDAO.consumirCambios(MAX_NIVELES, hojas) > 0) {
+                arbol = null;
+            }
+        } catch (SQLException e) {
+            // No se sabe qué cambios llegaron a sumarse: se recalcula todo en la próxima consulta
+            hojas = null;
+            arbol = null;
+            throw e;
+        }
+    }
+
+    private synchronized void compactar() {
+        try {
+            if (hojas == null) {
+                digestDAO.descartarCambios(); // El primer recorrido de la tabla ya los incluirá
+            } else {
+                aplicarCambios();
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Worker [" + workerId + "] Anti-entropía: no se pudieron consumir los cambios de digest", e);
+        }
+    }
+}
@@ -1,26 +1,27 @@
 package com.parcial.worker.persistence;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Gestiona las conexiones a la base de datos PostgreSQL local del Nodo Trabajador.
- * IMPORTANTE: Esta implementación gestiona conexiones directamente sin un pool de conexiones
- * de terceros para cumplir con restricciones estrictas. NO ES RECOMENDABLE PARA PRODUCCIÓN.
+ * Las conexiones se prestan desde un {@link ConnectionPool} propio (sin librerías de terceros),
+ * así cada solicitud no paga el handshake TCP y la autenticación con PostgreSQL.
  */
 public class DatabaseManager {
     private static final Logger LOGGER = Logger.getLogger(DatabaseManager.class.getName());
     private final String dbUrl;
-    private final String dbUser;
-    private final String dbPassword;
+    private final ConnectionPool connectionPool;
+    private final BalanceCache balanceCache;
 
     public DatabaseManager(String dbUrl, String dbUser, String dbPassword) {
+        this(dbUrl, dbUser, dbPassword, ConnectionPool.Config.fromEnvironment());
+    }
+
+    public DatabaseManager(String dbUrl, String dbUser, String dbPassword, ConnectionPool.Config poolConfig) {
         this.dbUrl = dbUrl;
-        this.dbUser = dbUser;
-        this.dbPassword = dbPassword;
         try {
             // Cargar el driver de PostgreSQL
             Class.forName("org.postgresql.Driver");
@@ -28,20 +29,39 @@ public class DatabaseManager {
             LOGGER.log(Level.SEVERE, "Error al cargar el driver de PostgreSQL JDBC", e);
             throw new RuntimeException("Driver de PostgreSQL no encontrado", e);
         }
+        this.connectionPool = new ConnectionPool(dbUrl, dbUser, dbPassword, poolConfig);
+        this.connectionPool.warmUp();
+        int balanceCacheMaxEntries = Integer.parseInt(System.getenv().getOrDefault("BALANCE_CACHE_MAX_ENTRIES", "1000000"));
+        long balanceCacheTtlMs = Long.parseLong(System.getenv().getOrDefault("BALANCE_CACHE_TTL_MS", "30000"));
+        this.balanceCache = new BalanceCache(balanceCacheMaxEntries, balanceCacheTtlMs);
     }
 
     /**
-     * Obtiene una nueva conexión a la base de datos.
-     * El llamador es responsable de cerrar esta conexión.
+     * Obtiene una conexión del pool.
+     * El llamador es responsable de cerrar esta conexión, lo que la devuelve al pool.
      * @return Una conexión JDBC.
-     * @throws SQLException Si ocurre un error al conectar.
+     * @throws SQLException Si ocurre un error al conectar o se agota el timeout del pool.
      */
     public Connection getConnection() throws SQLException {
-        // Cada llamada crea una nueva conexión. Ineficiente pero cumple la restricción.
-        long startTime = System.nanoTime();
-        Connection connection = DriverManager.getConnection(this.dbUrl, this.dbUser, this.dbPassword);
-        long endTime = System.nanoTime();
-        LOGGER.log(Level.FINE, "Conexión a DB obtenida en {0} ms (hilo: {1})", new Object[]{ (endTime - startTime) / 1_000_000, Thread.currentThread().getName()});
-        return connection;
+        return connectionPool.borrow();
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Caché de saldos compartida por los DAOs de este worker.
+     */
+    public BalanceCache getBalanceCache() {
+        return balanceCache;
+    }
+
+    /**
+     * Cierra el pool de conexiones. Se invoca al detener el Nodo Trabajador.
+     */
+    public void close() {
+        LOGGER.log(Level.INFO, "Cerrando pool de conexiones de {0}", dbUrl);
+        connectionPool.close();
     }
 }
\ No newline at end of file
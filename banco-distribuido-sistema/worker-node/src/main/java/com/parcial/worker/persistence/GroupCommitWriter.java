@@ -0,0 +1,275 @@
+package com.parcial.worker.persistence;
+
+import com.parcial.worker.persistence.dao.CuentaDAO;
+import com.parcial.worker.persistence.dao.ResultadoTransferencia;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Etapa de escritura con "group commit": un hilo dedicado agrupa las transferencias que llegan
+ * dentro de una ventana corta (por tamaño o tiempo) y las aplica en una sola transacción de BD,
+ * pagando un único commit (fsync) por lote. Cada transferencia se aísla con un savepoint, así
+ * una transferencia rechazada o con error se revierte sin afectar a las demás del lote; el savepoint
+ * se libera en cuanto la transferencia termina, para que no se acumulen en lotes largos.
+ * Como en los lotes del Central (TransferService#transferirLote), todas las cuentas del lote se
+ * bloquean al empezar en orden canónico, y un deadlock o fallo de serialización repite el lote
+ * entero con backoff ({@link SqlRetryPolicy}).
+ * Los futuros se completan solo después de que el commit compartido termina.
+ */
+public class GroupCommitWriter {
+    private static final Logger LOGGER = Logger.getLogger(GroupCommitWriter.class.getName());
+
+    /**
+     * Operación que aplica una transferencia dentro de la transacción abierta en conn (sin commit).
+     * Registra los saldos nuevos en la escritura de caché, que se confirma tras el commit del lote.
+     */
+    @FunctionalInterface
+    public interface TransferOperation {
+        ResultadoTransferencia apply(Connection conn, String transaccionId, String cuentaOrigen,
+                                     String cuentaDestino, double monto, Timestamp fechaHora,
+                                     BalanceCache.Escritura escritura) throws SQLException;
+    }
+
+    /**
+     * Parámetros del lote. Los valores por defecto se pueden sobreescribir con variables de entorno.
+     */
+    public static class Config {
+        public int maxBatchSize = 64;
+        public long maxWaitMs = 2L;
+        public int queueCapacity = 10_000;
+
+        public static Config fromEnvironment() {
+            Config config = new Config();
+            config.maxBatchSize = Integer.parseInt(System.getenv().getOrDefault("GROUP_COMMIT_MAX_BATCH", String.valueOf(config.maxBatchSize)));
+            config.maxWaitMs = Long.parseLong(System.getenv().getOrDefault("GROUP_COMMIT_MAX_WAIT_MS", String.valueOf(config.maxWaitMs)));
+            config.queueCapacity = Integer.parseInt(System.getenv().getOrDefault("GROUP_COMMIT_QUEUE_CAPACITY", String.valueOf(config.queueCapacity)));
+            return config;
+        }
+    }
+
+    private static final class PendingTransfer {
+        final String transaccionId;
+        final String cuentaOrigen;
+        final String cuentaDestino;
+        final double monto;
+        final Timestamp fechaHora;
+        final CompletableFuture<ResultadoTransferencia> future = new CompletableFuture<>();
+
+        PendingTransfer(String transaccionId, String cuentaOrigen, String cuentaDestino, double monto, Timestamp fechaHora) {
+            this.transaccionId = transaccionId;
+            this.cuentaOrigen = cuentaOrigen;
+            this.cuentaDestino = cuentaDestino;
+            this.monto = monto;
+            this.fechaHora = fechaHora;
+        }
+    }
+
+    private final DatabaseManager dbManager;
+    private final TransferOperation operation;
+    private final CuentaDAO cuentaDAO;
+    private final AccountLockMetrics lockMetrics;
+    private final String workerId;
+    private final Config config;
+    private final BlockingQueue<PendingTransfer> queue;
+    private final Thread writerThread;
+    // Se escribe con el monitor de this tomado: submit() no puede encolar después de que shutdown() drenó la cola
+    private volatile boolean running = true;
+
+    public GroupCommitWriter(DatabaseManager dbManager, String workerId, TransferOperation operation, CuentaDAO cuentaDAO,
+                             AccountLockMetrics lockMetrics, Config config) {
+        this.dbManager = dbManager;
+        this.workerId = workerId;
+        this.operation = operation;
+        this.cuentaDAO = cuentaDAO;
+        this.lockMetrics = lockMetrics;
+        this.config = config;
+        this.queue = new ArrayBlockingQueue<>(config.queueCapacity);
+        this.writerThread = new Thread(this::runLoop, "group-commit-writer-" + workerId);
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        LOGGER.log(Level.INFO, "Worker [{0}] Group commit activo (lote máx={1}, espera máx={2} ms)",
+                new Object[]{workerId, config.maxBatchSize, config.maxWaitMs});
+    }
+
+    /**
+     * Encola una transferencia para el siguiente lote.
+     * @return Futuro que se completa con el resultado tras el commit del lote, o con la SQLException
+     *         si la transferencia (o el commit) falló. Si la cola está llena falla de inmediato.
+     */
+    public CompletableFuture<ResultadoTransferencia> submit(String transaccionId, String cuentaOrigen,
+                                                            String cuentaDestino, double monto, Timestamp fechaHora) {
+        PendingTransfer pending = new PendingTransfer(transaccionId, cuentaOrigen, cuentaDestino, monto, fechaHora);
+        synchronized (this) {
+            if (!running) {
+                pending.future.completeExceptionally(new SQLException("El escritor de group commit está detenido."));
+            } else if (!queue.offer(pending)) {
+                pending.future.completeExceptionally(new SQLException("Cola de group commit llena (" + config.queueCapacity + ")."));
+            }
+        }
+        return pending.future;
+    }
+
+    /**
+     * Detiene el hilo escritor después de aplicar lo que ya estaba encolado.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+        }
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Lo que no alcanzó a aplicarse se rechaza explícitamente
+        PendingTransfer pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new SQLException("El escritor de group commit se detuvo."));
+        }
+    }
+
+    private void runLoop() {
+        List<PendingTransfer> batch = new ArrayList<>(config.maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingTransfer first = running ? queue.take() : queue.poll();
+                if (first == null) {
+                    break;
+                }
+                batch.add(first);
+                // Ventana de agrupación: esperar más transferencias hasta llenar el lote o agotar el tiempo
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.maxWaitMs);
+                while (batch.size() < config.maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingTransfer next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutdown(): se aplica el lote en curso y se siguen drenando las pendientes sin esperar
+            }
+            if (!batch.isEmpty()) {
+                Thread.interrupted(); // Limpiar la interrupción de shutdown() para poder prestar la conexión
+                applyBatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void applyBatch(List<PendingTransfer> batch) {
+        String[] cuentas = batch.stream()
+                .flatMap(t -> Stream.of(t.cuentaOrigen, t.cuentaDestino))
+                .distinct()
+                .toArray(String[]::new);
+        for (int intento = 1; ; intento++) {
+            try {
+                applyBatchOnce(batch, cuentas);
+                return;
+            } catch (SQLException e) {
+                if (!SqlRetryPolicy.esReintentable(e) || intento >= SqlRetryPolicy.MAX_INTENTOS) {
+                    if (SqlRetryPolicy.esReintentable(e)) {
+                        lockMetrics.recordRetriesExhausted();
+                    }
+                    LOGGER.log(Level.SEVERE, "Error al aplicar lote de " + batch.size() + " transferencias; se rechaza el lote completo", e);
+                    batch.forEach(t -> t.future.completeExceptionally(e));
+                    return;
+                }
+                lockMetrics.recordRetry(cuentas);
+                long backoffMs = SqlRetryPolicy.calcularBackoffMs(intento);
+                LOGGER.log(Level.WARNING, "Worker [{0}] Lote de group commit de {1} transferencias reintentado (intento {2}, SQLState {3}) tras {4} ms",
+                        new Object[]{workerId, batch.size(), intento + 1, e.getSQLState(), backoffMs});
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    // shutdown(): el lote en curso se aplica igualmente, se reintenta sin esperar
+                }
+            }
+        }
+    }
+
+    /**
+     * Un intento del lote en una transacción; completa los futuros solo si el commit termina.
+     * @throws SQLException Si falla la transacción (o una transferencia con un error reintentable):
+     *                      nada queda aplicado y las escrituras de caché se descartan.
+     */
+    private void applyBatchOnce(List<PendingTransfer> batch, String[] cuentas) throws SQLException {
+        ResultadoTransferencia[] resultados = new ResultadoTransferencia[batch.size()];
+        SQLException[] errores = new SQLException[batch.size()];
+        BalanceCache.Escritura[] escrituras = new BalanceCache.Escritura[batch.size()];
+        long startTime = System.nanoTime();
+
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Mismo orden canónico que las transferencias sueltas: lotes que comparten cuentas se serializan
+                long inicioBloqueo = System.nanoTime();
+                cuentaDAO.bloquearCuentasEnOrden(conn, cuentas);
+                long esperaBloqueo = System.nanoTime() - inicioBloqueo;
+                for (String cuenta : cuentas) {
+                    lockMetrics.recordLockWait(cuenta, esperaBloqueo);
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    PendingTransfer t = batch.get(i);
+                    escrituras[i] = dbManager.getBalanceCache().beginWrite(t.cuentaOrigen, t.cuentaDestino);
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        resultados[i] = operation.apply(conn, t.transaccionId, t.cuentaOrigen, t.cuentaDestino, t.monto, t.fechaHora, escrituras[i]);
+                        if (resultados[i] != ResultadoTransferencia.CONFIRMADA) {
+                            conn.rollback(savepoint); // El débito pudo aplicarse antes del rechazo
+                            escrituras[i].descartar();
+                        }
+                    } catch (SQLException e) {
+                        if (SqlRetryPolicy.esReintentable(e)) {
+                            throw e; // Se reintenta el lote entero
+                        }
+                        conn.rollback(savepoint);
+                        escrituras[i].descartar();
+                        errores[i] = e;
+                    }
+                    conn.releaseSavepoint(savepoint);
+                }
+                conn.commit(); // Un solo commit para todo el lote
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            for (BalanceCache.Escritura escritura : escrituras) {
+                if (escritura != null) {
+                    escritura.descartar();
+                }
+            }
+            throw e;
+        }
+
+        for (BalanceCache.Escritura escritura : escrituras) {
+            escritura.confirmar(); // Las revertidas ya están cerradas: confirmar() no hace nada
+        }
+        LOGGER.log(Level.FINE, "Lote de {0} transferencias aplicado en {1} ms",
+                new Object[]{batch.size(), (System.nanoTime() - startTime) / 1_000_000});
+        for (int i = 0; i < batch.size(); i++) {
+            if (errores[i] != null) {
+                batch.get(i).future.completeExceptionally(errores[i]);
+            } else {
+                batch.get(i).future.complete(resultados[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.parcial.worker.persistence;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias sin bloqueos, con cubetas exponenciales (4 por potencia de 2, en microsegundos).
+ * Permite obtener percentiles aproximados (error relativo menor a ~19%) y el throughput desde el arranque.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 40 * SUB_BUCKETS; // Hasta ~2^40 us, sobra
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+
+    public void record(long latencyNanos) {
+        long micros = Math.max(1, latencyNanos / 1_000);
+        counts.incrementAndGet(bucketFor(micros));
+        total.incrementAndGet();
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @param percentile Percentil entre 0 y 100.
+     * @return Cota superior aproximada del percentil en milisegundos, o 0 si no hay muestras.
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0.0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return upperBoundMicros(i) / 1_000.0;
+            }
+        }
+        return upperBoundMicros(BUCKETS - 1) / 1_000.0;
+    }
+
+    /**
+     * @return Operaciones por segundo promedio desde la creación del histograma.
+     */
+    public double getThroughputPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return seconds > 0 ? total.get() / seconds : 0.0;
+    }
+
+    private static int bucketFor(long micros) {
+        int bucket = (int) Math.floor(Math.log(micros) / Math.log(2) * SUB_BUCKETS);
+        return Math.min(Math.max(bucket, 0), BUCKETS - 1);
+    }
+
+    private static double upperBoundMicros(int bucket) {
+        return Math.pow(2, (bucket + 1) / (double) SUB_BUCKETS);
+    }
+}
@@ -0,0 +1,220 @@
+package com.parcial.worker.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Envoltorio de una conexión física gestionada por {@link ConnectionPool}.
+ * Guarda los tiempos de creación y último uso que el pool necesita para
+ * validar, desalojar conexiones inactivas y aplicar el tiempo de vida máximo.
+ * También mantiene una caché LRU de PreparedStatement por SQL, que sobrevive entre
+ * préstamos y se cierra junto con la conexión física.
+ */
+class PooledConnection {
+    private static final Logger LOGGER = Logger.getLogger(PooledConnection.class.getName());
+
+    private final Connection physical;
+    private final long createdAtNanos;
+    private volatile long lastUsedAtNanos;
+    // Solo la usa el hilo que tiene prestada la conexión, no necesita sincronización
+    private final Map<String, CachedStatement> statementCache;
+
+    PooledConnection(Connection physical, int statementCacheSize) {
+        this.physical = physical;
+        this.createdAtNanos = System.nanoTime();
+        this.lastUsedAtNanos = this.createdAtNanos;
+        this.statementCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > statementCacheSize && !eldest.getValue().inUse) {
+                    eldest.getValue().closePhysical();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Connection getPhysical() { return physical; }
+    long getCreatedAtNanos() { return createdAtNanos; }
+    long getLastUsedAtNanos() { return lastUsedAtNanos; }
+    void touch() { this.lastUsedAtNanos = System.nanoTime(); }
+
+    /**
+     * Crea el proxy que se entrega al llamador. Todas las llamadas se delegan a la
+     * conexión física excepto close(), que devuelve la conexión al pool, y
+     * prepareStatement(String), que reutiliza el statement cacheado para ese SQL.
+     * Cada préstamo recibe su propio proxy, así un close() repetido no la devuelve dos veces.
+     */
+    Connection newProxy(ConnectionPool pool) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed = false;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if ("close".equals(name)) {
+                    if (!closed) {
+                        closed = true;
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                }
+                if ("isClosed".equals(name)) {
+                    return closed || physical.isClosed();
+                }
+                if ("unwrap".equals(name) || "isWrapperFor".equals(name)) {
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("La conexión ya fue devuelta al pool.");
+                }
+                if ("prepareStatement".equals(name) && args.length == 1) {
+                    return prepareCached((Connection) proxy, (String) args[0], pool);
+                }
+                try {
+                    return method.invoke(physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private PreparedStatement prepareCached(Connection owner, String sql, ConnectionPool pool) throws SQLException {
+        CachedStatement cached = statementCache.get(sql);
+        if (cached != null && !cached.inUse) {
+            pool.recordStatementCacheHit();
+            cached.inUse = true;
+            return cached.newProxy(owner);
+        }
+        pool.recordStatementCacheMiss();
+        if (cached != null) {
+            // El mismo SQL ya está abierto en esta conexión (uso anidado): statement no cacheado
+            return physical.prepareStatement(sql);
+        }
+        cached = new CachedStatement(physical.prepareStatement(sql));
+        cached.inUse = true;
+        statementCache.put(sql, cached);
+        return cached.newProxy(owner);
+    }
+
+    /**
+     * Libera los statements cacheados que el llamador no cerró antes de devolver la conexión; si no,
+     * quedarían marcados en uso y su SQL ya no se podría cachear en esta conexión. Los proxies que
+     * siguieran en manos del llamador quedan cerrados.
+     * La llama el pool al recibir la conexión de vuelta.
+     */
+    void resetStatements() {
+        for (CachedStatement cached : statementCache.values()) {
+            if (cached.inUse) {
+                cached.reset();
+            }
+        }
+    }
+
+    int getCachedStatementCount() {
+        return statementCache.size();
+    }
+
+    /**
+     * Cierra los statements cacheados y la conexión física, ignorando errores
+     * (se usa al desalojarla del pool).
+     */
+    void closePhysical() {
+        statementCache.values().forEach(CachedStatement::closePhysical);
+        statementCache.clear();
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error al cerrar conexión física desalojada del pool", e);
+        }
+    }
+
+    /**
+     * PreparedStatement cacheado. El proxy que recibe el DAO convierte close() en
+     * clearParameters() y lo marca libre para el siguiente uso del mismo SQL.
+     */
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private boolean inUse;
+        // Cambia en cada reset(): un proxy de un préstamo anterior ya no puede usar el statement
+        private int generation;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        PreparedStatement newProxy(Connection owner) {
+            int proxyGeneration = generation;
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean closed = false;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (generation != proxyGeneration) {
+                        closed = true; // La conexión se devolvió al pool sin cerrar este statement
+                    }
+                    if ("close".equals(name)) {
+                        if (!closed) {
+                            closed = true;
+                            statement.clearParameters();
+                            inUse = false;
+                        }
+                        return null;
+                    }
+                    if ("isClosed".equals(name)) {
+                        return closed || statement.isClosed();
+                    }
+                    if ("getConnection".equals(name)) {
+                        return owner;
+                    }
+                    if (closed) {
+                        throw new SQLException("El statement ya fue cerrado.");
+                    }
+                    try {
+                        return method.invoke(statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            };
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, handler);
+        }
+
+        void reset() {
+            generation++;
+            inUse = false;
+            try {
+                statement.clearParameters();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Error al limpiar statement cacheado no cerrado", e);
+            }
+        }
+
+        void closePhysical() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Error al cerrar statement cacheado", e);
+            }
+        }
+    }
+}
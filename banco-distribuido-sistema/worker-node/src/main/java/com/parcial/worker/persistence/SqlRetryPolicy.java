@@ -0,0 +1,33 @@
+package com.parcial.worker.persistence;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reintentos ante fallos de serialización (40001) o deadlock (40P01), compartidos por las
+ * transferencias sueltas, los lotes del Central y el group commit: la transacción entera se revierte
+ * y se repite tras un backoff exponencial con jitter.
+ */
+public final class SqlRetryPolicy {
+    public static final int MAX_INTENTOS = 3;
+    private static final long BACKOFF_BASE_MS = 10L;
+    private static final long BACKOFF_MAX_MS = 200L;
+    private static final String SQLSTATE_SERIALIZATION_FAILURE = "40001";
+    private static final String SQLSTATE_DEADLOCK_DETECTED = "40P01";
+
+    private SqlRetryPolicy() {
+    }
+
+    public static boolean esReintentable(SQLException e) {
+        return SQLSTATE_SERIALIZATION_FAILURE.equals(e.getSQLState()) || SQLSTATE_DEADLOCK_DETECTED.equals(e.getSQLState());
+    }
+
+    /**
+     * Backoff exponencial con jitter, acotado a BACKOFF_MAX_MS.
+     * @param intento Intento que acaba de fallar (desde 1).
+     */
+    public static long calcularBackoffMs(int intento) {
+        long techo = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << (intento - 1));
+        return ThreadLocalRandom.current().nextLong(techo / 2, techo + 1);
+    }
+}
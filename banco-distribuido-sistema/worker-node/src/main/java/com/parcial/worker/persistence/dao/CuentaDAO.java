@@ -1,11 +1,16 @@
 package com.parcial.worker.persistence.dao;
 
+import com.parcial.worker.persistence.BalanceCache;
 import com.parcial.worker.persistence.DatabaseManager;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,21 +30,33 @@ public class CuentaDAO {
 
     /**
      * Obtiene el saldo de una cuenta específica.
+     * Primero consulta la caché de saldos del worker; si no está, lee de la BD y rellena la caché.
      * @param cuentaId El ID de la cuenta.
      * @return Optional con el saldo si la cuenta existe, sino Optional.empty().
      */
     public Optional<Double> getSaldo(String cuentaId) {
+        BalanceCache balanceCache = dbManager.getBalanceCache();
+        Double saldoCacheado = balanceCache.get(cuentaId);
+        if (saldoCacheado != null) {
+            LOGGER.log(Level.FINE, "Worker [{0}] DAO: Saldo de cuenta {1} servido desde caché", new Object[]{workerId, cuentaId});
+            return Optional.of(saldoCacheado);
+        }
+
         String sql = "SELECT SALDO FROM Cuenta WHERE ID_CUENTA = ?";
+        // Versión antes de leer: si una escritura la cambia mientras tanto, el saldo leído no se cachea
+        long version = balanceCache.version(cuentaId);
         // El hilo que ejecuta este método es un hilo del ThreadPool del HttpServer del Worker.
         LOGGER.log(Level.INFO, "Worker [{0}] DAO: Consultando saldo para cuenta {1} (hilo: {2})", new Object[]{workerId, cuentaId, Thread.currentThread().getName()});
 
-        try (Connection conn = dbManager.getConnection(); // Obtiene y cierra conexión
+        try (Connection conn = dbManager.getConnection(); // Presta y devuelve la conexión al pool
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, cuentaId);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return Optional.of(rs.getDouble("SALDO"));
+                    double saldo = rs.getDouble("SALDO");
+                    balanceCache.putIfVersion(cuentaId, saldo, version);
+                    return Optional.of(saldo);
                 }
             }
         } catch (SQLException e) {
@@ -92,25 +109,49 @@ public class CuentaDAO {
     }
 
     /**
-     * Suma los saldos de todas las cuentas gestionadas por este worker.
-     * @return La suma total de los saldos.
+     * Bloquea (SELECT ... FOR UPDATE) las filas de las cuentas dadas en orden canónico por ID_CUENTA.
+     * Si todas las transacciones bloquean en el mismo orden, dos transferencias opuestas entre
+     * el mismo par de cuentas se serializan en vez de producir un deadlock.
+     * @param conn La conexión de base de datos activa, con auto-commit desactivado.
+     * @param cuentaIds Las cuentas a bloquear (en cualquier orden).
+     * @return Cantidad de filas bloqueadas (menor que las pedidas si alguna cuenta no existe).
+     * @throws SQLException Si ocurre un error SQL.
      */
-    public double getArqueoParcial() {
-        String sql = "SELECT SUM(SALDO) AS TOTAL_SALDO FROM Cuenta";
-        LOGGER.log(Level.INFO, "Worker [{0}] DAO: Calculando arqueo parcial (hilo: {1})", new Object[]{workerId, Thread.currentThread().getName()});
-        double totalSaldo = 0.0;
+    public int bloquearCuentasEnOrden(Connection conn, String... cuentaIds) throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(cuentaIds.length, "?"));
+        String sql = "SELECT ID_CUENTA FROM Cuenta WHERE ID_CUENTA IN (" + placeholders + ") ORDER BY ID_CUENTA FOR UPDATE";
+        LOGGER.log(Level.FINE, "Worker [{0}] DAO Tx: Bloqueando cuentas {1} (hilo: {2})",
+            new Object[]{workerId, Arrays.stream(cuentaIds).collect(Collectors.joining(",")), Thread.currentThread().getName()});
+
+        int bloqueadas = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < cuentaIds.length; i++) {
+                pstmt.setString(i + 1, cuentaIds[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    bloqueadas++;
+                }
+            }
+        }
+        return bloqueadas;
+    }
+
+    /**
+     * Suma exacta de los saldos de la partición local (full scan). La usa la reconciliación
+     * periódica del arqueo parcial incremental.
+     * @return La suma de SALDO (cero si no hay cuentas).
+     * @throws SQLException Si ocurre un error SQL.
+     */
+    public BigDecimal sumarSaldos() throws SQLException {
+        String sql = "SELECT COALESCE(SUM(SALDO), 0) AS TOTAL_SALDO FROM Cuenta";
+        LOGGER.log(Level.FINE, "Worker [{0}] DAO: Sumando saldos para reconciliar arqueo (hilo: {1})", new Object[]{workerId, Thread.currentThread().getName()});
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql);
              ResultSet rs = pstmt.executeQuery()) {
-            
-            if (rs.next()) {
-                totalSaldo = rs.getDouble("TOTAL_SALDO");
-            }
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error al calcular arqueo parcial", e);
+            rs.next();
+            return rs.getBigDecimal("TOTAL_SALDO");
         }
-        LOGGER.log(Level.INFO, "Worker [{0}] DAO: Arqueo parcial calculado: {1}", new Object[]{workerId, totalSaldo});
-        return totalSaldo;
     }
-}
\ No newline at end of file
+}
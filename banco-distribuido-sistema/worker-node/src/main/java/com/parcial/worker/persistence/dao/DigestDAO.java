@@ -0,0 +1,270 @@
+package com.parcial.worker.persistence.dao;
+
+import com.parcial.worker.persistence.DatabaseManager;
+
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DAO de los digests de la tabla Cuenta para la anti-entropía entre réplicas.
+ *
+ * Cada fila se asigna a uno de 2^niveles buckets según el hash (md5) de su ID_CUENTA, y aporta al
+ * bucket un hash de 64 bits de la fila completa. El digest de un bucket es la suma módulo 2^64 de
+ * los hashes de sus filas: así el de cualquier grupo de buckets es la suma de los suyos, y el árbol
+ * de Merkle entero se arma en Java a partir de las hojas (ver CuentaDigest).
+ *
+ * Las funciones cuenta_bucket y cuenta_hash y el trigger que llena CuentaDigestCambios están en
+ * schemas/CuentaDigest.sql: las hojas se calculan una vez con una consulta agregada y después se
+ * mantienen sumando las diferencias que deja cada escritura en Cuenta.
+ */
+public class DigestDAO {
+    private static final Logger LOGGER = Logger.getLogger(DigestDAO.class.getName());
+    private static final String NULO = "\\N";
+
+    // Bucket: primeros 32 bits del md5 del ID, enmascarados; hash de fila: primeros 64 bits del md5 de la fila
+    private static final String BUCKET = "(cuenta_bucket(ID_CUENTA) & ?)";
+    private static final String SQL_HOJAS =
+            "SELECT b, sum(h) AS digest FROM (SELECT " + BUCKET + " AS b, cuenta_hash(Cuenta) AS h FROM Cuenta) t GROUP BY b";
+    private static final String SQL_DESCARTAR_CAMBIOS = "DELETE FROM CuentaDigestCambios";
+    private static final String SQL_CONSUMIR_CAMBIOS = "DELETE FROM CuentaDigestCambios RETURNING BUCKET, HASH";
+    private static final String SQL_FILAS =
+            "SELECT ID_CUENTA, ID_CLIENTE, SALDO, TIPO_CUENTA FROM Cuenta WHERE " + BUCKET + " = ANY (?) ORDER BY ID_CUENTA";
+    private static final String SQL_SALDO_ACTUAL = "SELECT SALDO FROM Cuenta WHERE ID_CUENTA = ? FOR UPDATE";
+    private static final String SQL_REPARAR =
+            "INSERT INTO Cuenta (ID_CUENTA, ID_CLIENTE, SALDO, TIPO_CUENTA) VALUES (?, ?, ?, ?)"
+            + " ON CONFLICT (ID_CUENTA) DO UPDATE SET ID_CLIENTE = EXCLUDED.ID_CLIENTE, SALDO = EXCLUDED.SALDO,"
+            + " TIPO_CUENTA = EXCLUDED.TIPO_CUENTA";
+
+    private final DatabaseManager dbManager;
+    private final String workerId;
+
+    /**
+     * Fila de Cuenta tal como se compara y se repara. En el cuerpo HTTP es una línea separada por
+     * tabuladores (textos codificados como en un formulario, \N para NULL).
+     */
+    public static final class Fila {
+        private final String idCuenta;
+        private final String idCliente;
+        private final BigDecimal saldo;
+        private final String tipoCuenta;
+
+        public Fila(String idCuenta, String idCliente, BigDecimal saldo, String tipoCuenta) {
+            this.idCuenta = idCuenta;
+            this.idCliente = idCliente;
+            this.saldo = saldo;
+            this.tipoCuenta = tipoCuenta;
+        }
+
+        public String aLinea() {
+            return codificar(idCuenta) + "\t" + codificar(idCliente) + "\t"
+                    + (saldo == null ? NULO : saldo.toPlainString()) + "\t" + codificar(tipoCuenta);
+        }
+
+        /**
+         * @throws IllegalArgumentException Si la línea no tiene el formato de {@link #aLinea()}.
+         */
+        public static Fila parse(String linea) {
+            String[] campos = linea.split("\t", -1);
+            if (campos.length != 4 || NULO.equals(campos[0])) {
+                throw new IllegalArgumentException("Fila de cuenta malformada: " + linea);
+            }
+            return new Fila(decodificar(campos[0]), decodificar(campos[1]),
+                    NULO.equals(campos[2]) ? null : new BigDecimal(campos[2]), decodificar(campos[3]));
+        }
+
+        public String getIdCuenta() { return idCuenta; }
+        public String getIdCliente() { return idCliente; }
+        public BigDecimal getSaldo() { return saldo; }
+        public String getTipoCuenta() { return tipoCuenta; }
+
+        private static String codificar(String valor) {
+            return valor == null ? NULO : URLEncoder.encode(valor, StandardCharsets.UTF_8);
+        }
+
+        private static String decodificar(String valor) {
+            return NULO.equals(valor) ? null : URLDecoder.decode(valor, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Resultado de reparar filas.
+     */
+    public static final class ResultadoReparacion {
+        private final int reparadas;
+        private final int fallidas;
+        private final BigDecimal deltaSaldos;
+        private final List<String> cuentas;
+
+        ResultadoReparacion(int reparadas, int fallidas, BigDecimal deltaSaldos, List<String> cuentas) {
+            this.reparadas = reparadas;
+            this.fallidas = fallidas;
+            this.deltaSaldos = deltaSaldos;
+            this.cuentas = cuentas;
+        }
+
+        public int getReparadas() { return reparadas; }
+        public int getFallidas() { return fallidas; }
+        /** Cambio en la suma de saldos de la partición local (para el arqueo parcial). */
+        public BigDecimal getDeltaSaldos() { return deltaSaldos; }
+        public List<String> getCuentas() { return cuentas; }
+    }
+
+    public DigestDAO(DatabaseManager dbManager, String workerId) {
+        this.dbManager = dbManager;
+        this.workerId = workerId;
+    }
+
+    /**
+     * Calcula las hojas recorriendo la tabla y descarta los cambios registrados hasta ese momento, en
+     * el mismo snapshot: los cambios que quedan son exactamente los que la consulta no vio.
+     * @return Digest de cada uno de los 2^niveles buckets (0 si el bucket está vacío).
+     */
+    public long[] hojas(int niveles) throws SQLException {
+        long[] hojas = new long[1 << niveles];
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try (PreparedStatement descartar = conn.prepareStatement(SQL_DESCARTAR_CAMBIOS);
+                 PreparedStatement pstmt = conn.prepareStatement(SQL_HOJAS)) {
+                descartar.executeUpdate(); // Primera sentencia: fija el snapshot de la transacción
+                pstmt.setInt(1, hojas.length - 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        hojas[rs.getInt("b")] = modulo64(rs.getBigDecimal("digest"));
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                conn.setAutoCommit(true);
+            }
+        }
+        return hojas;
+    }
+
+    /**
+     * Suma a las hojas los cambios registrados por el trigger de Cuenta desde la última llamada (o
+     * desde {@link #hojas}) y los borra.
+     * @return Cantidad de cambios aplicados.
+     */
+    public int consumirCambios(int niveles, long[] hojas) throws SQLException {
+        int mascara = (1 << niveles) - 1;
+        int cambios = 0;
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SQL_CONSUMIR_CAMBIOS);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                hojas[rs.getInt("BUCKET") & mascara] += modulo64(rs.getBigDecimal("HASH"));
+                cambios++;
+            }
+        }
+        return cambios;
+    }
+
+    /**
+     * Descarta los cambios registrados sin aplicarlos (todavía no hay hojas que mantener).
+     */
+    public void descartarCambios() throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SQL_DESCARTAR_CAMBIOS)) {
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return Las filas de los buckets indicados, ordenadas por ID_CUENTA.
+     */
+    public List<Fila> filas(int niveles, Collection<Integer> buckets) throws SQLException {
+        List<Fila> filas = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SQL_FILAS)) {
+            Array array = conn.createArrayOf("integer", buckets.toArray());
+            pstmt.setInt(1, (1 << niveles) - 1);
+            pstmt.setArray(2, array);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    filas.add(new Fila(rs.getString("ID_CUENTA"), rs.getString("ID_CLIENTE"),
+                            rs.getBigDecimal("SALDO"), rs.getString("TIPO_CUENTA")));
+                }
+            } finally {
+                array.free();
+            }
+        }
+        return filas;
+    }
+
+    /**
+     * Sobrescribe (o inserta) las filas indicadas en una transacción. Una fila que no se puede
+     * escribir (p. ej. su cliente no existe en este nodo) se omite sin afectar a las demás.
+     */
+    public ResultadoReparacion reparar(List<Fila> filas) throws SQLException {
+        int reparadas = 0;
+        int fallidas = 0;
+        BigDecimal delta = BigDecimal.ZERO;
+        List<String> cuentas = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement saldoActual = conn.prepareStatement(SQL_SALDO_ACTUAL);
+                 PreparedStatement reparar = conn.prepareStatement(SQL_REPARAR)) {
+                for (Fila fila : filas) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        BigDecimal anterior = null;
+                        saldoActual.setString(1, fila.getIdCuenta());
+                        try (ResultSet rs = saldoActual.executeQuery()) {
+                            if (rs.next()) {
+                                anterior = rs.getBigDecimal(1);
+                            }
+                        }
+                        reparar.setString(1, fila.getIdCuenta());
+                        reparar.setString(2, fila.getIdCliente());
+                        reparar.setBigDecimal(3, fila.getSaldo());
+                        reparar.setString(4, fila.getTipoCuenta());
+                        reparar.executeUpdate();
+                        conn.releaseSavepoint(savepoint);
+                        delta = delta.add(cero(fila.getSaldo())).subtract(cero(anterior));
+                        reparadas++;
+                        cuentas.add(fila.getIdCuenta());
+                    } catch (SQLException e) {
+                        conn.rollback(savepoint);
+                        fallidas++;
+                        LOGGER.log(Level.WARNING, "Worker [{0}] Anti-entropía: no se pudo reparar la cuenta {1}: {2}",
+                                new Object[]{workerId, fila.getIdCuenta(), e.getMessage()});
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        return new ResultadoReparacion(reparadas, fallidas, delta, cuentas);
+    }
+
+    // Las sumas y diferencias llegan como numeric; sus 64 bits bajos son el valor módulo 2^64
+    private static long modulo64(BigDecimal valor) {
+        return valor.toBigInteger().longValue();
+    }
+
+    private static BigDecimal cero(BigDecimal valor) {
+        return valor == null ? BigDecimal.ZERO : valor;
+    }
+}
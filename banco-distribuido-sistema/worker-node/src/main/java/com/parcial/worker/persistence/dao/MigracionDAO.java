@@ -0,0 +1,267 @@
+package com.parcial.worker.persistence.dao;
+
+import com.parcial.worker.persistence.DatabaseManager;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * DAO para migrar un rango de cuentas entre workers (rebalanceo de particiones).
+ * La copia usa COPY de PostgreSQL en formato CSV: el worker origen hace COPY ... TO STDOUT y el
+ * destino COPY ... FROM STDIN hacia una tabla temporal, desde donde se aplica con INSERT ... ON CONFLICT.
+ * Así una misma ronda puede repetirse (la de puesta al día) sin duplicar filas.
+ *
+ * El rango es [desde, hasta] sobre ID_CUENTA con orden binario (COLLATE "C"), el mismo que
+ * String.compareTo en el Servidor Central.
+ */
+public class MigracionDAO {
+    private static final Logger LOGGER = Logger.getLogger(MigracionDAO.class.getName());
+    // COPY no admite parámetros: los IDs se validan antes de incluirlos como literales
+    private static final Pattern ID_VALIDO = Pattern.compile("[A-Za-z0-9_-]{1,50}");
+    private static final String RANGO = "COLLATE \"C\" BETWEEN %s AND %s";
+
+    public enum Tabla {
+        CLIENTE("Cliente", "ID_CLIENTE, NOMBRE, EMAIL, TELEFONO"),
+        CUENTA("Cuenta", "ID_CUENTA, ID_CLIENTE, SALDO, TIPO_CUENTA"),
+        TRANSACCIONES("Transacciones", "ID_TRANSACCION, ID_ORIGEN, ID_DESTINO, MONTO, FECHA_HORA, ESTADO");
+
+        private final String nombre;
+        private final String columnas;
+
+        Tabla(String nombre, String columnas) {
+            this.nombre = nombre;
+            this.columnas = columnas;
+        }
+
+        public static Tabla parse(String valor) {
+            return valueOf(valor.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Resultado de aplicar un lote importado.
+     */
+    public static final class ResultadoImportacion {
+        private final long recibidas;
+        private final long aplicadas;
+        private final BigDecimal deltaSaldos;
+        private final List<String> cuentasModificadas;
+
+        ResultadoImportacion(long recibidas, long aplicadas, BigDecimal deltaSaldos, List<String> cuentasModificadas) {
+            this.recibidas = recibidas;
+            this.aplicadas = aplicadas;
+            this.deltaSaldos = deltaSaldos;
+            this.cuentasModificadas = cuentasModificadas;
+        }
+
+        public long getRecibidas() { return recibidas; }
+        /** Filas insertadas o actualizadas; en la puesta al día, las que cambiaron desde la ronda anterior. */
+        public long getAplicadas() { return aplicadas; }
+        /** Cambio en la suma de saldos de la partición local (para el arqueo parcial). */
+        public BigDecimal getDeltaSaldos() { return deltaSaldos; }
+        public List<String> getCuentasModificadas() { return cuentasModificadas; }
+    }
+
+    /**
+     * Resultado de purgar un rango ya migrado.
+     */
+    public static final class ResultadoPurga {
+        private final long transaccionesEliminadas;
+        private final List<String> cuentasEliminadas;
+        private final BigDecimal deltaSaldos;
+
+        ResultadoPurga(long transaccionesEliminadas, List<String> cuentasEliminadas, BigDecimal deltaSaldos) {
+            this.transaccionesEliminadas = transaccionesEliminadas;
+            this.cuentasEliminadas = cuentasEliminadas;
+            this.deltaSaldos = deltaSaldos;
+        }
+
+        public long getTransaccionesEliminadas() { return transaccionesEliminadas; }
+        public List<String> getCuentasEliminadas() { return cuentasEliminadas; }
+        /** Cambio en la suma de saldos de la partición local (negativo). */
+        public BigDecimal getDeltaSaldos() { return deltaSaldos; }
+    }
+
+    private final DatabaseManager dbManager;
+    private final String workerId;
+
+    public MigracionDAO(DatabaseManager dbManager, String workerId) {
+        this.dbManager = dbManager;
+        this.workerId = workerId;
+    }
+
+    public static boolean esIdValido(String id) {
+        return id != null && ID_VALIDO.matcher(id).matches();
+    }
+
+    /**
+     * Escribe en CSV las filas de la tabla que pertenecen al rango de cuentas.
+     * Para Cliente, los clientes dueños de alguna cuenta del rango. Para Transacciones, las que tienen
+     * origen o destino en el rango y, si desdeFecha no es null, FECHA_HORA >= desdeFecha.
+     * @return Cantidad de filas exportadas.
+     */
+    public long exportar(Tabla tabla, String desde, String hasta, Timestamp desdeFecha, Writer out)
+            throws SQLException, IOException {
+        String rango = String.format(RANGO, literal(desde), literal(hasta));
+        String select;
+        switch (tabla) {
+            case CLIENTE:
+                select = "SELECT " + tabla.columnas + " FROM Cliente WHERE ID_CLIENTE IN"
+                        + " (SELECT ID_CLIENTE FROM Cuenta WHERE ID_CUENTA " + rango + ")";
+                break;
+            case CUENTA:
+                select = "SELECT " + tabla.columnas + " FROM Cuenta WHERE ID_CUENTA " + rango;
+                break;
+            default:
+                select = "SELECT " + tabla.columnas + " FROM Transacciones WHERE (ID_ORIGEN " + rango
+                        + " OR ID_DESTINO " + rango + ")"
+                        + (desdeFecha != null ? " AND FECHA_HORA >= " + literal(desdeFecha.toString()) + "::timestamp" : "");
+        }
+        LOGGER.log(Level.INFO, "Worker [{0}] Migración: exportando {1} del rango [{2}, {3}] (hilo: {4})",
+                new Object[]{workerId, tabla.nombre, desde, hasta, Thread.currentThread().getName()});
+
+        try (Connection conn = dbManager.getConnection()) {
+            return copyManager(conn).copyOut("COPY (" + select + ") TO STDOUT WITH (FORMAT csv)", out);
+        }
+    }
+
+    /**
+     * Carga un CSV producido por {@link #exportar} y lo aplica en una sola transacción:
+     * - Cliente: se insertan los que falten.
+     * - Cuenta: se insertan las nuevas y se sobrescriben los saldos que cambiaron (el destino no
+     *   recibe escrituras del rango hasta el cambio de dueño, así que el origen manda).
+     * - Transacciones: se insertan las que falten con origen o destino en el rango (el mismo criterio
+     *   que {@link #purgar}): la contraparte de una transferencia entre particiones vive en otro worker.
+     */
+    public ResultadoImportacion importar(Tabla tabla, String desde, String hasta, Reader in) throws SQLException, IOException {
+        String staging = "migracion_" + tabla.name().toLowerCase(Locale.ROOT);
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("CREATE TEMP TABLE " + staging + " (LIKE " + tabla.nombre + ") ON COMMIT DROP");
+                }
+                long recibidas = copyManager(conn).copyIn(
+                        "COPY " + staging + " (" + tabla.columnas + ") FROM STDIN WITH (FORMAT csv)", in);
+                ResultadoImportacion resultado = aplicar(conn, tabla, staging, String.format(RANGO, literal(desde), literal(hasta)), recibidas);
+                conn.commit();
+                LOGGER.log(Level.INFO, "Worker [{0}] Migración: importadas {1} filas de {2} ({3} aplicadas)",
+                        new Object[]{workerId, recibidas, tabla.nombre, resultado.getAplicadas()});
+                return resultado;
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private ResultadoImportacion aplicar(Connection conn, Tabla tabla, String staging, String rango, long recibidas) throws SQLException {
+        switch (tabla) {
+            case CLIENTE:
+                try (Statement st = conn.createStatement()) {
+                    int insertados = st.executeUpdate("INSERT INTO Cliente (" + tabla.columnas + ") SELECT "
+                            + tabla.columnas + " FROM " + staging + " ON CONFLICT (ID_CLIENTE) DO NOTHING");
+                    return new ResultadoImportacion(recibidas, insertados, BigDecimal.ZERO, List.of());
+                }
+            case CUENTA:
+                // Todas las CTE ven el mismo snapshot: "previo" tiene el saldo anterior al upsert
+                String sql = "WITH previo AS (SELECT c.ID_CUENTA, c.SALDO FROM Cuenta c JOIN " + staging + " s ON s.ID_CUENTA = c.ID_CUENTA),"
+                        + " upsert AS (INSERT INTO Cuenta (" + tabla.columnas + ") SELECT " + tabla.columnas + " FROM " + staging
+                        + " ON CONFLICT (ID_CUENTA) DO UPDATE SET SALDO = EXCLUDED.SALDO, ID_CLIENTE = EXCLUDED.ID_CLIENTE,"
+                        + " TIPO_CUENTA = EXCLUDED.TIPO_CUENTA"
+                        + " WHERE (Cuenta.SALDO, Cuenta.ID_CLIENTE, Cuenta.TIPO_CUENTA)"
+                        + " IS DISTINCT FROM (EXCLUDED.SALDO, EXCLUDED.ID_CLIENTE, EXCLUDED.TIPO_CUENTA)"
+                        + " RETURNING ID_CUENTA, SALDO)"
+                        + " SELECT u.ID_CUENTA, u.SALDO - COALESCE(p.SALDO, 0) AS DELTA FROM upsert u LEFT JOIN previo p ON p.ID_CUENTA = u.ID_CUENTA";
+                List<String> modificadas = new ArrayList<>();
+                BigDecimal delta = BigDecimal.ZERO;
+                try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                    while (rs.next()) {
+                        modificadas.add(rs.getString("ID_CUENTA"));
+                        delta = delta.add(rs.getBigDecimal("DELTA"));
+                    }
+                }
+                return new ResultadoImportacion(recibidas, modificadas.size(), delta, modificadas);
+            default:
+                try (Statement st = conn.createStatement()) {
+                    int insertadas = st.executeUpdate("INSERT INTO Transacciones (" + tabla.columnas + ") SELECT "
+                            + tabla.columnas + " FROM " + staging + " s"
+                            + " WHERE s.ID_ORIGEN " + rango + " OR s.ID_DESTINO " + rango
+                            + " ON CONFLICT (ID_TRANSACCION) DO NOTHING");
+                    return new ResultadoImportacion(recibidas, insertadas, BigDecimal.ZERO, List.of());
+                }
+        }
+    }
+
+    /**
+     * Elimina del worker las cuentas del rango (y las transacciones que las referencian) una vez
+     * que el Servidor Central las asignó a otra partición. Los clientes se conservan: pueden tener
+     * otras cuentas aquí.
+     */
+    public ResultadoPurga purgar(String desde, String hasta) throws SQLException {
+        String sqlTransacciones = "DELETE FROM Transacciones WHERE ID_ORIGEN COLLATE \"C\" BETWEEN ? AND ?"
+                + " OR ID_DESTINO COLLATE \"C\" BETWEEN ? AND ?";
+        String sqlCuentas = "DELETE FROM Cuenta WHERE ID_CUENTA COLLATE \"C\" BETWEEN ? AND ? RETURNING ID_CUENTA, SALDO";
+        LOGGER.log(Level.INFO, "Worker [{0}] Migración: purgando rango [{1}, {2}] (hilo: {3})",
+                new Object[]{workerId, desde, hasta, Thread.currentThread().getName()});
+
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int transacciones;
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlTransacciones)) {
+                    pstmt.setString(1, desde);
+                    pstmt.setString(2, hasta);
+                    pstmt.setString(3, desde);
+                    pstmt.setString(4, hasta);
+                    transacciones = pstmt.executeUpdate();
+                }
+                List<String> eliminadas = new ArrayList<>();
+                BigDecimal delta = BigDecimal.ZERO;
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlCuentas)) {
+                    pstmt.setString(1, desde);
+                    pstmt.setString(2, hasta);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            eliminadas.add(rs.getString("ID_CUENTA"));
+                            delta = delta.subtract(rs.getBigDecimal("SALDO"));
+                        }
+                    }
+                }
+                conn.commit();
+                return new ResultadoPurga(transacciones, eliminadas, delta);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static CopyManager copyManager(Connection conn) throws SQLException {
+        return conn.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    private static String literal(String valor) {
+        return "'" + valor.replace("'", "''") + "'";
+    }
+}
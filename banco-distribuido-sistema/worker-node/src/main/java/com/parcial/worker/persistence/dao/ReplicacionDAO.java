@@ -0,0 +1,205 @@
+package com.parcial.worker.persistence.dao;
+
+import com.parcial.worker.persistence.DatabaseManager;
+
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DAO del lado backup de la replicación primario-backup: aplica el log de cambios que envía el
+ * worker primario de la partición (ver {@link com.parcial.worker.services.ReplicationLog}).
+ *
+ * Cada cambio es la fila del libro (Transacciones) de una transferencia ya confirmada en el
+ * primario; su débito y crédito se aplican como deltas de saldo sin volver a validar el saldo.
+ * La fila y los deltas van en la misma sentencia y la fila se inserta con ON CONFLICT DO NOTHING,
+ * así reaplicar un cambio (reintento del primario) no mueve saldos dos veces.
+ */
+public class ReplicacionDAO {
+    private static final Logger LOGGER = Logger.getLogger(ReplicacionDAO.class.getName());
+
+    private static final String SQL_APLICAR =
+            "WITH registro AS ("
+            + " INSERT INTO Transacciones (ID_TRANSACCION, ID_ORIGEN, ID_DESTINO, MONTO, FECHA_HORA, ESTADO)"
+            + " VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (ID_TRANSACCION) DO NOTHING"
+            + " RETURNING ID_ORIGEN, ID_DESTINO, MONTO"
+            + ") UPDATE Cuenta c SET SALDO = c.SALDO + d.DELTA"
+            + " FROM (SELECT ID_ORIGEN AS ID_CUENTA, -MONTO AS DELTA FROM registro"
+            + "       UNION ALL SELECT ID_DESTINO, MONTO FROM registro) d"
+            + " WHERE c.ID_CUENTA = d.ID_CUENTA";
+
+    private final DatabaseManager dbManager;
+    private final String workerId;
+
+    /**
+     * Una transferencia confirmada en el primario, con su posición en el log.
+     * En el cuerpo HTTP es una línea separada por tabuladores (IDs codificados como en un formulario).
+     */
+    public static final class Cambio {
+        private final long secuencia;
+        private final String transaccionId;
+        private final String cuentaOrigen;
+        private final String cuentaDestino;
+        private final BigDecimal monto;
+        private final Timestamp fechaHora;
+
+        public Cambio(long secuencia, String transaccionId, String cuentaOrigen, String cuentaDestino,
+                      BigDecimal monto, Timestamp fechaHora) {
+            this.secuencia = secuencia;
+            this.transaccionId = transaccionId;
+            this.cuentaOrigen = cuentaOrigen;
+            this.cuentaDestino = cuentaDestino;
+            this.monto = monto;
+            this.fechaHora = fechaHora;
+        }
+
+        public Cambio conSecuencia(long nuevaSecuencia) {
+            return new Cambio(nuevaSecuencia, transaccionId, cuentaOrigen, cuentaDestino, monto, fechaHora);
+        }
+
+        public String aLinea() {
+            return secuencia + "\t" + codificar(transaccionId) + "\t" + codificar(cuentaOrigen) + "\t"
+                    + codificar(cuentaDestino) + "\t" + monto.toPlainString() + "\t" + fechaHora;
+        }
+
+        /**
+         * @throws IllegalArgumentException Si la línea no tiene el formato de {@link #aLinea()}.
+         */
+        public static Cambio parse(String linea) {
+            String[] campos = linea.split("\t");
+            if (campos.length != 6) {
+                throw new IllegalArgumentException("Línea de replicación malformada: " + linea);
+            }
+            return new Cambio(Long.parseLong(campos[0]), decodificar(campos[1]), decodificar(campos[2]),
+                    decodificar(campos[3]), new BigDecimal(campos[4]), Timestamp.valueOf(campos[5]));
+        }
+
+        public long getSecuencia() { return secuencia; }
+        public String getTransaccionId() { return transaccionId; }
+        public String getCuentaOrigen() { return cuentaOrigen; }
+        public String getCuentaDestino() { return cuentaDestino; }
+        public BigDecimal getMonto() { return monto; }
+        public Timestamp getFechaHora() { return fechaHora; }
+
+        private static String codificar(String valor) {
+            return URLEncoder.encode(valor, StandardCharsets.UTF_8);
+        }
+
+        private static String decodificar(String valor) {
+            return URLDecoder.decode(valor, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Resultado de aplicar un lote del log.
+     */
+    public static final class ResultadoAplicacion {
+        private final int aplicados;
+        private final int duplicados;
+        private final int fallidos;
+
+        ResultadoAplicacion(int aplicados, int duplicados, int fallidos) {
+            this.aplicados = aplicados;
+            this.duplicados = duplicados;
+            this.fallidos = fallidos;
+        }
+
+        public int getAplicados() { return aplicados; }
+        /** Cambios que ya estaban aplicados (reenvíos). */
+        public int getDuplicados() { return duplicados; }
+        /** Cambios que no se pudieron aplicar (p. ej. una cuenta que no existe en este nodo). */
+        public int getFallidos() { return fallidos; }
+    }
+
+    public ReplicacionDAO(DatabaseManager dbManager, String workerId) {
+        this.dbManager = dbManager;
+        this.workerId = workerId;
+    }
+
+    /**
+     * Aplica un lote de cambios, en orden, en una sola transacción y un solo round trip (batch JDBC).
+     * Si algún cambio falla, el lote se reaplica uno por uno con savepoints y se omiten solo los que
+     * fallan: un cambio inválido no debe bloquear para siempre el log del primario.
+     */
+    public ResultadoAplicacion aplicar(List<Cambio> cambios) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(SQL_APLICAR)) {
+                ResultadoAplicacion resultado;
+                try {
+                    for (Cambio cambio : cambios) {
+                        bind(pstmt, cambio);
+                        pstmt.addBatch();
+                    }
+                    resultado = contar(pstmt.executeBatch(), 0);
+                } catch (BatchUpdateException e) {
+                    conn.rollback();
+                    pstmt.clearBatch();
+                    resultado = aplicarUnoAUno(conn, pstmt, cambios);
+                }
+                conn.commit();
+                return resultado;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private ResultadoAplicacion aplicarUnoAUno(Connection conn, PreparedStatement pstmt, List<Cambio> cambios) throws SQLException {
+        int[] filas = new int[cambios.size()];
+        int fallidos = 0;
+        for (int i = 0; i < cambios.size(); i++) {
+            Cambio cambio = cambios.get(i);
+            Savepoint savepoint = conn.setSavepoint();
+            try {
+                bind(pstmt, cambio);
+                filas[i] = pstmt.executeUpdate();
+                conn.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                conn.rollback(savepoint);
+                filas[i] = -1;
+                fallidos++;
+                LOGGER.log(Level.SEVERE, "Worker [{0}] Replicación: cambio {1} ({2}) omitido: {3}",
+                        new Object[]{workerId, cambio.getSecuencia(), cambio.getTransaccionId(), e.getMessage()});
+            }
+        }
+        return contar(filas, fallidos);
+    }
+
+    private static void bind(PreparedStatement pstmt, Cambio cambio) throws SQLException {
+        pstmt.setString(1, cambio.getTransaccionId());
+        pstmt.setString(2, cambio.getCuentaOrigen());
+        pstmt.setString(3, cambio.getCuentaDestino());
+        pstmt.setBigDecimal(4, cambio.getMonto());
+        pstmt.setTimestamp(5, cambio.getFechaHora());
+        pstmt.setString(6, ResultadoTransferencia.CONFIRMADA.getEstado());
+    }
+
+    // Filas de Cuenta actualizadas por cambio: 2 si se aplicó, 0 si ya estaba, -1 si falló
+    private static ResultadoAplicacion contar(int[] filas, int fallidos) {
+        int aplicados = 0;
+        int duplicados = 0;
+        for (int f : filas) {
+            if (f > 0 || f == Statement.SUCCESS_NO_INFO) {
+                aplicados++;
+            } else if (f == 0) {
+                duplicados++;
+            }
+        }
+        return new ResultadoAplicacion(aplicados, duplicados, fallidos);
+    }
+}
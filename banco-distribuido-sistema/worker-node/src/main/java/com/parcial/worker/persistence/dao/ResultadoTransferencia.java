@@ -0,0 +1,20 @@
+package com.parcial.worker.persistence.dao;
+
+/**
+ * Resultado de aplicar una transferencia en la base de datos local del worker.
+ * El valor de {@link #getEstado()} es el que se reporta al Servidor Central.
+ */
+public enum ResultadoTransferencia {
+    CONFIRMADA("CONFIRMADA"),
+    CUENTA_ORIGEN_NO_ENCONTRADA("RECHAZADA_ORIGEN_NO_ENCONTRADA"),
+    SALDO_INSUFICIENTE("RECHAZADA_SALDO_INSUFICIENTE"),
+    CUENTA_DESTINO_NO_ENCONTRADA("RECHAZADA_DESTINO_NO_ENCONTRADO");
+
+    private final String estado;
+
+    ResultadoTransferencia(String estado) {
+        this.estado = estado;
+    }
+
+    public String getEstado() { return estado; }
+}
@@ -1,8 +1,11 @@
 package com.parcial.worker.persistence.dao;
 
+import com.parcial.worker.persistence.BalanceCache;
 import com.parcial.worker.persistence.DatabaseManager;
 import java.sql.Connection;
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.logging.Level;
@@ -13,11 +16,28 @@ import java.util.logging.Logger;
  */
 public class TransaccionDAO {
     private static final Logger LOGGER = Logger.getLogger(TransaccionDAO.class.getName());
+
+    // Débito condicionado, crédito y registro en una sola sentencia (un round trip).
+    // Cada paso solo ocurre si el anterior afectó una fila; el SELECT final indica cuál falló.
+    private static final String SQL_TRANSFERIR =
+            "WITH debito AS ("
+            + " UPDATE Cuenta SET SALDO = SALDO - ? WHERE ID_CUENTA = ? AND SALDO >= ? RETURNING SALDO"
+            + "), credito AS ("
+            + " UPDATE Cuenta SET SALDO = SALDO + ? WHERE ID_CUENTA = ? AND EXISTS (SELECT 1 FROM debito) RETURNING SALDO"
+            + "), registro AS ("
+            + " INSERT INTO Transacciones (ID_TRANSACCION, ID_ORIGEN, ID_DESTINO, MONTO, FECHA_HORA, ESTADO)"
+            + " SELECT ?, ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM credito) RETURNING ID_TRANSACCION"
+            + ") SELECT EXISTS (SELECT 1 FROM Cuenta WHERE ID_CUENTA = ?) AS ORIGEN_EXISTE,"
+            + " EXISTS (SELECT 1 FROM debito) AS DEBITADO,"
+            + " EXISTS (SELECT 1 FROM credito) AS ACREDITADO,"
+            + " EXISTS (SELECT 1 FROM registro) AS REGISTRADO,"
+            + " (SELECT SALDO FROM debito) AS SALDO_ORIGEN,"
+            + " (SELECT SALDO FROM credito) AS SALDO_DESTINO";
     private final DatabaseManager dbManager;
     private final String workerId;
 
     public TransaccionDAO(DatabaseManager dbManager, String workerId) {
-        this.dbManager = dbManager; // Puede no ser necesario si solo se usan métodos con conexión explícita
+        this.dbManager = dbManager; // Las conexiones las maneja el llamador
         this.workerId = workerId;
     }
 
@@ -51,4 +71,56 @@ public class TransaccionDAO {
         }
         // La conexión no se cierra aquí, es manejada por el llamador (el handler de transferencia)
     }
-}
\ No newline at end of file
+
+    /**
+     * Ejecuta una transferencia completa (débito con guarda de saldo, crédito y registro) en un
+     * solo round trip. Los saldos se modifican con aritmética en SQL, no con valores leídos antes,
+     * así transferencias concurrentes no pierden actualizaciones.
+     * Si el resultado no es CONFIRMADA el llamador DEBE hacer rollback: el débito pudo aplicarse.
+     * Si es CONFIRMADA, los saldos nuevos quedan registrados en la escritura de caché; el llamador
+     * la confirma después del commit (ver {@link BalanceCache.Escritura}).
+     * @param conn La conexión de base de datos activa, con auto-commit desactivado.
+     * @return El resultado de la transferencia.
+     * @throws SQLException Si ocurre un error SQL.
+     */
+    public ResultadoTransferencia transferirEnTransaccion(Connection conn, String idTransaccion, String idOrigen,
+                                                          String idDestino, double monto, Timestamp fechaHora,
+                                                          BalanceCache.Escritura escritura) throws SQLException {
+        LOGGER.log(Level.INFO, "Worker [{0}] DAO: Transfiriendo {1} de {2} a {3} en transacción {4} (hilo: {5})",
+            new Object[]{workerId, monto, idOrigen, idDestino, idTransaccion, Thread.currentThread().getName()});
+        BigDecimal montoDecimal = BigDecimal.valueOf(monto);
+
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_TRANSFERIR)) {
+            pstmt.setBigDecimal(1, montoDecimal);
+            pstmt.setString(2, idOrigen);
+            pstmt.setBigDecimal(3, montoDecimal);
+            pstmt.setBigDecimal(4, montoDecimal);
+            pstmt.setString(5, idDestino);
+            pstmt.setString(6, idTransaccion);
+            pstmt.setString(7, idOrigen);
+            pstmt.setString(8, idDestino);
+            pstmt.setBigDecimal(9, montoDecimal);
+            pstmt.setTimestamp(10, fechaHora);
+            pstmt.setString(11, ResultadoTransferencia.CONFIRMADA.getEstado());
+            pstmt.setString(12, idOrigen);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                if (!rs.getBoolean("ORIGEN_EXISTE")) {
+                    return ResultadoTransferencia.CUENTA_ORIGEN_NO_ENCONTRADA;
+                }
+                if (!rs.getBoolean("DEBITADO")) {
+                    return ResultadoTransferencia.SALDO_INSUFICIENTE;
+                }
+                if (!rs.getBoolean("ACREDITADO")) {
+                    return ResultadoTransferencia.CUENTA_DESTINO_NO_ENCONTRADA;
+                }
+                if (!rs.getBoolean("REGISTRADO")) {
+                    throw new SQLException("No se pudo registrar la transacción " + idTransaccion);
+                }
+                escritura.registrar(idOrigen, rs.getDouble("SALDO_ORIGEN"));
+                escritura.registrar(idDestino, rs.getDouble("SALDO_DESTINO"));
+                return ResultadoTransferencia.CONFIRMADA;
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.parcial.worker.persistence.dao;
+
+import com.parcial.worker.persistence.DatabaseManager;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DAO para la tabla TransferenciasDistribuidas: la parte local de una transferencia entre
+ * particiones coordinada por el Servidor Central con commit en dos fases.
+ *
+ * Cada fase es una transacción local corta; ningún bloqueo de fila se mantiene entre fases:
+ * - DEBITO (cuenta origen): preparar descuenta el monto del saldo (reserva) y registra PREPARADA;
+ *   confirmar solo cambia el estado; abortar devuelve el monto.
+ * - CREDITO (cuenta destino): preparar verifica la cuenta y registra PREPARADA; confirmar acredita;
+ *   abortar solo cambia el estado.
+ * Al confirmar, ambos roles registran la transferencia en el libro local (Transacciones) en la misma
+ * transacción; si débito y crédito comparten base de datos, la fila se inserta una sola vez.
+ * Todas las operaciones son idempotentes (el Central puede reintentarlas y varias réplicas pueden
+ * compartir dirección). Un abortar sin preparar previo deja la fila ABORTADA, así un preparar tardío vota NO.
+ */
+public class TransferenciaDistribuidaDAO {
+    private static final Logger LOGGER = Logger.getLogger(TransferenciaDistribuidaDAO.class.getName());
+    public static final String DEBITO = "DEBITO";
+    public static final String CREDITO = "CREDITO";
+    public static final String PREPARADA = "PREPARADA";
+    public static final String CONFIRMADA = "CONFIRMADA";
+    public static final String ABORTADA = "ABORTADA";
+
+    private static final String SQL_REGISTRAR =
+            "INSERT INTO TransferenciasDistribuidas (ID_TRANSACCION, ROL, ID_CUENTA, ID_CONTRAPARTE, MONTO, ESTADO, FECHA_HORA)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (ID_TRANSACCION, ROL) DO NOTHING";
+    private static final String SQL_REGISTRAR_CREDITO =
+            "INSERT INTO TransferenciasDistribuidas (ID_TRANSACCION, ROL, ID_CUENTA, ID_CONTRAPARTE, MONTO, ESTADO, FECHA_HORA)"
+            + " SELECT ?, '" + CREDITO + "', ?, ?, ?, '" + PREPARADA + "', ? WHERE EXISTS (SELECT 1 FROM Cuenta WHERE ID_CUENTA = ?)"
+            + " ON CONFLICT (ID_TRANSACCION, ROL) DO NOTHING";
+    private static final String SQL_ESTADO =
+            "SELECT ESTADO FROM TransferenciasDistribuidas WHERE ID_TRANSACCION = ? AND ROL = ?";
+    private static final String SQL_CERRAR =
+            "UPDATE TransferenciasDistribuidas SET ESTADO = ? WHERE ID_TRANSACCION = ? AND ROL = ? AND ESTADO = '" + PREPARADA + "'"
+            + " RETURNING ID_CUENTA, ID_CONTRAPARTE, MONTO";
+    private static final String SQL_DEBITAR =
+            "UPDATE Cuenta SET SALDO = SALDO - ? WHERE ID_CUENTA = ? AND SALDO >= ?";
+    private static final String SQL_ACREDITAR =
+            "UPDATE Cuenta SET SALDO = SALDO + ? WHERE ID_CUENTA = ?";
+    private static final String SQL_LIBRO =
+            "INSERT INTO Transacciones (ID_TRANSACCION, ID_ORIGEN, ID_DESTINO, MONTO, FECHA_HORA, ESTADO)"
+            + " VALUES (?, ?, ?, ?, ?, '" + CONFIRMADA + "') ON CONFLICT (ID_TRANSACCION) DO NOTHING";
+
+    /**
+     * Voto de un participante en la fase de preparación.
+     */
+    public static final class Voto {
+        private final boolean si;
+        private final boolean nuevo;
+        private final String motivo;
+        private final ResultadoTransferencia rechazo;
+
+        private Voto(boolean si, boolean nuevo, String motivo) {
+            this(si, nuevo, motivo, null);
+        }
+
+        private Voto(boolean si, boolean nuevo, String motivo, ResultadoTransferencia rechazo) {
+            this.si = si;
+            this.nuevo = nuevo;
+            this.motivo = motivo;
+            this.rechazo = rechazo;
+        }
+
+        public boolean isSi() { return si; }
+        /** true si esta llamada preparó la fila (false si ya estaba preparada por un intento anterior). */
+        public boolean isNuevo() { return nuevo; }
+        public String getMotivo() { return motivo; }
+        /** Rechazo de negocio (saldo, cuenta inexistente) que explica un NO, o null si el NO es de protocolo. */
+        public ResultadoTransferencia getRechazo() { return rechazo; }
+    }
+
+    /**
+     * Fila cerrada por confirmar/abortar, o null si no hubo cambio (ya estaba cerrada).
+     */
+    public static final class Cierre {
+        private final String cuentaId;
+        private final String contraparte;
+        private final BigDecimal monto;
+
+        Cierre(String cuentaId, String contraparte, BigDecimal monto) {
+            this.cuentaId = cuentaId;
+            this.contraparte = contraparte;
+            this.monto = monto;
+        }
+
+        public String getCuentaId() { return cuentaId; }
+        public String getContraparte() { return contraparte; }
+        public BigDecimal getMonto() { return monto; }
+    }
+
+    /**
+     * Participación preparada y aún sin decisión.
+     */
+    public static final class Pendiente {
+        private final String transaccionId;
+        private final String rol;
+
+        Pendiente(String transaccionId, String rol) {
+            this.transaccionId = transaccionId;
+            this.rol = rol;
+        }
+
+        public String getTransaccionId() { return transaccionId; }
+        public String getRol() { return rol; }
+    }
+
+    private final DatabaseManager dbManager;
+    private final String workerId;
+
+    public TransferenciaDistribuidaDAO(DatabaseManager dbManager, String workerId) {
+        this.dbManager = dbManager;
+        this.workerId = workerId;
+    }
+
+    /**
+     * Prepara el débito: reserva el monto en la cuenta origen (el bloqueo de la fila dura solo esta transacción).
+     */
+    public Voto prepararDebito(String transaccionId, String cuentaOrigen, String cuentaDestino, BigDecimal monto) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (registrar(conn, transaccionId, DEBITO, cuentaOrigen, cuentaDestino, monto, PREPARADA) == 0) {
+                    conn.rollback();
+                    return votoExistente(estado(conn, transaccionId, DEBITO), transaccionId);
+                }
+                int debitadas;
+                try (PreparedStatement pstmt = conn.prepareStatement(SQL_DEBITAR)) {
+                    pstmt.setBigDecimal(1, monto);
+                    pstmt.setString(2, cuentaOrigen);
+                    pstmt.setBigDecimal(3, monto);
+                    debitadas = pstmt.executeUpdate();
+                }
+                if (debitadas == 0) {
+                    conn.rollback();
+                    return existeCuenta(conn, cuentaOrigen)
+                            ? new Voto(false, false, "Saldo insuficiente en cuenta " + cuentaOrigen, ResultadoTransferencia.SALDO_INSUFICIENTE)
+                            : new Voto(false, false, "Cuenta origen " + cuentaOrigen + " no encontrada.",
+                                    ResultadoTransferencia.CUENTA_ORIGEN_NO_ENCONTRADA);
+                }
+                conn.commit();
+                LOGGER.log(Level.INFO, "Worker [{0}] 2PC: débito {1} preparado ({2} reservado de {3})",
+                        new Object[]{workerId, transaccionId, monto, cuentaOrigen});
+                return new Voto(true, true, null);
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Prepara el crédito: solo verifica que la cuenta destino exista y registra la participación.
+     */
+    public Voto prepararCredito(String transaccionId, String cuentaDestino, String cuentaOrigen, BigDecimal monto) throws SQLException {
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SQL_REGISTRAR_CREDITO)) {
+            pstmt.setString(1, transaccionId);
+            pstmt.setString(2, cuentaDestino);
+            pstmt.setString(3, cuentaOrigen);
+            pstmt.setBigDecimal(4, monto);
+            pstmt.setTimestamp(5, Timestamp.valueOf(LocalDateTime.now()));
+            pstmt.setString(6, cuentaDestino);
+            if (pstmt.executeUpdate() == 1) {
+                return new Voto(true, true, null);
+            }
+            String estado = estado(conn, transaccionId, CREDITO);
+            if (estado == null) {
+                return new Voto(false, false, "Cuenta destino " + cuentaDestino + " no encontrada en este nodo para acreditación.",
+                        ResultadoTransferencia.CUENTA_DESTINO_NO_ENCONTRADA);
+            }
+            return votoExistente(estado, transaccionId);
+        }
+    }
+
+    /**
+     * Confirma la participación y la registra en Transacciones. En el crédito acredita el monto en
+     * la misma transacción.
+     * @return La fila confirmada, o null si ya estaba confirmada (reintento).
+     * @throws IllegalStateException Si la participación no existe o fue abortada.
+     */
+    public Cierre confirmar(String transaccionId, String rol) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Cierre cierre = cerrar(conn, transaccionId, rol, CONFIRMADA);
+                if (cierre == null) {
+                    String estado = estado(conn, transaccionId, rol);
+                    conn.rollback();
+                    if (CONFIRMADA.equals(estado)) {
+                        return null;
+                    }
+                    throw new IllegalStateException("La transacción " + transaccionId + " (" + rol + ") no se puede confirmar en estado " + estado);
+                }
+                if (CREDITO.equals(rol)) {
+                    mover(conn, SQL_ACREDITAR, cierre);
+                }
+                registrarEnLibro(conn, transaccionId, rol, cierre);
+                conn.commit();
+                return cierre;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Aborta la participación. En el débito devuelve el monto reservado.
+     * Si no había preparación, deja la fila ABORTADA para que un preparar tardío vote NO.
+     * @return La fila abortada, o null si no estaba preparada.
+     * @throws IllegalStateException Si la participación ya fue confirmada.
+     */
+    public Cierre abortar(String transaccionId, String rol, String cuentaId, String contraparte, BigDecimal monto) throws SQLException {
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Cierre cierre = cerrar(conn, transaccionId, rol, ABORTADA);
+                if (cierre == null) {
+                    String estado = estado(conn, transaccionId, rol);
+                    if (CONFIRMADA.equals(estado)) {
+                        throw new IllegalStateException("La transacción " + transaccionId + " (" + rol + ") ya fue confirmada.");
+                    }
+                    if (estado == null) {
+                        registrar(conn, transaccionId, rol, cuentaId, contraparte, monto, ABORTADA);
+                    }
+                    conn.commit();
+                    return null;
+                }
+                if (DEBITO.equals(rol)) {
+                    mover(conn, SQL_ACREDITAR, cierre); // Devolver la reserva
+                }
+                conn.commit();
+                return cierre;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * @return Participaciones PREPARADAS hace más de los segundos dados (el Central no envió la decisión).
+     */
+    public List<Pendiente> preparadasAntesDe(long segundos) throws SQLException {
+        String sql = "SELECT ID_TRANSACCION, ROL FROM TransferenciasDistribuidas WHERE ESTADO = '" + PREPARADA + "' AND FECHA_HORA < ?";
+        List<Pendiente> pendientes = new ArrayList<>();
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now().minusSeconds(segundos)));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    pendientes.add(new Pendiente(rs.getString("ID_TRANSACCION"), rs.getString("ROL")));
+                }
+            }
+        }
+        return pendientes;
+    }
+
+    private int registrar(Connection conn, String transaccionId, String rol, String cuentaId, String contraparte,
+                          BigDecimal monto, String estado) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_REGISTRAR)) {
+            pstmt.setString(1, transaccionId);
+            pstmt.setString(2, rol);
+            pstmt.setString(3, cuentaId);
+            pstmt.setString(4, contraparte);
+            pstmt.setBigDecimal(5, monto);
+            pstmt.setString(6, estado);
+            pstmt.setTimestamp(7, Timestamp.valueOf(LocalDateTime.now()));
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private Cierre cerrar(Connection conn, String transaccionId, String rol, String nuevoEstado) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_CERRAR)) {
+            pstmt.setString(1, nuevoEstado);
+            pstmt.setString(2, transaccionId);
+            pstmt.setString(3, rol);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new Cierre(rs.getString("ID_CUENTA"), rs.getString("ID_CONTRAPARTE"), rs.getBigDecimal("MONTO")) : null;
+            }
+        }
+    }
+
+    private static void registrarEnLibro(Connection conn, String transaccionId, String rol, Cierre cierre) throws SQLException {
+        boolean debito = DEBITO.equals(rol);
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_LIBRO)) {
+            pstmt.setString(1, transaccionId);
+            pstmt.setString(2, debito ? cierre.getCuentaId() : cierre.getContraparte());
+            pstmt.setString(3, debito ? cierre.getContraparte() : cierre.getCuentaId());
+            pstmt.setBigDecimal(4, cierre.getMonto());
+            pstmt.setTimestamp(5, Timestamp.valueOf(LocalDateTime.now()));
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void mover(Connection conn, String sql, Cierre cierre) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setBigDecimal(1, cierre.getMonto());
+            pstmt.setString(2, cierre.getCuentaId());
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static Voto votoExistente(String estado, String transaccionId) {
+        if (estado == null) {
+            return new Voto(false, false, "Sin registro de la transacción " + transaccionId);
+        }
+        if (ABORTADA.equals(estado)) {
+            return new Voto(false, false, "La transacción " + transaccionId + " ya fue abortada.");
+        }
+        return new Voto(true, false, null); // Reintento de un preparar ya aplicado
+    }
+
+    private static String estado(Connection conn, String transaccionId, String rol) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_ESTADO)) {
+            pstmt.setString(1, transaccionId);
+            pstmt.setString(2, rol);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString("ESTADO") : null;
+            }
+        }
+    }
+
+    private static boolean existeCuenta(Connection conn, String cuentaId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM Cuenta WHERE ID_CUENTA = ?")) {
+            pstmt.setString(1, cuentaId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
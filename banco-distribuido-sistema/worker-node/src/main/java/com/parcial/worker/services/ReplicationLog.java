@@ -0,0 +1,252 @@
+package com.parcial.worker.services;
+
+import com.parcial.worker.persistence.dao.ReplicacionDAO;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Lado primario de la replicación primario-backup: el primario de la partición ejecuta la
+ * transferencia una sola vez y envía a cada backup el cambio resultante (fila del libro con sus
+ * deltas de saldo, ver {@link ReplicacionDAO}). Cada backup tiene su propio log ordenado: un hilo
+ * que agrupa lo pendiente en lotes de hasta REPLICACION_LOTE_MAX cambios y los envía de a uno, en
+ * orden y reintentando el mismo lote hasta que el backup lo confirma.
+ *
+ * La replicación es semisíncrona: {@link #publicar} completa cuando REPLICACION_ACKS backups
+ * confirmaron el cambio o cuando pasan REPLICACION_ESPERA_MS; pasado ese tiempo se sigue enviando
+ * en segundo plano. Si la cola de un backup supera REPLICACION_COLA_MAX (backup caído mucho tiempo)
+ * los cambios nuevos no se encolan y el backup queda desincronizado hasta una reparación.
+ */
+public class ReplicationLog {
+    private static final Logger LOGGER = Logger.getLogger(ReplicationLog.class.getName());
+    private static final String REPLICACION_PATH = "/api/worker/replicacion";
+    private static final long BACKOFF_INICIAL_MS = 100L;
+    private static final long BACKOFF_MAX_MS = 5_000L;
+
+    private final String workerId;
+    // Identifica esta ejecución del primario: al reiniciar, la secuencia vuelve a empezar
+    private final long epoca = System.currentTimeMillis();
+    private final int acksRequeridos = Integer.parseInt(System.getenv().getOrDefault("REPLICACION_ACKS", "1"));
+    private final long esperaMs = Long.parseLong(System.getenv().getOrDefault("REPLICACION_ESPERA_MS", "2000"));
+    private final int loteMax = Integer.parseInt(System.getenv().getOrDefault("REPLICACION_LOTE_MAX", "256"));
+    private final int colaMax = Integer.parseInt(System.getenv().getOrDefault("REPLICACION_COLA_MAX", "100000"));
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final Map<String, Envio> envios = new ConcurrentHashMap<>();
+    // Cuenta -> cambios suyos encolados o en vuelo hacia algún backup (ver tienePendientes)
+    private final Map<String, Integer> pendientesPorCuenta = new ConcurrentHashMap<>();
+    private final AtomicLong esperasAgotadas = new AtomicLong();
+    private volatile boolean running = true;
+
+    private static final class Pendiente {
+        final ReplicacionDAO.Cambio cambio;
+        final CompletableFuture<Void> confirmado = new CompletableFuture<>();
+
+        Pendiente(ReplicacionDAO.Cambio cambio) {
+            this.cambio = cambio;
+        }
+    }
+
+    public ReplicationLog(String workerId) {
+        this.workerId = workerId;
+        LOGGER.log(Level.INFO, "Worker [{0}] Replicación primario-backup: acks={1}, espera máx={2} ms, lote máx={3}",
+                new Object[]{workerId, acksRequeridos, esperaMs, loteMax});
+    }
+
+    /**
+     * Encola el cambio en el log de cada backup.
+     * @return Futuro con el número de backups que confirmaron antes de decidir (ver descripción de la clase).
+     */
+    public CompletableFuture<Integer> publicar(List<String> backups, ReplicacionDAO.Cambio cambio) {
+        int requeridos = Math.min(acksRequeridos, backups.size());
+        AtomicInteger confirmados = new AtomicInteger();
+        AtomicInteger terminados = new AtomicInteger();
+        CompletableFuture<Integer> resultado = new CompletableFuture<>();
+        for (String backup : backups) {
+            envios.computeIfAbsent(backup, Envio::new).encolar(cambio).whenComplete((ignored, ex) -> {
+                int ok = ex == null ? confirmados.incrementAndGet() : confirmados.get();
+                int fin = terminados.incrementAndGet();
+                if (ok >= requeridos || fin == backups.size()) {
+                    resultado.complete(ok);
+                }
+            });
+        }
+        if (requeridos == 0) {
+            resultado.complete(0);
+        }
+        return resultado.completeOnTimeout(-1, esperaMs, TimeUnit.MILLISECONDS).thenApply(ok -> {
+            if (ok >= 0) {
+                return ok;
+            }
+            esperasAgotadas.incrementAndGet();
+            return confirmados.get();
+        });
+    }
+
+    public Collection<String> getBackups() {
+        return envios.keySet();
+    }
+
+    public int getPendientes(String backup) {
+        Envio envio = envios.get(backup);
+        return envio == null ? 0 : envio.cola.size() + envio.enVuelo;
+    }
+
+    public long getConfirmados(String backup) {
+        Envio envio = envios.get(backup);
+        return envio == null ? 0 : envio.confirmados.get();
+    }
+
+    public long getLotes(String backup) {
+        Envio envio = envios.get(backup);
+        return envio == null ? 0 : envio.lotes.get();
+    }
+
+    public long getReintentos(String backup) {
+        Envio envio = envios.get(backup);
+        return envio == null ? 0 : envio.reintentos.get();
+    }
+
+    public long getDescartados(String backup) {
+        Envio envio = envios.get(backup);
+        return envio == null ? 0 : envio.descartados.get();
+    }
+
+    public long getEsperasAgotadas() { return esperasAgotadas.get(); }
+
+    /**
+     * @return true si algún backup todavía no confirmó un cambio de la cuenta. Mientras tanto no se la
+     *         puede reparar en el backup: el delta encolado se volvería a aplicar sobre el saldo reparado.
+     */
+    public boolean tienePendientes(String cuentaId) {
+        return pendientesPorCuenta.containsKey(cuentaId);
+    }
+
+    private void sumarPendiente(ReplicacionDAO.Cambio cambio, int delta) {
+        for (String cuenta : new String[]{cambio.getCuentaOrigen(), cambio.getCuentaDestino()}) {
+            if (cuenta != null) {
+                pendientesPorCuenta.compute(cuenta, (k, n) -> {
+                    int total = (n == null ? 0 : n) + delta;
+                    return total > 0 ? total : null;
+                });
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        envios.values().forEach(envio -> envio.hilo.interrupt());
+    }
+
+    /**
+     * Log de cambios hacia un backup, con su propia secuencia y su hilo de envío.
+     */
+    private final class Envio {
+        private final String backup;
+        private final BlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+        private final Thread hilo;
+        private final AtomicLong confirmados = new AtomicLong();
+        private final AtomicLong lotes = new AtomicLong();
+        private final AtomicLong reintentos = new AtomicLong();
+        private final AtomicLong descartados = new AtomicLong();
+        private long secuencia = 0;
+        private volatile int enVuelo = 0;
+
+        Envio(String backup) {
+            this.backup = backup;
+            this.hilo = new Thread(this::enviarLoop, "replicacion-" + workerId + "-" + backup);
+            this.hilo.setDaemon(true);
+            this.hilo.start();
+        }
+
+        CompletableFuture<Void> encolar(ReplicacionDAO.Cambio cambio) {
+            Pendiente pendiente;
+            // La secuencia se asigna y se encola bajo el mismo lock: el orden de la cola es el del log
+            synchronized (this) {
+                if (!running || cola.size() >= colaMax) {
+                    descartados.incrementAndGet();
+                    LOGGER.log(Level.SEVERE, "Worker [{0}] Replicación: cola hacia {1} llena o detenida; cambio {2} no encolado (backup desincronizado)",
+                            new Object[]{workerId, backup, cambio.getTransaccionId()});
+                    return CompletableFuture.failedFuture(new IOException("Cola de replicación hacia " + backup + " llena."));
+                }
+                pendiente = new Pendiente(cambio.conSecuencia(++secuencia));
+                sumarPendiente(cambio, 1);
+                cola.add(pendiente);
+            }
+            return pendiente.confirmado;
+        }
+
+        private void enviarLoop() {
+            List<Pendiente> lote = new ArrayList<>(loteMax);
+            while (running) {
+                try {
+                    lote.add(cola.take());
+                    cola.drainTo(lote, loteMax - 1);
+                    enVuelo = lote.size();
+                    enviarHastaConfirmar(lote);
+                    confirmados.addAndGet(lote.size());
+                    lotes.incrementAndGet();
+                    lote.forEach(p -> {
+                        sumarPendiente(p.cambio, -1);
+                        p.confirmado.complete(null);
+                    });
+                } catch (InterruptedException e) {
+                    break;
+                } finally {
+                    enVuelo = 0;
+                }
+                lote.clear();
+            }
+            IOException detenido = new IOException("Replicación detenida.");
+            lote.forEach(p -> p.confirmado.completeExceptionally(detenido));
+            cola.forEach(p -> p.confirmado.completeExceptionally(detenido));
+            // Los cambios no enviados no se descuentan: el backup queda pendiente de ellos hasta reiniciar
+        }
+
+        private void enviarHastaConfirmar(List<Pendiente> lote) throws InterruptedException {
+            String cuerpo = lote.stream().map(p -> p.cambio.aLinea()).collect(Collectors.joining("\n"));
+            HttpRequest request = HttpRequest.newBuilder(URI.create(backup + REPLICACION_PATH
+                            + "?primario=" + URLEncoder.encode(workerId, StandardCharsets.UTF_8) + "&epoca=" + epoca))
+                    .timeout(Duration.ofSeconds(10))
+                    .header("Content-Type", "text/plain; charset=UTF-8")
+                    .POST(HttpRequest.BodyPublishers.ofString(cuerpo, StandardCharsets.UTF_8))
+                    .build();
+            long backoffMs = BACKOFF_INICIAL_MS;
+            while (true) {
+                try {
+                    HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() == 200) {
+                        return;
+                    }
+                    LOGGER.log(Level.WARNING, "Worker [{0}] Replicación: {1} respondió {2}: {3}",
+                            new Object[]{workerId, backup, response.statusCode(), response.body()});
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Worker [{0}] Replicación: no se pudo enviar el lote a {1}: {2}",
+                            new Object[]{workerId, backup, e.getMessage()});
+                }
+                reintentos.incrementAndGet();
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(BACKOFF_MAX_MS, backoffMs * 2);
+            }
+        }
+    }
+}
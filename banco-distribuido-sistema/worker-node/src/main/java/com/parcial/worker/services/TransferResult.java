@@ -0,0 +1,44 @@
+package com.parcial.worker.services;
+
+import com.parcial.worker.persistence.dao.ResultadoTransferencia;
+
+/**
+ * Resultado de una transferencia tal como se reporta al Servidor Central,
+ * independiente del transporte (HTTP o binario).
+ */
+public final class TransferResult {
+    private final String transaccionId;
+    private final ResultadoTransferencia resultado; // null si hubo un error técnico
+    private final String mensaje;
+
+    private TransferResult(String transaccionId, ResultadoTransferencia resultado, String mensaje) {
+        this.transaccionId = transaccionId;
+        this.resultado = resultado;
+        this.mensaje = mensaje;
+    }
+
+    static TransferResult confirmada(String transaccionId) {
+        return new TransferResult(transaccionId, ResultadoTransferencia.CONFIRMADA, "Transferencia " + transaccionId + " realizada.");
+    }
+
+    static TransferResult rechazada(String transaccionId, ResultadoTransferencia resultado, String mensaje) {
+        return new TransferResult(transaccionId, resultado, mensaje);
+    }
+
+    static TransferResult error(String transaccionId, String mensaje) {
+        return new TransferResult(transaccionId, null, mensaje);
+    }
+
+    public boolean isConfirmada() { return resultado == ResultadoTransferencia.CONFIRMADA; }
+    public boolean isRechazada() { return resultado != null && resultado != ResultadoTransferencia.CONFIRMADA; }
+    public String getTransaccionId() { return transaccionId; }
+    public ResultadoTransferencia getResultado() { return resultado; }
+    public String getMensaje() { return mensaje; }
+
+    /**
+     * @return El estado reportado ("CONFIRMADA", "RECHAZADA_SALDO_INSUFICIENTE", ..., o "ERROR").
+     */
+    public String getEstado() {
+        return resultado != null ? resultado.getEstado() : "ERROR";
+    }
+}
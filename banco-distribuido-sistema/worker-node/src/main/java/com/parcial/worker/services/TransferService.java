@@ -0,0 +1,435 @@
+package com.parcial.worker.services;
+
+import com.parcial.worker.persistence.AccountLockMetrics;
+import com.parcial.worker.persistence.BalanceCache;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.GroupCommitWriter;
+import com.parcial.worker.persistence.LatencyHistogram;
+import com.parcial.worker.persistence.SqlRetryPolicy;
+import com.parcial.worker.persistence.dao.CuentaDAO;
+import com.parcial.worker.persistence.dao.ReplicacionDAO;
+import com.parcial.worker.persistence.dao.ResultadoTransferencia;
+import com.parcial.worker.persistence.dao.TransaccionDAO;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Lógica de transferencia del Nodo Trabajador, compartida por el endpoint HTTP y el transporte binario.
+ * Realiza la operación dentro de una transacción de base de datos, bloqueando las cuentas
+ * en orden canónico y reintentando (con backoff acotado) fallos de serialización o deadlock.
+ * En modo group commit delega en un {@link GroupCommitWriter}.
+ * Si el Central indica backups (replicación primario-backup), este worker es el primario de la
+ * partición y cada transferencia confirmada se publica en el {@link ReplicationLog}.
+ * Un lote de transferencias del Central ({@link #transferirLote}) se aplica en orden en una sola
+ * transacción, con un savepoint por transferencia y todas sus cuentas bloqueadas de antemano.
+ */
+public class TransferService {
+    private static final Logger LOGGER = Logger.getLogger(TransferService.class.getName());
+    private static final AtomicLong SECUENCIA_TRANSACCION = new AtomicLong();
+
+    private final DatabaseManager dbManager;
+    private final String workerId;
+    private final CuentaDAO cuentaDAO;
+    private final TransaccionDAO transaccionDAO;
+    private final AccountLockMetrics lockMetrics;
+    private final LatencyHistogram latencyHistogram;
+    private final GroupCommitWriter groupCommitWriter; // null si el modo group commit está desactivado
+    private final ReplicationLog replicationLog;
+
+    /**
+     * Una transferencia de un lote, ya validada.
+     */
+    public static final class Orden {
+        private final String cuentaOrigen;
+        private final String cuentaDestino;
+        private final double monto;
+
+        public Orden(String cuentaOrigen, String cuentaDestino, double monto) {
+            this.cuentaOrigen = cuentaOrigen;
+            this.cuentaDestino = cuentaDestino;
+            this.monto = monto;
+        }
+    }
+
+    /**
+     * @param groupCommitConfig Configuración del modo group commit, o null para una transacción por solicitud.
+     */
+    public TransferService(DatabaseManager dbManager, String workerId, AccountLockMetrics lockMetrics,
+                           LatencyHistogram latencyHistogram, GroupCommitWriter.Config groupCommitConfig,
+                           ReplicationLog replicationLog) {
+        this.dbManager = dbManager;
+        this.workerId = workerId;
+        this.cuentaDAO = new CuentaDAO(dbManager, workerId);
+        this.transaccionDAO = new TransaccionDAO(dbManager, workerId);
+        this.lockMetrics = lockMetrics;
+        this.latencyHistogram = latencyHistogram;
+        this.replicationLog = replicationLog;
+        this.groupCommitWriter = groupCommitConfig != null
+                ? new GroupCommitWriter(dbManager, workerId, this::ejecutarTransferencia, cuentaDAO, lockMetrics, groupCommitConfig)
+                : null;
+    }
+
+    /**
+     * Valida los parámetros de una transferencia.
+     * @return Mensaje de error, o null si son válidos.
+     */
+    public static String validar(String cuentaOrigen, String cuentaDestino, double monto) {
+        if (!(monto > 0)) {
+            return "El monto debe ser positivo.";
+        }
+        if (cuentaOrigen.equals(cuentaDestino)) {
+            return "La cuenta origen y destino deben ser distintas.";
+        }
+        return null;
+    }
+
+    /**
+     * Ejecuta una transferencia ya validada.
+     * En modo por solicitud se ejecuta en el hilo llamador y el futuro vuelve completado;
+     * en modo group commit se completa desde el hilo escritor después del commit del lote.
+     */
+    public CompletableFuture<TransferResult> transferir(String cuentaOrigen, String cuentaDestino, double monto) {
+        return transferir(cuentaOrigen, cuentaDestino, monto, List.of());
+    }
+
+    /**
+     * Como {@link #transferir(String, String, double)}, actuando como primario de la partición: si la
+     * transferencia se confirma, el cambio se publica a los backups y el futuro completa cuando los
+     * confirma el log de replicación (ver {@link ReplicationLog#publicar}).
+     * @param backups Direcciones base de los workers backup; vacía sin replicación primario-backup.
+     */
+    public CompletableFuture<TransferResult> transferir(String cuentaOrigen, String cuentaDestino, double monto,
+                                                        List<String> backups) {
+        String transaccionId = nuevoTransaccionId();
+        // La fecha se fija aquí para que el libro de los backups tenga exactamente la misma fila
+        Timestamp fechaHora = Timestamp.valueOf(LocalDateTime.now());
+        return transferirLocal(transaccionId, cuentaOrigen, cuentaDestino, monto, fechaHora)
+                .thenCompose(resultado -> replicar(resultado, cuentaOrigen, cuentaDestino, monto, fechaHora, backups));
+    }
+
+    /**
+     * Aplica un lote de transferencias en el orden recibido. En modo group commit se encolan en orden
+     * en el escritor; si no, van en una sola transacción propia con un savepoint por transferencia,
+     * así una rechazada no afecta a las demás. Con backups, cada confirmada se publica en el log de
+     * replicación igual que en {@link #transferir(String, String, double, List)}.
+     * @return Un resultado por orden, en el mismo orden.
+     */
+    public CompletableFuture<List<TransferResult>> transferirLote(List<Orden> ordenes, List<String> backups) {
+        Timestamp fechaHora = Timestamp.valueOf(LocalDateTime.now());
+        List<String> transaccionIds = new ArrayList<>(ordenes.size());
+        for (int i = 0; i < ordenes.size(); i++) {
+            transaccionIds.add(nuevoTransaccionId());
+        }
+        CompletableFuture<List<TransferResult>> locales;
+        if (groupCommitWriter != null) {
+            List<CompletableFuture<TransferResult>> futuros = new ArrayList<>(ordenes.size());
+            for (int i = 0; i < ordenes.size(); i++) {
+                Orden orden = ordenes.get(i);
+                futuros.add(transferirLocal(transaccionIds.get(i), orden.cuentaOrigen, orden.cuentaDestino, orden.monto, fechaHora));
+            }
+            locales = juntar(futuros);
+        } else {
+            long inicio = System.nanoTime();
+            try {
+                locales = CompletableFuture.completedFuture(transferirLoteEnTransaccionPropia(transaccionIds, ordenes, fechaHora));
+            } finally {
+                latencyHistogram.record(System.nanoTime() - inicio);
+            }
+        }
+        if (backups.isEmpty()) {
+            return locales;
+        }
+        // Se publican en el orden del lote: el log de replicación conserva ese orden hacia los backups
+        return locales.thenCompose(resultados -> {
+            List<CompletableFuture<TransferResult>> replicados = new ArrayList<>(resultados.size());
+            for (int i = 0; i < resultados.size(); i++) {
+                Orden orden = ordenes.get(i);
+                replicados.add(replicar(resultados.get(i), orden.cuentaOrigen, orden.cuentaDestino, orden.monto, fechaHora, backups));
+            }
+            return juntar(replicados);
+        });
+    }
+
+    /**
+     * Si la transferencia se confirmó y hay backups, publica el cambio y completa cuando lo confirma
+     * el log de replicación (ver {@link ReplicationLog#publicar}).
+     */
+    private CompletableFuture<TransferResult> replicar(TransferResult resultado, String cuentaOrigen, String cuentaDestino,
+                                                       double monto, Timestamp fechaHora, List<String> backups) {
+        if (backups.isEmpty() || !resultado.isConfirmada()) {
+            return CompletableFuture.completedFuture(resultado);
+        }
+        String transaccionId = resultado.getTransaccionId();
+        ReplicacionDAO.Cambio cambio = new ReplicacionDAO.Cambio(0, transaccionId, cuentaOrigen, cuentaDestino,
+                BigDecimal.valueOf(monto), fechaHora);
+        return replicationLog.publicar(backups, cambio).thenApply(acks -> {
+            LOGGER.log(Level.FINE, "Worker [{0}] Transacción {1} replicada en {2} de {3} backups",
+                    new Object[]{workerId, transaccionId, acks, backups.size()});
+            return resultado;
+        });
+    }
+
+    // ID de transacción simple; la secuencia evita colisiones entre solicitudes del mismo milisegundo
+    private String nuevoTransaccionId() {
+        return "TXN-" + workerId + "-" + System.currentTimeMillis() + "-" + SECUENCIA_TRANSACCION.incrementAndGet();
+    }
+
+    private static CompletableFuture<List<TransferResult>> juntar(List<CompletableFuture<TransferResult>> futuros) {
+        return CompletableFuture.allOf(futuros.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<TransferResult> resultados = new ArrayList<>(futuros.size());
+            futuros.forEach(futuro -> resultados.add(futuro.join()));
+            return resultados;
+        });
+    }
+
+    private CompletableFuture<TransferResult> transferirLocal(String transaccionId, String cuentaOrigen, String cuentaDestino,
+                                                              double monto, Timestamp fechaHora) {
+        long inicio = System.nanoTime();
+
+        if (groupCommitWriter != null) {
+            return groupCommitWriter.submit(transaccionId, cuentaOrigen, cuentaDestino, monto, fechaHora).handle((resultado, ex) -> {
+                latencyHistogram.record(System.nanoTime() - inicio);
+                if (ex != null) {
+                    LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error en transferencia agrupada " + transaccionId + ": " + ex.getMessage(), ex);
+                    return TransferResult.error(transaccionId, ex.getMessage());
+                }
+                return toResult(transaccionId, resultado, cuentaOrigen, cuentaDestino);
+            });
+        }
+
+        try {
+            return CompletableFuture.completedFuture(transferirEnTransaccionPropia(transaccionId, cuentaOrigen, cuentaDestino, monto, fechaHora));
+        } finally {
+            latencyHistogram.record(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Detiene el escritor de group commit, si está activo, aplicando lo ya encolado, y el envío a los backups.
+     */
+    public void close() {
+        if (groupCommitWriter != null) {
+            groupCommitWriter.shutdown();
+        }
+        if (replicationLog != null) {
+            replicationLog.shutdown();
+        }
+    }
+
+    private TransferResult transferirEnTransaccionPropia(String transaccionId, String cuentaOrigen,
+                                                         String cuentaDestino, double monto, Timestamp fechaHora) {
+        // Lógica de transacción JDBC
+        Connection conn = null;
+        ResultadoTransferencia resultado = null;
+        // Se cierra en el finally: confirmada tras el commit, descartada en cualquier otro caso
+        BalanceCache.Escritura escritura = dbManager.getBalanceCache().beginWrite(cuentaOrigen, cuentaDestino);
+
+        try {
+            conn = dbManager.getConnection();
+            conn.setAutoCommit(false); // Iniciar transacción
+
+            for (int intento = 1; ; intento++) {
+                try {
+                    resultado = ejecutarTransferencia(conn, transaccionId, cuentaOrigen, cuentaDestino, monto, fechaHora, escritura);
+                    if (resultado != ResultadoTransferencia.CONFIRMADA) {
+                        conn.rollback(); // El débito pudo aplicarse antes del rechazo
+                        return toResult(transaccionId, resultado, cuentaOrigen, cuentaDestino);
+                    }
+                    conn.commit(); // Confirmar transacción
+                    escritura.confirmar(); // Los saldos nuevos pasan a la caché solo después del commit
+                    break;
+                } catch (SQLException e) {
+                    if (!SqlRetryPolicy.esReintentable(e) || intento >= SqlRetryPolicy.MAX_INTENTOS) {
+                        if (SqlRetryPolicy.esReintentable(e)) {
+                            lockMetrics.recordRetriesExhausted();
+                        }
+                        throw e;
+                    }
+                    // Fallo de serialización o deadlock: revertir y reintentar tras un backoff acotado
+                    conn.rollback();
+                    lockMetrics.recordRetry(cuentaOrigen, cuentaDestino);
+                    long backoffMs = SqlRetryPolicy.calcularBackoffMs(intento);
+                    LOGGER.log(Level.WARNING, "Worker [{0}] Transacción {1} reintentada (intento {2}, SQLState {3}) tras {4} ms",
+                        new Object[]{workerId, transaccionId, intento + 1, e.getSQLState(), backoffMs});
+                    Thread.sleep(backoffMs);
+                }
+            }
+            LOGGER.info("Worker ["+workerId+"] Transacción " + transaccionId + " COMPLETADA y commit realizado.");
+            return TransferResult.confirmada(transaccionId);
+
+        } catch (SQLException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error en transacción de transferencia " + transaccionId + ": " + e.getMessage(), e);
+            if (conn != null) {
+                try {
+                    LOGGER.warning("Worker ["+workerId+"] Intentando rollback para transacción " + transaccionId);
+                    conn.rollback(); // Revertir transacción en caso de error
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error durante el rollback para transacción " + transaccionId, ex);
+                }
+            }
+            return TransferResult.error(transaccionId, e.getMessage());
+        } finally {
+            escritura.descartar(); // No hace nada si ya se confirmó
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true); // Restaurar auto-commit
+                    conn.close(); // Devolver la conexión al pool
+                } catch (SQLException e) {
+                    LOGGER.log(Level.SEVERE, "Worker ["+workerId+"] Error al cerrar conexión después de transferencia " + transaccionId, e);
+                }
+            }
+        }
+    }
+
+    private List<TransferResult> transferirLoteEnTransaccionPropia(List<String> transaccionIds, List<Orden> ordenes,
+                                                                   Timestamp fechaHora) {
+        String[] cuentas = ordenes.stream()
+                .flatMap(orden -> Stream.of(orden.cuentaOrigen, orden.cuentaDestino))
+                .distinct()
+                .toArray(String[]::new);
+        for (int intento = 1; ; intento++) {
+            try {
+                return aplicarLote(transaccionIds, ordenes, fechaHora, cuentas);
+            } catch (SQLException e) {
+                if (!SqlRetryPolicy.esReintentable(e) || intento >= SqlRetryPolicy.MAX_INTENTOS) {
+                    if (SqlRetryPolicy.esReintentable(e)) {
+                        lockMetrics.recordRetriesExhausted();
+                    }
+                    LOGGER.log(Level.SEVERE, "Worker [" + workerId + "] Error al aplicar lote de " + ordenes.size() + " transferencias", e);
+                    return erroresDeLote(transaccionIds, e.getMessage());
+                }
+                // Fallo de serialización o deadlock: se reintenta el lote entero, como una transferencia suelta
+                lockMetrics.recordRetry(cuentas);
+                long backoffMs = SqlRetryPolicy.calcularBackoffMs(intento);
+                LOGGER.log(Level.WARNING, "Worker [{0}] Lote de {1} transferencias reintentado (intento {2}, SQLState {3}) tras {4} ms",
+                        new Object[]{workerId, ordenes.size(), intento + 1, e.getSQLState(), backoffMs});
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return erroresDeLote(transaccionIds, "Lote interrumpido.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Un intento del lote en una transacción. Todas las cuentas del lote se bloquean antes de la primera
+     * transferencia, en el mismo orden canónico que usan las transferencias sueltas: dos lotes (o un
+     * lote y una transferencia) que comparten cuentas se serializan en vez de bloquearse mutuamente.
+     * @throws SQLException Si falla la transacción; nada queda aplicado y las escrituras de caché se descartan.
+     */
+    private List<TransferResult> aplicarLote(List<String> transaccionIds, List<Orden> ordenes, Timestamp fechaHora,
+                                             String[] cuentas) throws SQLException {
+        List<TransferResult> resultados = new ArrayList<>(ordenes.size());
+        List<BalanceCache.Escritura> escrituras = new ArrayList<>(ordenes.size());
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                long inicioBloqueo = System.nanoTime();
+                cuentaDAO.bloquearCuentasEnOrden(conn, cuentas);
+                long esperaBloqueo = System.nanoTime() - inicioBloqueo;
+                for (String cuenta : cuentas) {
+                    lockMetrics.recordLockWait(cuenta, esperaBloqueo);
+                }
+                for (int i = 0; i < ordenes.size(); i++) {
+                    Orden orden = ordenes.get(i);
+                    String transaccionId = transaccionIds.get(i);
+                    escrituras.add(dbManager.getBalanceCache().beginWrite(orden.cuentaOrigen, orden.cuentaDestino));
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        ResultadoTransferencia resultado = ejecutarTransferencia(
+                                conn, transaccionId, orden.cuentaOrigen, orden.cuentaDestino, orden.monto, fechaHora, escrituras.get(i));
+                        if (resultado != ResultadoTransferencia.CONFIRMADA) {
+                            conn.rollback(savepoint); // El débito pudo aplicarse antes del rechazo
+                            escrituras.get(i).descartar();
+                        }
+                        resultados.add(toResult(transaccionId, resultado, orden.cuentaOrigen, orden.cuentaDestino));
+                    } catch (SQLException e) {
+                        if (SqlRetryPolicy.esReintentable(e)) {
+                            throw e; // Se reintenta el lote entero
+                        }
+                        conn.rollback(savepoint);
+                        escrituras.get(i).descartar();
+                        LOGGER.log(Level.WARNING, "Worker [{0}] Transacción {1} del lote fallida: {2}",
+                                new Object[]{workerId, transaccionId, e.getMessage()});
+                        resultados.add(TransferResult.error(transaccionId, e.getMessage()));
+                    }
+                }
+                conn.commit(); // Un solo commit para todo el lote
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            escrituras.forEach(BalanceCache.Escritura::descartar);
+            throw e;
+        }
+        escrituras.forEach(BalanceCache.Escritura::confirmar); // Las revertidas ya están cerradas
+        LOGGER.log(Level.INFO, "Worker [{0}] Lote de {1} transferencias aplicado con un solo commit",
+                new Object[]{workerId, ordenes.size()});
+        return resultados;
+    }
+
+    private static List<TransferResult> erroresDeLote(List<String> transaccionIds, String mensaje) {
+        List<TransferResult> resultados = new ArrayList<>(transaccionIds.size());
+        for (String transaccionId : transaccionIds) {
+            resultados.add(TransferResult.error(transaccionId, mensaje));
+        }
+        return resultados;
+    }
+
+    /**
+     * Un intento de la transferencia dentro de la transacción abierta en conn (sin commit).
+     */
+    private ResultadoTransferencia ejecutarTransferencia(Connection conn, String transaccionId, String cuentaOrigen,
+                                                         String cuentaDestino, double monto, Timestamp fechaHora,
+                                                         BalanceCache.Escritura escritura) throws SQLException {
+        // 1. Bloquear ambas cuentas en orden canónico (por ID_CUENTA) para evitar deadlocks
+        //    entre transferencias opuestas (CU001->CU003 y CU003->CU001).
+        long inicioBloqueo = System.nanoTime();
+        cuentaDAO.bloquearCuentasEnOrden(conn, cuentaOrigen, cuentaDestino);
+        long esperaBloqueo = System.nanoTime() - inicioBloqueo;
+        lockMetrics.recordLockWait(cuentaOrigen, esperaBloqueo);
+        lockMetrics.recordLockWait(cuentaDestino, esperaBloqueo);
+
+        // 2. Débito con guarda de saldo, crédito y registro en un solo round trip.
+        //    Los saldos se actualizan en SQL (SALDO = SALDO -/+ monto), no con valores calculados en Java.
+        //    Si la cuenta destino no es local, la transacción falla (una 2PC la resolvería en el Central).
+        return transaccionDAO.transferirEnTransaccion(
+                conn, transaccionId, cuentaOrigen, cuentaDestino, monto, fechaHora, escritura);
+    }
+
+    private static TransferResult toResult(String transaccionId, ResultadoTransferencia resultado,
+                                           String cuentaOrigen, String cuentaDestino) {
+        switch (resultado) {
+            case CONFIRMADA:
+                return TransferResult.confirmada(transaccionId);
+            case CUENTA_ORIGEN_NO_ENCONTRADA:
+                return TransferResult.rechazada(transaccionId, resultado, "Cuenta origen " + cuentaOrigen + " no encontrada.");
+            case SALDO_INSUFICIENTE:
+                return TransferResult.rechazada(transaccionId, resultado, "Saldo insuficiente en cuenta " + cuentaOrigen);
+            case CUENTA_DESTINO_NO_ENCONTRADA:
+                return TransferResult.rechazada(transaccionId, resultado, "Cuenta destino " + cuentaDestino + " no encontrada en este nodo para acreditación.");
+            default:
+                return TransferResult.rechazada(transaccionId, resultado, resultado.getEstado());
+        }
+    }
+}
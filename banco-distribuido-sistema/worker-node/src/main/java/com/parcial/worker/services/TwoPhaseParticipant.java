@@ -0,0 +1,155 @@
+package com.parcial.worker.services;
+
+import com.parcial.worker.persistence.ArqueoParcialTracker;
+import com.parcial.worker.persistence.DatabaseManager;
+import com.parcial.worker.persistence.dao.TransferenciaDistribuidaDAO;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Participante del commit en dos fases de las transferencias entre particiones
+ * (ver {@link TransferenciaDistribuidaDAO}). Además de delegar en el DAO mantiene coherentes la
+ * caché de saldos y el arqueo parcial: el monto sale de la partición al preparar el débito, vuelve
+ * si se aborta y entra en la partición destino al confirmar el crédito.
+ *
+ * Si el Central no envía la decisión (caída del coordinador o de la red), un hilo de fondo le pregunta
+ * por las participaciones preparadas hace más de DOS_FASES_PLAZO_S segundos. El Central registra las
+ * decisiones COMMIT en un log durable; si no conoce la transacción responde ABORT (aborto presunto), y
+ * DESCONOCIDA si es tan vieja que ya no puede saberlo: la participación queda preparada y se vuelve a preguntar.
+ */
+public class TwoPhaseParticipant {
+    private static final Logger LOGGER = Logger.getLogger(TwoPhaseParticipant.class.getName());
+    private static final String DECISION_PATH = "/api/2pc/decision";
+
+    private final TransferenciaDistribuidaDAO dao;
+    private final DatabaseManager dbManager;
+    private final ArqueoParcialTracker arqueoTracker;
+    private final String workerId;
+    private final String centralUrl = System.getenv().getOrDefault("CENTRAL_URL", "http://central-server-svc.banco.svc.cluster.local");
+    private final long plazoSegundos = Long.parseLong(System.getenv().getOrDefault("DOS_FASES_PLAZO_S", "60"));
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ScheduledExecutorService resolutor;
+
+    public TwoPhaseParticipant(DatabaseManager dbManager, String workerId, ArqueoParcialTracker arqueoTracker) {
+        this.dao = new TransferenciaDistribuidaDAO(dbManager, workerId);
+        this.dbManager = dbManager;
+        this.arqueoTracker = arqueoTracker;
+        this.workerId = workerId;
+        this.resolutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "resolutor-2pc-" + workerId);
+            t.setDaemon(true);
+            return t;
+        });
+        long intervalo = Long.parseLong(System.getenv().getOrDefault("DOS_FASES_RESOLUCION_S", "30"));
+        this.resolutor.scheduleWithFixedDelay(this::resolverPendientes, intervalo, intervalo, TimeUnit.SECONDS);
+    }
+
+    public TransferenciaDistribuidaDAO.Voto preparar(String transaccionId, String rol, String cuenta, String contraparte,
+                                                     BigDecimal monto) throws SQLException {
+        if (TransferenciaDistribuidaDAO.DEBITO.equals(rol)) {
+            ArqueoParcialTracker.Cambio cambio = arqueoTracker.iniciarCambio();
+            try {
+                TransferenciaDistribuidaDAO.Voto voto = dao.prepararDebito(transaccionId, cuenta, contraparte, monto);
+                if (voto.isNuevo()) {
+                    dbManager.getBalanceCache().invalidate(cuenta);
+                    cambio.aplicar(monto.negate());
+                }
+                return voto;
+            } finally {
+                cambio.cerrar();
+            }
+        }
+        return dao.prepararCredito(transaccionId, cuenta, contraparte, monto);
+    }
+
+    public void confirmar(String transaccionId, String rol) throws SQLException {
+        ArqueoParcialTracker.Cambio cambio = arqueoTracker.iniciarCambio();
+        try {
+            TransferenciaDistribuidaDAO.Cierre cierre = dao.confirmar(transaccionId, rol);
+            if (cierre != null && TransferenciaDistribuidaDAO.CREDITO.equals(rol)) {
+                dbManager.getBalanceCache().invalidate(cierre.getCuentaId());
+                cambio.aplicar(cierre.getMonto());
+            }
+        } finally {
+            cambio.cerrar();
+        }
+    }
+
+    public void abortar(String transaccionId, String rol, String cuenta, String contraparte, BigDecimal monto) throws SQLException {
+        ArqueoParcialTracker.Cambio cambio = arqueoTracker.iniciarCambio();
+        try {
+            TransferenciaDistribuidaDAO.Cierre cierre = dao.abortar(transaccionId, rol, cuenta, contraparte, monto);
+            if (cierre != null && TransferenciaDistribuidaDAO.DEBITO.equals(rol)) {
+                dbManager.getBalanceCache().invalidate(cierre.getCuentaId());
+                cambio.aplicar(cierre.getMonto());
+            }
+        } finally {
+            cambio.cerrar();
+        }
+    }
+
+    public void shutdown() {
+        resolutor.shutdownNow();
+    }
+
+    private void resolverPendientes() {
+        List<TransferenciaDistribuidaDAO.Pendiente> pendientes;
+        try {
+            pendientes = dao.preparadasAntesDe(plazoSegundos);
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Worker [" + workerId + "] 2PC: no se pudieron leer las transacciones pendientes", e);
+            return;
+        }
+        for (TransferenciaDistribuidaDAO.Pendiente pendiente : pendientes) {
+            try {
+                String decision = consultarDecision(pendiente.getTransaccionId());
+                if ("COMMIT".equals(decision)) {
+                    confirmar(pendiente.getTransaccionId(), pendiente.getRol());
+                } else if ("ABORT".equals(decision)) {
+                    abortar(pendiente.getTransaccionId(), pendiente.getRol(), null, null, null);
+                } else {
+                    if (!"PENDIENTE".equals(decision)) {
+                        LOGGER.warning("Worker [" + workerId + "] 2PC: el coordinador no conoce la decisión de "
+                                + pendiente.getTransaccionId() + " (" + decision + "); se deja preparada.");
+                    }
+                    continue; // PENDIENTE: el coordinador todavía está decidiendo
+                }
+                LOGGER.log(Level.INFO, "Worker [{0}] 2PC: transacción {1} ({2}) resuelta con {3}",
+                        new Object[]{workerId, pendiente.getTransaccionId(), pendiente.getRol(), decision});
+            } catch (IOException | SQLException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Worker [" + workerId + "] 2PC: no se pudo resolver " + pendiente.getTransaccionId(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private String consultarDecision(String transaccionId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(centralUrl + DECISION_PATH + "?idTransaccion="
+                        + URLEncoder.encode(transaccionId, StandardCharsets.UTF_8)))
+                .timeout(Duration.ofSeconds(10))
+                .GET()
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("El Central respondió " + response.statusCode() + ": " + response.body());
+        }
+        return response.body().trim();
+    }
+}
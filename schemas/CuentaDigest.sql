@@ -0,0 +1,41 @@
+-- Digests de Cuenta para la anti-entropía entre réplicas (ver DigestDAO y CuentaDigest en el worker).
+-- Bucket de una cuenta: primeros 32 bits del md5 de su ID; hash de una fila: primeros 64 bits del md5 de la fila.
+-- Cada escritura en Cuenta deja en CuentaDigestCambios la diferencia de hash de su bucket; el worker la
+-- suma a sus hojas en memoria y borra las filas, sin volver a recorrer la tabla Cuenta.
+CREATE TABLE CuentaDigestCambios (
+    ID BIGSERIAL PRIMARY KEY,
+    BUCKET INTEGER NOT NULL,
+    HASH NUMERIC NOT NULL
+);
+
+CREATE FUNCTION cuenta_bucket(id VARCHAR) RETURNS INTEGER AS $$
+    SELECT ('x' || substr(md5(id), 1, 8))::bit(32)::int
+$$ LANGUAGE SQL IMMUTABLE;
+
+CREATE FUNCTION cuenta_hash(c Cuenta) RETURNS BIGINT AS $$
+    SELECT ('x' || substr(md5(c.ID_CUENTA || '|' || coalesce(c.ID_CLIENTE, '') || '|'
+        || coalesce(c.SALDO::text, '') || '|' || coalesce(c.TIPO_CUENTA, '')), 1, 16))::bit(64)::bigint
+$$ LANGUAGE SQL IMMUTABLE;
+
+-- La diferencia se guarda como NUMERIC: el worker la reduce módulo 2^64 al sumarla
+CREATE FUNCTION cuenta_digest_cambio() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' AND OLD.ID_CUENTA = NEW.ID_CUENTA THEN
+        IF OLD IS DISTINCT FROM NEW THEN
+            INSERT INTO CuentaDigestCambios (BUCKET, HASH)
+            VALUES (cuenta_bucket(NEW.ID_CUENTA), cuenta_hash(NEW)::numeric - cuenta_hash(OLD)::numeric);
+        END IF;
+        RETURN NULL;
+    END IF;
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        INSERT INTO CuentaDigestCambios (BUCKET, HASH) VALUES (cuenta_bucket(OLD.ID_CUENTA), -(cuenta_hash(OLD)::numeric));
+    END IF;
+    IF TG_OP IN ('UPDATE', 'INSERT') THEN
+        INSERT INTO CuentaDigestCambios (BUCKET, HASH) VALUES (cuenta_bucket(NEW.ID_CUENTA), cuenta_hash(NEW)::numeric);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER cuenta_digest AFTER INSERT OR UPDATE OR DELETE ON Cuenta
+    FOR EACH ROW EXECUTE FUNCTION cuenta_digest_cambio();
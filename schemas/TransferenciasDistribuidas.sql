@@ -0,0 +1,13 @@
+-- Participación local en transferencias entre particiones (commit en dos fases coordinado por el Central).
+-- ROL: DEBITO (cuenta origen, el monto se reserva al preparar) o CREDITO (cuenta destino, se acredita al confirmar).
+-- ESTADO: PREPARADA, CONFIRMADA o ABORTADA. Sin FK a Cuenta para que los rangos de cuentas puedan migrarse.
+CREATE TABLE TransferenciasDistribuidas (
+    ID_TRANSACCION VARCHAR(50),
+    ROL VARCHAR(10),
+    ID_CUENTA VARCHAR(50),
+    ID_CONTRAPARTE VARCHAR(50),
+    MONTO DECIMAL(12, 2),
+    ESTADO VARCHAR(20),
+    FECHA_HORA TIMESTAMP,
+    PRIMARY KEY (ID_TRANSACCION, ROL)
+);